@@ -0,0 +1,78 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import net.gini.android.models.Document;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class AdaptivePollingPolicyTest {
+
+    private AdaptivePollingPolicy mPollingPolicy;
+
+    @Before
+    public void setUp() {
+        mPollingPolicy = new AdaptivePollingPolicy(1000, 10000, new Random(42));
+    }
+
+    private Document createDocument(final int pageCount, final Document.SourceClassification sourceClassification) {
+        return new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", pageCount, new Date(),
+                sourceClassification, Uri.parse(""), new ArrayList<Uri>(), new ArrayList<Uri>());
+    }
+
+    @Test
+    public void testUsesMinimalDelayWithoutObservations() {
+        final Document document = createDocument(1, Document.SourceClassification.SCANNED);
+
+        assertEquals(1000, mPollingPolicy.getDelay(document, 1, 0));
+        assertEquals(-1, mPollingPolicy.getExpectedProcessingTime(document));
+    }
+
+    @Test
+    public void testPollsSparselyBeforeAndDenselyAroundExpectedProcessingTime() {
+        final Document document = createDocument(1, Document.SourceClassification.SCANNED);
+        for (int i = 0; i < 20; i++) {
+            mPollingPolicy.onProcessed(document, 8000);
+        }
+
+        assertEquals(8000, mPollingPolicy.getExpectedProcessingTime(document));
+        assertTrue(mPollingPolicy.getDelay(document, 1, 0) > 5000);
+        assertEquals(1000, mPollingPolicy.getDelay(document, 3, 8000));
+    }
+
+    @Test
+    public void testBacksOffWhenOverdue() {
+        final Document document = createDocument(1, Document.SourceClassification.SCANNED);
+        for (int i = 0; i < 20; i++) {
+            mPollingPolicy.onProcessed(document, 2000);
+        }
+
+        final long delay = mPollingPolicy.getDelay(document, 10, 12000);
+        assertTrue(delay > 3000);
+        assertTrue(delay <= 10000);
+    }
+
+    @Test
+    public void testTracksDocumentKindsSeparately() {
+        mPollingPolicy.onProcessed(createDocument(1, Document.SourceClassification.SCANNED), 8000);
+
+        assertEquals(-1, mPollingPolicy.getExpectedProcessingTime(
+                createDocument(1, Document.SourceClassification.NATIVE)));
+        assertEquals(-1, mPollingPolicy.getExpectedProcessingTime(
+                createDocument(4, Document.SourceClassification.SCANNED)));
+    }
+}
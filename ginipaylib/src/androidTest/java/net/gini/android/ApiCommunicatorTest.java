@@ -11,22 +11,37 @@ import static com.android.volley.Request.Method.PUT;
 import static net.gini.android.helpers.TestUtils.areEqualURIs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.net.Uri;
+
+import androidx.annotation.NonNull;
 import androidx.test.filters.MediumTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.RetryPolicy;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
 
 import net.gini.android.authorization.Session;
+import net.gini.android.models.ExtractionsContainer;
+import net.gini.android.requests.BearerParsedRequest;
 import net.gini.android.requests.DefaultRetryPolicyFactory;
+import net.gini.android.requests.LongPollRequest;
+import net.gini.android.requests.RequestCancelledError;
+import net.gini.android.requests.RequestLane;
 import net.gini.android.requests.RetryPolicyFactory;
+import net.gini.android.requests.StreamingBodyRequest;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -40,6 +55,10 @@ import org.mockito.Mockito;
 import java.net.URISyntaxException;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.CancellationTokenSource;
+import bolts.Task;
 
 @MediumTest
 @RunWith(AndroidJUnit4.class)
@@ -73,13 +92,13 @@ public class ApiCommunicatorTest {
     @Test
     public void testConstructionThrowsNullPointerExceptionWithNullArguments() {
         try {
-            new ApiCommunicator(null, null, null, retryPolicyFactory);
+            new ApiCommunicator(null, null, (RequestQueue) null, retryPolicyFactory);
             fail("NullPointerException not thrown");
         } catch (NullPointerException ignored) {
         }
 
         try {
-            new ApiCommunicator("https://pay-api.gini.net", GiniApiType.DEFAULT, null, retryPolicyFactory);
+            new ApiCommunicator("https://pay-api.gini.net", GiniApiType.DEFAULT, (RequestQueue) null, retryPolicyFactory);
             fail("NullPointerException not thrown");
         } catch (NullPointerException ignored) {
         }
@@ -88,13 +107,13 @@ public class ApiCommunicatorTest {
     @Test
     public void testUploadDocumentThrowsWithNullArguments() {
         try {
-            mApiCommunicator.uploadDocument(null, null, null, null, null, null);
+            mApiCommunicator.uploadDocument((byte[]) null, null, null, null, null, null);
             fail("Exception not thrown");
         } catch (NullPointerException ignored) {
         }
 
         try {
-            mApiCommunicator.uploadDocument(null, "image/jpeg", null, null, createSession(), null);
+            mApiCommunicator.uploadDocument((byte[]) null, "image/jpeg", null, null, createSession(), null);
             fail("Exception not thrown");
         } catch (NullPointerException ignored) {
         }
@@ -180,6 +199,99 @@ public class ApiCommunicatorTest {
         assertEquals(documentData, request.getBody());
     }
 
+    @Test
+    public void testUploadsAreNotRetriedAfterAuthFailures() throws VolleyError {
+        mApiCommunicator.uploadDocument(createUploadData(), MediaTypes.IMAGE_JPEG, null, null, createSession(), null);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final RetryPolicy retryPolicy = requestCaptor.getValue().getRetryPolicy();
+        final AuthFailureError authFailureError = new AuthFailureError();
+        try {
+            retryPolicy.retry(authFailureError);
+            fail("AuthFailureError not thrown");
+        } catch (VolleyError e) {
+            assertSame(authFailureError, e);
+        }
+        // Other errors are still retried
+        retryPolicy.retry(new TimeoutError());
+        assertEquals(1, retryPolicy.getCurrentRetryCount());
+    }
+
+    @Test
+    public void testUploadDocumentFromSourceStreamsBody() throws Exception {
+        final UploadSource uploadSource = UploadSource.fromBytes(createUploadData());
+        final Session session = createSession();
+
+        mApiCommunicator.uploadDocument(uploadSource, MediaTypes.IMAGE_JPEG, null, null, session, null);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final Request request = requestCaptor.getValue();
+        assertTrue(request instanceof StreamingBodyRequest);
+        assertSame(uploadSource, ((StreamingBodyRequest) request).getUploadSource());
+        assertEquals(MediaTypes.IMAGE_JPEG, request.getBodyContentType());
+    }
+
+    @Test
+    public void testUploadDocumentIsBackgroundRequest() {
+        mApiCommunicator.uploadDocument(createUploadData(), MediaTypes.IMAGE_JPEG, null, null, createSession(), null);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        assertEquals(Request.Priority.LOW, requestCaptor.getValue().getPriority());
+    }
+
+    @Test
+    public void testGetExtractionsIsInteractiveRequest() {
+        mApiCommunicator.getExtractions("1234", createSession());
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        assertEquals(Request.Priority.HIGH, requestCaptor.getValue().getPriority());
+    }
+
+    @Test
+    public void testGetExtractionsWithParserParsesResponseBytes() {
+        final ExtractionsParser parser = new ExtractionsParser();
+        mApiCommunicator.getExtractions("1234", createSession(), Task.BACKGROUND_EXECUTOR, parser);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final Request request = requestCaptor.getValue();
+        assertTrue(request instanceof BearerParsedRequest);
+        assertEquals("https://pay-api.gini.net/documents/1234/extractions", request.getUrl());
+        assertEquals(GET, request.getMethod());
+        assertEquals(Request.Priority.HIGH, request.getPriority());
+    }
+
+    @Test
+    public void testResolvePaymentRequestWithParserSendsBody() throws AuthFailureError {
+        final BearerParsedRequest.ResponseParser<String> parser = new BearerParsedRequest.ResponseParser<String>() {
+            @Override
+            public String parse(@NonNull final byte[] data) {
+                return new String(data, Utils.CHARSET_UTF8);
+            }
+        };
+        mApiCommunicator.resolvePaymentRequests("1234", "{\"amount\": \"1.00:EUR\"}", createSession(), parser);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final Request request = requestCaptor.getValue();
+        assertEquals("https://pay-api.gini.net/paymentRequests/1234/payment", request.getUrl());
+        assertEquals(POST, request.getMethod());
+        assertEquals("{\"amount\": \"1.00:EUR\"}", new String(request.getBody(), Utils.CHARSET_UTF8));
+    }
+
+    @Test
+    public void testWithRequestLaneOverridesDefaultLane() {
+        mApiCommunicator.withRequestLane(RequestLane.BACKGROUND).getExtractions("1234", createSession());
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        assertEquals(Request.Priority.LOW, requestCaptor.getValue().getPriority());
+    }
+
     @Test
     public void testUploadDocumentHasCorrectUrlAndMethod() {
         final byte[] documentData = createUploadData();
@@ -348,6 +460,183 @@ public class ApiCommunicatorTest {
         assertEquals(GET, request.getMethod());
     }
 
+    @Test
+    public void testWaitForDocumentProcessedUsesLongPollingRequest() {
+        Session session = createSession();
+
+        mApiCommunicator.waitForDocumentProcessed("1234", session);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final Request request = requestCaptor.getValue();
+        assertEquals("https://pay-api.gini.net/documents/1234/processed", request.getUrl());
+        assertEquals(GET, request.getMethod());
+        assertEquals(ApiCommunicator.LONG_POLL_TIMEOUT_MS, request.getTimeoutMs());
+        assertEquals(0, request.getRetryPolicy().getCurrentRetryCount());
+        // Long-polling requests don't take the slots of the normal lane
+        assertEquals(Request.Priority.LOW, request.getPriority());
+    }
+
+    @Test
+    public void testCancellingALongPollingRequestClosesItsConnection() {
+        mApiCommunicator.waitForDocumentProcessed("1234", createSession());
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final LongPollRequest request = (LongPollRequest) requestCaptor.getValue();
+        final AtomicInteger aborts = new AtomicInteger();
+        final Runnable abortAction = new Runnable() {
+            @Override
+            public void run() {
+                aborts.incrementAndGet();
+            }
+        };
+        request.setAbortAction(abortAction);
+        request.cancel();
+        assertEquals(1, aborts.get());
+
+        // A retry of the cancelled request is aborted right away
+        request.setAbortAction(abortAction);
+        assertEquals(2, aborts.get());
+    }
+
+    @Test
+    public void testIdenticalGetRequestsInFlightAreSentOnce() {
+        Session session = createSession();
+
+        final Task<JSONObject> first = mApiCommunicator.getDocument("1234", session);
+        final Task<JSONObject> second = mApiCommunicator.getDocument("1234", session);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final VolleyError error = new VolleyError();
+        requestCaptor.getValue().deliverError(error);
+        assertSame(error, first.getError());
+        assertSame(error, second.getError());
+    }
+
+    @Test
+    public void testIdenticalExtractionsRequestsInFlightAreSentOnce() throws InterruptedException {
+        Session session = createSession();
+        final ExtractionsParser parser = new ExtractionsParser();
+
+        final Task<ExtractionsContainer> first =
+                mApiCommunicator.getExtractions("1234", session, Task.BACKGROUND_EXECUTOR, parser);
+        final Task<ExtractionsContainer> second =
+                mApiCommunicator.getExtractions("1234", session, Task.BACKGROUND_EXECUTOR, parser);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final VolleyError error = new VolleyError();
+        requestCaptor.getValue().deliverError(error);
+        first.waitForCompletion();
+        second.waitForCompletion();
+        assertSame(error, first.getError());
+        assertSame(error, second.getError());
+    }
+
+    @Test
+    public void testGetRequestIsSentAgainAfterCompletion() {
+        Session session = createSession();
+
+        final Task<JSONObject> first = mApiCommunicator.getDocument("1234", session);
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        requestCaptor.getValue().deliverError(new VolleyError());
+        assertTrue(first.isFaulted());
+
+        final Task<JSONObject> task = mApiCommunicator.getDocument("1234", session);
+
+        verify(mRequestQueue, times(2)).add(any(Request.class));
+        assertFalse(task.isCompleted());
+    }
+
+    @Test
+    public void testWithoutRequestCoalescingSendsEveryRequest() {
+        Session session = createSession();
+        final ApiCommunicator apiCommunicator = mApiCommunicator.withoutRequestCoalescing();
+
+        apiCommunicator.getDocument("1234", session);
+        apiCommunicator.getDocument("1234", session);
+
+        verify(mRequestQueue, times(2)).add(any(Request.class));
+    }
+
+    @Test
+    public void testCancellationTokenCancelsRequests() {
+        Session session = createSession();
+        final CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        final ApiCommunicator apiCommunicator =
+                mApiCommunicator.withCancellationToken(cancellationTokenSource.getToken());
+
+        apiCommunicator.getDocument("1234", session);
+        cancellationTokenSource.cancel();
+        apiCommunicator.getDocument("1234", session);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue, times(2)).add(requestCaptor.capture());
+        assertTrue(requestCaptor.getAllValues().get(0).isCanceled());
+        assertTrue(requestCaptor.getAllValues().get(1).isCanceled());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCancellationTokenDoesNotCancelFinishedRequests() {
+        Session session = createSession();
+        final CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        final ApiCommunicator apiCommunicator =
+                mApiCommunicator.withCancellationToken(cancellationTokenSource.getToken());
+        final ArgumentCaptor<RequestQueue.RequestFinishedListener> listenerCaptor =
+                ArgumentCaptor.forClass(RequestQueue.RequestFinishedListener.class);
+        verify(mRequestQueue).addRequestFinishedListener(listenerCaptor.capture());
+
+        final Task<JSONObject> task = apiCommunicator.getDocument("1234", session);
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final VolleyError error = new VolleyError();
+        requestCaptor.getValue().deliverError(error);
+        listenerCaptor.getValue().onRequestFinished(requestCaptor.getValue());
+        cancellationTokenSource.cancel();
+
+        assertFalse(requestCaptor.getValue().isCanceled());
+        assertSame(error, task.getError());
+    }
+
+    @Test
+    public void testCancellationTokenCancelsTasks() {
+        Session session = createSession();
+        final CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        final ApiCommunicator apiCommunicator =
+                mApiCommunicator.withCancellationToken(cancellationTokenSource.getToken());
+
+        final Task<JSONObject> task = apiCommunicator.getDocument("1234", session);
+        assertFalse(task.isCompleted());
+        cancellationTokenSource.cancel();
+
+        assertTrue(task.isCancelled());
+    }
+
+    @Test
+    public void testCancelledRequestsAreNotRetried() {
+        Session session = createSession();
+        final CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        final ApiCommunicator apiCommunicator =
+                mApiCommunicator.withCancellationToken(cancellationTokenSource.getToken());
+
+        apiCommunicator.uploadDocument(new byte[]{1, 2, 3}, MediaTypes.IMAGE_JPEG, null, null, session, null);
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(mRequestQueue).add(requestCaptor.capture());
+        final Request request = requestCaptor.getValue();
+        cancellationTokenSource.cancel();
+
+        try {
+            request.getRetryPolicy().retry(new VolleyError());
+            fail("Cancelled request was retried");
+        } catch (VolleyError error) {
+            assertTrue(error instanceof RequestCancelledError);
+        }
+    }
+
     @Test
     public void testGetDocumentSendsCorrectAuthorizationHeaders() throws AuthFailureError {
         Session session = createSession("4321-1234");
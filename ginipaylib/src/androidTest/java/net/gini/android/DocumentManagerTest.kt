@@ -0,0 +1,217 @@
+package net.gini.android
+
+import android.content.Context
+import android.net.Uri
+import androidx.test.core.app.ApplicationProvider.getApplicationContext
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.MediumTest
+import bolts.CancellationToken
+import bolts.Task
+import com.squareup.moshi.Moshi
+import java.util.Date
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.take
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import net.gini.android.authorization.Session
+import net.gini.android.authorization.SessionManager
+import net.gini.android.helpers.TestUtils
+import net.gini.android.models.Document
+import net.gini.android.models.UploadProgress
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.ArgumentMatchers.nullable
+import org.mockito.Mockito
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+@MediumTest
+@RunWith(AndroidJUnit4::class)
+class DocumentManagerTest {
+
+    private lateinit var apiCommunicator: ApiCommunicator
+    private lateinit var documentManager: DocumentManager
+    private lateinit var documentJson: JSONObject
+    private val cancellationToken = AtomicReference<CancellationToken>()
+
+    @Before
+    fun setUp() {
+        apiCommunicator = Mockito.mock(ApiCommunicator::class.java)
+        `when`(apiCommunicator.withCancellationToken(any(CancellationToken::class.java))).thenAnswer { invocation ->
+            cancellationToken.set(invocation.getArgument(0))
+            apiCommunicator
+        }
+        val sessionManager = Mockito.mock(SessionManager::class.java)
+        `when`(sessionManager.session)
+            .thenReturn(Task.forResult(Session("1234-5678-9012", Date(Date().time + 10000))))
+        documentManager = DocumentManager(
+            DocumentTaskManager(apiCommunicator, sessionManager, GiniApiType.DEFAULT, Moshi.Builder().build())
+        )
+        val documentData =
+            TestUtils.createByteArray(getApplicationContext<Context>().resources.assets.open("document.json"))
+        documentJson = JSONObject(String(documentData, Utils.CHARSET_UTF8))
+    }
+
+    @Test
+    fun testTasksAreCreatedOffTheCallingThread() {
+        val requestThread = AtomicReference<Thread>()
+        `when`(apiCommunicator.getDocument(anyString(), any(Session::class.java))).thenAnswer {
+            requestThread.set(Thread.currentThread())
+            Task.forResult(documentJson)
+        }
+
+        val document = runBlocking { documentManager.getDocument("1234") }
+
+        assertEquals("626626a0-749f-11e2-bfd6-000000000000", document.id)
+        assertNotSame(Thread.currentThread(), requestThread.get())
+    }
+
+    @Test
+    fun testCancellingACallCancelsItsRequests() {
+        val requestSent = CountDownLatch(1)
+        `when`(apiCommunicator.deleteDocument(anyString(), any(Session::class.java))).thenAnswer {
+            requestSent.countDown()
+            Task.create<String>().task
+        }
+
+        runBlocking {
+            val call = launch(Dispatchers.Default) { documentManager.deleteDocument("1234") }
+            assertTrue(requestSent.await(5, TimeUnit.SECONDS))
+            call.cancelAndJoin()
+        }
+
+        assertTrue(cancellationToken.get().isCancellationRequested)
+    }
+
+    @Test
+    fun testCancellingAGetDoesNotCancelTheSharedRequest() {
+        val response = Task.create<JSONObject>()
+        val requestsSent = CountDownLatch(2)
+        `when`(apiCommunicator.getDocument(anyString(), any(Session::class.java))).thenAnswer {
+            requestsSent.countDown()
+            response.task
+        }
+
+        val document = runBlocking {
+            val cancelledCall = launch(Dispatchers.Default) { documentManager.getDocument("1234") }
+            val call = async(Dispatchers.Default) { documentManager.getDocument("1234") }
+            assertTrue(requestsSent.await(5, TimeUnit.SECONDS))
+            cancelledCall.cancelAndJoin()
+            response.setResult(documentJson)
+            call.await()
+        }
+
+        assertEquals("626626a0-749f-11e2-bfd6-000000000000", document.id)
+        verify(apiCommunicator, never()).withCancellationToken(any(CancellationToken::class.java))
+        assertFalse(response.task.isCancelled)
+    }
+
+    @Test
+    fun testUploadPartialDocumentReportsOnlyTheProgressOfTheUpload() {
+        val data = ByteArray(100_000)
+        `when`(
+            apiCommunicator.uploadDocument(
+                any(UploadSource::class.java), anyString(), nullable(String::class.java),
+                nullable(String::class.java), any(Session::class.java), nullable(DocumentMetadata::class.java)
+            )
+        ).thenAnswer { invocation ->
+            val uploadSource: UploadSource = invocation.getArgument(0)
+            // Other readers, like the near-duplicate detection, must not change the progress
+            uploadSource.openStream().use { it.readBytes() }
+            uploadSource.openUploadStream().use { it.readBytes() }
+            Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1234"))
+        }
+        `when`(apiCommunicator.getDocument(any(Uri::class.java), any(Session::class.java)))
+            .thenReturn(Task.forResult(documentJson))
+
+        val progress = runBlocking {
+            documentManager.uploadPartialDocument(UploadSource.fromBytes(data), "image/jpeg").toList()
+        }
+
+        val sending = progress.filterIsInstance<UploadProgress.Sending>()
+        assertTrue(sending.isNotEmpty())
+        assertEquals(sending.map { it.bytesSent }.sorted(), sending.map { it.bytesSent })
+        assertTrue(sending.all { it.totalBytes == data.size.toLong() })
+        assertEquals(data.size.toLong(), sending.last().bytesSent)
+        assertEquals("626626a0-749f-11e2-bfd6-000000000000",
+            (progress.last() as UploadProgress.Completed).document.id)
+    }
+
+    @Test
+    fun testDocumentProcessingStatesEmitsEveryStateOnce() {
+        val pendingJson = JSONObject(documentJson.toString()).put("progress", "PENDING")
+        `when`(apiCommunicator.getDocument(anyString(), any(Session::class.java)))
+            .thenReturn(Task.forResult(pendingJson), Task.forResult(pendingJson), Task.forResult(documentJson))
+
+        val states = runBlocking {
+            documentManager.documentProcessingStates(Document.fromApiResponse(pendingJson)).toList()
+        }
+
+        assertEquals(listOf(Document.ProcessingState.PENDING, Document.ProcessingState.COMPLETED),
+            states.map { it.state })
+        verify(apiCommunicator, times(3)).getDocument(anyString(), any(Session::class.java))
+    }
+
+    @Test
+    fun testDocumentProcessingStatesStopsPollingWhenTheCollectorStops() {
+        val pendingJson = JSONObject(documentJson.toString()).put("progress", "PENDING")
+        `when`(apiCommunicator.getDocument(anyString(), any(Session::class.java)))
+            .thenReturn(Task.forResult(pendingJson))
+
+        val state = runBlocking {
+            documentManager.documentProcessingStates(Document.fromApiResponse(pendingJson)).first()
+        }
+
+        assertEquals(Document.ProcessingState.PENDING, state.state)
+        verify(apiCommunicator, times(1)).getDocument(anyString(), any(Session::class.java))
+    }
+
+    @Test
+    fun testDocumentPagesLoadsPagesUntilAllDocumentsWereEmitted() {
+        `when`(apiCommunicator.getDocumentList(eq(0), eq(2), any(Session::class.java)))
+            .thenReturn(Task.forResult(createDocumentList(2, 3)))
+        `when`(apiCommunicator.getDocumentList(eq(2), eq(2), any(Session::class.java)))
+            .thenReturn(Task.forResult(createDocumentList(1, 3)))
+
+        val pages = runBlocking { documentManager.documentPages(pageSize = 2).toList() }
+
+        assertEquals(listOf(2, 1), pages.map { it.size })
+    }
+
+    @Test
+    fun testDocumentPagesLoadsOnlyCollectedPages() {
+        `when`(apiCommunicator.getDocumentList(anyInt(), anyInt(), any(Session::class.java)))
+            .thenReturn(Task.forResult(createDocumentList(2, 10)))
+
+        val pages = runBlocking { documentManager.documentPages(pageSize = 2).take(1).toList() }
+
+        assertEquals(1, pages.size)
+        verify(apiCommunicator, times(1)).getDocumentList(anyInt(), anyInt(), any(Session::class.java))
+    }
+
+    private fun createDocumentList(documentCount: Int, totalCount: Int): JSONObject {
+        val documents = JSONArray()
+        repeat(documentCount) { documents.put(JSONObject(documentJson.toString())) }
+        return JSONObject().put("totalCount", totalCount).put("documents", documents)
+    }
+}
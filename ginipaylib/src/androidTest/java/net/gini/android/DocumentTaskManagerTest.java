@@ -4,10 +4,17 @@ import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import androidx.annotation.NonNull;
 import androidx.test.filters.MediumTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.android.volley.AuthFailureError;
+import com.android.volley.ClientError;
+import com.android.volley.Header;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 
@@ -27,6 +34,7 @@ import net.gini.android.models.ResolvePaymentInput;
 import net.gini.android.models.ResolvedPayment;
 import net.gini.android.models.ReturnReason;
 import net.gini.android.models.SpecificExtraction;
+import net.gini.android.requests.BearerParsedRequest.ResponseParser;
 import net.gini.android.requests.ErrorEvent;
 
 import org.json.JSONArray;
@@ -38,6 +46,8 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -51,7 +61,14 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import bolts.CancellationToken;
+import bolts.CancellationTokenSource;
 import bolts.Task;
 
 import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
@@ -59,6 +76,7 @@ import static net.gini.android.Utils.CHARSET_UTF8;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.nullable;
@@ -92,6 +110,8 @@ public class DocumentTaskManagerTest {
         // Always mock the session away since it is not what is tested here.
         mSession = new Session("1234-5678-9012", new Date(new Date().getTime() + 10000));
         when(mSessionManager.getSession()).thenReturn(Task.forResult(mSession));
+        when(mApiCommunicator.withCancellationToken(any(CancellationToken.class))).thenReturn(mApiCommunicator);
+        when(mApiCommunicator.withoutCancellationToken()).thenReturn(mApiCommunicator);
     }
 
     private Bitmap createBitmap() throws IOException {
@@ -123,16 +143,6 @@ public class DocumentTaskManagerTest {
         return new JSONObject(new String(buffer));
     }
 
-    private JSONArray readJSONArrayFile(final String filename) throws IOException, JSONException {
-        InputStream inputStream = getApplicationContext().getResources().getAssets().open(filename);
-        int size = inputStream.available();
-        byte[] buffer = new byte[size];
-        @SuppressWarnings("unused")
-        int read = inputStream.read(buffer);
-        inputStream.close();
-        return new JSONArray(new String(buffer));
-    }
-
     private JSONObject createDocumentJSON(final String documentId) throws IOException,
             JSONException {
         BufferedReader inputStreamReader = null;
@@ -173,38 +183,32 @@ public class DocumentTaskManagerTest {
         return Task.forResult(responseData);
     }
 
-    private Task<JSONObject> createExtractionsJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONFile("extractions.json"));
+    private static <T> ResponseParser<T> anyParser() {
+        return any();
     }
 
-    private Task<JSONArray> createPaymentProvidersJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONArrayFile("payment-providers.json"));
+    private Answer<Task<ExtractionsContainer>> createExtractionsAnswer() throws IOException {
+        return createParsedResponseAnswer("extractions.json");
     }
 
-    private Task<JSONObject> createPaymentProviderJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONFile("payment-provider.json"));
-    }
-
-    private Task<JSONObject> createPaymentRequestJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONFile("payment-request.json"));
-    }
-
-    private Task<JSONArray> createPaymentRequestsJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONArrayFile("payment-requests.json"));
-    }
-
-    private Task<JSONObject> createResolvePaymentJsonTask() throws IOException, JSONException {
-        return Task.forResult(readJSONFile("resolved-payment.json"));
+    /**
+     * Parses the file with the parser passed as the last argument.
+     */
+    private <T> Answer<Task<T>> createParsedResponseAnswer(final String filename) throws IOException {
+        final byte[] responseData = createByteArray(filename);
+        return new Answer<Task<T>>() {
+            @Override
+            public Task<T> answer(final InvocationOnMock invocation) throws Throwable {
+                final ResponseParser<T> parser = invocation.getArgument(invocation.getArguments().length - 1);
+                return Task.forResult(parser.parse(responseData));
+            }
+        };
     }
 
     private Task<JSONObject> createLocationHeaderJSONTask(String url) {
         return Task.forResult(new JSONObject(Collections.singletonMap("location", url)));
     }
 
-    private Task<JSONObject> createPaymentJSONTask() throws IOException, JSONException {
-        return Task.forResult(readJSONFile("payment.json"));
-    }
-
     private Task<JSONObject> createErrorReportJSONTask(final String errorId) throws JSONException {
         final JSONObject responseData = new JSONObject();
         responseData.put("errorId", errorId);
@@ -300,6 +304,218 @@ public class DocumentTaskManagerTest {
                         eq(mSession), nullable(DocumentMetadata.class));
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRejectedUploadsAreReplayedOnceWithANewSession() throws Exception {
+        final Session newSession = new Session("2345-6789-0123", new Date(new Date().getTime() + 10000));
+        when(mSessionManager.getSession()).thenReturn(Task.forResult(mSession), Task.forResult(newSession));
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class), any(String.class),
+                any(String.class), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.<Uri>forError(new AuthFailureError(new NetworkResponse(401, new byte[0], false, 0,
+                        Collections.<Header>emptyList()))), Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234"));
+
+        final Task<Document> documentTask = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, "foobar.jpg", DocumentType.INVOICE);
+        documentTask.waitForCompletion();
+
+        assertEquals("1234", documentTask.getResult().getId());
+        verify(mSessionManager).invalidateSession(mSession);
+        verify(mApiCommunicator).uploadDocument(any(byte[].class), any(String.class), any(String.class),
+                any(String.class), eq(newSession), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testUnsupportedMediaTypeUploadsAreNotReplayed() throws Exception {
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class), any(String.class),
+                any(String.class), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.<Uri>forError(new ServerError(new NetworkResponse(415, new byte[0], false, 0,
+                        Collections.<Header>emptyList()))));
+
+        final Task<Document> documentTask = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, "foobar.jpg", DocumentType.INVOICE);
+        documentTask.waitForCompletion();
+
+        assertTrue(documentTask.isFaulted());
+        verify(mSessionManager, never()).invalidateSession(any(Session.class));
+        verify(mApiCommunicator, times(1)).uploadDocument(any(byte[].class), any(String.class), any(String.class),
+                any(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testRepeatedUploadsResolveToTheCachedDocument() throws Exception {
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class),
+                any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234"));
+        when(mApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+        final UploadDeduplicationCache uploadDeduplicationCache = new UploadDeduplicationCache();
+        mDocumentTaskManager.setUploadDeduplicationCache(uploadDeduplicationCache);
+
+        final Task<Document> firstUpload = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, null, DocumentType.INVOICE);
+        firstUpload.waitForCompletion();
+        final Task<Document> secondUpload = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, "copy.jpg", DocumentType.INVOICE);
+        secondUpload.waitForCompletion();
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.RECEIPT).waitForCompletion();
+
+        assertEquals(firstUpload.getResult(), secondUpload.getResult());
+        assertEquals(1, uploadDeduplicationCache.getHitCount());
+        verify(mApiCommunicator, times(2)).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+
+        mDocumentTaskManager.deleteDocument("1234").waitForCompletion();
+        assertEquals(0, uploadDeduplicationCache.size());
+    }
+
+    @Test
+    public void testUploadsToOtherEndpointsOrWithOtherMetadataAreNotDeduplicated() throws Exception {
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class),
+                any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234"));
+        final UploadDeduplicationCache uploadDeduplicationCache = new UploadDeduplicationCache();
+        mDocumentTaskManager.setUploadDeduplicationCache(uploadDeduplicationCache);
+        final DocumentMetadata firstBranch = new DocumentMetadata();
+        firstBranch.setBranchId("1");
+        final DocumentMetadata secondBranch = new DocumentMetadata();
+        secondBranch.setBranchId("2");
+
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.INVOICE, firstBranch).waitForCompletion();
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.INVOICE, secondBranch).waitForCompletion();
+        mDocumentTaskManager.createDocument(new byte[]{0x01, 0x02}, null, DocumentType.INVOICE, firstBranch)
+                .waitForCompletion();
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.INVOICE, firstBranch).waitForCompletion();
+
+        assertEquals(1, uploadDeduplicationCache.getHitCount());
+        assertEquals(3, uploadDeduplicationCache.size());
+        verify(mApiCommunicator, times(3)).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testUploadKeyDoesNotDependOnTheOrderOfTheMetadata() {
+        final Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("X-Document-Metadata-BranchId", "1");
+        metadata.put("X-Document-Metadata-Shop", "2");
+        final Map<String, String> reversedMetadata = new LinkedHashMap<>();
+        reversedMetadata.put("X-Document-Metadata-Shop", "2");
+        reversedMetadata.put("X-Document-Metadata-BranchId", "1");
+
+        assertEquals(UploadDeduplicationCache.getKey(new byte[]{0x01}, MediaTypes.GINI_JSON_V2,
+                        MediaTypes.IMAGE_JPEG, "Invoice", metadata),
+                UploadDeduplicationCache.getKey(new byte[]{0x01}, MediaTypes.GINI_JSON_V2,
+                        MediaTypes.IMAGE_JPEG, "Invoice", reversedMetadata));
+    }
+
+    @Test
+    public void testUploadDeduplicationCacheEvictsLeastRecentlyUsedUploads() throws Exception {
+        final UploadDeduplicationCache uploadDeduplicationCache = new UploadDeduplicationCache(2);
+        uploadDeduplicationCache.put("a", createDocument("1111"));
+        uploadDeduplicationCache.put("b", createDocument("2222"));
+        uploadDeduplicationCache.get("a");
+        uploadDeduplicationCache.put("c", createDocument("3333"));
+
+        assertNotNull(uploadDeduplicationCache.get("a"));
+        assertNull(uploadDeduplicationCache.get("b"));
+        assertNotNull(uploadDeduplicationCache.get("c"));
+    }
+
+    @Test
+    public void testRepeatedUploadsFromUploadSourcesResolveToTheCachedDocument() throws Exception {
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(UploadSource.class), any(String.class),
+                nullable(String.class), nullable(String.class),
+                any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234"));
+        final UploadDeduplicationCache uploadDeduplicationCache = new UploadDeduplicationCache();
+        mDocumentTaskManager.setUploadDeduplicationCache(uploadDeduplicationCache);
+
+        final Task<Document> firstUpload = mDocumentTaskManager.createPartialDocument(
+                UploadSource.fromBytes(new byte[]{0x01, 0x02}), MediaTypes.IMAGE_JPEG, null, DocumentType.INVOICE);
+        firstUpload.waitForCompletion();
+        final Task<Document> secondUpload = mDocumentTaskManager.createPartialDocument(
+                UploadSource.fromBytes(new byte[]{0x01, 0x02}), MediaTypes.IMAGE_JPEG, null, DocumentType.INVOICE);
+        secondUpload.waitForCompletion();
+
+        assertEquals(firstUpload.getResult(), secondUpload.getResult());
+        assertEquals(1, uploadDeduplicationCache.getHitCount());
+        verify(mApiCommunicator, times(1)).uploadDocument(any(UploadSource.class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testUploadsRememberedByTheStoreResolveToTheCurrentDocument() throws Exception {
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class),
+                any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "PENDING"));
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "COMPLETED"));
+        final UploadDeduplicationStore uploadDeduplicationStore = new MapUploadDeduplicationStore();
+        mDocumentTaskManager.setUploadDeduplicationCache(new UploadDeduplicationCache(10, uploadDeduplicationStore));
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.INVOICE).waitForCompletion();
+
+        // The app was restarted
+        final UploadDeduplicationCache uploadDeduplicationCache =
+                new UploadDeduplicationCache(10, uploadDeduplicationStore);
+        mDocumentTaskManager.setUploadDeduplicationCache(uploadDeduplicationCache);
+        final Task<Document> upload = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, null, DocumentType.INVOICE);
+        upload.waitForCompletion();
+
+        assertEquals(Document.ProcessingState.COMPLETED, upload.getResult().getState());
+        assertEquals(1, uploadDeduplicationCache.getHitCount());
+        verify(mApiCommunicator, times(1)).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testStoredUploadsOfDeletedDocumentsAreUploadedAgain() throws Exception {
+        final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class),
+                any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(createdDocumentUri));
+        when(mApiCommunicator.getDocument(eq(createdDocumentUri), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234"));
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(Task.<JSONObject>forError(
+                new ServerError(new NetworkResponse(404, new byte[0], false, 0, Collections.<Header>emptyList()))));
+        final UploadDeduplicationStore uploadDeduplicationStore = new MapUploadDeduplicationStore();
+        mDocumentTaskManager.setUploadDeduplicationCache(new UploadDeduplicationCache(10, uploadDeduplicationStore));
+        mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02}, MediaTypes.IMAGE_JPEG, null,
+                DocumentType.INVOICE).waitForCompletion();
+
+        mDocumentTaskManager.setUploadDeduplicationCache(new UploadDeduplicationCache(10, uploadDeduplicationStore));
+        final Task<Document> upload = mDocumentTaskManager.createPartialDocument(new byte[]{0x01, 0x02},
+                MediaTypes.IMAGE_JPEG, null, DocumentType.INVOICE);
+        upload.waitForCompletion();
+
+        assertEquals("1234", upload.getResult().getId());
+        verify(mApiCommunicator, times(2)).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
     @Test
     public void testThatCreateCompositeDocumentSetsTheCorrectContentType() throws Exception {
         final Uri createdDocumentUri = Uri.parse("https://pay-api.gini.net/documents/1234");
@@ -413,6 +629,209 @@ public class DocumentTaskManagerTest {
                         eq(mSession), nullable(DocumentMetadata.class));
     }
 
+    private void mockPageUpload(final UploadSource uploadSource, final Task<Uri> uploadTask) {
+        when(mApiCommunicator.uploadDocument(eq(uploadSource), eq("application/vnd.gini.v1.partial+jpeg"),
+                nullable(String.class), eq("Invoice"), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(uploadTask);
+    }
+
+    private void mockCompositeUpload() throws Exception {
+        final Uri compositeDocumentUri = Uri.parse("https://pay-api.gini.net/documents/4321");
+        when(mApiCommunicator.uploadDocument(any(byte[].class), eq("application/vnd.gini.v1.composite+json"),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.forResult(compositeDocumentUri));
+        when(mApiCommunicator.getDocument(any(Uri.class), any(Session.class))).thenAnswer(
+                new Answer<Task<JSONObject>>() {
+                    @Override
+                    public Task<JSONObject> answer(final InvocationOnMock invocation) throws Throwable {
+                        final Uri uri = invocation.getArgument(0);
+                        return createDocumentJSONTask(uri.getLastPathSegment());
+                    }
+                });
+    }
+
+    @Test
+    public void testCreateMultiPageDocumentKeepsPageOrderAndRotations() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        final Task<Uri>.TaskCompletionSource firstUpload = Task.create();
+        mockPageUpload(firstPage, firstUpload.getTask());
+        mockPageUpload(secondPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/2222")));
+        mockCompositeUpload();
+
+        final Task<Document> documentTask = mDocumentTaskManager.createMultiPageDocument(
+                Arrays.asList(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 90),
+                        new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, -90)), DocumentType.INVOICE);
+        // The first page finishes last
+        firstUpload.setResult(Uri.parse("https://pay-api.gini.net/documents/1111"));
+        documentTask.waitForCompletion();
+
+        final String jsonString = "{ \"partialDocuments\": [ "
+                + "{ \"document\": \"https://pay-api.gini.net/documents/1111\", \"rotationDelta\": 90 }, "
+                + "{ \"document\": \"https://pay-api.gini.net/documents/2222\", \"rotationDelta\": 270 } "
+                + "] }";
+        final byte[] jsonBytes = new JSONObject(jsonString).toString().getBytes(CHARSET_UTF8);
+        verify(mApiCommunicator).uploadDocument(eq(jsonBytes), eq("application/vnd.gini.v1.composite+json"),
+                eq((String) null), eq("Invoice"), eq(mSession), nullable(DocumentMetadata.class));
+        assertEquals("4321", documentTask.getResult().getId());
+    }
+
+    @Test
+    public void testCreateMultiPageDocumentRetriesFailedPages() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        when(mApiCommunicator.uploadDocument(eq(secondPage), any(String.class), nullable(String.class),
+                nullable(String.class), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenReturn(Task.<Uri>forError(new ServerError()))
+                .thenReturn(Task.forResult(Uri.parse("https://pay-api.gini.net/documents/2222")));
+        mockCompositeUpload();
+
+        final Task<Document> documentTask = mDocumentTaskManager.createMultiPageDocument(
+                Arrays.asList(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0),
+                        new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, 0)), DocumentType.INVOICE);
+        documentTask.waitForCompletion();
+
+        assertFalse(documentTask.isFaulted());
+        verify(mApiCommunicator, times(2)).uploadDocument(eq(secondPage), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testCreateMultiPageDocumentDeletesPartialDocumentsOnFailure() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        final AuthFailureError error = new AuthFailureError();
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        mockPageUpload(secondPage, Task.<Uri>forError(error));
+        mockCompositeUpload();
+        when(mApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+
+        final Task<Document> documentTask = mDocumentTaskManager.createMultiPageDocument(
+                Arrays.asList(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0),
+                        new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, 0)), DocumentType.INVOICE);
+        documentTask.waitForCompletion();
+
+        assertTrue(documentTask.isFaulted());
+        assertEquals(error, documentTask.getError());
+        verify(mApiCommunicator).deleteDocument(eq("1111"), eq(mSession));
+        verify(mApiCommunicator, never()).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testCreateMultiPageDocumentDoesNotRetryClientErrors() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        final ClientError error = new ClientError(
+                new NetworkResponse(400, new byte[0], false, 0, Collections.<Header>emptyList()));
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        mockPageUpload(secondPage, Task.<Uri>forError(error));
+        mockCompositeUpload();
+        when(mApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+
+        final Task<Document> documentTask = mDocumentTaskManager.createMultiPageDocument(
+                Arrays.asList(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0),
+                        new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, 0)), DocumentType.INVOICE);
+        documentTask.waitForCompletion();
+
+        assertTrue(documentTask.isFaulted());
+        assertEquals(error, documentTask.getError());
+        verify(mApiCommunicator, times(1)).uploadDocument(eq(secondPage), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+        verify(mApiCommunicator).deleteDocument(eq("1111"), eq(mSession));
+    }
+
+    @Test
+    public void testCreateMultiPageDocumentDeletesPartialDocumentsWhenCancelled() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        final CancellationTokenSource cancellationTokenSource = new CancellationTokenSource();
+        final Task<Uri>.TaskCompletionSource secondUpload = Task.create();
+        cancellationTokenSource.getToken().register(new Runnable() {
+            @Override
+            public void run() {
+                secondUpload.trySetCancelled();
+            }
+        });
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        mockPageUpload(secondPage, secondUpload.getTask());
+        mockCompositeUpload();
+        // The deletions must not be sent with the cancelled token
+        final ApiCommunicator cleanupApiCommunicator = Mockito.mock(ApiCommunicator.class);
+        when(mApiCommunicator.withoutCancellationToken()).thenReturn(cleanupApiCommunicator);
+        when(cleanupApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+
+        final Task<Document> documentTask = mDocumentTaskManager
+                .withCancellationToken(cancellationTokenSource.getToken())
+                .createMultiPageDocument(Arrays.asList(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0),
+                        new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, 0)), DocumentType.INVOICE);
+        cancellationTokenSource.cancel();
+        documentTask.waitForCompletion();
+
+        assertTrue(documentTask.isCancelled());
+        verify(cleanupApiCommunicator).deleteDocument(eq("1111"), eq(mSession));
+        verify(mApiCommunicator, never()).deleteDocument(any(String.class), any(Session.class));
+        verify(mApiCommunicator, never()).uploadDocument(any(byte[].class), any(String.class),
+                nullable(String.class), nullable(String.class), any(Session.class), nullable(DocumentMetadata.class));
+    }
+
+    @Test
+    public void testCaptureSessionAppliesPageChangesToCompositeDocument() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        final UploadSource secondPage = UploadSource.fromBytes(new byte[]{2});
+        final UploadSource thirdPage = UploadSource.fromBytes(new byte[]{3});
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        mockPageUpload(secondPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/2222")));
+        mockPageUpload(thirdPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/3333")));
+        mockCompositeUpload();
+        when(mApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+
+        final CaptureSession captureSession = mDocumentTaskManager.startCaptureSession(DocumentType.INVOICE);
+        captureSession.addPage(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0));
+        captureSession.addPage(new PageUpload(secondPage, MediaTypes.IMAGE_JPEG, 0));
+        captureSession.addPage(new PageUpload(thirdPage, MediaTypes.IMAGE_JPEG, 0));
+        captureSession.movePage(2, 0);
+        captureSession.rotatePage(0, 90);
+        captureSession.removePage(2).waitForCompletion();
+        final Task<Document> documentTask = captureSession.finish();
+        documentTask.waitForCompletion();
+
+        final String jsonString = "{ \"partialDocuments\": [ "
+                + "{ \"document\": \"https://pay-api.gini.net/documents/3333\", \"rotationDelta\": 90 }, "
+                + "{ \"document\": \"https://pay-api.gini.net/documents/1111\", \"rotationDelta\": 0 } "
+                + "] }";
+        final byte[] jsonBytes = new JSONObject(jsonString).toString().getBytes(CHARSET_UTF8);
+        verify(mApiCommunicator).deleteDocument(eq("2222"), eq(mSession));
+        verify(mApiCommunicator).uploadDocument(eq(jsonBytes), eq("application/vnd.gini.v1.composite+json"),
+                eq((String) null), eq("Invoice"), eq(mSession), nullable(DocumentMetadata.class));
+        assertEquals("4321", documentTask.getResult().getId());
+    }
+
+    @Test
+    public void testCaptureSessionCancelDeletesPartialDocuments() throws Exception {
+        final UploadSource firstPage = UploadSource.fromBytes(new byte[]{1});
+        mockPageUpload(firstPage, Task.forResult(Uri.parse("https://pay-api.gini.net/documents/1111")));
+        mockCompositeUpload();
+        when(mApiCommunicator.deleteDocument(any(String.class), any(Session.class)))
+                .thenReturn(Task.forResult(""));
+
+        final CaptureSession captureSession = mDocumentTaskManager.startCaptureSession(DocumentType.INVOICE);
+        captureSession.addPage(new PageUpload(firstPage, MediaTypes.IMAGE_JPEG, 0));
+        captureSession.cancel().waitForCompletion();
+
+        verify(mApiCommunicator).deleteDocument(eq("1111"), eq(mSession));
+        try {
+            captureSession.finish();
+            fail("Exception not thrown");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
     @Test
     public void testDeleteDocument() throws Exception {
         final Document document = createDocument();
@@ -457,7 +876,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetExtractionsReturnsTask() throws IOException, JSONException {
-        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class))).thenReturn(createExtractionsJSONTask());
+        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class), any(Executor.class), anyParser()))
+                .thenAnswer(createExtractionsAnswer());
         Document document = new Document("1234", Document.ProcessingState.COMPLETED, "foobar", 1, new Date(),
                 Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
                 new ArrayList<Uri>());
@@ -467,7 +887,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetExtractionsResolvesToHashMap() throws Exception {
-        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class))).thenReturn(createExtractionsJSONTask());
+        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class), any(Executor.class), anyParser()))
+                .thenAnswer(createExtractionsAnswer());
         Document document = new Document("1234", Document.ProcessingState.COMPLETED, "foobar", 1, new Date(),
                 Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
                 new ArrayList<Uri>());
@@ -586,6 +1007,119 @@ public class DocumentTaskManagerTest {
         assertTrue(documentTask.isCancelled());
     }
 
+    @Test
+    public void testPollDocumentCancellationCancelsEveryPollingOfTheDocument() throws Exception {
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenAnswer(
+                new Answer<Task<JSONObject>>() {
+                    @Override
+                    public Task<JSONObject> answer(final InvocationOnMock invocation) throws Throwable {
+                        return createDocumentJSONTask("1234", "PENDING");
+                    }
+                });
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+
+        Task<Document> firstDocumentTask = mDocumentTaskManager.pollDocument(document);
+        Task<Document> secondDocumentTask = mDocumentTaskManager.pollDocument(document);
+        mDocumentTaskManager.cancelDocumentPolling(document);
+        firstDocumentTask.waitForCompletion();
+        secondDocumentTask.waitForCompletion();
+
+        assertTrue(firstDocumentTask.isCancelled());
+        assertTrue(secondDocumentTask.isCancelled());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentSchedulesTheRequestsOnASingleThread() throws Exception {
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        final DocumentTaskManager documentTaskManager = new DocumentTaskManager(mApiCommunicator, mSessionManager,
+                GiniApiType.DEFAULT, moshi, GiniExecutors.getDefaultParsingExecutor(), scheduler);
+        final List<Task<Document>> documentTasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                final String documentId = String.valueOf(i);
+                when(mApiCommunicator.getDocument(eq(documentId), any(Session.class))).thenReturn(
+                        createDocumentJSONTask(documentId, "PENDING"), createDocumentJSONTask(documentId, "COMPLETED"));
+                documentTasks.add(documentTaskManager.pollDocument(new Document(documentId,
+                        Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                        Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                        new ArrayList<Uri>())));
+            }
+            Task.whenAll(documentTasks).waitForCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+
+        for (final Task<Document> documentTask : documentTasks) {
+            assertEquals(Document.ProcessingState.COMPLETED, documentTask.getResult().getState());
+        }
+        // Each polling waited once without blocking one of the threads of the default pools
+        assertEquals(50, scheduler.getDelays().size());
+        for (final long delay : scheduler.getDelays()) {
+            assertEquals(DocumentTaskManager.POLLING_INTERVAL, delay);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentCancellationBetweenRequestsCancelsImmediately() throws Exception {
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        final DocumentTaskManager documentTaskManager = new DocumentTaskManager(mApiCommunicator, mSessionManager,
+                GiniApiType.DEFAULT, moshi, GiniExecutors.getDefaultParsingExecutor(), scheduler);
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "PENDING"));
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+
+        final Task<Document> documentTask;
+        final long cancellationTime;
+        try {
+            documentTask = documentTaskManager.pollDocument(document);
+            assertTrue(scheduler.awaitSchedule());
+            cancellationTime = System.currentTimeMillis();
+            documentTaskManager.cancelDocumentPolling(document);
+            documentTask.waitForCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+
+        assertTrue(documentTask.isCancelled());
+        assertTrue(System.currentTimeMillis() - cancellationTime < DocumentTaskManager.POLLING_INTERVAL);
+        verify(mApiCommunicator, times(1)).getDocument(eq("1234"), any(Session.class));
+    }
+
+    /**
+     * A single threaded scheduler which records the delays of the scheduled tasks.
+     */
+    private static class RecordingScheduler extends ScheduledThreadPoolExecutor {
+
+        private final List<Long> mDelays = Collections.synchronizedList(new ArrayList<Long>());
+        private final CountDownLatch mScheduled = new CountDownLatch(1);
+
+        RecordingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            mDelays.add(unit.toMillis(delay));
+            final ScheduledFuture<?> future = super.schedule(command, delay, unit);
+            mScheduled.countDown();
+            return future;
+        }
+
+        List<Long> getDelays() {
+            return new ArrayList<>(mDelays);
+        }
+
+        boolean awaitSchedule() throws InterruptedException {
+            return mScheduled.await(5, TimeUnit.SECONDS);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testPollDocumentCancellationAffectsSpecifiedDocumentOnly() throws IOException, JSONException, InterruptedException {
@@ -616,6 +1150,187 @@ public class DocumentTaskManagerTest {
         assertEquals(Document.ProcessingState.COMPLETED, completedPolledDocument.getState());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentWithLongPolling() throws IOException, JSONException, InterruptedException {
+        when(mApiCommunicator.waitForDocumentProcessed(eq("1234"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "COMPLETED"));
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.LONG_POLL);
+
+        Task<Document> documentTask = mDocumentTaskManager.pollDocument(document);
+        documentTask.waitForCompletion();
+
+        assertEquals(Document.ProcessingState.COMPLETED, documentTask.getResult().getState());
+        verify(mApiCommunicator, never()).getDocument(any(String.class), any(Session.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentFallsBackToIntervalPollingIfLongPollingIsUnsupported()
+            throws IOException, JSONException, InterruptedException {
+        final Task<JSONObject>.TaskCompletionSource notFound = Task.create();
+        notFound.setError(new ServerError(new NetworkResponse(405, new byte[0], false, 0,
+                Collections.<Header>emptyList())));
+        when(mApiCommunicator.waitForDocumentProcessed(eq("1234"), any(Session.class))).thenReturn(
+                notFound.getTask());
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "PENDING"), createDocumentJSONTask("1234", "COMPLETED"));
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.LONG_POLL);
+
+        Task<Document> documentTask = mDocumentTaskManager.pollDocument(document);
+        documentTask.waitForCompletion();
+
+        assertEquals(Document.ProcessingState.COMPLETED, documentTask.getResult().getState());
+        verify(mApiCommunicator, times(1)).waitForDocumentProcessed(eq("1234"), any(Session.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentKeepsLongPollingAfterADocumentWasNotFound() throws Exception {
+        final Task<JSONObject>.TaskCompletionSource notFound = Task.create();
+        notFound.setError(new ServerError(new NetworkResponse(404, new byte[0], false, 0,
+                Collections.<Header>emptyList())));
+        when(mApiCommunicator.waitForDocumentProcessed(eq("1234"), any(Session.class))).thenReturn(
+                notFound.getTask());
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(notFound.getTask());
+        when(mApiCommunicator.waitForDocumentProcessed(eq("5678"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("5678", "COMPLETED"));
+        Document deletedDocument = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1,
+                new Date(), Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        Document document = new Document("5678", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.LONG_POLL);
+
+        Task<Document> deletedDocumentTask = mDocumentTaskManager.pollDocument(deletedDocument);
+        deletedDocumentTask.waitForCompletion();
+        Task<Document> documentTask = mDocumentTaskManager.pollDocument(document);
+        documentTask.waitForCompletion();
+
+        assertTrue(deletedDocumentTask.isFaulted());
+        assertEquals(Document.ProcessingState.COMPLETED, documentTask.getResult().getState());
+        verify(mApiCommunicator, never()).getDocument(eq("5678"), any(Session.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentWaitsBeforeSendingTimedOutLongPollingRequestsAgain() throws Exception {
+        final RecordingScheduler scheduler = new RecordingScheduler();
+        final DocumentTaskManager documentTaskManager = new DocumentTaskManager(mApiCommunicator, mSessionManager,
+                GiniApiType.DEFAULT, moshi, GiniExecutors.getDefaultParsingExecutor(), scheduler);
+        final Task<JSONObject>.TaskCompletionSource timeout = Task.create();
+        timeout.setError(new TimeoutError());
+        when(mApiCommunicator.waitForDocumentProcessed(eq("1234"), any(Session.class))).thenReturn(
+                timeout.getTask());
+        when(mApiCommunicator.getDocument(eq("1234"), any(Session.class))).thenReturn(
+                createDocumentJSONTask("1234", "COMPLETED"));
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        documentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.LONG_POLL);
+
+        final Task<Document> documentTask;
+        try {
+            documentTask = documentTaskManager.pollDocument(document);
+            documentTask.waitForCompletion();
+        } finally {
+            scheduler.shutdown();
+        }
+
+        assertEquals(Document.ProcessingState.COMPLETED, documentTask.getResult().getState());
+        verify(mApiCommunicator, times(DocumentPoller.MAX_LONG_POLL_TIMEOUTS)).waitForDocumentProcessed(eq("1234"),
+                any(Session.class));
+        assertEquals(DocumentPoller.MAX_LONG_POLL_TIMEOUTS - 1, scheduler.getDelays().size());
+        for (final long delay : scheduler.getDelays()) {
+            assertEquals(DocumentTaskManager.POLLING_INTERVAL, delay);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentCancellationAbortsTheLongPollingRequest() throws Exception {
+        final Task<JSONObject>.TaskCompletionSource longPoll = Task.create();
+        when(mApiCommunicator.waitForDocumentProcessed(eq("1234"), any(Session.class))).thenReturn(
+                longPoll.getTask());
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.LONG_POLL);
+
+        Task<Document> documentTask = mDocumentTaskManager.pollDocument(document);
+        mDocumentTaskManager.cancelDocumentPolling(document);
+        documentTask.waitForCompletion();
+
+        assertTrue(documentTask.isCancelled());
+        final ArgumentCaptor<CancellationToken> tokenCaptor = ArgumentCaptor.forClass(CancellationToken.class);
+        verify(mApiCommunicator).withCancellationToken(tokenCaptor.capture());
+        assertTrue(tokenCaptor.getValue().isCancellationRequested());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentsWithDocumentList() throws IOException, JSONException, InterruptedException {
+        when(mApiCommunicator.getDocumentList(eq(0), eq(DocumentListPoller.PAGE_SIZE), any(Session.class)))
+                .thenReturn(createDocumentListJSONTask("PENDING", "PENDING"),
+                        createDocumentListJSONTask("COMPLETED", "PENDING"),
+                        createDocumentListJSONTask("COMPLETED", "ERROR"));
+        Document firstDocument = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        Document secondDocument = new Document("5678", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.DOCUMENT_LIST);
+
+        Task<Document> firstDocumentTask = mDocumentTaskManager.pollDocument(firstDocument);
+        Task<Document> secondDocumentTask = mDocumentTaskManager.pollDocument(secondDocument);
+        firstDocumentTask.waitForCompletion();
+        secondDocumentTask.waitForCompletion();
+
+        assertEquals(Document.ProcessingState.COMPLETED, firstDocumentTask.getResult().getState());
+        assertEquals(Document.ProcessingState.ERROR, secondDocumentTask.getResult().getState());
+        verify(mApiCommunicator, never()).getDocument(any(String.class), any(Session.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPollDocumentsWithDocumentListCompletesEveryPollingOfTheSameDocument() throws Exception {
+        when(mApiCommunicator.getDocumentList(eq(0), eq(DocumentListPoller.PAGE_SIZE), any(Session.class)))
+                .thenReturn(createDocumentListJSONTask("PENDING", "COMPLETED"),
+                        createDocumentListJSONTask("COMPLETED", "COMPLETED"));
+        Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
+                Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
+                new ArrayList<Uri>());
+        mDocumentTaskManager.setPollingMode(DocumentTaskManager.PollingMode.DOCUMENT_LIST);
+
+        Task<Document> firstDocumentTask = mDocumentTaskManager.pollDocument(document);
+        Task<Document> secondDocumentTask = mDocumentTaskManager.pollDocument(document);
+        assertTrue(firstDocumentTask.waitForCompletion(5, TimeUnit.SECONDS));
+        assertTrue(secondDocumentTask.waitForCompletion(5, TimeUnit.SECONDS));
+
+        assertEquals(Document.ProcessingState.COMPLETED, firstDocumentTask.getResult().getState());
+        assertEquals(Document.ProcessingState.COMPLETED, secondDocumentTask.getResult().getState());
+    }
+
+    private Task<JSONObject> createDocumentListJSONTask(final String firstProcessingState,
+            final String secondProcessingState) throws IOException, JSONException {
+        final JSONObject firstDocument = createDocumentJSON("1234");
+        firstDocument.put("progress", firstProcessingState);
+        final JSONObject secondDocument = createDocumentJSON("5678");
+        secondDocument.put("progress", secondProcessingState);
+        final JSONObject responseData = new JSONObject();
+        responseData.put("totalCount", 2);
+        responseData.put("documents", new JSONArray().put(firstDocument).put(secondDocument));
+        return Task.forResult(responseData);
+    }
+
     @Test
     public void testSendFeedbackThrowsWithNullArguments() throws JSONException {
         final Document document = new Document("1234", Document.ProcessingState.PENDING, "foobar.jpg", 1, new Date(),
@@ -785,7 +1500,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetExtractionsParsesCompoundExtractions() throws Exception {
-        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class))).thenReturn(createExtractionsJSONTask());
+        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class), any(Executor.class), anyParser()))
+                .thenAnswer(createExtractionsAnswer());
         Document document = new Document("1234", Document.ProcessingState.COMPLETED, "foobar", 1, new Date(),
                 Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
                 new ArrayList<Uri>());
@@ -820,7 +1536,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetAllExtractionsResolvesToExtractionResult() throws Exception {
-        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class))).thenReturn(createExtractionsJSONTask());
+        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class), any(Executor.class), anyParser()))
+                .thenAnswer(createExtractionsAnswer());
         Document document = new Document("1234", Document.ProcessingState.COMPLETED, "foobar", 1, new Date(),
                 Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
                 new ArrayList<Uri>());
@@ -839,7 +1556,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetExtractionsParsesReturnReasons() throws Exception {
-        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class))).thenReturn(createExtractionsJSONTask());
+        when(mApiCommunicator.getExtractions(eq("1234"), any(Session.class), any(Executor.class), anyParser()))
+                .thenAnswer(createExtractionsAnswer());
         Document document = new Document("1234", Document.ProcessingState.COMPLETED, "foobar", 1, new Date(),
                 Document.SourceClassification.NATIVE, Uri.parse(""), new ArrayList<Uri>(),
                 new ArrayList<Uri>());
@@ -862,7 +1580,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetPaymentProviders() throws Exception {
-        when(mApiCommunicator.getPaymentProviders(any(Session.class))).thenReturn(createPaymentProvidersJSONTask());
+        when(mApiCommunicator.getPaymentProviders(any(Session.class), anyParser()))
+                .thenAnswer(createParsedResponseAnswer("payment-providers.json"));
 
         Task<List<PaymentProvider>> paymentProvidersTask = mDocumentTaskManager.getPaymentProviders();
         paymentProvidersTask.waitForCompletion();
@@ -875,7 +1594,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetPaymentProvider() throws Exception {
-        when(mApiCommunicator.getPaymentProvider(any(String.class), any(Session.class))).thenReturn(createPaymentProviderJSONTask());
+        when(mApiCommunicator.getPaymentProvider(any(String.class), any(Session.class), anyParser()))
+                .thenAnswer(createParsedResponseAnswer("payment-provider.json"));
 
         Task<PaymentProvider> paymentProvidersTask = mDocumentTaskManager.getPaymentProvider("");
         paymentProvidersTask.waitForCompletion();
@@ -915,7 +1635,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetPaymentRequest() throws Exception {
-        when(mApiCommunicator.getPaymentRequest(any(String.class), any(Session.class))).thenReturn(createPaymentRequestJSONTask());
+        when(mApiCommunicator.getPaymentRequest(any(String.class), any(Session.class), anyParser()))
+                .thenAnswer(createParsedResponseAnswer("payment-request.json"));
 
         Task<PaymentRequest> paymentRequestTask = mDocumentTaskManager.getPaymentRequest("");
         paymentRequestTask.waitForCompletion();
@@ -928,7 +1649,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetPaymentRequests() throws Exception {
-        when(mApiCommunicator.getPaymentRequests(any(Session.class))).thenReturn(createPaymentRequestsJSONTask());
+        when(mApiCommunicator.getPaymentRequests(any(Session.class), anyParser()))
+                .thenAnswer(createParsedResponseAnswer("payment-requests.json"));
 
         Task<List<PaymentRequest>> paymentProvidersTask = mDocumentTaskManager.getPaymentRequests();
         paymentProvidersTask.waitForCompletion();
@@ -941,8 +1663,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testResolvePaymentRequest() throws Exception {
-        when(mApiCommunicator.resolvePaymentRequests(any(String.class), any(JSONObject.class), any(Session.class)))
-                .thenReturn(createResolvePaymentJsonTask());
+        when(mApiCommunicator.resolvePaymentRequests(any(String.class), any(String.class), any(Session.class),
+                anyParser())).thenAnswer(createParsedResponseAnswer("resolved-payment.json"));
 
         Task<ResolvedPayment> paymentRequestTask = mDocumentTaskManager.resolvePaymentRequest("", new ResolvePaymentInput("", "", "", "", null));
         paymentRequestTask.waitForCompletion();
@@ -956,7 +1678,8 @@ public class DocumentTaskManagerTest {
 
     @Test
     public void testGetPayment() throws Exception {
-        when(mApiCommunicator.getPayment(any(String.class), any(Session.class))).thenReturn(createPaymentJSONTask());
+        when(mApiCommunicator.getPayment(any(String.class), any(Session.class), anyParser()))
+                .thenAnswer(createParsedResponseAnswer("payment.json"));
 
         Task<Payment> paymentRequestTask = mDocumentTaskManager.getPayment("");
         paymentRequestTask.waitForCompletion();
@@ -992,4 +1715,29 @@ public class DocumentTaskManagerTest {
 
         assertEquals(errorEvent, sentErrorEvent);
     }
+
+    private static class MapUploadDeduplicationStore implements UploadDeduplicationStore {
+
+        private final Map<String, String> mDocumentIds = new HashMap<>();
+
+        @Override
+        public synchronized String getDocumentId(@NonNull final String key) {
+            return mDocumentIds.get(key);
+        }
+
+        @Override
+        public synchronized void storeDocumentId(@NonNull final String key, @NonNull final String documentId) {
+            mDocumentIds.put(key, documentId);
+        }
+
+        @Override
+        public synchronized void deleteDocumentId(@NonNull final String documentId) {
+            mDocumentIds.values().removeAll(Collections.singleton(documentId));
+        }
+
+        @Override
+        public synchronized void clear() {
+            mDocumentIds.clear();
+        }
+    }
 }
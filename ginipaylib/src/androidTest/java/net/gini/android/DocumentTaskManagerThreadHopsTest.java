@@ -0,0 +1,230 @@
+package net.gini.android;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.when;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.MediumTest;
+
+import com.squareup.moshi.Moshi;
+
+import net.gini.android.authorization.Session;
+import net.gini.android.authorization.SessionManager;
+import net.gini.android.helpers.TestUtils;
+import net.gini.android.models.Document;
+import net.gini.android.requests.BearerParsedRequest.ResponseParser;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Counts the thread hops of the {@link DocumentTaskManager} continuation chains. The mocked API calls complete
+ * immediately, so every hop is caused by the continuations themselves.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class DocumentTaskManagerThreadHopsTest {
+
+    private static final String TAG = "ThreadHopsTest";
+
+    private DocumentTaskManager mDocumentTaskManager;
+    private ApiCommunicator mApiCommunicator;
+    private final List<Thread> mThreads = Collections.synchronizedList(new ArrayList<Thread>());
+
+    @Before
+    public void setUp() throws Exception {
+        mApiCommunicator = Mockito.mock(ApiCommunicator.class);
+        final SessionManager sessionManager = Mockito.mock(SessionManager.class);
+        mDocumentTaskManager = new DocumentTaskManager(mApiCommunicator, sessionManager, GiniApiType.DEFAULT,
+                new Moshi.Builder().build());
+
+        final Session session = new Session("1234-5678-9012", new Date(new Date().getTime() + 10000));
+        when(sessionManager.getSession()).thenReturn(Task.forResult(session));
+
+        final byte[] documentData = readAsset("document.json");
+        final byte[] paymentProviderData = readAsset("payment-provider.json");
+        when(mApiCommunicator.getDocument(anyString(), any(Session.class)))
+                .thenAnswer(recordThread(new JSONObject(new String(documentData, Utils.CHARSET_UTF8))));
+        when(mApiCommunicator.getDocument(any(Uri.class), any(Session.class)))
+                .thenAnswer(recordThread(new JSONObject(new String(documentData, Utils.CHARSET_UTF8))));
+        when(mApiCommunicator.uploadDocument(any(byte[].class), anyString(), nullable(String.class),
+                nullable(String.class), any(Session.class), nullable(DocumentMetadata.class)))
+                .thenAnswer(recordThread(Uri.parse("https://pay-api.gini.net/documents/1234")));
+        when(mApiCommunicator.deleteDocument(anyString(), any(Session.class))).thenAnswer(recordThread(""));
+        when(mApiCommunicator.getPaymentProvider(eq("1"), any(Session.class), any(ResponseParser.class)))
+                .thenAnswer(new Answer<Task<Object>>() {
+                    @Override
+                    public Task<Object> answer(final InvocationOnMock invocation) throws Throwable {
+                        mThreads.add(Thread.currentThread());
+                        final ResponseParser<?> parser = invocation.getArgument(2);
+                        return Task.<Object>forResult(parser.parse(paymentProviderData));
+                    }
+                });
+    }
+
+    private byte[] readAsset(final String filename) throws Exception {
+        return TestUtils.createByteArray(getApplicationContext().getResources().getAssets().open(filename));
+    }
+
+    private <T> Answer<Task<T>> recordThread(final T result) {
+        return new Answer<Task<T>>() {
+            @Override
+            public Task<T> answer(final InvocationOnMock invocation) {
+                mThreads.add(Thread.currentThread());
+                return Task.forResult(result);
+            }
+        };
+    }
+
+    /**
+     * Calls the API method and returns the number of times the execution moved to another thread between the call,
+     * the requests and the final continuation.
+     */
+    private int countThreadHops(final Callable<Task<?>> apiCall) throws Exception {
+        mThreads.clear();
+        mThreads.add(Thread.currentThread());
+        final Task<?> task = apiCall.call().continueWith(new Continuation<Object, Void>() {
+            @Override
+            public Void then(final Task<Object> task) {
+                mThreads.add(Thread.currentThread());
+                return null;
+            }
+        });
+        assertTrue(task.waitForCompletion(5, TimeUnit.SECONDS));
+        int hops = 0;
+        synchronized (mThreads) {
+            for (int i = 1; i < mThreads.size(); i++) {
+                if (mThreads.get(i) != mThreads.get(i - 1)) {
+                    hops++;
+                }
+            }
+        }
+        return hops;
+    }
+
+    private List<Callable<Task<?>>> getApiCalls() {
+        final List<Callable<Task<?>>> apiCalls = new ArrayList<>();
+        apiCalls.add(new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return mDocumentTaskManager.getDocument("1234");
+            }
+        });
+        apiCalls.add(new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return mDocumentTaskManager.createPartialDocument(new byte[]{1, 2, 3}, "image/jpeg", null, null);
+            }
+        });
+        apiCalls.add(new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() throws Exception {
+                final Document document = Document.fromApiResponse(
+                        new JSONObject(new String(readAsset("document.json"), Utils.CHARSET_UTF8)));
+                return mDocumentTaskManager.createCompositeDocument(Collections.singletonList(document), null);
+            }
+        });
+        apiCalls.add(new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return mDocumentTaskManager.deletePartialDocumentAndParents("1234");
+            }
+        });
+        apiCalls.add(new Callable<Task<?>>() {
+            @Override
+            public Task<?> call() {
+                return mDocumentTaskManager.getPaymentProvider("1");
+            }
+        });
+        return apiCalls;
+    }
+
+    @Test
+    public void testContinuationsDoNotHopThreads() throws Exception {
+        for (final Callable<Task<?>> apiCall : getApiCalls()) {
+            assertEquals(0, countThreadHops(apiCall));
+        }
+    }
+
+    @Test
+    public void testResultIsDeliveredOnCompletingThread() throws Exception {
+        final Task<JSONObject>.TaskCompletionSource response = Task.create();
+        when(mApiCommunicator.getDocument(anyString(), any(Session.class))).thenReturn(response.getTask());
+        final Thread deliveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    response.setResult(new JSONObject(new String(readAsset("document.json"), Utils.CHARSET_UTF8)));
+                } catch (Exception e) {
+                    response.setError(e);
+                }
+            }
+        });
+
+        final List<Thread> continuationThreads = new ArrayList<>();
+        final Task<Void> task = mDocumentTaskManager.getDocument("1234").continueWith(
+                new Continuation<Document, Void>() {
+                    @Override
+                    public Void then(final Task<Document> task) {
+                        continuationThreads.add(Thread.currentThread());
+                        return null;
+                    }
+                });
+        deliveryThread.start();
+
+        assertTrue(task.waitForCompletion(5, TimeUnit.SECONDS));
+        assertEquals(1, continuationThreads.size());
+        assertSame(deliveryThread, continuationThreads.get(0));
+    }
+
+    @LargeTest
+    @Test
+    public void benchmarkThreadHopsPerApiCall() throws Exception {
+        final int iterations = 200;
+        final String[] names = {"getDocument", "createPartialDocument", "createCompositeDocument",
+                "deletePartialDocumentAndParents", "getPaymentProvider"};
+        final List<Callable<Task<?>>> apiCalls = getApiCalls();
+        for (int i = 0; i < apiCalls.size(); i++) {
+            final Callable<Task<?>> apiCall = apiCalls.get(i);
+            // Warm up
+            countThreadHops(apiCall);
+
+            int hops = 0;
+            final long startTime = System.nanoTime();
+            for (int j = 0; j < iterations; j++) {
+                hops += countThreadHops(apiCall);
+            }
+            final long latencyUs = (System.nanoTime() - startTime) / 1000 / iterations;
+
+            Log.i(TAG, String.format("%s: %.1f thread hops, %d us added latency per call", names[i],
+                    (float) hops / iterations, latencyUs));
+        }
+    }
+}
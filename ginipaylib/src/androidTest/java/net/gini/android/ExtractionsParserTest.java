@@ -0,0 +1,308 @@
+package net.gini.android;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+
+import com.squareup.moshi.Moshi;
+
+import net.gini.android.authorization.SessionManager;
+import net.gini.android.helpers.TestUtils;
+import net.gini.android.models.Box;
+import net.gini.android.models.CompoundExtraction;
+import net.gini.android.models.Extraction;
+import net.gini.android.models.ExtractionsContainer;
+import net.gini.android.models.ReturnReason;
+import net.gini.android.models.SpecificExtraction;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ExtractionsParserTest {
+
+    private static final String TAG = "ExtractionsParserTest";
+
+    private ExtractionsParser mExtractionsParser;
+    private DocumentTaskManager mDocumentTaskManager;
+
+    @Before
+    public void setUp() {
+        mExtractionsParser = new ExtractionsParser();
+        mDocumentTaskManager = new DocumentTaskManager(mock(ApiCommunicator.class), mock(SessionManager.class),
+                GiniApiType.DEFAULT, new Moshi.Builder().build());
+    }
+
+    private byte[] readAsset(final String filename) throws Exception {
+        return TestUtils.createByteArray(getApplicationContext().getResources().getAssets().open(filename));
+    }
+
+    /**
+     * Creates the extractions from the JSON tree of the response, the way the DocumentTaskManager did before the
+     * streaming parser. It is the reference the streaming parser is compared to.
+     */
+    private ExtractionsContainer parseJSONTree(final byte[] data) throws Exception {
+        final JSONObject responseData = new JSONObject(new String(data, Utils.CHARSET_UTF8));
+        final Map<String, List<Extraction>> candidates =
+                mDocumentTaskManager.extractionCandidatesFromApiResponse(responseData.getJSONObject("candidates"));
+
+        final Map<String, SpecificExtraction> specificExtractions =
+                parseSpecificExtractions(responseData.getJSONObject("extractions"), candidates);
+
+        final Map<String, CompoundExtraction> compoundExtractions =
+                parseCompoundExtractions(responseData.optJSONObject("compoundExtractions"), candidates);
+
+        final List<ReturnReason> returnReasons = parseReturnReasons(responseData.optJSONArray("returnReasons"));
+
+        return new ExtractionsContainer(specificExtractions, compoundExtractions, returnReasons);
+    }
+
+    private Map<String, SpecificExtraction> parseSpecificExtractions(final JSONObject specificExtractionsJson,
+            final Map<String, List<Extraction>> candidates) throws JSONException {
+        final Map<String, SpecificExtraction> specificExtractions = new HashMap<>();
+        final Iterator<String> extractionsNameIterator = specificExtractionsJson.keys();
+        while (extractionsNameIterator.hasNext()) {
+            final String extractionName = extractionsNameIterator.next();
+            final JSONObject extractionData = specificExtractionsJson.getJSONObject(extractionName);
+            final Extraction extraction = mDocumentTaskManager.extractionFromApiResponse(extractionData);
+            List<Extraction> candidatesForExtraction = new ArrayList<>();
+            if (extractionData.has("candidates")) {
+                final String candidatesName = extractionData.getString("candidates");
+                if (candidates.containsKey(candidatesName)) {
+                    candidatesForExtraction = candidates.get(candidatesName);
+                }
+            }
+            specificExtractions.put(extractionName, new SpecificExtraction(extractionName, extraction.getValue(),
+                    extraction.getEntity(), extraction.getBox(), candidatesForExtraction));
+        }
+        return specificExtractions;
+    }
+
+    private Map<String, CompoundExtraction> parseCompoundExtractions(final JSONObject compoundExtractionsJson,
+            final Map<String, List<Extraction>> candidates) throws JSONException {
+        if (compoundExtractionsJson == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, CompoundExtraction> compoundExtractions = new HashMap<>();
+        final Iterator<String> extractionsNameIterator = compoundExtractionsJson.keys();
+        while (extractionsNameIterator.hasNext()) {
+            final String extractionName = extractionsNameIterator.next();
+            final List<Map<String, SpecificExtraction>> specificExtractionMaps = new ArrayList<>();
+            final JSONArray compoundExtractionData = compoundExtractionsJson.getJSONArray(extractionName);
+            for (int i = 0; i < compoundExtractionData.length(); i++) {
+                specificExtractionMaps.add(parseSpecificExtractions(compoundExtractionData.getJSONObject(i),
+                        candidates));
+            }
+            compoundExtractions.put(extractionName, new CompoundExtraction(extractionName, specificExtractionMaps));
+        }
+        return compoundExtractions;
+    }
+
+    private static List<ReturnReason> parseReturnReasons(final JSONArray returnReasonsJson) throws JSONException {
+        if (returnReasonsJson == null) {
+            return Collections.emptyList();
+        }
+        final List<ReturnReason> returnReasons = new ArrayList<>();
+        for (int i = 0; i < returnReasonsJson.length(); i++) {
+            final JSONObject returnReasonJson = returnReasonsJson.getJSONObject(i);
+            final Map<String, String> localizedLabels = new HashMap<>();
+            final Iterator<String> keys = returnReasonJson.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                if (!key.equals("id")) {
+                    localizedLabels.put(key, returnReasonJson.getString(key));
+                }
+            }
+            returnReasons.add(new ReturnReason(returnReasonJson.getString("id"), localizedLabels));
+        }
+        return returnReasons;
+    }
+
+    @Test
+    public void testParsesSameExtractionsAsJSONTree() throws Exception {
+        final byte[] data = readAsset("extractions.json");
+
+        assertSameExtractions(parseJSONTree(data), mExtractionsParser.parse(data));
+    }
+
+    @Test
+    public void testResolvesCandidatesFollowingTheExtractions() throws Exception {
+        final byte[] data = ("{\"extractions\": {\"amountToPay\": {\"entity\": \"amount\", \"value\": \"1.00:EUR\", "
+                + "\"candidates\": \"amounts\"}}, \"candidates\": {\"amounts\": [{\"entity\": \"amount\", "
+                + "\"value\": \"1.00:EUR\"}, {\"entity\": \"amount\", \"value\": \"2.00:EUR\"}]}}")
+                .getBytes(Utils.CHARSET_UTF8);
+
+        final ExtractionsContainer extractions = mExtractionsParser.parse(data);
+
+        assertSameExtractions(parseJSONTree(data), extractions);
+        final SpecificExtraction amountToPay = extractions.getSpecificExtractions().get("amountToPay");
+        assertEquals(2, amountToPay.getCandidate().size());
+        assertTrue(extractions.getCompoundExtractions().isEmpty());
+        assertTrue(extractions.getReturnReasons().isEmpty());
+    }
+
+    @Test
+    public void testConvertsValuesToStringsLikeJSONObject() throws Exception {
+        final byte[] data = ("{\"extractions\": {\"quantity\": {\"entity\": \"number\", \"value\": 3}, "
+                + "\"price\": {\"entity\": \"amount\", \"value\": 12.50}, "
+                + "\"paid\": {\"entity\": \"flag\", \"value\": true, \"unknown\": [1, {\"a\": null}]}}, "
+                + "\"candidates\": {}, \"compoundExtractions\": null, \"returnReasons\": null}")
+                .getBytes(Utils.CHARSET_UTF8);
+
+        final ExtractionsContainer extractions = mExtractionsParser.parse(data);
+
+        assertSameExtractions(parseJSONTree(data), extractions);
+        assertEquals("3", extractions.getSpecificExtractions().get("quantity").getValue());
+        assertEquals("12.5", extractions.getSpecificExtractions().get("price").getValue());
+        assertEquals("true", extractions.getSpecificExtractions().get("paid").getValue());
+    }
+
+    @LargeTest
+    @Test
+    @SuppressWarnings("deprecation")
+    public void benchmarkStreamingParserAgainstJSONTree() throws Exception {
+        final byte[] data = createLargeExtractionsResponse(500, 200).getBytes(Utils.CHARSET_UTF8);
+        final int iterations = 20;
+
+        // Warm up both code paths
+        assertSameExtractions(parseJSONTree(data), mExtractionsParser.parse(data));
+
+        Debug.startAllocCounting();
+        try {
+            Debug.resetThreadAllocSize();
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                parseJSONTree(data);
+            }
+            final long treeTimeUs = (System.nanoTime() - startTime) / 1000 / iterations;
+            final long treeAllocatedBytes = Debug.getThreadAllocSize() / iterations;
+
+            Debug.resetThreadAllocSize();
+            startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                mExtractionsParser.parse(data);
+            }
+            final long streamingTimeUs = (System.nanoTime() - startTime) / 1000 / iterations;
+            final long streamingAllocatedBytes = Debug.getThreadAllocSize() / iterations;
+
+            Log.i(TAG, String.format("Response of %d bytes: JSON tree %d us / %d bytes allocated, "
+                            + "streaming %d us / %d bytes allocated", data.length, treeTimeUs, treeAllocatedBytes,
+                    streamingTimeUs, streamingAllocatedBytes));
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private static String createLargeExtractionsResponse(final int lineItems, final int candidates) {
+        final StringBuilder json = new StringBuilder("{\"extractions\": {\"amountToPay\": {\"entity\": \"amount\", "
+                + "\"value\": \"24.99:EUR\", \"candidates\": \"amounts\", \"box\": {\"page\": 1, \"left\": 516.0, "
+                + "\"top\": 588.0, \"width\": 42.0, \"height\": 9.0}}}, \"candidates\": {\"amounts\": [");
+        for (int i = 0; i < candidates; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"entity\": \"amount\", \"value\": \"").append(i).append(".99:EUR\", \"box\": ")
+                    .append("{\"page\": 1, \"left\": 10.5, \"top\": ").append(i)
+                    .append(".25, \"width\": 42.0, \"height\": 9.0}}");
+        }
+        json.append("]}, \"compoundExtractions\": {\"lineItems\": [");
+        for (int i = 0; i < lineItems; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"description\": {\"entity\": \"text\", \"value\": \"Item ").append(i)
+                    .append("\"}, \"quantity\": {\"entity\": \"numeric\", \"value\": \"1\"}, ")
+                    .append("\"grossPrice\": {\"entity\": \"amount\", \"value\": \"").append(i)
+                    .append(".00:EUR\", \"box\": {\"page\": 2, \"left\": 82.0, \"top\": 347.11, \"width\": 103.73, ")
+                    .append("\"height\": 9.0}}}");
+        }
+        json.append("]}, \"returnReasons\": [{\"id\": \"r1\", \"de\": \"Passt nicht\", \"en\": \"Does not fit\"}]}");
+        return json.toString();
+    }
+
+    private static void assertSameExtractions(final ExtractionsContainer expected, final ExtractionsContainer actual) {
+        assertSameSpecificExtractions(expected.getSpecificExtractions(), actual.getSpecificExtractions());
+
+        final Map<String, CompoundExtraction> expectedCompound = expected.getCompoundExtractions();
+        final Map<String, CompoundExtraction> actualCompound = actual.getCompoundExtractions();
+        assertEquals(expectedCompound.keySet(), actualCompound.keySet());
+        for (final String name : expectedCompound.keySet()) {
+            assertEquals(expectedCompound.get(name).getName(), actualCompound.get(name).getName());
+            final List<Map<String, SpecificExtraction>> expectedMaps =
+                    expectedCompound.get(name).getSpecificExtractionMaps();
+            final List<Map<String, SpecificExtraction>> actualMaps =
+                    actualCompound.get(name).getSpecificExtractionMaps();
+            assertEquals(expectedMaps.size(), actualMaps.size());
+            for (int i = 0; i < expectedMaps.size(); i++) {
+                assertSameSpecificExtractions(expectedMaps.get(i), actualMaps.get(i));
+            }
+        }
+
+        final List<ReturnReason> expectedReturnReasons = expected.getReturnReasons();
+        final List<ReturnReason> actualReturnReasons = actual.getReturnReasons();
+        assertEquals(expectedReturnReasons.size(), actualReturnReasons.size());
+        for (int i = 0; i < expectedReturnReasons.size(); i++) {
+            assertEquals(expectedReturnReasons.get(i).getId(), actualReturnReasons.get(i).getId());
+            assertEquals(expectedReturnReasons.get(i).getLocalizedLabels(),
+                    actualReturnReasons.get(i).getLocalizedLabels());
+        }
+    }
+
+    private static void assertSameSpecificExtractions(final Map<String, SpecificExtraction> expected,
+            final Map<String, SpecificExtraction> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (final String name : expected.keySet()) {
+            final SpecificExtraction expectedExtraction = expected.get(name);
+            final SpecificExtraction actualExtraction = actual.get(name);
+            assertEquals(expectedExtraction.getName(), actualExtraction.getName());
+            assertSameExtraction(expectedExtraction, actualExtraction);
+            final List<Extraction> expectedCandidates = expectedExtraction.getCandidate();
+            final List<Extraction> actualCandidates = actualExtraction.getCandidate();
+            assertEquals(expectedCandidates.size(), actualCandidates.size());
+            for (int i = 0; i < expectedCandidates.size(); i++) {
+                assertSameExtraction(expectedCandidates.get(i), actualCandidates.get(i));
+            }
+        }
+    }
+
+    private static void assertSameExtraction(final Extraction expected, final Extraction actual) {
+        assertEquals(expected.getValue(), actual.getValue());
+        assertEquals(expected.getEntity(), actual.getEntity());
+        assertEquals(expected.isDirty(), actual.isDirty());
+        final Box expectedBox = expected.getBox();
+        final Box actualBox = actual.getBox();
+        if (expectedBox == null) {
+            assertNull(actualBox);
+            return;
+        }
+        assertNotNull(actualBox);
+        assertEquals(expectedBox.getPageNumber(), actualBox.getPageNumber());
+        assertEquals(expectedBox.getLeft(), actualBox.getLeft(), 0);
+        assertEquals(expectedBox.getTop(), actualBox.getTop(), 0);
+        assertEquals(expectedBox.getWidth(), actualBox.getWidth(), 0);
+        assertEquals(expectedBox.getHeight(), actualBox.getHeight(), 0);
+    }
+}
@@ -82,6 +82,16 @@ public class GiniBuilderTest {
         }
     }
 
+    @Test
+    public void testSetWrongUserCenterMaxWaitingRequests() {
+        GiniBuilder builder = new GiniBuilder(getApplicationContext(), "clientId", "clientSecret", "@example.com");
+        try {
+            builder.setUserCenterMaxWaitingRequests(-1);
+            fail("IllegalArgumentException should be thrown");
+        } catch (IllegalArgumentException exc) {
+        }
+    }
+
     @Test
     public void testRetryPolicyWiring() {
         GiniBuilder builder = new GiniBuilder(getApplicationContext(), "clientId", "clientSecret", "@example.com");
@@ -106,6 +116,26 @@ public class GiniBuilderTest {
         assertSame(giniInstance.getDocumentTaskManager().mApiCommunicator.mRequestQueue.getCache(), nullCache);
     }
 
+    @Test
+    public void testExecutorConfiguration() {
+        final MonitoredThreadPoolExecutor parsingExecutor = new MonitoredThreadPoolExecutor("parsing", 1, 1);
+        GiniBuilder builder = new GiniBuilder(getApplicationContext(), "clientId", "clientSecret", "@example.com");
+        builder.setParsingExecutor(parsingExecutor);
+        Gini giniInstance = builder.build();
+
+        assertSame(parsingExecutor, giniInstance.getDocumentTaskManager().getParsingExecutor());
+        parsingExecutor.shutdown();
+    }
+
+    @Test
+    public void testDefaultExecutorsAreMonitored() {
+        GiniBuilder builder = new GiniBuilder(getApplicationContext(), "clientId", "clientSecret", "@example.com");
+        Gini giniInstance = builder.build();
+
+        assertSame(GiniExecutors.getDefaultParsingExecutor(),
+                giniInstance.getDocumentTaskManager().getParsingExecutor());
+    }
+
     private static final class NullCache implements Cache {
 
         @Override
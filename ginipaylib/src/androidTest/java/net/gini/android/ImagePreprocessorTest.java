@@ -0,0 +1,141 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executor;
+
+import bolts.Task;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ImagePreprocessorTest {
+
+    private static final Executor IMMEDIATE_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private byte[] createJpeg(final int width, final int height) {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        for (int x = 0; x < width; x += 7) {
+            bitmap.setPixel(x, (x * 13) % height, Color.BLACK);
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
+        bitmap.recycle();
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testScalesDownToTargetResolution() throws Exception {
+        final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(100, 80, ImagePreprocessor.NO_BYTE_BUDGET,
+                IMMEDIATE_EXECUTOR);
+        final byte[] image = createJpeg(3000, 2000);
+
+        final Task<PreprocessedImage> task = imagePreprocessor.preprocess(image, MediaTypes.IMAGE_JPEG);
+        task.waitForCompletion();
+
+        final PreprocessedImage preprocessedImage = task.getResult();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(preprocessedImage.getData(), 0, preprocessedImage.getData().length, bounds);
+        // An A4 page at 100 dpi is 827 x 1169 pixels
+        assertEquals(1169, bounds.outWidth);
+        assertEquals(779, bounds.outHeight);
+        assertEquals(MediaTypes.IMAGE_JPEG, preprocessedImage.getContentType());
+        assertEquals(image.length, preprocessedImage.getOriginalSize());
+        assertTrue(preprocessedImage.getBytesSaved() > 0);
+        assertEquals(preprocessedImage.getBytesSaved(), imagePreprocessor.getBytesSaved());
+    }
+
+    @Test
+    public void testOtherContentTypesAreNotChanged() throws Exception {
+        final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(100, 80, ImagePreprocessor.NO_BYTE_BUDGET,
+                IMMEDIATE_EXECUTOR);
+        final byte[] pdf = new byte[]{0x25, 0x50, 0x44, 0x46};
+
+        final Task<PreprocessedImage> task = imagePreprocessor.preprocess(pdf, "application/pdf");
+
+        assertArrayEquals(pdf, task.getResult().getData());
+        assertEquals(0, task.getResult().getBytesSaved());
+    }
+
+    @Test
+    public void testScalesDownImagesOfUploadSources() throws Exception {
+        final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(100, 80, ImagePreprocessor.NO_BYTE_BUDGET,
+                IMMEDIATE_EXECUTOR);
+        final byte[] image = createJpeg(3000, 2000);
+
+        final Task<PreprocessedImage> task =
+                imagePreprocessor.preprocess(UploadSource.fromBytes(image), MediaTypes.IMAGE_JPEG);
+        task.waitForCompletion();
+
+        final PreprocessedImage preprocessedImage = task.getResult();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(preprocessedImage.getData(), 0, preprocessedImage.getData().length, bounds);
+        assertEquals(1169, bounds.outWidth);
+        assertEquals(779, bounds.outHeight);
+        assertEquals(image.length, preprocessedImage.getOriginalSize());
+        assertEquals(preprocessedImage.getBytesSaved(), imagePreprocessor.getBytesSaved());
+    }
+
+    @Test
+    public void testUploadSourcesWhichCanNotBeMadeSmallerAreNotReplaced() throws Exception {
+        final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(100, 80, ImagePreprocessor.NO_BYTE_BUDGET,
+                IMMEDIATE_EXECUTOR);
+
+        final Task<PreprocessedImage> pdfTask = imagePreprocessor.preprocess(
+                UploadSource.fromBytes(new byte[]{0x25, 0x50, 0x44, 0x46}), "application/pdf");
+        final Task<PreprocessedImage> brokenImageTask = imagePreprocessor.preprocess(
+                UploadSource.fromBytes(new byte[]{(byte) 0xFF, (byte) 0xD8, 0x00}), MediaTypes.IMAGE_JPEG);
+        brokenImageTask.waitForCompletion();
+
+        assertNull(pdfTask.getResult());
+        assertNull(brokenImageTask.getResult());
+        assertEquals(0, imagePreprocessor.getBytesSaved());
+    }
+
+    @Test
+    public void testSampleSizeDoesNotDecodeBelowTargetResolution() {
+        assertEquals(1, ImagePreprocessor.getSampleSize(1f));
+        assertEquals(1, ImagePreprocessor.getSampleSize(0.6f));
+        assertEquals(2, ImagePreprocessor.getSampleSize(0.5f));
+        assertEquals(2, ImagePreprocessor.getSampleSize(0.3f));
+        assertEquals(4, ImagePreprocessor.getSampleSize(0.25f));
+    }
+
+    @Test
+    public void testReadsExifRotation() {
+        final byte[] jpeg = new byte[]{
+                (byte) 0xFF, (byte) 0xD8,
+                // APP1 segment with a big endian TIFF header and a single orientation entry
+                (byte) 0xFF, (byte) 0xE1, 0x00, 0x22,
+                'E', 'x', 'i', 'f', 0x00, 0x00,
+                'M', 'M', 0x00, 0x2A, 0x00, 0x00, 0x00, 0x08,
+                0x00, 0x01,
+                0x01, 0x12, 0x00, 0x03, 0x00, 0x00, 0x00, 0x01, 0x00, 0x06, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00,
+                (byte) 0xFF, (byte) 0xD9};
+
+        assertEquals(90, ImagePreprocessor.getExifRotation(jpeg));
+        assertEquals(0, ImagePreprocessor.getExifRotation(createJpeg(10, 10)));
+    }
+}
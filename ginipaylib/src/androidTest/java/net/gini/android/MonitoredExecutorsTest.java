@@ -0,0 +1,101 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class MonitoredExecutorsTest {
+
+    private static Runnable awaiting(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testThreadPoolReportsQueueDepth() throws Exception {
+        final MonitoredThreadPoolExecutor executor = new MonitoredThreadPoolExecutor("test", 1, 4);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            executor.execute(awaiting(latch));
+            executor.execute(awaiting(latch));
+            executor.execute(awaiting(latch));
+
+            assertEquals(2, executor.getQueueDepth());
+            assertEquals(2, executor.getMaxQueueDepth());
+            assertEquals(0, executor.getSaturationCount());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(2, executor.getMaxQueueDepth());
+    }
+
+    @Test
+    public void testSaturatedThreadPoolRunsTaskOnSubmittingThread() {
+        final MonitoredThreadPoolExecutor executor = new MonitoredThreadPoolExecutor("test", 1, 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        try {
+            executor.execute(awaiting(latch));
+            executor.execute(awaiting(latch));
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    thread.set(Thread.currentThread());
+                }
+            });
+
+            assertSame(Thread.currentThread(), thread.get());
+            assertEquals(1, executor.getSaturationCount());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSchedulerCountsTasksStartedLate() throws Exception {
+        final MonitoredScheduledExecutor scheduler = new MonitoredScheduledExecutor("test", 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch lateTaskRan = new CountDownLatch(1);
+        try {
+            scheduler.execute(awaiting(latch));
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lateTaskRan.countDown();
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(2 * MonitoredScheduledExecutor.SATURATION_DELAY_MS);
+            latch.countDown();
+
+            assertTrue(lateTaskRan.await(5, TimeUnit.SECONDS));
+            assertEquals(1, scheduler.getSaturationCount());
+        } finally {
+            latch.countDown();
+            scheduler.shutdown();
+        }
+    }
+}
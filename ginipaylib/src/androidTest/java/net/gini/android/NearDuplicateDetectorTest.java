@@ -0,0 +1,169 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import net.gini.android.models.Document;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Continuation;
+import bolts.Task;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class NearDuplicateDetectorTest {
+
+    private static final Executor IMMEDIATE_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    /**
+     * Creates a page with a wavy brightness pattern. The same phase with another contrast is a photo of the same page
+     * with other lighting.
+     */
+    private UploadSource createPage(final double phase, final float contrast) {
+        final int width = 900;
+        final int height = 1200;
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final double wave = Math.sin(2 * Math.PI * 1.3 * x / width + 3.0 * y / height + phase);
+                final int brightness = Math.round(contrast * (float) (127 + 100 * wave));
+                row[x] = Color.rgb(brightness, brightness, brightness);
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 90, outputStream);
+        bitmap.recycle();
+        return UploadSource.fromBytes(outputStream.toByteArray());
+    }
+
+    private Continuation<Void, Task<Document>> upload(final String documentId, final AtomicInteger uploadCount) {
+        return new Continuation<Void, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Void> task) throws Exception {
+                uploadCount.incrementAndGet();
+                return Task.forResult(Document.fromApiResponse(new JSONObject()
+                        .put("id", documentId)
+                        .put("progress", "PENDING")
+                        .put("name", documentId + ".jpg")
+                        .put("pageCount", 1)
+                        .put("creationDate", 1360623867402L)
+                        .put("sourceClassification", "SCANNED")
+                        .put("_links", new JSONObject()
+                                .put("document", "https://pay-api.gini.net/documents/" + documentId))));
+            }
+        };
+    }
+
+    @Test
+    public void testDifferenceHashComparesNeighbouringCells() {
+        final float[] luminances = new float[9 * 8];
+        for (int i = 0; i < luminances.length; i++) {
+            // Every row gets darker from left to right
+            luminances[i] = 255 - (i % 9) * 20;
+        }
+        assertEquals(-1L, NearDuplicateDetector.computeDifferenceHash(luminances));
+
+        luminances[0] = 0;
+        assertEquals(63, Long.bitCount(NearDuplicateDetector.computeDifferenceHash(luminances)));
+    }
+
+    @Test
+    public void testSkipsNearDuplicateImages() throws Exception {
+        final NearDuplicateDetector nearDuplicateDetector = new NearDuplicateDetector(
+                NearDuplicateDetector.DEFAULT_MAX_HAMMING_DISTANCE, 10, IMMEDIATE_EXECUTOR);
+        final AtomicInteger uploadCount = new AtomicInteger();
+
+        final Task<Document> firstUpload = nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 1f),
+                MediaTypes.IMAGE_JPEG, upload("1111", uploadCount));
+        firstUpload.waitForCompletion();
+        // The same page photographed in a darker room
+        final Task<Document> secondUpload = nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 0.8f),
+                MediaTypes.IMAGE_JPEG, upload("2222", uploadCount));
+        secondUpload.waitForCompletion();
+        final Task<Document> thirdUpload = nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(Math.PI, 1f),
+                MediaTypes.IMAGE_JPEG, upload("3333", uploadCount));
+        thirdUpload.waitForCompletion();
+
+        assertEquals("1111", firstUpload.getResult().getId());
+        assertTrue(secondUpload.isFaulted());
+        final NearDuplicateException error = (NearDuplicateException) secondUpload.getError();
+        assertEquals("1111", error.getDuplicateOf().getId());
+        assertTrue(error.getHammingDistance() <= NearDuplicateDetector.DEFAULT_MAX_HAMMING_DISTANCE);
+        assertEquals("3333", thirdUpload.getResult().getId());
+        assertEquals(2, uploadCount.get());
+    }
+
+    @Test
+    public void testUploadsNearDuplicatesOfDeletedDocuments() throws Exception {
+        final NearDuplicateDetector nearDuplicateDetector = new NearDuplicateDetector(
+                NearDuplicateDetector.DEFAULT_MAX_HAMMING_DISTANCE, 10, IMMEDIATE_EXECUTOR);
+        final AtomicInteger uploadCount = new AtomicInteger();
+
+        nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 1f), MediaTypes.IMAGE_JPEG,
+                upload("1111", uploadCount)).waitForCompletion();
+        nearDuplicateDetector.invalidate("1111");
+        final Task<Document> secondUpload = nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 1f),
+                MediaTypes.IMAGE_JPEG, upload("2222", uploadCount));
+        secondUpload.waitForCompletion();
+
+        assertFalse(secondUpload.isFaulted());
+        assertEquals(2, uploadCount.get());
+    }
+
+    @Test
+    public void testUploadsNearDuplicatesOfFailedUploads() throws Exception {
+        final NearDuplicateDetector nearDuplicateDetector = new NearDuplicateDetector(
+                NearDuplicateDetector.DEFAULT_MAX_HAMMING_DISTANCE, 10, IMMEDIATE_EXECUTOR);
+        final AtomicInteger uploadCount = new AtomicInteger();
+
+        nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 1f), MediaTypes.IMAGE_JPEG,
+                new Continuation<Void, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Void> task) {
+                        return Task.forError(new Exception("Upload failed"));
+                    }
+                }).waitForCompletion();
+        final Task<Document> secondUpload = nearDuplicateDetector.uploadUnlessNearDuplicate(createPage(0, 1f),
+                MediaTypes.IMAGE_JPEG, upload("2222", uploadCount));
+        secondUpload.waitForCompletion();
+
+        assertEquals("2222", secondUpload.getResult().getId());
+        assertEquals(1, uploadCount.get());
+    }
+
+    @Test
+    public void testOtherContentTypesAreAlwaysUploaded() throws Exception {
+        final NearDuplicateDetector nearDuplicateDetector = new NearDuplicateDetector(
+                NearDuplicateDetector.DEFAULT_MAX_HAMMING_DISTANCE, 10, IMMEDIATE_EXECUTOR);
+        final AtomicInteger uploadCount = new AtomicInteger();
+        final UploadSource pdf = UploadSource.fromBytes(new byte[]{0x25, 0x50, 0x44, 0x46});
+
+        nearDuplicateDetector.uploadUnlessNearDuplicate(pdf, "application/pdf", upload("1111", uploadCount))
+                .waitForCompletion();
+        nearDuplicateDetector.uploadUnlessNearDuplicate(pdf, "application/pdf", upload("2222", uploadCount))
+                .waitForCompletion();
+
+        assertEquals(2, uploadCount.get());
+    }
+}
@@ -0,0 +1,91 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import net.gini.android.authorization.Session;
+import net.gini.android.requests.BearerUploadRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class OkHttpStackTest {
+
+    private AtomicReference<okhttp3.Request> mSentRequest;
+    private OkHttpStack mOkHttpStack;
+
+    @Before
+    public void setUp() {
+        mSentRequest = new AtomicReference<>();
+        // Answers every request without sending it
+        final OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public okhttp3.Response intercept(final Chain chain) {
+                        mSentRequest.set(chain.request());
+                        return new okhttp3.Response.Builder()
+                                .request(chain.request())
+                                .protocol(Protocol.HTTP_1_1)
+                                .code(201)
+                                .message("Created")
+                                .body(ResponseBody.create(null, new byte[0]))
+                                .build();
+                    }
+                })
+                .build();
+        mOkHttpStack = new OkHttpStack(client);
+    }
+
+    @Test
+    public void testLargeUploadsExpectContinue() throws Exception {
+        mOkHttpStack.executeRequest(createUploadRequest(BearerUploadRequest.EXPECT_CONTINUE_THRESHOLD + 1),
+                Collections.<String, String>emptyMap());
+
+        assertEquals("100-continue", mSentRequest.get().header("Expect"));
+    }
+
+    @Test
+    public void testSmallUploadsDoNotExpectContinue() throws Exception {
+        mOkHttpStack.executeRequest(createUploadRequest(BearerUploadRequest.EXPECT_CONTINUE_THRESHOLD),
+                Collections.<String, String>emptyMap());
+
+        assertNull(mSentRequest.get().header("Expect"));
+    }
+
+    private static BearerUploadRequest createUploadRequest(final long contentLength) {
+        return new BearerUploadRequest(Request.Method.POST, "https://pay-api.gini.net/documents/",
+                UploadSource.fromBytes(new byte[(int) contentLength]), MediaTypes.IMAGE_JPEG,
+                new Session("1234-5678-9012", new Date()), GiniApiType.DEFAULT,
+                new Response.Listener<Uri>() {
+                    @Override
+                    public void onResponse(final Uri response) {
+                    }
+                }, new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(final VolleyError error) {
+                    }
+                }, new DefaultRetryPolicy(), Collections.<String, String>emptyMap());
+    }
+}
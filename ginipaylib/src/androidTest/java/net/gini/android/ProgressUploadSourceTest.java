@@ -0,0 +1,113 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class ProgressUploadSourceTest {
+
+    private final List<Long> mProgress = new ArrayList<>();
+
+    private ProgressUploadSource createUploadSource(final byte[] data) {
+        return new ProgressUploadSource(UploadSource.fromBytes(data), new ProgressUploadSource.ProgressListener() {
+            @Override
+            public void onProgress(final long bytesRead, final long totalBytes) {
+                assertEquals(data.length, totalBytes);
+                mProgress.add(bytesRead);
+            }
+        });
+    }
+
+    @Test
+    public void testReportsReadBytes() throws Exception {
+        final ProgressUploadSource uploadSource = createUploadSource(new byte[10]);
+
+        final InputStream inputStream = uploadSource.openUploadStream();
+        inputStream.read(new byte[4]);
+        inputStream.read();
+        inputStream.read(new byte[10]);
+        inputStream.read(new byte[10]);
+        inputStream.close();
+
+        assertEquals(10, uploadSource.getContentLength());
+        assertEquals(4, mProgress.size());
+        assertEquals(0L, (long) mProgress.get(0));
+        assertEquals(4L, (long) mProgress.get(1));
+        assertEquals(5L, (long) mProgress.get(2));
+        assertEquals(10L, (long) mProgress.get(3));
+    }
+
+    @Test
+    public void testEveryUploadStreamStartsAtZero() throws Exception {
+        final ProgressUploadSource uploadSource = createUploadSource(new byte[3]);
+
+        readAndClose(uploadSource.openUploadStream());
+        uploadSource.openUploadStream().close();
+
+        assertEquals(3L, (long) mProgress.get(mProgress.size() - 2));
+        assertEquals(0L, (long) mProgress.get(mProgress.size() - 1));
+    }
+
+    @Test
+    public void testOtherReadersDoNotReportProgress() throws Exception {
+        final ProgressUploadSource uploadSource = createUploadSource(new byte[10]);
+
+        readAndClose(uploadSource.openStream());
+        uploadSource.readFully();
+        readAndClose(uploadSource.slice(4, 6).openStream());
+
+        assertTrue(mProgress.isEmpty());
+    }
+
+    @Test
+    public void testSlicesReportTheProgressOfTheWholeSource() throws Exception {
+        final ProgressUploadSource uploadSource = createUploadSource(new byte[10]);
+
+        readAndClose(uploadSource.slice(0, 4).openUploadStream());
+        readAndClose(uploadSource.slice(4, 6).openUploadStream());
+
+        // Skipping to the second slice is not counted
+        assertEquals(Arrays.asList(0L, 4L, 4L, 10L), mProgress);
+    }
+
+    @Test
+    public void testReplacedDataReportsProgress() throws Exception {
+        final List<Long> totalBytes = new ArrayList<>();
+        final UploadSource uploadSource = new ProgressUploadSource(UploadSource.fromBytes(new byte[10]),
+                new ProgressUploadSource.ProgressListener() {
+                    @Override
+                    public void onProgress(final long bytesRead, final long total) {
+                        mProgress.add(bytesRead);
+                        totalBytes.add(total);
+                    }
+                });
+
+        readAndClose(uploadSource.replaceData(UploadSource.fromBytes(new byte[3])).openUploadStream());
+
+        assertEquals(Arrays.asList(0L, 3L), mProgress);
+        assertEquals(Arrays.asList(3L, 3L), totalBytes);
+    }
+
+    private static void readAndClose(final InputStream inputStream) throws Exception {
+        try {
+            final byte[] buffer = new byte[16];
+            while (inputStream.read(buffer) != -1) {
+                // Only the progress matters
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package net.gini.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bolts.Task;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RequestCoalescerTest {
+
+    private RequestCoalescer mRequestCoalescer;
+    private Task<JSONObject>.TaskCompletionSource mRequest;
+    private AtomicInteger mRequestCount;
+    private RequestCoalescer.RequestFactory<JSONObject> mRequestFactory;
+
+    @Before
+    public void setUp() {
+        mRequestCoalescer = new RequestCoalescer();
+        mRequest = Task.create();
+        mRequestCount = new AtomicInteger();
+        mRequestFactory = new RequestCoalescer.RequestFactory<JSONObject>() {
+            @NonNull
+            @Override
+            public Task<JSONObject> newRequest() {
+                mRequestCount.incrementAndGet();
+                return mRequest.getTask();
+            }
+        };
+    }
+
+    @Test
+    public void testCallersReceiveCopiesOfMutableResults() throws JSONException {
+        final Task<JSONObject> first = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+        final Task<JSONObject> second = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+
+        mRequest.setResult(new JSONObject("{\"id\": \"1234\"}"));
+        first.getResult().put("id", "modified");
+
+        assertEquals(1, mRequestCount.get());
+        assertNotSame(first.getResult(), second.getResult());
+        assertEquals("1234", second.getResult().getString("id"));
+    }
+
+    @Test
+    public void testTheFirstCallerReceivesACopyAsWell() throws JSONException {
+        final Task<JSONObject> first = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+        final Task<JSONObject> second = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+
+        final JSONObject result = new JSONObject("{\"id\": \"1234\"}");
+        mRequest.setResult(result);
+
+        assertNotSame(result, first.getResult());
+        assertNotSame(result, second.getResult());
+        // The copies of later callers are made from the original, which no caller can modify
+        first.getResult().put("id", "modified");
+        assertEquals("1234", result.getString("id"));
+        assertEquals("1234", second.getResult().getString("id"));
+    }
+
+    @Test
+    public void testCallersReceiveTheSameImmutableResult() {
+        final Task<JSONObject> first = mRequestCoalescer.coalesce("key", mRequestFactory);
+        final Task<JSONObject> second = mRequestCoalescer.coalesce("key", mRequestFactory);
+
+        mRequest.setResult(new JSONObject());
+
+        assertEquals(1, mRequestCount.get());
+        assertSame(first.getResult(), second.getResult());
+    }
+
+    @Test
+    public void testErrorsAreNotCopied() {
+        final Task<JSONObject> first = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+        final Task<JSONObject> second = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+
+        final Exception error = new Exception();
+        mRequest.setError(error);
+
+        assertSame(error, first.getError());
+        assertSame(error, second.getError());
+    }
+
+    @Test
+    public void testRequestIsSentAgainAfterCompletion() {
+        mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+        mRequest.setResult(new JSONObject());
+        mRequest = Task.create();
+
+        final Task<JSONObject> task = mRequestCoalescer.coalesce("key", mRequestFactory, new JSONObjectCopier());
+
+        assertEquals(2, mRequestCount.get());
+        assertFalse(task.isCompleted());
+    }
+
+    private static class JSONObjectCopier implements RequestCoalescer.ResultCopier<JSONObject> {
+
+        @Nullable
+        @Override
+        public JSONObject copy(@Nullable final JSONObject result) throws JSONException {
+            return result != null ? new JSONObject(result.toString()) : null;
+        }
+    }
+}
@@ -2,18 +2,33 @@ package net.gini.android;
 
 import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Looper;
 
 import androidx.test.filters.SmallTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
 import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 @SmallTest
 @RunWith(AndroidJUnit4.class)
 public class RequestQueueBuilderTest {
@@ -37,4 +52,61 @@ public class RequestQueueBuilderTest {
         assertSame(cache, requestQueue.getCache());
     }
 
+    @Test
+    public void testQueuesShareNetworkButNotCache() {
+        RequestQueueBuilder requestQueueBuilder = new RequestQueueBuilder(getApplicationContext());
+        NoCache cache = new NoCache();
+        RequestQueue apiRequestQueue = requestQueueBuilder.setThreadPoolSize(2).build();
+        RequestQueue userCenterRequestQueue = requestQueueBuilder.build(cache, 1);
+
+        assertNotSame(apiRequestQueue, userCenterRequestQueue);
+        assertSame(cache, userCenterRequestQueue.getCache());
+    }
+
+    @Test
+    public void testCreateOkHttpRequestQueue() {
+        RequestQueueBuilder requestQueueBuilder = new RequestQueueBuilder(getApplicationContext());
+        RequestQueue requestQueue = requestQueueBuilder
+                .setOkHttpEnabled(true)
+                .setConnectionKeepAliveInMs(30000)
+                .build();
+
+        assertNotNull(requestQueue);
+    }
+
+    @Test
+    public void testResponsesAreDeliveredOnResponseDeliveryExecutor() throws Exception {
+        final AtomicInteger deliveries = new AtomicInteger();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                deliveries.incrementAndGet();
+                new Thread(command).start();
+            }
+        };
+        RequestQueue requestQueue = new RequestQueueBuilder(getApplicationContext())
+                .setCache(new NoCache())
+                .setResponseDeliveryExecutor(executor)
+                .build();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Looper> deliveryLooper = new AtomicReference<>();
+        // Nothing listens on the port, the request fails without leaving the device
+        requestQueue.add(new StringRequest(Request.Method.GET, "http://127.0.0.1:1/", new Response.Listener<String>() {
+            @Override
+            public void onResponse(final String response) {
+                latch.countDown();
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(final VolleyError error) {
+                deliveryLooper.set(Looper.myLooper());
+                latch.countDown();
+            }
+        }));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, deliveries.get());
+        assertNotSame(Looper.getMainLooper(), deliveryLooper.get());
+    }
 }
@@ -11,6 +11,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.android.volley.VolleyError;
 
+import net.gini.android.requests.RequestCancelledError;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -54,4 +56,16 @@ public class RequestTaskCompletionSourceTest {
         assertTrue(task.isFaulted());
         assertNull(task.getResult());
     }
+
+    @Test
+    public void testCancelsTaskOnRequestCancelledError() {
+        RequestTaskCompletionSource<String> requestTaskCompletionSource = RequestTaskCompletionSource.newCompletionSource();
+        Task<String> task = requestTaskCompletionSource.getTask();
+
+        requestTaskCompletionSource.onErrorResponse(new RequestCancelledError());
+        requestTaskCompletionSource.onResponse("foobar");
+
+        assertTrue(task.isCancelled());
+        assertNull(task.getResult());
+    }
 }
@@ -0,0 +1,229 @@
+package net.gini.android;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.NoCache;
+
+import net.gini.android.authorization.Session;
+import net.gini.android.helpers.ResumableUploadServer;
+import net.gini.android.requests.DefaultRetryPolicyFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import bolts.Task;
+
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ResumableUploaderTest {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final String PDF = "application/pdf";
+
+    private ResumableUploadServer mServer;
+    private RequestQueue mRequestQueue;
+    private ApiCommunicator mApiCommunicator;
+    private InMemoryResumableUploadStore mResumableUploadStore;
+    private Session mSession;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new ResumableUploadServer();
+        mRequestQueue = new RequestQueue(new NoCache(), new BasicNetwork(new StreamingHurlStack(null)));
+        mRequestQueue.start();
+        mApiCommunicator = new ApiCommunicator(mServer.getBaseUrl(), GiniApiType.DEFAULT, mRequestQueue,
+                new DefaultRetryPolicyFactory());
+        mResumableUploadStore = new InMemoryResumableUploadStore();
+        mApiCommunicator.setResumableUploader(new ResumableUploader(CHUNK_SIZE,
+                ResumableUploader.DEFAULT_CHUNK_ATTEMPTS, mResumableUploadStore));
+        mSession = new Session("1234-5678-9012", new Date(new Date().getTime() + 10000));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRequestQueue.stop();
+        mServer.shutdown();
+    }
+
+    private static byte[] createDocument(final int length) {
+        final byte[] document = new byte[length];
+        for (int i = 0; i < length; i++) {
+            document[i] = (byte) (i * 31);
+        }
+        return document;
+    }
+
+    private Task<Uri> upload(@NonNull final UploadSource uploadSource) throws InterruptedException {
+        final Task<Uri> task = mApiCommunicator.uploadDocument(uploadSource, PDF, "large.pdf",
+                null, mSession, null);
+        task.waitForCompletion();
+        return task;
+    }
+
+    @Test
+    public void testUploadsLargeDocumentsInChunks() throws Exception {
+        final byte[] document = createDocument(10000);
+
+        final Task<Uri> task = upload(UploadSource.fromBytes(document));
+
+        assertEquals(mServer.getBaseUrl() + "documents/1", task.getResult().toString());
+        assertArrayEquals(document, mServer.getUploadedData("1"));
+        assertEquals(4, mServer.getRequests().size());
+        assertEquals("POST /documents/uploads/", mServer.getRequests().get(0));
+        assertEquals("PATCH /uploads/1", mServer.getRequests().get(3));
+    }
+
+    @Test
+    public void testUploadsSmallDocumentsInOneRequest() throws Exception {
+        final byte[] document = createDocument(CHUNK_SIZE);
+
+        final Task<Uri> task = upload(UploadSource.fromBytes(document));
+
+        assertEquals(mServer.getBaseUrl() + "documents/single", task.getResult().toString());
+        assertEquals(Collections.singletonList("POST /documents/"), mServer.getRequests());
+    }
+
+    @Test
+    public void testContinuesFromTheReceivedBytesWhenAChunkFails() throws Exception {
+        final byte[] document = createDocument(10000);
+        mServer.dropNextChunkAfter(1000);
+
+        final Task<Uri> task = upload(UploadSource.fromBytes(document));
+
+        assertFalse(task.isFaulted());
+        assertArrayEquals(document, mServer.getUploadedData("1"));
+        assertTrue(mServer.getRequests().contains("HEAD /uploads/1"));
+    }
+
+    @Test
+    public void testFallsBackToOneRequestIfTheServerDoesNotSupportResumableUploads() throws Exception {
+        mServer.setResumableUploadsSupported(false);
+        final byte[] document = createDocument(10000);
+
+        upload(UploadSource.fromBytes(document));
+        final Task<Uri> task = upload(UploadSource.fromBytes(document));
+
+        assertEquals(mServer.getBaseUrl() + "documents/single", task.getResult().toString());
+        assertEquals(2, mServer.getSingleRequestUploads().size());
+        assertArrayEquals(document, mServer.getSingleRequestUploads().get(1));
+        // Resumable uploads are not attempted again
+        assertEquals(3, mServer.getRequests().size());
+    }
+
+    @Test
+    public void testResumesPersistedUploads() throws Exception {
+        mApiCommunicator.setResumableUploader(new ResumableUploader(CHUNK_SIZE, 1, mResumableUploadStore));
+        final byte[] document = createDocument(10000);
+        final File file = createFile(document);
+        mServer.dropNextChunkAfter(1000);
+
+        final Task<Uri> failedTask = upload(UploadSource.fromFile(file));
+
+        assertTrue(failedTask.isFaulted());
+        assertEquals(1, mResumableUploadStore.mStates.size());
+        final ResumableUploadState state = mResumableUploadStore.mStates.values().iterator().next();
+        assertEquals(mServer.getBaseUrl() + "uploads/1", state.getUploadUri());
+
+        // The app was restarted
+        mApiCommunicator.setResumableUploader(new ResumableUploader(CHUNK_SIZE,
+                ResumableUploader.DEFAULT_CHUNK_ATTEMPTS, mResumableUploadStore));
+        final Task<Uri> resumedTask = upload(UploadSource.fromFile(file));
+
+        assertEquals(mServer.getBaseUrl() + "documents/1", resumedTask.getResult().toString());
+        assertArrayEquals(document, mServer.getUploadedData("1"));
+        assertEquals(1, Collections.frequency(mServer.getRequests(), "POST /documents/uploads/"));
+        assertTrue(mResumableUploadStore.mStates.isEmpty());
+        file.delete();
+    }
+
+    @Test
+    public void testDoesNotResumeUploadsOfAnotherSession() throws Exception {
+        mApiCommunicator.setResumableUploader(new ResumableUploader(CHUNK_SIZE, 1, mResumableUploadStore));
+        final byte[] document = createDocument(10000);
+        final File file = createFile(document);
+        mServer.dropNextChunkAfter(1000);
+
+        assertTrue(upload(UploadSource.fromFile(file)).isFaulted());
+
+        // Another user logged in
+        mSession = new Session("9876-5432-1098", new Date(new Date().getTime() + 10000));
+        final Task<Uri> task = upload(UploadSource.fromFile(file));
+
+        assertEquals(mServer.getBaseUrl() + "documents/2", task.getResult().toString());
+        assertArrayEquals(document, mServer.getUploadedData("2"));
+        assertEquals(2, Collections.frequency(mServer.getRequests(), "POST /documents/uploads/"));
+        file.delete();
+    }
+
+    @Test
+    public void testStartsANewUploadIfTheResumedUploadIsRejected() throws Exception {
+        mApiCommunicator.setResumableUploader(new ResumableUploader(CHUNK_SIZE, 1, mResumableUploadStore));
+        final byte[] document = createDocument(10000);
+        final File file = createFile(document);
+        mServer.dropNextChunkAfter(1000);
+
+        assertTrue(upload(UploadSource.fromFile(file)).isFaulted());
+
+        mServer.rejectChunksOf("1");
+        final Task<Uri> task = upload(UploadSource.fromFile(file));
+
+        assertEquals(mServer.getBaseUrl() + "documents/2", task.getResult().toString());
+        assertArrayEquals(document, mServer.getUploadedData("2"));
+        assertTrue(mResumableUploadStore.mStates.isEmpty());
+        file.delete();
+    }
+
+    private static File createFile(@NonNull final byte[] data) throws IOException {
+        final File file = new File(getApplicationContext().getCacheDir(), "resumable-upload.pdf");
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(data);
+        outputStream.close();
+        return file;
+    }
+
+    private static class InMemoryResumableUploadStore implements ResumableUploadStore {
+
+        private final Map<String, ResumableUploadState> mStates = new HashMap<>();
+
+        @Nullable
+        @Override
+        public synchronized ResumableUploadState getUploadState(@NonNull final String key) {
+            return mStates.get(key);
+        }
+
+        @Override
+        public synchronized void storeUploadState(@NonNull final String key,
+                @NonNull final ResumableUploadState state) {
+            mStates.put(key, state);
+        }
+
+        @Override
+        public synchronized void deleteUploadState(@NonNull final String key) {
+            mStates.remove(key);
+        }
+    }
+}
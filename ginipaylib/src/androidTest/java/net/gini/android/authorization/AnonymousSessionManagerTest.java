@@ -191,6 +191,31 @@ public class AnonymousSessionManagerTest {
         assertNotSame(firstSessionTask.getResult(), secondSessionTask.getResult());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testThatInvalidatedSessionsAreNotReused() throws InterruptedException {
+        when(mCredentialsStore.getUserCredentials()).thenReturn(new UserCredentials(email("foo"), "1234"));
+        when(mUserCenterManager.loginUser(any(UserCredentials.class))).thenReturn(
+                Task.forResult(new Session(UUID.randomUUID().toString(), new Date(new Date().getTime() + 10000))),
+                Task.forResult(new Session(UUID.randomUUID().toString(), new Date(new Date().getTime() + 10000)))
+        );
+
+        Task<Session> firstSessionTask = mAnonymousSessionSessionManager.getSession();
+        firstSessionTask.waitForCompletion();
+        mAnonymousSessionSessionManager.invalidateSession(firstSessionTask.getResult());
+
+        Task<Session> secondSessionTask = mAnonymousSessionSessionManager.getSession();
+        secondSessionTask.waitForCompletion();
+        // Invalidating an older session keeps the current one
+        mAnonymousSessionSessionManager.invalidateSession(firstSessionTask.getResult());
+
+        Task<Session> thirdSessionTask = mAnonymousSessionSessionManager.getSession();
+        thirdSessionTask.waitForCompletion();
+
+        assertNotSame(firstSessionTask.getResult(), secondSessionTask.getResult());
+        assertSame(secondSessionTask.getResult(), thirdSessionTask.getResult());
+    }
+
     @Test
     public void testThatCreatedUserNamesAreEmailAddresses() throws InterruptedException {
         // TODO: The returned "created" user has another email address than the UserCredentials instance which is given
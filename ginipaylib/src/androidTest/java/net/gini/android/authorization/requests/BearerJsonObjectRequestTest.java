@@ -1,17 +1,24 @@
 package net.gini.android.authorization.requests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Header;
+import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
+import com.android.volley.Response;
 import com.android.volley.RetryPolicy;
 
 import net.gini.android.GiniApiType;
 import net.gini.android.MediaTypes;
 import net.gini.android.authorization.Session;
+import net.gini.android.requests.ConditionalRequestCache;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,6 +26,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 
@@ -63,4 +72,58 @@ public class BearerJsonObjectRequestTest {
 
         assertEquals(MediaTypes.GINI_JSON_V2, request.getBodyContentType());
     }
+
+    @Test
+    public void testConditionalRequestSendsValidatorsOfPreviousResponse() throws AuthFailureError {
+        Session session = new Session("1234-5678-9012", new Date());
+        ConditionalRequestCache cache = new ConditionalRequestCache();
+        BearerJsonObjectRequest first = createConditionalRequest(session, cache);
+        first.parseNetworkResponse(new NetworkResponse(200, "{\"id\": \"1234\"}".getBytes(), false, 0,
+                Arrays.asList(new Header("ETag", "\"abcd\""),
+                        new Header("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"))));
+
+        Map<String, String> headers = createConditionalRequest(session, cache).getHeaders();
+
+        assertEquals("\"abcd\"", headers.get("If-None-Match"));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", headers.get("If-Modified-Since"));
+    }
+
+    @Test
+    public void testNotModifiedResponseReturnsACopyOfThePreviousObject() {
+        Session session = new Session("1234-5678-9012", new Date());
+        ConditionalRequestCache cache = new ConditionalRequestCache();
+        Response<JSONObject> firstResponse = createConditionalRequest(session, cache).parseNetworkResponse(
+                new NetworkResponse(200, "{\"id\": \"1234\"}".getBytes(), false, 0,
+                        Collections.singletonList(new Header("ETag", "\"abcd\""))));
+
+        Response<JSONObject> secondResponse = createConditionalRequest(session, cache).parseNetworkResponse(
+                new NetworkResponse(304, null, true, 0, Collections.singletonList(new Header("ETag", "\"abcd\""))));
+
+        assertTrue(secondResponse.isSuccess());
+        assertNotSame(firstResponse.result, secondResponse.result);
+        assertEquals(firstResponse.result.toString(), secondResponse.result.toString());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testConditionalRequestCacheIsIgnoredForOtherMethods() throws AuthFailureError {
+        Session session = new Session("1234-5678-9012", new Date());
+        ConditionalRequestCache cache = new ConditionalRequestCache();
+        createConditionalRequest(session, cache).parseNetworkResponse(
+                new NetworkResponse(200, "{}".getBytes(), false, 0,
+                        Collections.singletonList(new Header("ETag", "\"abcd\""))));
+        BearerJsonObjectRequest request = new BearerJsonObjectRequest(Request.Method.DELETE, "https://example.com",
+                null, session, GiniApiType.DEFAULT, null, null, retryPolicy);
+        request.setConditionalRequestCache(cache);
+
+        assertFalse(request.getHeaders().containsKey("If-None-Match"));
+    }
+
+    private BearerJsonObjectRequest createConditionalRequest(Session session, ConditionalRequestCache cache) {
+        BearerJsonObjectRequest request = new BearerJsonObjectRequest(Request.Method.GET, "https://example.com",
+                null, session, GiniApiType.DEFAULT, null, null, retryPolicy);
+        request.setConditionalRequestCache(cache);
+        return request;
+    }
 }
@@ -0,0 +1,307 @@
+package net.gini.android.helpers;
+
+import net.gini.android.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A local stand-in for the Gini API which implements the resumable upload protocol and the single request upload of
+ * documents. It can drop the connection in the middle of a chunk, reject the chunks of an upload and pretend to not
+ * support resumable uploads.
+ */
+public class ResumableUploadServer {
+
+    private final ServerSocket mServerSocket;
+    private final String mBaseUrl;
+    private final List<String> mRequests = new ArrayList<>();
+    private final Map<String, ByteArrayOutputStream> mUploads = new HashMap<>();
+    private final Map<String, Long> mUploadLengths = new HashMap<>();
+    private final List<byte[]> mSingleRequestUploads = new ArrayList<>();
+    private final Set<String> mRejectedUploads = new HashSet<>();
+    private boolean mResumableUploadsSupported = true;
+    private long mDropConnectionAfterBytes = -1;
+    private int mNextUploadId = 1;
+
+    public ResumableUploadServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mBaseUrl = "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/";
+        final Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "ResumableUploadServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public String getBaseUrl() {
+        return mBaseUrl;
+    }
+
+    public synchronized void setResumableUploadsSupported(final boolean supported) {
+        mResumableUploadsSupported = supported;
+    }
+
+    /**
+     * Closes the connection of the next chunk after the given number of bytes were received. The received bytes are
+     * kept.
+     */
+    public synchronized void dropNextChunkAfter(final long bytes) {
+        mDropConnectionAfterBytes = bytes;
+    }
+
+    /**
+     * Answers the chunks of the upload with 403, as if it belonged to another user.
+     */
+    public synchronized void rejectChunksOf(final String uploadId) {
+        mRejectedUploads.add(uploadId);
+    }
+
+    /**
+     * @return The method and path of each request, e.g. {@code "PATCH /uploads/1"}.
+     */
+    public synchronized List<String> getRequests() {
+        return new ArrayList<>(mRequests);
+    }
+
+    /**
+     * @return The data of a resumable upload received so far.
+     */
+    public synchronized byte[] getUploadedData(final String uploadId) {
+        final ByteArrayOutputStream upload = mUploads.get(uploadId);
+        return upload != null ? upload.toByteArray() : null;
+    }
+
+    public synchronized List<byte[]> getSingleRequestUploads() {
+        return new ArrayList<>(mSingleRequestUploads);
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            final Thread connectionThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException ignored) {
+                    } finally {
+                        try {
+                            socket.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            });
+            connectionThread.setDaemon(true);
+            connectionThread.start();
+        }
+    }
+
+    private void serve(final Socket socket) throws IOException {
+        final InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+        final OutputStream outputStream = socket.getOutputStream();
+        while (true) {
+            final String requestLine = readLine(inputStream);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return;
+            }
+            final String[] parts = requestLine.split(" ");
+            final Map<String, String> headers = new HashMap<>();
+            String line;
+            while ((line = readLine(inputStream)) != null && !line.isEmpty()) {
+                final int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+            String method = parts[0];
+            if (headers.containsKey("x-http-method-override")) {
+                method = headers.get("x-http-method-override");
+            }
+            final String path = parts[1].split("\\?")[0];
+            synchronized (this) {
+                mRequests.add(method + " " + path);
+            }
+            if (!respond(method, path, headers, inputStream, outputStream)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Whether the connection can be kept open.
+     */
+    private boolean respond(final String method, final String path, final Map<String, String> headers,
+            final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final long contentLength = headers.containsKey("content-length")
+                ? Long.parseLong(headers.get("content-length")) : 0;
+        if ("POST".equals(method) && path.equals("/documents/uploads/")) {
+            readBody(inputStream, contentLength);
+            final String uploadId;
+            synchronized (this) {
+                if (!mResumableUploadsSupported) {
+                    writeResponse(outputStream, 404, "Not Found", new LinkedHashMap<String, String>());
+                    return true;
+                }
+                uploadId = String.valueOf(mNextUploadId++);
+                mUploads.put(uploadId, new ByteArrayOutputStream());
+                mUploadLengths.put(uploadId, Long.parseLong(headers.get("upload-length")));
+            }
+            final Map<String, String> responseHeaders = new LinkedHashMap<>();
+            responseHeaders.put("Tus-Resumable", "1.0.0");
+            responseHeaders.put("Location", mBaseUrl + "uploads/" + uploadId);
+            writeResponse(outputStream, 201, "Created", responseHeaders);
+            return true;
+        } else if ("POST".equals(method) && path.equals("/documents/")) {
+            final byte[] body = readBody(inputStream, contentLength);
+            synchronized (this) {
+                mSingleRequestUploads.add(body);
+            }
+            final Map<String, String> responseHeaders = new LinkedHashMap<>();
+            responseHeaders.put("Location", mBaseUrl + "documents/single");
+            writeResponse(outputStream, 201, "Created", responseHeaders);
+            return true;
+        } else if (path.startsWith("/uploads/")) {
+            final String uploadId = path.substring("/uploads/".length());
+            if ("PATCH".equals(method)) {
+                return receiveChunk(uploadId, Long.parseLong(headers.get("upload-offset")), contentLength,
+                        inputStream, outputStream);
+            } else if ("HEAD".equals(method)) {
+                final Map<String, String> responseHeaders = getUploadHeaders(uploadId);
+                if (responseHeaders == null) {
+                    writeResponse(outputStream, 404, "Not Found", new LinkedHashMap<String, String>());
+                } else {
+                    writeResponse(outputStream, 200, "OK", responseHeaders);
+                }
+                return true;
+            }
+        }
+        readBody(inputStream, contentLength);
+        writeResponse(outputStream, 405, "Method Not Allowed", new LinkedHashMap<String, String>());
+        return true;
+    }
+
+    private boolean receiveChunk(final String uploadId, final long offset, final long contentLength,
+            final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final long dropAfter;
+        final ByteArrayOutputStream upload;
+        final boolean rejected;
+        synchronized (this) {
+            upload = mUploads.get(uploadId);
+            rejected = mRejectedUploads.contains(uploadId);
+            dropAfter = mDropConnectionAfterBytes;
+            mDropConnectionAfterBytes = -1;
+        }
+        if (rejected) {
+            readBody(inputStream, contentLength);
+            writeResponse(outputStream, 403, "Forbidden", new LinkedHashMap<String, String>());
+            return true;
+        }
+        if (upload == null) {
+            readBody(inputStream, contentLength);
+            writeResponse(outputStream, 404, "Not Found", new LinkedHashMap<String, String>());
+            return true;
+        }
+        if (offset != upload.size()) {
+            readBody(inputStream, contentLength);
+            writeResponse(outputStream, 409, "Conflict", new LinkedHashMap<String, String>());
+            return true;
+        }
+        if (dropAfter >= 0 && dropAfter < contentLength) {
+            final byte[] received = readBody(inputStream, dropAfter);
+            synchronized (this) {
+                upload.write(received, 0, received.length);
+            }
+            return false;
+        }
+        final byte[] chunk = readBody(inputStream, contentLength);
+        synchronized (this) {
+            upload.write(chunk, 0, chunk.length);
+        }
+        writeResponse(outputStream, 204, "No Content", getUploadHeaders(uploadId));
+        return true;
+    }
+
+    private synchronized Map<String, String> getUploadHeaders(final String uploadId) {
+        final ByteArrayOutputStream upload = mUploads.get(uploadId);
+        if (upload == null) {
+            return null;
+        }
+        final long length = mUploadLengths.get(uploadId);
+        final Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Tus-Resumable", "1.0.0");
+        headers.put("Upload-Offset", String.valueOf(upload.size()));
+        headers.put("Upload-Length", String.valueOf(length));
+        if (upload.size() == length) {
+            headers.put("Location", mBaseUrl + "documents/" + uploadId);
+        }
+        return headers;
+    }
+
+    private static void writeResponse(final OutputStream outputStream, final int statusCode,
+            final String reasonPhrase, final Map<String, String> headers) throws IOException {
+        final StringBuilder response = new StringBuilder();
+        response.append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase).append("\r\n");
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            response.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (statusCode != 204) {
+            response.append("Content-Length: 0\r\n");
+        }
+        response.append("\r\n");
+        outputStream.write(response.toString().getBytes(Utils.CHARSET_UTF8));
+        outputStream.flush();
+    }
+
+    private static byte[] readBody(final InputStream inputStream, final long length) throws IOException {
+        final byte[] body = new byte[(int) length];
+        int offset = 0;
+        while (offset < body.length) {
+            final int read = inputStream.read(body, offset, body.length - offset);
+            if (read == -1) {
+                throw new IOException("The connection was closed");
+            }
+            offset += read;
+        }
+        return body;
+    }
+
+    private static String readLine(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = inputStream.read()) != -1) {
+            if (read == '\n') {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1
+                        : bytes.length;
+                return new String(bytes, 0, length, Utils.CHARSET_UTF8);
+            }
+            line.write(read);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package net.gini.android.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Header;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+
+import net.gini.android.GiniApiType;
+import net.gini.android.authorization.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.Date;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class BearerParsedRequestTest {
+
+    private Session mSession;
+    private ConditionalRequestCache mCache;
+
+    @Before
+    public void setUp() {
+        mSession = new Session("1234-5678-9012", new Date());
+        mCache = new ConditionalRequestCache();
+    }
+
+    @Test
+    public void testParserIdsAreUniquePerInstance() {
+        final StringParser first = new StringParser();
+        final StringParser second = new StringParser();
+
+        assertEquals(BearerParsedRequest.getParserId(first), BearerParsedRequest.getParserId(first));
+        assertNotEquals(BearerParsedRequest.getParserId(first), BearerParsedRequest.getParserId(second));
+    }
+
+    @Test
+    public void testNotModifiedResponseReturnsResultOfTheSameParser() {
+        final StringParser parser = new StringParser();
+        final Response<String> firstResponse = createRequest(parser).parseNetworkResponse(createOkResponse());
+
+        final Response<String> secondResponse = createRequest(parser).parseNetworkResponse(createNotModifiedResponse());
+
+        assertTrue(secondResponse.isSuccess());
+        assertSame(firstResponse.result, secondResponse.result);
+    }
+
+    @Test
+    public void testNotModifiedResponseIsNotReturnedToOtherParsers() {
+        createRequest(new StringParser()).parseNetworkResponse(createOkResponse());
+
+        final Response<Integer> response = createRequest(new BearerParsedRequest.ResponseParser<Integer>() {
+            @Override
+            public Integer parse(@NonNull final byte[] data) {
+                return data.length;
+            }
+        }).parseNetworkResponse(createNotModifiedResponse());
+
+        assertFalse(response.isSuccess());
+        assertTrue(response.error instanceof ParseError);
+    }
+
+    private <T> BearerParsedRequest<T> createRequest(final BearerParsedRequest.ResponseParser<T> parser) {
+        final BearerParsedRequest<T> request = new BearerParsedRequest<>(Request.Method.GET, "https://example.com",
+                mSession, GiniApiType.DEFAULT, parser, null, null, new DefaultRetryPolicy());
+        request.setConditionalRequestCache(mCache);
+        return request;
+    }
+
+    private static NetworkResponse createOkResponse() {
+        return new NetworkResponse(200, "{\"id\": \"1234\"}".getBytes(), false, 0,
+                Collections.singletonList(new Header("ETag", "\"abcd\"")));
+    }
+
+    private static NetworkResponse createNotModifiedResponse() {
+        return new NetworkResponse(304, null, true, 0, Collections.singletonList(new Header("ETag", "\"abcd\"")));
+    }
+
+    private static class StringParser implements BearerParsedRequest.ResponseParser<String> {
+
+        @Override
+        public String parse(@NonNull final byte[] data) {
+            return new String(data);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package net.gini.android.requests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RequestLaneDispatcherTest {
+
+    private RequestQueue mRequestQueue;
+    private RequestLaneDispatcher mDispatcher;
+    private RequestQueue.RequestFinishedListener<Object> mRequestFinishedListener;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        mRequestQueue = Mockito.mock(RequestQueue.class);
+        final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits();
+        limits.put(RequestLane.BACKGROUND, 1);
+        mDispatcher = new RequestLaneDispatcher(mRequestQueue, limits);
+
+        final ArgumentCaptor<RequestQueue.RequestFinishedListener> listenerCaptor =
+                ArgumentCaptor.forClass(RequestQueue.RequestFinishedListener.class);
+        verify(mRequestQueue).addRequestFinishedListener(listenerCaptor.capture());
+        mRequestFinishedListener = listenerCaptor.getValue();
+    }
+
+    private Request<String> createRequest() {
+        return new StringRequest(Request.Method.GET, "https://example.com", null, null);
+    }
+
+    @Test
+    public void testRequestsExceedingTheLimitWaitForFinishedRequests() {
+        final Request<String> firstRequest = createRequest();
+        final Request<String> secondRequest = createRequest();
+
+        mDispatcher.add(firstRequest, RequestLane.BACKGROUND);
+        mDispatcher.add(secondRequest, RequestLane.BACKGROUND);
+
+        verify(mRequestQueue).add(firstRequest);
+        verify(mRequestQueue, never()).add(secondRequest);
+
+        mRequestFinishedListener.onRequestFinished((Request) firstRequest);
+
+        verify(mRequestQueue).add(secondRequest);
+    }
+
+    @Test
+    public void testCancelledWaitingRequestsAreDropped() {
+        final Request<String> firstRequest = createRequest();
+        final Request<String> secondRequest = createRequest();
+        final Request<String> thirdRequest = createRequest();
+
+        mDispatcher.add(firstRequest, RequestLane.BACKGROUND);
+        mDispatcher.add(secondRequest, RequestLane.BACKGROUND);
+        mDispatcher.add(thirdRequest, RequestLane.BACKGROUND);
+        secondRequest.cancel();
+
+        mRequestFinishedListener.onRequestFinished((Request) firstRequest);
+
+        verify(mRequestQueue, never()).add(secondRequest);
+        verify(mRequestQueue).add(thirdRequest);
+    }
+
+    @Test
+    public void testLimitsDoNotAffectOtherLanes() {
+        mDispatcher.add(createRequest(), RequestLane.BACKGROUND);
+        final Request<String> interactiveRequest = createRequest();
+
+        mDispatcher.add(interactiveRequest, RequestLane.INTERACTIVE);
+
+        verify(mRequestQueue).add(interactiveRequest);
+    }
+
+    @Test
+    public void testRequestsExceedingTheWaitingBoundAreRejected() {
+        final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits();
+        limits.put(RequestLane.BACKGROUND, 1);
+        final RequestLaneDispatcher dispatcher = new RequestLaneDispatcher(mRequestQueue, limits, 1);
+        final VolleyError[] errors = new VolleyError[1];
+        final Request<String> rejectedRequest = new StringRequest(Request.Method.GET, "https://example.com", null,
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(final VolleyError error) {
+                        errors[0] = error;
+                    }
+                });
+
+        dispatcher.add(createRequest(), RequestLane.BACKGROUND);
+        dispatcher.add(createRequest(), RequestLane.BACKGROUND);
+        dispatcher.add(rejectedRequest, RequestLane.BACKGROUND);
+
+        verify(mRequestQueue, never()).add(rejectedRequest);
+        assertTrue(errors[0] instanceof RejectedRequestError);
+    }
+
+    @Test
+    public void testFinishedCallbackRunsOnceWhenTheRequestFinished() {
+        final AtomicInteger callbacks = new AtomicInteger();
+        final Request<String> request = createRequest();
+
+        mDispatcher.add(request, RequestLane.BACKGROUND, new CountingCallback(callbacks));
+        assertEquals(0, callbacks.get());
+
+        mRequestFinishedListener.onRequestFinished((Request) request);
+        mRequestFinishedListener.onRequestFinished((Request) request);
+
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void testFinishedCallbackRunsForCancelledWaitingRequests() {
+        final AtomicInteger callbacks = new AtomicInteger();
+        final Request<String> firstRequest = createRequest();
+        final Request<String> cancelledRequest = createRequest();
+
+        mDispatcher.add(firstRequest, RequestLane.BACKGROUND);
+        mDispatcher.add(cancelledRequest, RequestLane.BACKGROUND, new CountingCallback(callbacks));
+        cancelledRequest.cancel();
+        mRequestFinishedListener.onRequestFinished((Request) firstRequest);
+
+        verify(mRequestQueue, never()).add(cancelledRequest);
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test
+    public void testFinishedCallbackRunsForRejectedRequests() {
+        final AtomicInteger callbacks = new AtomicInteger();
+        final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits();
+        limits.put(RequestLane.BACKGROUND, 1);
+        final RequestLaneDispatcher dispatcher = new RequestLaneDispatcher(mRequestQueue, limits, 0);
+        final Request<String> rejectedRequest = new StringRequest(Request.Method.GET, "https://example.com", null,
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(final VolleyError error) {
+                    }
+                });
+
+        dispatcher.add(createRequest(), RequestLane.BACKGROUND);
+        dispatcher.add(rejectedRequest, RequestLane.BACKGROUND, new CountingCallback(callbacks));
+
+        assertEquals(1, callbacks.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLimitMustBePositive() {
+        final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits();
+        limits.put(RequestLane.NORMAL, 0);
+        new RequestLaneDispatcher(mRequestQueue, limits);
+    }
+
+    @Test
+    public void testDefaultLimitsReserveAThreadForInteractiveRequests() {
+        for (int threadPoolSize = RequestLaneDispatcher.MIN_THREAD_POOL_SIZE; threadPoolSize <= 10; threadPoolSize++) {
+            final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits(threadPoolSize);
+
+            assertEquals(RequestLaneDispatcher.UNLIMITED, (int) limits.get(RequestLane.INTERACTIVE));
+            assertTrue(limits.get(RequestLane.BACKGROUND) >= 1);
+            assertTrue(limits.get(RequestLane.NORMAL) >= limits.get(RequestLane.BACKGROUND));
+            assertEquals(threadPoolSize - 1,
+                    limits.get(RequestLane.NORMAL) + limits.get(RequestLane.BACKGROUND));
+        }
+    }
+
+    @Test
+    public void testDefaultLimitsNeedAThreadForEachLane() {
+        for (int threadPoolSize = 1; threadPoolSize < RequestLaneDispatcher.MIN_THREAD_POOL_SIZE; threadPoolSize++) {
+            try {
+                RequestLaneDispatcher.getDefaultConcurrencyLimits(threadPoolSize);
+                fail("IllegalArgumentException not thrown");
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void testInteractiveRequestsDoNotWaitForASaturatedThreadPool() throws Exception {
+        final int threadPoolSize = 4;
+        final CountDownLatch blockingRequestsReleased = new CountDownLatch(1);
+        final Network network = new Network() {
+            @Override
+            public NetworkResponse performRequest(final Request<?> request) throws VolleyError {
+                if (request.getUrl().contains("blocking")) {
+                    try {
+                        blockingRequestsReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new NetworkResponse(new byte[0]);
+            }
+        };
+        final RequestQueue requestQueue = new RequestQueue(new NoCache(), network, threadPoolSize,
+                new ExecutorDelivery(Executors.newSingleThreadExecutor()));
+        requestQueue.start();
+        try {
+            final RequestLaneDispatcher dispatcher = new RequestLaneDispatcher(requestQueue,
+                    RequestLaneDispatcher.getDefaultConcurrencyLimits(threadPoolSize));
+            for (int i = 0; i < threadPoolSize * 2; i++) {
+                dispatcher.add(createRequest("https://example.com/blocking"), RequestLane.NORMAL);
+                dispatcher.add(createRequest("https://example.com/blocking"), RequestLane.BACKGROUND);
+            }
+            final CountDownLatch interactiveRequestFinished = new CountDownLatch(1);
+            final Request<String> interactiveRequest = new StringRequest(Request.Method.GET,
+                    "https://example.com/interactive", new Response.Listener<String>() {
+                        @Override
+                        public void onResponse(final String response) {
+                            interactiveRequestFinished.countDown();
+                        }
+                    }, null);
+
+            dispatcher.add(interactiveRequest, RequestLane.INTERACTIVE);
+
+            assertTrue(interactiveRequestFinished.await(5, TimeUnit.SECONDS));
+        } finally {
+            blockingRequestsReleased.countDown();
+            requestQueue.stop();
+        }
+    }
+
+    private Request<String> createRequest(final String url) {
+        return new StringRequest(Request.Method.GET, url, null, null);
+    }
+
+    private static class CountingCallback implements Runnable {
+
+        private final AtomicInteger mCount;
+
+        CountingCallback(final AtomicInteger count) {
+            mCount = count;
+        }
+
+        @Override
+        public void run() {
+            mCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gini.android.models.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link PollingPolicy} implementation that learns the processing times of documents.
+ * <p>
+ * The processing times are tracked as exponentially weighted moving averages of their mean and mean deviation for
+ * each source classification and page count range. Around the expected processing time the document is polled every
+ * {@code minDelayMs} milliseconds. Before that it is polled sparsely and afterwards the delays grow with the time the
+ * document is overdue. All delays except the minimal ones are randomized to spread out the requests of documents
+ * which were uploaded together.
+ * <p>
+ * Until processing times were observed for a kind of document it is polled every {@code minDelayMs} milliseconds.
+ */
+public class AdaptivePollingPolicy implements PollingPolicy {
+
+    /**
+     * The weight of a new processing time in the moving averages.
+     */
+    static final double SMOOTHING_FACTOR = 0.2;
+
+    /**
+     * The relative amount by which the delays are randomized.
+     */
+    static final double JITTER = 0.2;
+
+    private final long mMinDelayMs;
+    private final long mMaxDelayMs;
+    private final Random mRandom;
+    private final Map<String, Estimate> mEstimates = new HashMap<>();
+
+    /**
+     * Creates a policy using {@link DocumentTaskManager#POLLING_INTERVAL} as the minimal and ten times that as the
+     * maximal delay.
+     */
+    public AdaptivePollingPolicy() {
+        this(DocumentTaskManager.POLLING_INTERVAL, 10 * DocumentTaskManager.POLLING_INTERVAL);
+    }
+
+    /**
+     * @param minDelayMs The minimal delay between two requests in milliseconds.
+     * @param maxDelayMs The maximal delay between two requests in milliseconds.
+     */
+    public AdaptivePollingPolicy(final long minDelayMs, final long maxDelayMs) {
+        this(minDelayMs, maxDelayMs, new Random());
+    }
+
+    AdaptivePollingPolicy(final long minDelayMs, final long maxDelayMs, @NonNull final Random random) {
+        if (minDelayMs < 0) {
+            throw new IllegalArgumentException("minDelayMs can't be less than 0");
+        } else if (maxDelayMs < minDelayMs) {
+            throw new IllegalArgumentException("maxDelayMs can't be less than minDelayMs");
+        }
+        mMinDelayMs = minDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mRandom = random;
+    }
+
+    @Override
+    public long getDelay(@NonNull final Document document, final int attempt, final long elapsedMs) {
+        final Estimate estimate = getEstimate(document);
+        if (estimate == null) {
+            return mMinDelayMs;
+        }
+        final long windowStart = (long) (estimate.mMean - estimate.mDeviation);
+        final long windowEnd = (long) (estimate.mMean + 2 * estimate.mDeviation);
+        if (elapsedMs < windowStart) {
+            // Skip ahead to the time the document is likely to be processed
+            return withJitter(windowStart - elapsedMs);
+        } else if (elapsedMs <= windowEnd) {
+            return mMinDelayMs;
+        }
+        // Back off in proportion to the time the document is overdue
+        return withJitter((elapsedMs - windowEnd) / 2);
+    }
+
+    @Override
+    public synchronized void onProcessed(@NonNull final Document document, final long processingTimeMs) {
+        final String key = getKey(document);
+        final Estimate estimate = mEstimates.get(key);
+        if (estimate == null) {
+            mEstimates.put(key, new Estimate(processingTimeMs));
+        } else {
+            estimate.add(processingTimeMs);
+        }
+    }
+
+    @Override
+    public long getExpectedProcessingTime(@NonNull final Document document) {
+        final Estimate estimate = getEstimate(document);
+        return estimate != null ? (long) estimate.mMean : -1;
+    }
+
+    @Nullable
+    private synchronized Estimate getEstimate(@NonNull final Document document) {
+        final Estimate estimate = mEstimates.get(getKey(document));
+        return estimate != null ? estimate.copy() : null;
+    }
+
+    private long withJitter(final long delayMs) {
+        final double factor;
+        synchronized (mRandom) {
+            factor = 1 + JITTER * (2 * mRandom.nextDouble() - 1);
+        }
+        return Math.max(mMinDelayMs, Math.min(mMaxDelayMs, (long) (delayMs * factor)));
+    }
+
+    @NonNull
+    private static String getKey(@NonNull final Document document) {
+        final int pageCount = document.getPageCount();
+        final String pageRange;
+        if (pageCount <= 1) {
+            pageRange = "1";
+        } else if (pageCount == 2) {
+            pageRange = "2";
+        } else if (pageCount <= 5) {
+            pageRange = "3-5";
+        } else {
+            pageRange = "6+";
+        }
+        return document.getSourceClassification() + "/" + pageRange;
+    }
+
+    private static class Estimate {
+
+        private double mMean;
+        private double mDeviation;
+
+        Estimate(final double processingTimeMs) {
+            mMean = processingTimeMs;
+            mDeviation = processingTimeMs / 2;
+        }
+
+        private Estimate(final double mean, final double deviation) {
+            mMean = mean;
+            mDeviation = deviation;
+        }
+
+        void add(final double processingTimeMs) {
+            mDeviation += SMOOTHING_FACTOR * (Math.abs(processingTimeMs - mMean) - mDeviation);
+            mMean += SMOOTHING_FACTOR * (processingTimeMs - mMean);
+        }
+
+        Estimate copy() {
+            return new Estimate(mMean, mDeviation);
+        }
+    }
+}
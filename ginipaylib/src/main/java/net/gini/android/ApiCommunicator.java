@@ -4,6 +4,7 @@ import static android.graphics.Bitmap.Config.ARGB_8888;
 
 import static com.android.volley.Request.Method.DELETE;
 import static com.android.volley.Request.Method.GET;
+import static com.android.volley.Request.Method.HEAD;
 import static com.android.volley.Request.Method.POST;
 import static com.android.volley.Request.Method.PUT;
 
@@ -12,8 +13,11 @@ import static net.gini.android.Utils.mapToUrlEncodedString;
 
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.util.Base64;
 
 import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.ImageRequest;
 import com.android.volley.toolbox.StringRequest;
@@ -23,9 +27,19 @@ import net.gini.android.authorization.requests.BearerByteArrayRequest;
 import net.gini.android.authorization.requests.BearerHeadersRequest;
 import net.gini.android.authorization.requests.BearerJsonArrayRequest;
 import net.gini.android.authorization.requests.BearerJsonObjectRequest;
+import net.gini.android.requests.BearerParsedRequest;
 import net.gini.android.requests.BearerUploadRequest;
+import net.gini.android.requests.CancellableRetryPolicy;
+import net.gini.android.requests.ConditionalRequestCache;
 import net.gini.android.requests.ErrorEvent;
+import net.gini.android.requests.LongPollRequest;
+import net.gini.android.requests.NoAuthFailureRetryPolicy;
+import net.gini.android.requests.RequestCancelledError;
+import net.gini.android.requests.RequestLane;
+import net.gini.android.requests.RequestLaneDispatcher;
+import net.gini.android.requests.ResumableUploadRequest;
 import net.gini.android.requests.RetryPolicyFactory;
+import net.gini.android.requests.UploadChunkRequest;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -34,9 +48,13 @@ import org.json.JSONObject;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import bolts.CancellationToken;
+import bolts.CancellationTokenRegistration;
+import bolts.Continuation;
 import bolts.Task;
 
 
@@ -48,20 +66,192 @@ import bolts.Task;
  */
 public class ApiCommunicator {
 
+    /**
+     * The client-side timeout of a long-polling request. It is longer than the time the Gini API holds the request
+     * open.
+     */
+    static final int LONG_POLL_TIMEOUT_MS = 60000;
+
+    private static final RequestCoalescer.ResultCopier<JSONObject> JSON_OBJECT_COPIER =
+            new RequestCoalescer.ResultCopier<JSONObject>() {
+                @Nullable
+                @Override
+                public JSONObject copy(@Nullable final JSONObject result) throws JSONException {
+                    return result != null ? new JSONObject(result.toString()) : null;
+                }
+            };
+
+    private static final RequestCoalescer.ResultCopier<JSONArray> JSON_ARRAY_COPIER =
+            new RequestCoalescer.ResultCopier<JSONArray>() {
+                @Nullable
+                @Override
+                public JSONArray copy(@Nullable final JSONArray result) throws JSONException {
+                    return result != null ? new JSONArray(result.toString()) : null;
+                }
+            };
+
+    private static final RequestCoalescer.ResultCopier<byte[]> BYTE_ARRAY_COPIER =
+            new RequestCoalescer.ResultCopier<byte[]>() {
+                @Nullable
+                @Override
+                public byte[] copy(@Nullable final byte[] result) {
+                    return result != null ? result.clone() : null;
+                }
+            };
+
+    /**
+     * Keeps the response body as it is. Used to cache and share the body of responses which every caller parses
+     * itself.
+     */
+    private static final BearerParsedRequest.ResponseParser<byte[]> RESPONSE_BODY_PARSER =
+            new BearerParsedRequest.ResponseParser<byte[]>() {
+                @Override
+                public byte[] parse(@NonNull final byte[] data) {
+                    return data;
+                }
+            };
+
     private final GiniApiType mGiniApiType;
     private final Uri mBaseUri;
     final RequestQueue mRequestQueue; // Visible for testing
     // Visible for testing
     final RetryPolicyFactory mRetryPolicyFactory;
+    private final RequestLaneDispatcher mRequestLaneDispatcher;
+    @Nullable
+    private final RequestLane mRequestLane;
+    private final RequestCoalescer mRequestCoalescer;
+    private final boolean mRequestCoalescingEnabled;
+    private final ConditionalRequestCache mConditionalRequestCache;
+    @Nullable
+    private final CancellationToken mCancellationToken;
+    @Nullable
+    private volatile ResumableUploader mResumableUploader;
 
     public ApiCommunicator(final String baseUriString,
             final GiniApiType giniApiType,
             final RequestQueue mRequestQueue,
                            final RetryPolicyFactory retryPolicyFactory) {
+        this(baseUriString, giniApiType, new RequestLaneDispatcher(checkNotNull(mRequestQueue)), retryPolicyFactory);
+    }
+
+    /**
+     * @param requestLaneDispatcher The dispatcher which adds the requests to its request queue. Share it with the
+     *                              {@link net.gini.android.authorization.UserCenterAPICommunicator} to apply the
+     *                              concurrency limits of the lanes to all requests.
+     */
+    public ApiCommunicator(final String baseUriString,
+            final GiniApiType giniApiType,
+            final RequestLaneDispatcher requestLaneDispatcher,
+            final RetryPolicyFactory retryPolicyFactory) {
+        this(baseUriString, giniApiType, requestLaneDispatcher, retryPolicyFactory, new ConditionalRequestCache());
+    }
+
+    /**
+     * @param conditionalRequestCache The cache used to send GET requests conditionally. Responses which were not
+     *                                modified are not downloaded and parsed again.
+     */
+    public ApiCommunicator(final String baseUriString,
+            final GiniApiType giniApiType,
+            final RequestLaneDispatcher requestLaneDispatcher,
+            final RetryPolicyFactory retryPolicyFactory,
+            final ConditionalRequestCache conditionalRequestCache) {
         this.mRetryPolicyFactory = retryPolicyFactory;
         this.mGiniApiType = giniApiType;
         mBaseUri = getBaseUri(baseUriString, giniApiType);
-        this.mRequestQueue = checkNotNull(mRequestQueue);
+        mRequestLaneDispatcher = checkNotNull(requestLaneDispatcher);
+        this.mRequestQueue = requestLaneDispatcher.getRequestQueue();
+        mRequestLane = null;
+        mRequestCoalescer = new RequestCoalescer();
+        mRequestCoalescingEnabled = true;
+        mConditionalRequestCache = checkNotNull(conditionalRequestCache);
+        mCancellationToken = null;
+    }
+
+    private ApiCommunicator(@NonNull final ApiCommunicator apiCommunicator, @Nullable final RequestLane requestLane,
+            final boolean requestCoalescingEnabled) {
+        this(apiCommunicator, requestLane, requestCoalescingEnabled, apiCommunicator.mCancellationToken);
+    }
+
+    private ApiCommunicator(@NonNull final ApiCommunicator apiCommunicator, @Nullable final RequestLane requestLane,
+            final boolean requestCoalescingEnabled, @Nullable final CancellationToken cancellationToken) {
+        mRetryPolicyFactory = apiCommunicator.mRetryPolicyFactory;
+        mGiniApiType = apiCommunicator.mGiniApiType;
+        mBaseUri = apiCommunicator.mBaseUri;
+        mRequestLaneDispatcher = apiCommunicator.mRequestLaneDispatcher;
+        mRequestQueue = apiCommunicator.mRequestQueue;
+        mRequestLane = requestLane;
+        mRequestCoalescer = apiCommunicator.mRequestCoalescer;
+        mRequestCoalescingEnabled = requestCoalescingEnabled;
+        mConditionalRequestCache = apiCommunicator.mConditionalRequestCache;
+        mCancellationToken = cancellationToken;
+        mResumableUploader = apiCommunicator.mResumableUploader;
+    }
+
+    /**
+     * Returns an ApiCommunicator which dispatches all its requests in the given lane. By default each request is
+     * dispatched in the lane matching its purpose: payment and extraction requests are interactive, uploads and page
+     * images are background requests and all other requests are normal ones.
+     *
+     * @param requestLane The lane used for all requests.
+     * @return An ApiCommunicator sharing the configuration and the request queue of this instance.
+     */
+    public ApiCommunicator withRequestLane(@NonNull final RequestLane requestLane) {
+        return new ApiCommunicator(this, checkNotNull(requestLane), mRequestCoalescingEnabled);
+    }
+
+    /**
+     * Returns an ApiCommunicator which always sends its GET requests to the network. By default a GET request is not
+     * sent, if an identical request is in flight. The callers share the result of the request in flight instead.
+     *
+     * @return An ApiCommunicator sharing the configuration and the request queue of this instance.
+     */
+    public ApiCommunicator withoutRequestCoalescing() {
+        return new ApiCommunicator(this, mRequestLane, false);
+    }
+
+    /**
+     * Returns an ApiCommunicator whose requests are cancelled when the token is cancelled. Requests created after the
+     * cancellation are cancelled before they are sent. A cancelled request is not retried and its task is cancelled.
+     * <p>
+     * Its GET requests are not coalesced, so that cancelling them does not affect other callers.
+     *
+     * @param cancellationToken The token which cancels the requests.
+     * @return An ApiCommunicator sharing the configuration and the request queue of this instance.
+     */
+    public ApiCommunicator withCancellationToken(@NonNull final CancellationToken cancellationToken) {
+        return new ApiCommunicator(this, mRequestLane, false, checkNotNull(cancellationToken));
+    }
+
+    /**
+     * Returns an ApiCommunicator whose requests are not cancelled by the cancellation token of this instance, e.g. to
+     * clean up after a cancelled call.
+     *
+     * @return An ApiCommunicator sharing the configuration and the request queue of this instance.
+     */
+    ApiCommunicator withoutCancellationToken() {
+        return new ApiCommunicator(this, mRequestLane, mRequestCoalescingEnabled, null);
+    }
+
+    /**
+     * Sets the uploader which sends documents larger than its chunk size in chunks. Instances created with
+     * {@link #withRequestLane(RequestLane)} and the other copying methods keep the uploader set at that time.
+     *
+     * @param resumableUploader The resumable uploader or null to upload all documents in one request.
+     */
+    void setResumableUploader(@Nullable final ResumableUploader resumableUploader) {
+        mResumableUploader = resumableUploader;
+    }
+
+    @NonNull
+    GiniApiType getGiniApiType() {
+        return mGiniApiType;
+    }
+
+    /**
+     * @return The cache of the GET responses. Its hit and miss counts show how many responses were not modified.
+     */
+    public ConditionalRequestCache getConditionalRequestCache() {
+        return mConditionalRequestCache;
     }
 
     private Uri getBaseUri(final String baseUriString, final GiniApiType giniApiType) {
@@ -75,7 +265,103 @@ public class ApiCommunicator {
     public Task<Uri> uploadDocument(final byte[] documentData, final String contentType,
                                     @Nullable final String documentName, @Nullable final String docTypeHint,
                                     final Session session, @Nullable final DocumentMetadata documentMetadata) {
+        return uploadDocument(UploadSource.fromBytes(checkNotNull(documentData)), contentType, documentName,
+                docTypeHint, session, documentMetadata);
+    }
+
+    /**
+     * Uploads a document whose data is streamed from the given source. The source is opened for each attempt and
+     * its data is never held in memory as a whole.
+     * <p>
+     * If resumable uploads were enabled with {@link GiniBuilder#setResumableUploadChunkSize(long)}, documents larger
+     * than the chunk size are sent in chunks. A failed chunk is sent again from the last byte the server received.
+     * <p>
+     * Uploads sent in one request are not retried after a 401 or 403, because a retry would send the body again with
+     * the same access token.
+     */
+    public Task<Uri> uploadDocument(final UploadSource uploadSource, final String contentType,
+                                    @Nullable final String documentName, @Nullable final String docTypeHint,
+                                    final Session session, @Nullable final DocumentMetadata documentMetadata) {
+        final ResumableUploader resumableUploader = mResumableUploader;
+        if (resumableUploader != null && resumableUploader.shouldUpload(checkNotNull(uploadSource))) {
+            return resumableUploader.upload(this, uploadSource, checkNotNull(contentType), documentName,
+                    docTypeHint, checkNotNull(session), documentMetadata);
+        }
+        return uploadDocumentInOneRequest(uploadSource, contentType, documentName, docTypeHint, session,
+                documentMetadata);
+    }
+
+    Task<Uri> uploadDocumentInOneRequest(final UploadSource uploadSource, final String contentType,
+            @Nullable final String documentName, @Nullable final String docTypeHint,
+            final Session session, @Nullable final DocumentMetadata documentMetadata) {
+        final String url = mBaseUri.buildUpon().path("documents/")
+                .encodedQuery(getUploadQuery(documentName, docTypeHint)).toString();
+        final RequestTaskCompletionSource<Uri> completionSource = RequestTaskCompletionSource.newCompletionSource();
+        final BearerUploadRequest request =
+                new BearerUploadRequest(POST, url, checkNotNull(uploadSource), checkNotNull(contentType), session,
+                        mGiniApiType, completionSource, completionSource,
+                        new NoAuthFailureRetryPolicy(mRetryPolicyFactory.newRetryPolicy()),
+                        getMetadataHeaders(documentMetadata));
+        addRequest(request, RequestLane.BACKGROUND);
+
+        return completionSource.getTask();
+    }
+
+    /**
+     * Announces a resumable upload. The response contains the Uri of the upload in its {@code Location} header.
+     */
+    Task<Map<String, String>> createResumableUpload(final long contentLength, @NonNull final String contentType,
+            @Nullable final String documentName, @Nullable final String docTypeHint, @NonNull final Session session,
+            @Nullable final DocumentMetadata documentMetadata) {
+        final String url = mBaseUri.buildUpon().path("documents/uploads/")
+                .encodedQuery(getUploadQuery(documentName, docTypeHint)).toString();
+        final HashMap<String, String> headers = new HashMap<>(getMetadataHeaders(documentMetadata));
+        headers.put(ResumableUploader.TUS_RESUMABLE_HEADER, ResumableUploader.TUS_VERSION);
+        headers.put(ResumableUploader.UPLOAD_LENGTH_HEADER, String.valueOf(contentLength));
+        headers.put(ResumableUploader.UPLOAD_METADATA_HEADER, "contentType "
+                + Base64.encodeToString(contentType.getBytes(Utils.CHARSET_UTF8), Base64.NO_WRAP));
+        final RequestTaskCompletionSource<Map<String, String>> completionSource =
+                RequestTaskCompletionSource.newCompletionSource();
+        addRequest(new ResumableUploadRequest(POST, url, session, headers, completionSource, completionSource,
+                mRetryPolicyFactory.newRetryPolicy()), RequestLane.BACKGROUND);
+        return completionSource.getTask();
+    }
+
+    /**
+     * Sends a chunk of a resumable upload. The response contains the new offset in its {@code Upload-Offset} header
+     * and, after the last chunk, the Uri of the created document in its {@code Location} header.
+     */
+    Task<Map<String, String>> uploadResumableChunk(@NonNull final Uri uploadUri, final long offset,
+            @NonNull final UploadSource chunk, @NonNull final Session session) {
+        final HashMap<String, String> headers = new HashMap<>();
+        headers.put(ResumableUploader.TUS_RESUMABLE_HEADER, ResumableUploader.TUS_VERSION);
+        headers.put(ResumableUploader.UPLOAD_OFFSET_HEADER, String.valueOf(offset));
+        // HttpURLConnection does not support PATCH
+        headers.put(ResumableUploader.METHOD_OVERRIDE_HEADER, "PATCH");
+        final RequestTaskCompletionSource<Map<String, String>> completionSource =
+                RequestTaskCompletionSource.newCompletionSource();
+        addRequest(new UploadChunkRequest(POST, uriRelativeToBaseUri(uploadUri).toString(), checkNotNull(chunk),
+                session, headers, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy()),
+                RequestLane.BACKGROUND);
+        return completionSource.getTask();
+    }
+
+    /**
+     * Requests the state of a resumable upload. The response contains the number of bytes the server has received in
+     * its {@code Upload-Offset} header.
+     */
+    Task<Map<String, String>> getResumableUploadState(@NonNull final Uri uploadUri, @NonNull final Session session) {
+        final HashMap<String, String> headers = new HashMap<>();
+        headers.put(ResumableUploader.TUS_RESUMABLE_HEADER, ResumableUploader.TUS_VERSION);
+        final RequestTaskCompletionSource<Map<String, String>> completionSource =
+                RequestTaskCompletionSource.newCompletionSource();
+        addRequest(new ResumableUploadRequest(HEAD, uriRelativeToBaseUri(uploadUri).toString(), session, headers,
+                completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy()), RequestLane.BACKGROUND);
+        return completionSource.getTask();
+    }
 
+    @NonNull
+    private static String getUploadQuery(@Nullable final String documentName, @Nullable final String docTypeHint) {
         final HashMap<String, String> requestQueryData = new HashMap<String, String>();
         if (documentName != null) {
             requestQueryData.put("filename", documentName);
@@ -83,22 +369,15 @@ public class ApiCommunicator {
         if (docTypeHint != null) {
             requestQueryData.put("doctype", docTypeHint);
         }
-        final String url = mBaseUri.buildUpon().path("documents/").encodedQuery(mapToUrlEncodedString(requestQueryData))
-                .toString();
-        final RequestTaskCompletionSource<Uri> completionSource = RequestTaskCompletionSource.newCompletionSource();
-        final Map<String, String> metadata;
+        return mapToUrlEncodedString(requestQueryData);
+    }
+
+    @NonNull
+    private static Map<String, String> getMetadataHeaders(@Nullable final DocumentMetadata documentMetadata) {
         if (documentMetadata != null) {
-            metadata = documentMetadata.getMetadata();
-        } else {
-            metadata = Collections.emptyMap();
+            return documentMetadata.getMetadata();
         }
-        final BearerUploadRequest request =
-                new BearerUploadRequest(POST, url, checkNotNull(documentData), checkNotNull(contentType), session,
-                        mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy(),
-                        metadata);
-        mRequestQueue.add(request);
-
-        return completionSource.getTask();
+        return Collections.emptyMap();
     }
 
     public Task<JSONObject> getDocument(final String documentId, final Session session) {
@@ -108,40 +387,108 @@ public class ApiCommunicator {
 
     public Task<JSONObject> getDocument(final Uri documentUri, final Session session) {
         final String url = uriRelativeToBaseUri(documentUri).toString();
-        return doRequestWithJsonResponse(url, GET, session);
+        return doRequestWithJsonResponse(url, GET, session, RequestLane.NORMAL);
     }
 
-    public Task<JSONObject> getExtractions(final String documentId, final Session session) {
-        final String url = mBaseUri.buildUpon().path(String.format("documents/%s/extractions",
-                                                                   checkNotNull(documentId))).toString();
+    /**
+     * Long-polls the processing state of a document. The Gini API holds the request open until the document has been
+     * processed or until a server-side timeout expires. The request is dispatched in the
+     * {@link RequestLane#BACKGROUND} lane and its connection is closed, if it is cancelled.
+     *
+     * @param documentId The id of a document.
+     * @param session    A valid session for the Gini API.
+     * @return A Task which will resolve to the JSON response of the Gini API or to null, if the server-side timeout
+     * expired without a response body. The document needs to be fetched again in that case.
+     */
+    public Task<JSONObject> waitForDocumentProcessed(final String documentId, final Session session) {
+        final String url = mBaseUri.buildUpon().path(String.format("documents/%s/processed",
+                checkNotNull(documentId))).toString();
         final RequestTaskCompletionSource<JSONObject> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
-        final BearerJsonObjectRequest request =
-                new BearerJsonObjectRequest(GET, url, null, checkNotNull(session), mGiniApiType,
-                        completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(request);
+        final LongPollRequest request = new LongPollRequest(url, checkNotNull(session), mGiniApiType,
+                completionSource, completionSource,
+                new DefaultRetryPolicy(LONG_POLL_TIMEOUT_MS, 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        // Held open for up to a minute, so it must not take one of the few slots of the normal lane
+        addRequest(request, RequestLane.BACKGROUND);
 
         return completionSource.getTask();
     }
 
-    public Task<JSONObject> getIncubatorExtractions(final String documentId, final Session session) {
+    public Task<JSONObject> getExtractions(final String documentId, final Session session) {
+        final String url = mBaseUri.buildUpon().path(String.format("documents/%s/extractions",
+                                                                   checkNotNull(documentId))).toString();
+        return coalesce(getCoalescingKey(url, checkNotNull(session), mGiniApiType.getGiniJsonMediaType()),
+                new RequestCoalescer.RequestFactory<JSONObject>() {
+                    @NonNull
+                    @Override
+                    public Task<JSONObject> newRequest() {
+                        final RequestTaskCompletionSource<JSONObject> completionSource =
+                                RequestTaskCompletionSource.newCompletionSource();
+                        final BearerJsonObjectRequest request =
+                                new BearerJsonObjectRequest(GET, url, null, session, mGiniApiType,
+                                        completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
+                        request.setConditionalRequestCache(mConditionalRequestCache);
+                        addRequest(request, RequestLane.INTERACTIVE);
+
+                        return completionSource.getTask();
+                    }
+                }, JSON_OBJECT_COPIER);
+    }
+
+    /**
+     * Gets the extractions of the document and parses them with the given parser. Identical requests in flight share
+     * one download and are sent conditionally, the response body of a {@code 304 Not Modified} is taken from the
+     * conditional request cache. Every caller parses its own copy of the response body, so the parsed extractions are
+     * not shared.
+     *
+     * @param documentId      The id of an existing document.
+     * @param session         A valid session for the Gini API.
+     * @param parsingExecutor The executor which runs the parser.
+     * @param responseParser  Creates the result from the response body.
+     * @return A Task which will resolve to the parsed extractions.
+     */
+    public <T> Task<T> getExtractions(final String documentId, final Session session,
+            final Executor parsingExecutor, final BearerParsedRequest.ResponseParser<T> responseParser) {
+        checkNotNull(parsingExecutor);
+        checkNotNull(responseParser);
         final String url = mBaseUri.buildUpon().path(String.format("documents/%s/extractions",
                 checkNotNull(documentId))).toString();
-        final RequestTaskCompletionSource<JSONObject> completionSource = RequestTaskCompletionSource
-                .newCompletionSource();
-        final BearerJsonObjectRequest request = new BearerJsonObjectRequest(GET, url, null, checkNotNull(session),
-                mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy()) {
-            @Override
-            public Map<String, String> getHeaders() throws AuthFailureError {
-                Map<String, String> headers = super.getHeaders();
-                // The incubator is discriminated from the "normal" extractions by the accept header.
-                headers.put("Accept", MediaTypes.GINI_JSON_INCUBATOR);
-                return headers;
-            }
-        };
-        mRequestQueue.add(request);
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), RESPONSE_BODY_PARSER,
+                BYTE_ARRAY_COPIER, RequestLane.INTERACTIVE)
+                .onSuccess(new Continuation<byte[], T>() {
+                    @Override
+                    public T then(final Task<byte[]> task) throws Exception {
+                        return responseParser.parse(task.getResult());
+                    }
+                }, parsingExecutor);
+    }
 
-        return completionSource.getTask();
+    public Task<JSONObject> getIncubatorExtractions(final String documentId, final Session session) {
+        final String url = mBaseUri.buildUpon().path(String.format("documents/%s/extractions",
+                checkNotNull(documentId))).toString();
+        return coalesce(getCoalescingKey(url, checkNotNull(session), MediaTypes.GINI_JSON_INCUBATOR),
+                new RequestCoalescer.RequestFactory<JSONObject>() {
+                    @NonNull
+                    @Override
+                    public Task<JSONObject> newRequest() {
+                        final RequestTaskCompletionSource<JSONObject> completionSource = RequestTaskCompletionSource
+                                .newCompletionSource();
+                        final BearerJsonObjectRequest request = new BearerJsonObjectRequest(GET, url, null, session,
+                                mGiniApiType, completionSource, completionSource,
+                                mRetryPolicyFactory.newRetryPolicy()) {
+                            @Override
+                            public Map<String, String> getHeaders() throws AuthFailureError {
+                                Map<String, String> headers = super.getHeaders();
+                                // The incubator is discriminated from the "normal" extractions by the accept header.
+                                headers.put("Accept", MediaTypes.GINI_JSON_INCUBATOR);
+                                return headers;
+                            }
+                        };
+                        addRequest(request, RequestLane.INTERACTIVE);
+
+                        return completionSource.getTask();
+                    }
+                }, JSON_OBJECT_COPIER);
     }
 
     public Task<String> deleteDocument(final String documentId, final Session session) {
@@ -155,9 +502,14 @@ public class ApiCommunicator {
                 headers.put("Authorization", "Bearer " + accessToken);
                 return headers;
             }
+
+            @Override
+            public Priority getPriority() {
+                return getRequestLane(RequestLane.NORMAL).getPriority();
+            }
         };
         request.setRetryPolicy(mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(request);
+        addRequest(request, RequestLane.NORMAL);
 
         return completionSource.getTask();
     }
@@ -172,9 +524,14 @@ public class ApiCommunicator {
                 headers.put("Authorization", "Bearer " + accessToken);
                 return headers;
             }
+
+            @Override
+            public Priority getPriority() {
+                return getRequestLane(RequestLane.NORMAL).getPriority();
+            }
         };
         request.setRetryPolicy(mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(request);
+        addRequest(request, RequestLane.NORMAL);
 
         return completionSource.getTask();
     }
@@ -186,7 +543,7 @@ public class ApiCommunicator {
         requestParams.put("description", description);
         final String url = mBaseUri.buildUpon().path("documents/" + checkNotNull(documentId) + "/errorreport")
                 .encodedQuery(mapToUrlEncodedString(requestParams)).toString();
-        return doRequestWithJsonResponse(url, POST, session);
+        return doRequestWithJsonResponse(url, POST, session, RequestLane.BACKGROUND);
     }
 
     public Task<JSONObject> sendFeedback(final String documentId, final JSONObject extractions, final Session session)
@@ -201,7 +558,7 @@ public class ApiCommunicator {
                 new BearerJsonObjectRequest(POST, url, requestData, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource,
                         mRetryPolicyFactory.newRetryPolicy(), mGiniApiType.getGiniJsonMediaType());
-        mRequestQueue.add(request);
+        addRequest(request, RequestLane.NORMAL);
 
         return completionSource.getTask();
     }
@@ -220,7 +577,7 @@ public class ApiCommunicator {
                 new BearerJsonObjectRequest(POST, url, requestData, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource,
                         mRetryPolicyFactory.newRetryPolicy(), mGiniApiType.getGiniJsonMediaType());
-        mRequestQueue.add(request);
+        addRequest(request, RequestLane.NORMAL);
 
         return completionSource.getTask();
     }
@@ -231,6 +588,8 @@ public class ApiCommunicator {
                 checkNotNull(documentId), pageNumber,
                 previewSize.getDimensions())).toString();
         final String accessToken = checkNotNull(session).getAccessToken();
+        // Not coalesced: callers may recycle or draw into the Bitmap, and copying it for every caller would cost
+        // as much memory as sending the requests again
         RequestTaskCompletionSource<Bitmap> completionSource = RequestTaskCompletionSource.newCompletionSource();
         final ImageRequest imageRequest = new ImageRequest(url, completionSource, 0, 0, ARGB_8888, completionSource) {
             @Override
@@ -240,9 +599,14 @@ public class ApiCommunicator {
                 headers.put("Accept", MediaTypes.IMAGE_JPEG);
                 return headers;
             }
+
+            @Override
+            public Priority getPriority() {
+                return getRequestLane(RequestLane.BACKGROUND).getPriority();
+            }
         };
         imageRequest.setRetryPolicy(mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(imageRequest);
+        addRequest(imageRequest, RequestLane.BACKGROUND);
 
         return completionSource.getTask();
     }
@@ -250,14 +614,14 @@ public class ApiCommunicator {
     public Task<JSONObject> getLayoutForDocument(final String documentId, final Session session) {
         final String url =
                 mBaseUri.buildUpon().path(String.format("/documents/%s/layout", checkNotNull(documentId))).toString();
-        return doRequestWithJsonResponse(url, GET, session);
+        return doRequestWithJsonResponse(url, GET, session, RequestLane.NORMAL);
     }
 
     public Task<JSONObject> getDocumentList(final int offset, final int limit, final Session session) {
         final String url = mBaseUri.buildUpon().path("/documents")
                 .appendQueryParameter("offset", Integer.toString(offset))
                 .appendQueryParameter("limit", Integer.toString(limit)).toString();
-        return doRequestWithJsonResponse(url, GET, session);
+        return doRequestWithJsonResponse(url, GET, session, RequestLane.NORMAL);
     }
 
     public Task<JSONObject> searchDocuments(final String searchTerm, @Nullable final String docType, final int offset,
@@ -268,63 +632,139 @@ public class ApiCommunicator {
         if (docType != null) {
             url.appendQueryParameter("docType", docType);
         }
-        return doRequestWithJsonResponse(url.toString(), GET, checkNotNull(session));
+        return doRequestWithJsonResponse(url.toString(), GET, checkNotNull(session), RequestLane.NORMAL);
     }
 
     public Task<JSONArray> getPaymentProviders(final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentProviders").toString();
 
-        return doRequestWithJsonArrayResponse(url, GET, checkNotNull(session));
+        return doRequestWithJsonArrayResponse(url, GET, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONObject> getPaymentProvider(final String id, final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentProviders/").appendPath(id).toString();
 
-        return doRequestWithJsonResponse(url, GET, checkNotNull(session));
+        return doRequestWithJsonResponse(url, GET, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONObject> postPaymentRequests(final JSONObject body, final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentRequests")
                 .toString();
 
-        return doRequestWithHeadersResponse(url, POST, body, checkNotNull(session));
+        return doRequestWithHeadersResponse(url, POST, body, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONObject> getPaymentRequest(final String id, final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).toString();
 
-        return doRequestWithJsonResponse(url, GET, checkNotNull(session));
+        return doRequestWithJsonResponse(url, GET, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONArray> getPaymentRequests(final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentRequests").toString();
 
-        return doRequestWithJsonArrayResponse(url, GET, checkNotNull(session));
+        return doRequestWithJsonArrayResponse(url, GET, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONObject> resolvePaymentRequests(final String id, final JSONObject body, final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).appendPath("payment")
                 .toString();
 
-        return doRequestWithBodyAndJsonResponse(url, POST, body, checkNotNull(session));
+        return doRequestWithBodyAndJsonResponse(url, POST, body, checkNotNull(session), RequestLane.INTERACTIVE);
     }
 
     public Task<JSONObject> getPayment(final String id, final Session session) {
         final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).appendPath("payment")
                 .toString();
 
-        return doRequestWithJsonResponse(url, GET, checkNotNull(session));
+        return doRequestWithJsonResponse(url, GET, checkNotNull(session), RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #getPaymentProviders(Session)}, but the response is parsed with the given parser on Volley's network
+     * thread. The parsed response is shared with callers of identical requests and must not be modified.
+     */
+    public <T> Task<T> getPaymentProviders(final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentProviders").toString();
+
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #getPaymentProvider(String, Session)}, but the response is parsed with the given parser on Volley's
+     * network thread. The parsed response is shared with callers of identical requests and must not be modified.
+     */
+    public <T> Task<T> getPaymentProvider(final String id, final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentProviders/").appendPath(id).toString();
+
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #getPaymentRequest(String, Session)}, but the response is parsed with the given parser on Volley's
+     * network thread. The parsed response is shared with callers of identical requests and must not be modified.
+     */
+    public <T> Task<T> getPaymentRequest(final String id, final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).toString();
+
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #getPaymentRequests(Session)}, but the response is parsed with the given parser on Volley's network
+     * thread. The parsed response is shared with callers of identical requests and must not be modified.
+     */
+    public <T> Task<T> getPaymentRequests(final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentRequests").toString();
+
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #resolvePaymentRequests(String, JSONObject, Session)}, but the body is sent as it is and the response
+     * is parsed with the given parser on Volley's network thread.
+     *
+     * @param body The JSON body of the request.
+     */
+    public <T> Task<T> resolvePaymentRequests(final String id, final String body, final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).appendPath("payment")
+                .toString();
+
+        return doRequestWithParsedResponse(url, POST, checkNotNull(body), checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
+    }
+
+    /**
+     * Like {@link #getPayment(String, Session)}, but the response is parsed with the given parser on Volley's network
+     * thread. The parsed response is shared with callers of identical requests and must not be modified.
+     */
+    public <T> Task<T> getPayment(final String id, final Session session,
+            final BearerParsedRequest.ResponseParser<T> responseParser) {
+        final String url = mBaseUri.buildUpon().path("/paymentRequests/").appendPath(id).appendPath("payment")
+                .toString();
+
+        return doRequestWithParsedResponse(url, GET, null, checkNotNull(session), responseParser,
+                RequestLane.INTERACTIVE);
     }
 
     public Task<byte[]> getPageImage(@NonNull String documentId, int pageCount, final Session session) {
         String url = mBaseUri.buildUpon().appendPath("documents").appendPath(documentId).appendPath("pages").appendPath(Integer.toString(pageCount)).appendPath("large")
                 .toString();
-        return doRequestWithByteArrayResponse(url, GET, session);
+        return doRequestWithByteArrayResponse(url, GET, session, RequestLane.BACKGROUND);
     }
 
     public Task<JSONObject> logErrorEvent(@NonNull final JSONObject errorEvent, @NonNull final Session session) {
         final String url = mBaseUri.buildUpon().appendPath("events").appendPath("error").toString();
-        return doRequestWithBodyAndJsonResponse(url, POST, errorEvent, session);
+        return doRequestWithBodyAndJsonResponse(url, POST, errorEvent, session, RequestLane.BACKGROUND);
     }
 
     /**
@@ -334,15 +774,17 @@ public class ApiCommunicator {
      * @param url       The full URL of the request.
      * @param method    The HTTP method of the request.
      * @param session   A valid session for the Gini API.
+     * @param lane      The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
      * @return          A Task which will resolve to a JSONObject representing the response of the Gini API.
      */
-    private Task<JSONObject> doRequestWithHeadersResponse(final String url, int method, final JSONObject body, final Session session) {
+    private Task<JSONObject> doRequestWithHeadersResponse(final String url, int method, final JSONObject body, final Session session,
+            final RequestLane lane) {
         final RequestTaskCompletionSource<JSONObject> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
         final BearerHeadersRequest documentsRequest =
                 new BearerHeadersRequest(method, url, body, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy(), MediaTypes.GINI_JSON_V1);
-        mRequestQueue.add(documentsRequest);
+        addRequest(documentsRequest, lane);
         return completionSource.getTask();
     }
 
@@ -353,15 +795,17 @@ public class ApiCommunicator {
      * @param url       The full URL of the request.
      * @param method    The HTTP method of the request.
      * @param session   A valid session for the Gini API.
+     * @param lane      The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
      * @return          A Task which will resolve to a JSONObject representing the response of the Gini API.
      */
-    private Task<JSONObject> doRequestWithBodyAndJsonResponse(final String url, int method, final JSONObject body, final Session session) {
+    private Task<JSONObject> doRequestWithBodyAndJsonResponse(final String url, int method, final JSONObject body, final Session session,
+            final RequestLane lane) {
         final RequestTaskCompletionSource<JSONObject> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
         final BearerJsonObjectRequest documentsRequest =
                 new BearerJsonObjectRequest(method, url, body, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy(), MediaTypes.GINI_JSON_V1);
-        mRequestQueue.add(documentsRequest);
+        addRequest(documentsRequest, lane);
         return completionSource.getTask();
     }
 
@@ -372,15 +816,33 @@ public class ApiCommunicator {
      * @param url       The full URL of the request.
      * @param method    The HTTP method of the request.
      * @param session   A valid session for the Gini API.
+     * @param lane      The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
      * @return          A Task which will resolve to a JSONObject representing the response of the Gini API.
      */
-    private Task<JSONObject> doRequestWithJsonResponse(final String url, int method, final Session session) {
+    private Task<JSONObject> doRequestWithJsonResponse(final String url, final int method, final Session session,
+            final RequestLane lane) {
+        if (method == GET) {
+            return coalesce(getCoalescingKey(url, checkNotNull(session), mGiniApiType.getGiniJsonMediaType()),
+                    new RequestCoalescer.RequestFactory<JSONObject>() {
+                        @NonNull
+                        @Override
+                        public Task<JSONObject> newRequest() {
+                            return newRequestWithJsonResponse(url, method, session, lane);
+                        }
+                    }, JSON_OBJECT_COPIER);
+        }
+        return newRequestWithJsonResponse(url, method, session, lane);
+    }
+
+    private Task<JSONObject> newRequestWithJsonResponse(final String url, int method, final Session session,
+            final RequestLane lane) {
         final RequestTaskCompletionSource<JSONObject> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
         final BearerJsonObjectRequest documentsRequest =
                 new BearerJsonObjectRequest(method, url, null, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(documentsRequest);
+        documentsRequest.setConditionalRequestCache(mConditionalRequestCache);
+        addRequest(documentsRequest, lane);
         return completionSource.getTask();
     }
 
@@ -391,14 +853,31 @@ public class ApiCommunicator {
      * @param url       The full URL of the request.
      * @param method    The HTTP method of the request.
      * @param session   A valid session for the Gini API.
+     * @param lane      The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
      * @return          A Task which will resolve to a byte[] representing the response of the Gini API.
      */
-    private Task<byte[]> doRequestWithByteArrayResponse(final String url, int method, final Session session) {
+    private Task<byte[]> doRequestWithByteArrayResponse(final String url, final int method, final Session session,
+            final RequestLane lane) {
+        if (method == GET) {
+            return coalesce(getCoalescingKey(url, checkNotNull(session), "bytes"),
+                    new RequestCoalescer.RequestFactory<byte[]>() {
+                        @NonNull
+                        @Override
+                        public Task<byte[]> newRequest() {
+                            return newRequestWithByteArrayResponse(url, method, session, lane);
+                        }
+                    }, BYTE_ARRAY_COPIER);
+        }
+        return newRequestWithByteArrayResponse(url, method, session, lane);
+    }
+
+    private Task<byte[]> newRequestWithByteArrayResponse(final String url, int method, final Session session,
+            final RequestLane lane) {
         final RequestTaskCompletionSource<byte[]> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
         final BearerByteArrayRequest documentsRequest =
                 new BearerByteArrayRequest(method, url, checkNotNull(session), completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(documentsRequest);
+        addRequest(documentsRequest, lane);
         return completionSource.getTask();
     }
 
@@ -409,18 +888,143 @@ public class ApiCommunicator {
      * @param url       The full URL of the request.
      * @param method    The HTTP method of the request.
      * @param session   A valid session for the Gini API.
+     * @param lane      The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
      * @return          A Task which will resolve to a JSONObject representing the response of the Gini API.
      */
-    private Task<JSONArray> doRequestWithJsonArrayResponse(final String url, int method, final Session session) {
+    private Task<JSONArray> doRequestWithJsonArrayResponse(final String url, final int method, final Session session,
+            final RequestLane lane) {
+        if (method == GET) {
+            return coalesce(getCoalescingKey(url, checkNotNull(session), "array"),
+                    new RequestCoalescer.RequestFactory<JSONArray>() {
+                        @NonNull
+                        @Override
+                        public Task<JSONArray> newRequest() {
+                            return newRequestWithJsonArrayResponse(url, method, session, lane);
+                        }
+                    }, JSON_ARRAY_COPIER);
+        }
+        return newRequestWithJsonArrayResponse(url, method, session, lane);
+    }
+
+    private Task<JSONArray> newRequestWithJsonArrayResponse(final String url, int method, final Session session,
+            final RequestLane lane) {
         final RequestTaskCompletionSource<JSONArray> completionSource =
                 RequestTaskCompletionSource.newCompletionSource();
         final BearerJsonArrayRequest documentsRequest =
                 new BearerJsonArrayRequest(method, url, null, checkNotNull(session),
                         mGiniApiType, completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(documentsRequest);
+        documentsRequest.setConditionalRequestCache(mConditionalRequestCache);
+        addRequest(documentsRequest, lane);
+        return completionSource.getTask();
+    }
+
+    /**
+     * Helper method to do a request whose response is parsed by the given parser. GET requests are coalesced and sent
+     * conditionally, their parsed responses are shared.
+     *
+     * @param url            The full URL of the request.
+     * @param method         The HTTP method of the request.
+     * @param body           The JSON body of the request or null.
+     * @param session        A valid session for the Gini API.
+     * @param responseParser Creates the result from the response body.
+     * @param lane           The lane of the request, unless a lane was set with {@link #withRequestLane(RequestLane)}.
+     * @return A Task which will resolve to the parsed response.
+     */
+    private <T> Task<T> doRequestWithParsedResponse(final String url, final int method, @Nullable final String body,
+            final Session session, final BearerParsedRequest.ResponseParser<T> responseParser,
+            final RequestLane lane) {
+        return doRequestWithParsedResponse(url, method, body, session, responseParser, null, lane);
+    }
+
+    /**
+     * Like {@link #doRequestWithParsedResponse(String, int, String, Session, BearerParsedRequest.ResponseParser,
+     * RequestLane)}, but every caller of a coalesced GET request receives a copy of the parsed response.
+     *
+     * @param resultCopier Copies the parsed response for every caller or null, if the parsed response is shared.
+     */
+    private <T> Task<T> doRequestWithParsedResponse(final String url, final int method, @Nullable final String body,
+            final Session session, final BearerParsedRequest.ResponseParser<T> responseParser,
+            @Nullable final RequestCoalescer.ResultCopier<T> resultCopier, final RequestLane lane) {
+        checkNotNull(responseParser);
+        if (method == GET) {
+            return coalesce(getCoalescingKey(url, session, BearerParsedRequest.getParserId(responseParser)),
+                    new RequestCoalescer.RequestFactory<T>() {
+                        @NonNull
+                        @Override
+                        public Task<T> newRequest() {
+                            return newRequestWithParsedResponse(url, method, body, session, responseParser, lane);
+                        }
+                    }, resultCopier);
+        }
+        return newRequestWithParsedResponse(url, method, body, session, responseParser, lane);
+    }
+
+    private <T> Task<T> newRequestWithParsedResponse(final String url, final int method, @Nullable final String body,
+            final Session session, final BearerParsedRequest.ResponseParser<T> responseParser,
+            final RequestLane lane) {
+        final RequestTaskCompletionSource<T> completionSource = RequestTaskCompletionSource.newCompletionSource();
+        final BearerParsedRequest<T> request = new BearerParsedRequest<>(method, url,
+                body != null ? body.getBytes(Utils.CHARSET_UTF8) : null, MediaTypes.GINI_JSON_V1, session,
+                mGiniApiType, responseParser, completionSource, completionSource,
+                mRetryPolicyFactory.newRetryPolicy());
+        request.setConditionalRequestCache(mConditionalRequestCache);
+        addRequest(request, lane);
         return completionSource.getTask();
     }
 
+    private <T> Task<T> coalesce(@NonNull final String key,
+            @NonNull final RequestCoalescer.RequestFactory<T> requestFactory) {
+        return coalesce(key, requestFactory, null);
+    }
+
+    private <T> Task<T> coalesce(@NonNull final String key,
+            @NonNull final RequestCoalescer.RequestFactory<T> requestFactory,
+            @Nullable final RequestCoalescer.ResultCopier<T> resultCopier) {
+        if (!mRequestCoalescingEnabled) {
+            return requestFactory.newRequest();
+        }
+        return mRequestCoalescer.coalesce(key, requestFactory, resultCopier);
+    }
+
+    /**
+     * Identical GET requests have the same URL, are sent with the same access token and expect the same kind of
+     * response.
+     */
+    @NonNull
+    private static String getCoalescingKey(@NonNull final String url, @NonNull final Session session,
+            @NonNull final String responseVariant) {
+        return "GET " + url + " " + session.getAccessToken() + " " + responseVariant;
+    }
+
+    private RequestLane getRequestLane(@NonNull final RequestLane defaultLane) {
+        return mRequestLane != null ? mRequestLane : defaultLane;
+    }
+
+    private void addRequest(@NonNull final Request<?> request, @NonNull final RequestLane defaultLane) {
+        if (mCancellationToken == null) {
+            mRequestLaneDispatcher.add(request, getRequestLane(defaultLane));
+            return;
+        }
+        request.setRetryPolicy(new CancellableRetryPolicy(request, request.getRetryPolicy()));
+        // Runs immediately, if the token was already cancelled
+        final CancellationTokenRegistration registration = mCancellationToken.register(new Runnable() {
+            @Override
+            public void run() {
+                // Volley drops the listeners of cancelled requests, so the error has to be delivered first
+                request.deliverError(new RequestCancelledError());
+                request.cancel();
+            }
+        });
+        // The token may outlive the request, it must neither keep the request reachable nor cancel it after it
+        // finished
+        mRequestLaneDispatcher.add(request, getRequestLane(defaultLane), new Runnable() {
+            @Override
+            public void run() {
+                registration.close();
+            }
+        });
+    }
+
     private Uri uriRelativeToBaseUri(Uri uri) {
 
         return mBaseUri.buildUpon().path(uri.getPath()).query(uri.getQuery()).build();
@@ -0,0 +1,212 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gini.android.DocumentTaskManager.DocumentType;
+import net.gini.android.models.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Creates a multi-page document while the pages are being captured. Use
+ * {@link DocumentTaskManager#startCaptureSession(DocumentType)} to create a session.
+ * <p>
+ * Each page is uploaded as a partial document as soon as it is added. Moving and rotating pages only changes the
+ * composite document which will be created, removing a page deletes its partial document. When the user is done
+ * {@link #finish()} only has to create the composite document, if the uploads have completed.
+ * <p>
+ * Pages are identified by their index. All methods are thread-safe.
+ */
+public class CaptureSession {
+
+    private final DocumentTaskManager mDocumentTaskManager;
+    @Nullable
+    private final DocumentType mDocumentType;
+    private final List<CapturedPage> mPages = new ArrayList<>();
+    private boolean mClosed;
+
+    CaptureSession(@NonNull final DocumentTaskManager documentTaskManager,
+            @Nullable final DocumentType documentType) {
+        mDocumentTaskManager = documentTaskManager;
+        mDocumentType = documentType;
+    }
+
+    /**
+     * Adds a page after the last page and starts uploading it in the background.
+     *
+     * @param page The captured page. Its rotation is the initial rotation of the page.
+     * @return The index of the page.
+     */
+    public synchronized int addPage(@NonNull final PageUpload page) {
+        checkOpen();
+        final Task<Document> uploadTask = MultiPageUploadPipeline.uploadPage(mDocumentTaskManager,
+                checkNotNull(page), mDocumentType, 1, DocumentTaskManager.DEFAULT_PAGE_UPLOAD_ATTEMPTS);
+        mPages.add(new CapturedPage(uploadTask, page.getRotation()));
+        return mPages.size() - 1;
+    }
+
+    /**
+     * Moves a page to another position. No request is sent.
+     *
+     * @param fromIndex The current index of the page.
+     * @param toIndex   The new index of the page.
+     */
+    public synchronized void movePage(final int fromIndex, final int toIndex) {
+        checkOpen();
+        final CapturedPage page = mPages.remove(fromIndex);
+        mPages.add(toIndex, page);
+    }
+
+    /**
+     * Sets the rotation of a page. No request is sent.
+     *
+     * @param index    The index of the page.
+     * @param rotation The amount in degrees the page has been rotated by the user.
+     */
+    public synchronized void rotatePage(final int index, final int rotation) {
+        checkOpen();
+        mPages.get(index).mRotation = rotation;
+    }
+
+    /**
+     * Removes a page and deletes its partial document after it was uploaded.
+     *
+     * @param index The index of the page.
+     * @return A Task which will resolve when the partial document was deleted or could not be uploaded.
+     */
+    public synchronized Task<Void> removePage(final int index) {
+        checkOpen();
+        return deletePartialDocument(mPages.remove(index));
+    }
+
+    /**
+     * Returns the upload of a page. If a {@link NearDuplicateDetector} was set and the page is a near-duplicate of
+     * another page, the Task fails with a {@link NearDuplicateException} and the page should be removed.
+     *
+     * @param index The index of the page.
+     * @return A Task which will resolve to the partial document of the page.
+     */
+    public synchronized Task<Document> getPageUpload(final int index) {
+        return mPages.get(index).mUploadTask;
+    }
+
+    /**
+     * @return The number of pages in the session.
+     */
+    public synchronized int getPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * Waits for the uploads of the pages and creates the composite document from them. Afterwards the session is
+     * closed.
+     * <p>
+     * If a page could not be uploaded the Task fails with its error and the session stays open, so that the page can
+     * be removed and added again.
+     *
+     * @return A Task which will resolve to the Document instance of the freshly created composite document.
+     */
+    public synchronized Task<Document> finish() {
+        checkOpen();
+        if (mPages.isEmpty()) {
+            throw new IllegalStateException("At least one page is required");
+        }
+        final List<CapturedPage> pages = new ArrayList<>(mPages);
+        final List<Task<Document>> uploadTasks = new ArrayList<>(pages.size());
+        for (final CapturedPage page : pages) {
+            uploadTasks.add(page.mUploadTask);
+        }
+        mClosed = true;
+        return Task.whenAll(uploadTasks).continueWithTask(new Continuation<Void, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Void> task) {
+                if (task.isFaulted() || task.isCancelled()) {
+                    reopen();
+                    return getFirstFailedUpload(uploadTasks);
+                }
+                final LinkedHashMap<Document, Integer> documentRotationMap = new LinkedHashMap<>();
+                synchronized (CaptureSession.this) {
+                    for (final CapturedPage page : pages) {
+                        documentRotationMap.put(page.mUploadTask.getResult(), page.mRotation);
+                    }
+                }
+                return mDocumentTaskManager.createCompositeDocument(documentRotationMap, mDocumentType)
+                        .continueWithTask(new Continuation<Document, Task<Document>>() {
+                            @Override
+                            public Task<Document> then(final Task<Document> compositeTask) {
+                                if (compositeTask.isFaulted() || compositeTask.isCancelled()) {
+                                    reopen();
+                                }
+                                return compositeTask;
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Closes the session and deletes the partial documents of all pages.
+     *
+     * @return A Task which will resolve when the partial documents were deleted.
+     */
+    public synchronized Task<Void> cancel() {
+        checkOpen();
+        mClosed = true;
+        final List<Task<Void>> deleteTasks = new ArrayList<>(mPages.size());
+        for (final CapturedPage page : mPages) {
+            deleteTasks.add(deletePartialDocument(page));
+        }
+        mPages.clear();
+        return Task.whenAll(deleteTasks);
+    }
+
+    private Task<Void> deletePartialDocument(@NonNull final CapturedPage page) {
+        return page.mUploadTask.continueWithTask(new Continuation<Document, Task<Void>>() {
+            @Override
+            public Task<Void> then(final Task<Document> task) {
+                if (task.isFaulted() || task.isCancelled()) {
+                    return Task.forResult(null);
+                }
+                return mDocumentTaskManager.deleteDocument(task.getResult().getId()).makeVoid();
+            }
+        });
+    }
+
+    private static Task<Document> getFirstFailedUpload(@NonNull final List<Task<Document>> uploadTasks) {
+        for (final Task<Document> uploadTask : uploadTasks) {
+            if (uploadTask.isFaulted() || uploadTask.isCancelled()) {
+                return uploadTask;
+            }
+        }
+        throw new IllegalStateException("No upload failed");
+    }
+
+    private synchronized void reopen() {
+        mClosed = false;
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("The capture session was finished or cancelled");
+        }
+    }
+
+    private static class CapturedPage {
+
+        private final Task<Document> mUploadTask;
+        private int mRotation;
+
+        CapturedPage(@NonNull final Task<Document> uploadTask, final int rotation) {
+            mUploadTask = uploadTask;
+            mRotation = rotation;
+        }
+    }
+}
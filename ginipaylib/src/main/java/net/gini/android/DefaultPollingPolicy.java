@@ -0,0 +1,26 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import net.gini.android.models.Document;
+
+/**
+ * {@link PollingPolicy} implementation that waits {@link DocumentTaskManager#POLLING_INTERVAL} milliseconds between
+ * the requests.
+ */
+public class DefaultPollingPolicy implements PollingPolicy {
+
+    @Override
+    public long getDelay(@NonNull final Document document, final int attempt, final long elapsedMs) {
+        return DocumentTaskManager.POLLING_INTERVAL;
+    }
+
+    @Override
+    public void onProcessed(@NonNull final Document document, final long processingTimeMs) {
+    }
+
+    @Override
+    public long getExpectedProcessingTime(@NonNull final Document document) {
+        return -1;
+    }
+}
@@ -0,0 +1,246 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+import net.gini.android.models.Document;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Polls all pending documents together using the document list of the Gini API.
+ * <p>
+ * Each tick fetches pages of the document list until all pending documents were found and resolves the Tasks of the
+ * documents which left the {@link Document.ProcessingState#PENDING} state. The number of requests per tick depends
+ * on the number of pages and not on the number of pending documents. Documents which are not contained in the
+ * fetched pages (or all documents, if the document list could not be fetched) are requested one by one. The time
+ * between the ticks is the shortest delay the {@link PollingPolicy} returns for any of the pending documents.
+ */
+class DocumentListPoller {
+
+    /**
+     * The number of documents requested per page.
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * The maximum number of pages requested in one tick. Pending documents are usually the most recently created ones
+     * and are found on the first pages.
+     */
+    static final int MAX_PAGES_PER_TICK = 3;
+
+    private final DocumentTaskManager mDocumentTaskManager;
+    private final ScheduledExecutorService mScheduler;
+    private final ConcurrentMap<Document, PendingDocument> mPendingDocuments = new ConcurrentHashMap<>();
+    private volatile PollingPolicy mPollingPolicy = new DefaultPollingPolicy();
+    private boolean mTickActive;
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    DocumentListPoller(@NonNull final DocumentTaskManager documentTaskManager,
+            @NonNull final ScheduledExecutorService scheduler) {
+        mDocumentTaskManager = checkNotNull(documentTaskManager);
+        mScheduler = checkNotNull(scheduler);
+    }
+
+    void setPollingPolicy(@NonNull final PollingPolicy pollingPolicy) {
+        mPollingPolicy = checkNotNull(pollingPolicy);
+    }
+
+    /**
+     * Adds the document to the pending documents which are polled until they are processed. If the document is
+     * already being polled, the Task of the pending document is returned.
+     *
+     * @param document The document which will be polled.
+     * @return A Task which will resolve to a new document instance or which will be cancelled, if
+     * {@link #cancel(Document)} was called.
+     */
+    @NonNull
+    Task<Document> poll(@NonNull final Document document) {
+        if (document.getState() != Document.ProcessingState.PENDING) {
+            return Task.forResult(document);
+        }
+        final PendingDocument pendingDocument = new PendingDocument(document);
+        // Callers polling the same document share its Task
+        final PendingDocument existingPendingDocument = mPendingDocuments.putIfAbsent(document, pendingDocument);
+        if (existingPendingDocument != null) {
+            return existingPendingDocument.mCompletionSource.getTask();
+        }
+        synchronized (this) {
+            if (!mTickActive) {
+                mTickActive = true;
+                mScheduler.schedule(mTick, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+        return pendingDocument.mCompletionSource.getTask();
+    }
+
+    /**
+     * Removes the document from the pending documents and cancels its Task.
+     *
+     * @param document The document which is being polled.
+     */
+    void cancel(@NonNull final Document document) {
+        final PendingDocument pendingDocument = mPendingDocuments.remove(document);
+        if (pendingDocument != null) {
+            pendingDocument.mCompletionSource.trySetCancelled();
+        }
+    }
+
+    private void tick() {
+        final Set<String> pendingIds = new HashSet<>();
+        for (final PendingDocument pendingDocument : mPendingDocuments.values()) {
+            pendingIds.add(pendingDocument.mDocument.getId());
+            pendingDocument.mAttempts++;
+        }
+        if (pendingIds.isEmpty()) {
+            onTickFinished();
+            return;
+        }
+        final Map<String, Document> listedDocuments = new HashMap<>();
+        fetchPages(0, 0, pendingIds, listedDocuments)
+                .continueWithTask(new Continuation<Void, Task<Void>>() {
+                    @Override
+                    public Task<Void> then(final Task<Void> task) {
+                        return resolveDocuments(pendingIds, listedDocuments);
+                    }
+                })
+                .continueWith(new Continuation<Void, Void>() {
+                    @Override
+                    public Void then(final Task<Void> task) {
+                        onTickFinished();
+                        return null;
+                    }
+                });
+    }
+
+    private void onTickFinished() {
+        synchronized (this) {
+            if (mPendingDocuments.isEmpty()) {
+                mTickActive = false;
+            } else {
+                mScheduler.schedule(mTick, getNextTickDelay(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * The next tick happens when the policy wants to poll any of the pending documents.
+     */
+    private long getNextTickDelay() {
+        final long now = System.currentTimeMillis();
+        long delay = Long.MAX_VALUE;
+        for (final PendingDocument pendingDocument : mPendingDocuments.values()) {
+            delay = Math.min(delay, mPollingPolicy.getDelay(pendingDocument.mDocument, pendingDocument.mAttempts,
+                    now - pendingDocument.mStartTime));
+        }
+        return delay == Long.MAX_VALUE ? DocumentTaskManager.POLLING_INTERVAL : delay;
+    }
+
+    private Task<Void> fetchPages(final int offset, final int page, @NonNull final Set<String> pendingIds,
+            @NonNull final Map<String, Document> listedDocuments) {
+        return mDocumentTaskManager.getDocumentList(offset, PAGE_SIZE)
+                .onSuccessTask(new Continuation<JSONObject, Task<Void>>() {
+                    @Override
+                    public Task<Void> then(final Task<JSONObject> task) throws Exception {
+                        final JSONObject responseData = task.getResult();
+                        final JSONArray documents = responseData.getJSONArray("documents");
+                        for (int i = 0; i < documents.length(); i++) {
+                            final Document document = Document.fromApiResponse(documents.getJSONObject(i));
+                            if (pendingIds.contains(document.getId())) {
+                                listedDocuments.put(document.getId(), document);
+                            }
+                        }
+                        final int nextOffset = offset + documents.length();
+                        if (listedDocuments.size() == pendingIds.size()
+                                || documents.length() == 0
+                                || nextOffset >= responseData.optInt("totalCount", nextOffset)
+                                || page + 1 >= MAX_PAGES_PER_TICK) {
+                            return Task.forResult(null);
+                        }
+                        return fetchPages(nextOffset, page + 1, pendingIds, listedDocuments);
+                    }
+                });
+    }
+
+    private Task<Void> resolveDocuments(@NonNull final Set<String> pendingIds,
+            @NonNull final Map<String, Document> listedDocuments) {
+        final List<Task<Document>> documentTasks = new ArrayList<>();
+        for (final String documentId : pendingIds) {
+            final Document listedDocument = listedDocuments.get(documentId);
+            if (listedDocument != null) {
+                onDocumentFetched(listedDocument);
+                continue;
+            }
+            final Task<Document> documentTask = mDocumentTaskManager.getDocument(documentId);
+            documentTasks.add(documentTask.continueWith(new Continuation<Document, Document>() {
+                @Override
+                public Document then(final Task<Document> task) {
+                    if (task.isFaulted()) {
+                        onDocumentFailed(documentId, task.getError());
+                    } else if (!task.isCancelled()) {
+                        onDocumentFetched(task.getResult());
+                    }
+                    return null;
+                }
+            }));
+        }
+        return Task.whenAll(documentTasks);
+    }
+
+    private void onDocumentFetched(@NonNull final Document document) {
+        if (document.getState() == Document.ProcessingState.PENDING) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<Document, PendingDocument> entry : mPendingDocuments.entrySet()) {
+            if (entry.getKey().getId().equals(document.getId())
+                    && mPendingDocuments.remove(entry.getKey(), entry.getValue())) {
+                mPollingPolicy.onProcessed(document, now - entry.getValue().mStartTime);
+                entry.getValue().mCompletionSource.trySetResult(document);
+            }
+        }
+    }
+
+    private void onDocumentFailed(@NonNull final String documentId, @NonNull final Exception error) {
+        for (final Map.Entry<Document, PendingDocument> entry : mPendingDocuments.entrySet()) {
+            if (entry.getKey().getId().equals(documentId)
+                    && mPendingDocuments.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().mCompletionSource.trySetError(error);
+            }
+        }
+    }
+
+    private static class PendingDocument {
+
+        private final Document mDocument;
+        private final Task<Document>.TaskCompletionSource mCompletionSource = Task.create();
+        private final long mStartTime = System.currentTimeMillis();
+        private volatile int mAttempts;
+
+        PendingDocument(@NonNull final Document document) {
+            mDocument = document;
+        }
+    }
+}
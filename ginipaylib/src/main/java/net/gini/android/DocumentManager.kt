@@ -1,11 +1,17 @@
 package net.gini.android
 
 import android.net.Uri
+import bolts.CancellationTokenSource
 import bolts.Task
-import kotlin.coroutines.Continuation
 import kotlin.coroutines.resume
 import kotlin.coroutines.resumeWithException
+import kotlinx.coroutines.CancellableContinuation
 import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.suspendCancellableCoroutine
 import kotlinx.coroutines.withContext
 import net.gini.android.models.CompoundExtraction
@@ -18,6 +24,8 @@ import net.gini.android.models.PaymentRequestInput
 import net.gini.android.models.ResolvePaymentInput
 import net.gini.android.models.ResolvedPayment
 import net.gini.android.models.SpecificExtraction
+import net.gini.android.models.UploadProgress
+import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
 
@@ -45,16 +53,74 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
         filename: String? = null,
         documentType: DocumentTaskManager.DocumentType? = null,
         documentMetadata: DocumentMetadata? = null,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = if (documentMetadata != null) {
-                documentTaskManager.createPartialDocument(document, contentType, filename, documentType, documentMetadata)
+    ): Document = awaitTask { manager ->
+        if (documentMetadata != null) {
+            manager.createPartialDocument(document, contentType, filename, documentType, documentMetadata)
+        } else {
+            manager.createPartialDocument(document, contentType, filename, documentType)
+        }
+    }
+
+    /**
+     * Uploads a document and creates a new Gini partial document. The document data is streamed from the given
+     * source, which avoids loading large documents into memory.
+     *
+     * @param document     The source of an image, a pdf or UTF-8 encoded text
+     * @param contentType  The media type of the uploaded data
+     * @param filename     Optional the filename of the given document
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values
+     * @return the Document instance of the freshly created document.
+     */
+    suspend fun createPartialDocument(
+        document: UploadSource,
+        contentType: String,
+        filename: String? = null,
+        documentType: DocumentTaskManager.DocumentType? = null,
+        documentMetadata: DocumentMetadata? = null,
+    ): Document = awaitTask { manager ->
+        if (documentMetadata != null) {
+            manager.createPartialDocument(document, contentType, filename, documentType, documentMetadata)
+        } else {
+            manager.createPartialDocument(document, contentType, filename, documentType)
+        }
+    }
+
+    /**
+     * Uploads a document and creates a new Gini partial document, reporting the progress of the upload. The document
+     * data is streamed from the given source.
+     *
+     * The returned [Flow] is cold: each collection uploads the document once. It emits [UploadProgress.Sending] while
+     * the data is sent and finally [UploadProgress.Completed]. Progress updates are conflated, so a slow collector only
+     * receives the latest one. Cancelling the collector aborts the upload.
+     *
+     * @param document     The source of an image, a pdf or UTF-8 encoded text
+     * @param contentType  The media type of the uploaded data
+     * @param filename     Optional the filename of the given document
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values
+     * @return A flow of the upload progress ending with the freshly created document.
+     */
+    fun uploadPartialDocument(
+        document: UploadSource,
+        contentType: String,
+        filename: String? = null,
+        documentType: DocumentTaskManager.DocumentType? = null,
+        documentMetadata: DocumentMetadata? = null,
+    ): Flow<UploadProgress> = channelFlow {
+        val progressSource = ProgressUploadSource(document) { bytesSent, totalBytes ->
+            // Called on the network thread, the conflated channel never suspends it
+            trySend(UploadProgress.Sending(bytesSent, totalBytes))
+        }
+        val createdDocument = awaitTask { manager ->
+            if (documentMetadata != null) {
+                manager.createPartialDocument(progressSource, contentType, filename, documentType, documentMetadata)
             } else {
-                documentTaskManager.createPartialDocument(document, contentType, filename, documentType)
+                manager.createPartialDocument(progressSource, contentType, filename, documentType)
             }
-            continuation.resumeTask(task)
         }
-    }
+        send(UploadProgress.Completed(createdDocument))
+    }.conflate()
 
     /**
      * Deletes a Gini partial document and all its parent composite documents.
@@ -66,11 +132,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun deletePartialDocumentAndParents(
         documentId: String,
-    ) = withContext(taskDispatcher) {
-        suspendCancellableCoroutine<Unit> { continuation ->
-            val task = documentTaskManager.deletePartialDocumentAndParents(documentId)
-            continuation.resumeUnitTask(task)
-        }
+    ) {
+        awaitTask { manager -> manager.deletePartialDocumentAndParents(documentId) }
     }
 
     /**
@@ -82,11 +145,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun deleteDocument(
         documentId: String,
-    ) = withContext(taskDispatcher) {
-        suspendCancellableCoroutine<Unit> { continuation ->
-            val task = documentTaskManager.deleteDocument(documentId)
-            continuation.resumeUnitTask(task)
-        }
+    ) {
+        awaitTask { manager -> manager.deleteDocument(documentId) }
     }
 
     /**
@@ -100,11 +160,28 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
     suspend fun createCompositeDocument(
         documents: List<Document>,
         documentType: DocumentTaskManager.DocumentType? = null,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.createCompositeDocument(documents, documentType)
-            continuation.resumeTask(task)
-        }
+    ): Document = awaitTask { manager ->
+        manager.createCompositeDocument(documents, documentType)
+    }
+
+    /**
+     * Uploads the pages of a multi-page document as partial documents and creates the composite document from them.
+     * The pages are uploaded in parallel and the partial documents are deleted, if the composite document can't be
+     * created.
+     *
+     * @param pages              The pages in the order of the multi-page document
+     * @param documentType       Optional a document type hint. See the documentation for the document type hints for
+     *                           possible values
+     * @param maxParallelUploads The maximum number of pages which are uploaded at the same time
+     * @return the Document instance of the freshly created composite document.
+     */
+    suspend fun createMultiPageDocument(
+        pages: List<PageUpload>,
+        documentType: DocumentTaskManager.DocumentType? = null,
+        maxParallelUploads: Int = DocumentTaskManager.DEFAULT_MAX_PARALLEL_PAGE_UPLOADS,
+    ): Document = awaitTask { manager ->
+        manager.createMultiPageDocument(pages, documentType, maxParallelUploads,
+            DocumentTaskManager.DEFAULT_PAGE_UPLOAD_ATTEMPTS)
     }
 
     /**
@@ -120,11 +197,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
     suspend fun createCompositeDocument(
         documentRotationMap: LinkedHashMap<Document, Int>,
         documentType: DocumentTaskManager.DocumentType,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.createCompositeDocument(documentRotationMap, documentType)
-            continuation.resumeTask(task)
-        }
+    ): Document = awaitTask { manager ->
+        manager.createCompositeDocument(documentRotationMap, documentType)
     }
 
     /**
@@ -135,11 +209,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getDocument(
         id: String,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getDocument(id)
-            continuation.resumeTask(task)
-        }
+    ): Document = awaitSharedTask { manager ->
+        manager.getDocument(id)
     }
 
     /**
@@ -154,11 +225,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getDocument(
         uri: Uri,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getDocument(uri)
-            continuation.resumeTask(task)
-        }
+    ): Document = awaitSharedTask { manager ->
+        manager.getDocument(uri)
     }
 
     /**
@@ -173,13 +241,75 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun pollDocument(
         document: Document,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.pollDocument(document)
-            continuation.resumeTask(task)
+    ): Document = awaitTask(
+        onCancellation = { documentTaskManager.cancelDocumentPolling(document) }
+    ) { manager ->
+        manager.pollDocument(document)
+    }
 
-            continuation.invokeOnCancellation {
-                documentTaskManager.cancelDocumentPolling(document)
+    /**
+     * Polls the document (via the Gini API) until it is fully processed and emits it whenever its processing state
+     * changed. The pauses between the requests are decided by the polling policy, see
+     * [GiniBuilder.setDocumentPollingPolicy].
+     *
+     * The returned [Flow] is cold: polling starts when it is collected. The next request is sent only after the
+     * collector received the previous document. Cancelling the collector stops polling. The request in flight is not
+     * cancelled, because identical requests of other callers share it.
+     *
+     * @param document The document which will be polled.
+     * @return A flow of new document instances. The last one is no longer pending.
+     */
+    fun documentProcessingStates(
+        document: Document,
+    ): Flow<Document> = flow {
+        val pollingPolicy = documentTaskManager.pollingPolicy
+        val startTime = System.currentTimeMillis()
+        var state: Document.ProcessingState? = null
+        var attempts = 0
+        while (true) {
+            val polledDocument = awaitSharedTask { manager -> manager.getDocument(document.id) }
+            attempts++
+            if (polledDocument.state != state) {
+                state = polledDocument.state
+                emit(polledDocument)
+            }
+            if (polledDocument.state != Document.ProcessingState.PENDING) {
+                pollingPolicy.onProcessed(polledDocument, System.currentTimeMillis() - startTime)
+                break
+            }
+            delay(pollingPolicy.getDelay(polledDocument, attempts, System.currentTimeMillis() - startTime))
+        }
+    }
+
+    /**
+     * Lists the documents of the user page by page.
+     *
+     * The returned [Flow] is cold: each page is requested only when the collector is ready for it, so collecting
+     * only the first pages (e.g. with `take`) does not load the others. Cancelling the collector stops loading pages.
+     * The request in flight is not cancelled, because identical requests of other callers share it.
+     *
+     * @param pageSize The maximum number of documents per page.
+     * @return A flow of the pages of the document list.
+     */
+    fun documentPages(
+        pageSize: Int = DEFAULT_PAGE_SIZE,
+    ): Flow<List<Document>> = flow {
+        require(pageSize > 0) { "pageSize must be positive" }
+        var offset = 0
+        while (true) {
+            val pageOffset = offset
+            val page = awaitSharedTask { manager ->
+                manager.getDocumentList(pageOffset, pageSize).onSuccess { task ->
+                    DocumentPage.fromApiResponse(task.result)
+                }
+            }
+            if (page.documents.isEmpty()) {
+                break
+            }
+            emit(page.documents)
+            offset += page.documents.size
+            if (offset >= page.totalCount) {
+                break
             }
         }
     }
@@ -203,11 +333,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
         document: Document,
         specificExtractions: Map<String, SpecificExtraction>,
         compoundExtractions: Map<String, CompoundExtraction>,
-    ): Document = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.sendFeedbackForExtractions(document, specificExtractions, compoundExtractions)
-            continuation.resumeTask(task)
-        }
+    ): Document = awaitTask { manager ->
+        manager.sendFeedbackForExtractions(document, specificExtractions, compoundExtractions)
     }
 
     /**
@@ -227,11 +354,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
         document: Document,
         summary: String? = null,
         description: String? = null,
-    ): String = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.reportDocument(document, summary, description)
-            continuation.resumeTask(task)
-        }
+    ): String = awaitTask { manager ->
+        manager.reportDocument(document, summary, description)
     }
 
     /**
@@ -243,11 +367,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getLayout(
         document: Document,
-    ): JSONObject = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getLayout(document)
-            continuation.resumeTask(task)
-        }
+    ): JSONObject = awaitSharedTask { manager ->
+        manager.getLayout(document)
     }
 
     /**
@@ -258,25 +379,11 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getExtractions(
         document: Document,
-    ) = withContext(taskDispatcher) {
-        suspendCancellableCoroutine<ExtractionsContainer> { continuation ->
-            val pollDocumentTask = documentTaskManager.pollDocument(document)
-            pollDocumentTask.waitForCompletion()
-
-            if (!continuation.isActive) return@suspendCancellableCoroutine
-
-            if (!pollDocumentTask.isFaulted) {
-                val extractionTask = documentTaskManager.getAllExtractions(pollDocumentTask.result)
-                continuation.resumeTask(extractionTask)
-            } else {
-                continuation.resumeWithException(pollDocumentTask.error)
-            }
-
-            continuation.invokeOnCancellation {
-                if (!pollDocumentTask.isCompleted) {
-                    documentTaskManager.cancelDocumentPolling(document)
-                }
-            }
+    ): ExtractionsContainer = awaitTask(
+        onCancellation = { documentTaskManager.cancelDocumentPolling(document) }
+    ) { manager ->
+        manager.pollDocument(document).onSuccessTask { pollDocumentTask ->
+            manager.getAllExtractions(pollDocumentTask.result)
         }
     }
 
@@ -285,24 +392,17 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      *
      * @return A list of [PaymentProvider]
      */
-    suspend fun getPaymentProviders(): List<PaymentProvider> =
-        withContext(taskDispatcher) {
-            suspendCancellableCoroutine { continuation ->
-                val task = documentTaskManager.paymentProviders
-                continuation.resumeTask(task)
-            }
-        }
+    suspend fun getPaymentProviders(): List<PaymentProvider> = awaitSharedTask { manager ->
+        manager.paymentProviders
+    }
 
     /**
      * @return [PaymentProvider] for the given id.
      */
     suspend fun getPaymentProvider(
         id: String,
-    ): PaymentProvider = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getPaymentProvider(id)
-            continuation.resumeTask(task)
-        }
+    ): PaymentProvider = awaitSharedTask { manager ->
+        manager.getPaymentProvider(id)
     }
 
     /**
@@ -313,11 +413,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun createPaymentRequest(
         paymentRequestInput: PaymentRequestInput,
-    ): String = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.createPaymentRequest(paymentRequestInput)
-            continuation.resumeTask(task)
-        }
+    ): String = awaitTask { manager ->
+        manager.createPaymentRequest(paymentRequestInput)
     }
 
     /**
@@ -325,21 +422,15 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getPaymentRequest(
         id: String,
-    ): PaymentRequest = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getPaymentRequest(id)
-            continuation.resumeTask(task)
-        }
+    ): PaymentRequest = awaitSharedTask { manager ->
+        manager.getPaymentRequest(id)
     }
 
     /**
      * @return List of payment [PaymentRequest]
      */
-    suspend fun getPaymentRequests(): List<PaymentRequest> = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.paymentRequests
-            continuation.resumeTask(task)
-        }
+    suspend fun getPaymentRequests(): List<PaymentRequest> = awaitSharedTask { manager ->
+        manager.paymentRequests
     }
 
     /**
@@ -351,11 +442,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
     suspend fun resolvePaymentRequest(
         requestId: String,
         resolvePaymentInput: ResolvePaymentInput,
-    ): ResolvedPayment = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.resolvePaymentRequest(requestId, resolvePaymentInput)
-            continuation.resumeTask(task)
-        }
+    ): ResolvedPayment = awaitTask { manager ->
+        manager.resolvePaymentRequest(requestId, resolvePaymentInput)
     }
 
     /**
@@ -365,11 +453,8 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
      */
     suspend fun getPayment(
         id: String,
-    ): Payment = withContext(taskDispatcher) {
-        suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getPayment(id)
-            continuation.resumeTask(task)
-        }
+    ): Payment = awaitSharedTask { manager ->
+        manager.getPayment(id)
     }
 
     /**
@@ -381,29 +466,81 @@ class DocumentManager(private val documentTaskManager: DocumentTaskManager) {
     suspend fun getPageImage(
         documentId: String,
         page: Int
-    ): ByteArray = withContext(taskDispatcher) {
+    ): ByteArray = awaitSharedTask { manager ->
+        manager.getPageImage(documentId, page)
+    }
+
+    /**
+     * Suspends until the task created with a [DocumentTaskManager] completes. The task is created on a background
+     * thread and no thread is blocked while waiting. If the coroutine is cancelled the requests of the task are
+     * cancelled.
+     *
+     * @param onCancellation Called when the coroutine is cancelled, before the requests are cancelled.
+     * @param createTask     Creates the task with a [DocumentTaskManager] whose requests are cancelled with the
+     *                       coroutine.
+     */
+    private suspend fun <T> awaitTask(
+        onCancellation: () -> Unit = {},
+        createTask: (DocumentTaskManager) -> Task<T>,
+    ): T = withContext(taskDispatcher) {
         suspendCancellableCoroutine { continuation ->
-            val task = documentTaskManager.getPageImage(documentId, page)
-            continuation.resumeTask(task)
+            val cancellationTokenSource = CancellationTokenSource()
+            continuation.invokeOnCancellation {
+                onCancellation()
+                cancellationTokenSource.cancel()
+            }
+            createTask(documentTaskManager.withCancellationToken(cancellationTokenSource.token))
+                .resumeOnCompletion(continuation)
         }
     }
 
-    private fun <T> Continuation<T>.resumeTask(task: Task<T>) {
-        task.waitForCompletion()
-        if (!task.isFaulted) {
-            this.resume(task.result)
-        } else {
-            this.resumeWithException(task.error)
+    /**
+     * Suspends until the task of idempotent GET requests completes. The task is created on a background thread with
+     * the shared [DocumentTaskManager], so that identical requests in flight are sent only once. The requests are not
+     * cancelled with the coroutine, because other callers may wait for them. A cancelled coroutine only stops waiting.
+     *
+     * @param createTask Creates the task with the shared [DocumentTaskManager].
+     */
+    private suspend fun <T> awaitSharedTask(
+        createTask: (DocumentTaskManager) -> Task<T>,
+    ): T = withContext(taskDispatcher) {
+        suspendCancellableCoroutine { continuation ->
+            createTask(documentTaskManager).resumeOnCompletion(continuation)
         }
     }
 
-    private fun <T> Continuation<Unit>.resumeUnitTask(task: Task<T>) {
-        task.waitForCompletion()
-        if (!task.isFaulted) {
-            this.resume(Unit)
-        } else {
-            this.resumeWithException(task.error)
+    private fun <T> Task<T>.resumeOnCompletion(continuation: CancellableContinuation<T>) {
+        continueWith { completedTask ->
+            when {
+                completedTask.isCancelled -> continuation.cancel()
+                completedTask.isFaulted -> continuation.resumeWithException(completedTask.error)
+                else -> continuation.resume(completedTask.result)
+            }
         }
     }
 
+    /**
+     * A page of the document list and the total number of documents.
+     */
+    private class DocumentPage(
+        val documents: List<Document>,
+        val totalCount: Int,
+    ) {
+        companion object {
+            fun fromApiResponse(responseData: JSONObject): DocumentPage {
+                val documents: JSONArray = responseData.getJSONArray("documents")
+                val page = List(documents.length()) { index ->
+                    Document.fromApiResponse(documents.getJSONObject(index))
+                }
+                return DocumentPage(page, responseData.optInt("totalCount", Int.MAX_VALUE))
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * The default number of documents per page of [documentPages].
+         */
+        const val DEFAULT_PAGE_SIZE = 20
+    }
 }
@@ -0,0 +1,306 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import net.gini.android.models.Document;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import bolts.CancellationTokenSource;
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Polls documents until they leave the {@link Document.ProcessingState#PENDING} state.
+ * <p>
+ * No thread is blocked between two requests: the next request of a document is scheduled on a
+ * {@link ScheduledExecutorService} which only fires it, while the request itself is executed asynchronously by
+ * Volley. A single scheduler thread can therefore drive thousands of concurrent pollings.
+ * <p>
+ * In the {@link DocumentTaskManager.PollingMode#LONG_POLL} mode a single long-polling request is used instead. If the
+ * Gini API does not support long-polling the poller falls back to the interval mode for all following pollings.
+ * Long-polling requests which timed out are sent again after the delay of the polling policy, at most
+ * {@link #MAX_LONG_POLL_TIMEOUTS} times in a row.
+ */
+class DocumentPoller {
+
+    /**
+     * The number of long-polling requests of a document which may time out in a row before a regular request is
+     * sent.
+     */
+    static final int MAX_LONG_POLL_TIMEOUTS = 3;
+
+    private final DocumentTaskManager mDocumentTaskManager;
+    private final ScheduledExecutorService mScheduler;
+    /**
+     * The pollings of each document. A document may be polled by several callers at the same time.
+     */
+    private final Map<Document, List<Polling>> mPollingsInProgress = new HashMap<>();
+    private volatile DocumentTaskManager.PollingMode mPollingMode = DocumentTaskManager.PollingMode.INTERVAL;
+    private volatile boolean mLongPollingUnsupported;
+    private volatile PollingPolicy mPollingPolicy = new DefaultPollingPolicy();
+
+    DocumentPoller(@NonNull final DocumentTaskManager documentTaskManager,
+            @NonNull final ScheduledExecutorService scheduler) {
+        mDocumentTaskManager = checkNotNull(documentTaskManager);
+        mScheduler = checkNotNull(scheduler);
+    }
+
+    void setPollingMode(@NonNull final DocumentTaskManager.PollingMode pollingMode) {
+        mPollingMode = checkNotNull(pollingMode);
+    }
+
+    void setPollingPolicy(@NonNull final PollingPolicy pollingPolicy) {
+        mPollingPolicy = checkNotNull(pollingPolicy);
+    }
+
+    private boolean isLongPollingEnabled() {
+        return mPollingMode == DocumentTaskManager.PollingMode.LONG_POLL && !mLongPollingUnsupported;
+    }
+
+    /**
+     * Polls the document until it is processed.
+     *
+     * @param document The document which will be polled.
+     * @return A Task which will resolve to a new document instance or which will be cancelled, if
+     * {@link #cancel(Document)} was called.
+     */
+    @NonNull
+    Task<Document> poll(@NonNull final Document document) {
+        if (document.getState() != Document.ProcessingState.PENDING) {
+            return Task.forResult(document);
+        }
+        final Polling polling = new Polling(document, isLongPollingEnabled());
+        synchronized (mPollingsInProgress) {
+            List<Polling> pollings = mPollingsInProgress.get(document);
+            if (pollings == null) {
+                pollings = new ArrayList<>(1);
+                mPollingsInProgress.put(document, pollings);
+            }
+            pollings.add(polling);
+        }
+        polling.fetch();
+        return polling.getTask();
+    }
+
+    /**
+     * Cancels all pollings of the document. If the poller is waiting for the next request or for a long-polling request
+     * the returned Task is cancelled immediately and the long-polling request is aborted. Otherwise it is cancelled
+     * when the request in progress returns a pending document.
+     *
+     * @param document The document which is being polled.
+     */
+    void cancel(@NonNull final Document document) {
+        final List<Polling> pollings;
+        synchronized (mPollingsInProgress) {
+            final List<Polling> pollingsInProgress = mPollingsInProgress.get(document);
+            if (pollingsInProgress == null) {
+                return;
+            }
+            pollings = new ArrayList<>(pollingsInProgress);
+        }
+        for (final Polling polling : pollings) {
+            polling.cancel();
+        }
+    }
+
+    private class Polling implements Runnable {
+
+        private final Document mDocument;
+        private final Task<Document>.TaskCompletionSource mCompletionSource = Task.create();
+        private final long mStartTime = System.currentTimeMillis();
+        private int mAttempts;
+        private int mLongPollTimeouts;
+        private boolean mCancelled;
+        @Nullable
+        private CancellationTokenSource mLongPoll;
+        /**
+         * Whether the next request should be a long-polling request. Disabled for a single request after a failed
+         * long-polling request and for all requests, if the Gini API doesn't support long-polling.
+         */
+        private boolean mUseLongPoll;
+        @Nullable
+        private ScheduledFuture<?> mScheduledFetch;
+
+        Polling(@NonNull final Document document, final boolean useLongPoll) {
+            mDocument = document;
+            mUseLongPoll = useLongPoll;
+        }
+
+        Task<Document> getTask() {
+            return mCompletionSource.getTask();
+        }
+
+        @Override
+        public void run() {
+            fetch();
+        }
+
+        void fetch() {
+            final CancellationTokenSource longPoll;
+            synchronized (this) {
+                mScheduledFetch = null;
+                if (mCancelled) {
+                    finishCancelled();
+                    return;
+                }
+                // Cancelled to abort the long-polling request, if the polling is cancelled
+                longPoll = mUseLongPoll && !mLongPollingUnsupported ? new CancellationTokenSource() : null;
+                mLongPoll = longPoll;
+                mAttempts++;
+            }
+            final long startTime = System.currentTimeMillis();
+            final Task<Document> documentTask;
+            try {
+                documentTask = longPoll != null
+                        ? mDocumentTaskManager.withCancellationToken(longPoll.getToken())
+                                .longPollDocument(mDocument.getId())
+                        : mDocumentTaskManager.getDocument(mDocument.getId());
+            } catch (Exception e) {
+                finish();
+                mCompletionSource.trySetError(e);
+                return;
+            }
+            documentTask.continueWith(new Continuation<Document, Void>() {
+                @Override
+                public Void then(final Task<Document> task) {
+                    synchronized (Polling.this) {
+                        mLongPoll = null;
+                    }
+                    if (longPoll != null) {
+                        onDocumentLongPolled(task, System.currentTimeMillis() - startTime);
+                    } else {
+                        onDocumentFetched(task);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private void onDocumentLongPolled(@NonNull final Task<Document> task, final long duration) {
+            if (task.isFaulted()) {
+                final Exception error = task.getError();
+                final int timeouts;
+                synchronized (this) {
+                    timeouts = error instanceof TimeoutError ? ++mLongPollTimeouts : 0;
+                }
+                if (timeouts > 0 && timeouts < MAX_LONG_POLL_TIMEOUTS) {
+                    // The connection was closed before the server-side timeout expired
+                    scheduleFetch(getDelay(mDocument));
+                    return;
+                }
+                if (isLongPollingUnsupportedError(error)) {
+                    mLongPollingUnsupported = true;
+                }
+                // Retry once with a regular request which fails the polling, if the error persists
+                synchronized (this) {
+                    mUseLongPoll = false;
+                }
+                fetch();
+            } else if (!task.isCancelled() && task.getResult().getState() == Document.ProcessingState.PENDING) {
+                synchronized (this) {
+                    mLongPollTimeouts = 0;
+                }
+                // Wait before the next request, if the server returned early, to avoid issuing requests in a tight loop
+                scheduleFetch(Math.max(0, DocumentTaskManager.POLLING_INTERVAL - duration));
+            } else {
+                onDocumentFetched(task);
+            }
+        }
+
+        private void onDocumentFetched(@NonNull final Task<Document> task) {
+            if (task.isFaulted()) {
+                finish();
+                mCompletionSource.trySetError(task.getError());
+            } else if (task.isCancelled()) {
+                finishCancelled();
+            } else if (task.getResult().getState() != Document.ProcessingState.PENDING) {
+                finish();
+                mPollingPolicy.onProcessed(task.getResult(), System.currentTimeMillis() - mStartTime);
+                mCompletionSource.trySetResult(task.getResult());
+            } else {
+                synchronized (this) {
+                    mUseLongPoll = isLongPollingEnabled();
+                }
+                scheduleFetch(getDelay(task.getResult()));
+            }
+        }
+
+        private long getDelay(@NonNull final Document document) {
+            final int attempts;
+            synchronized (this) {
+                attempts = mAttempts;
+            }
+            return mPollingPolicy.getDelay(document, attempts, System.currentTimeMillis() - mStartTime);
+        }
+
+        private void scheduleFetch(final long delay) {
+            synchronized (this) {
+                if (!mCancelled) {
+                    mScheduledFetch = mScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            finishCancelled();
+        }
+
+        void cancel() {
+            final CancellationTokenSource longPoll;
+            final boolean cancelImmediately;
+            synchronized (this) {
+                mCancelled = true;
+                longPoll = mLongPoll;
+                cancelImmediately = longPoll != null
+                        || (mScheduledFetch != null && mScheduledFetch.cancel(false));
+                mScheduledFetch = null;
+            }
+            if (longPoll != null) {
+                longPoll.cancel();
+            }
+            if (cancelImmediately) {
+                finishCancelled();
+            }
+        }
+
+        private void finishCancelled() {
+            finish();
+            mCompletionSource.trySetCancelled();
+        }
+
+        private void finish() {
+            synchronized (mPollingsInProgress) {
+                final List<Polling> pollings = mPollingsInProgress.get(mDocument);
+                if (pollings != null && pollings.remove(this) && pollings.isEmpty()) {
+                    mPollingsInProgress.remove(mDocument);
+                }
+            }
+        }
+    }
+
+    /**
+     * A 404 is not treated as missing support, because it usually means that the document was deleted. The regular
+     * request sent after the failed long-polling request fails the polling in that case.
+     */
+    private static boolean isLongPollingUnsupportedError(@Nullable final Exception error) {
+        if (!(error instanceof VolleyError)) {
+            return false;
+        }
+        final NetworkResponse response = ((VolleyError) error).networkResponse;
+        return response != null && (response.statusCode == HttpURLConnection.HTTP_BAD_METHOD
+                || response.statusCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+    }
+}
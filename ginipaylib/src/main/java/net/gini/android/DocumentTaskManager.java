@@ -8,6 +8,7 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.android.volley.VolleyError;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
@@ -29,11 +30,12 @@ import net.gini.android.models.PaymentRequestKt;
 import net.gini.android.models.ResolvePaymentInput;
 import net.gini.android.models.ResolvedPayment;
 import net.gini.android.models.ResolvedPaymentKt;
-import net.gini.android.models.ReturnReason;
 import net.gini.android.models.SpecificExtraction;
+import net.gini.android.requests.ConditionalRequestCache;
 import net.gini.android.requests.ErrorEvent;
 import net.gini.android.requests.PaymentRequestBody;
 import net.gini.android.requests.PaymentRequestBodyKt;
+import net.gini.android.requests.RequestLane;
 import net.gini.android.requests.ResolvePaymentBody;
 import net.gini.android.requests.ResolvePaymentBodyKt;
 import net.gini.android.response.LocationResponse;
@@ -46,7 +48,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -55,19 +57,25 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
+import bolts.CancellationToken;
 import bolts.Continuation;
 import bolts.Task;
 
 /**
  * The DocumentTaskManager is a high level API on top of the Gini API, which is used via the ApiCommunicator. It
  * provides high level methods to handle document related tasks easily.
+ * <p>
+ * Most responses are parsed on Volley's network threads, the extractions on the parsing executor. The continuations
+ * of this class only create requests and map their results. They run on the thread which completed the previous task instead of being dispatched to the
+ * {@link Task#BACKGROUND_EXECUTOR}. Use {@link Task#UI_THREAD_EXECUTOR} in your continuations to access your views.
  */
 public class DocumentTaskManager {
 
     private final GiniApiType mGiniApiType;
-    private Map<Document, Boolean> mDocumentPollingsInProgress = new ConcurrentHashMap<>();
 
     /**
      * The available document type hints. See the documentation for more information.
@@ -93,6 +101,26 @@ public class DocumentTaskManager {
         }
     }
 
+    /**
+     * The strategies which can be used to poll a document until it is processed.
+     */
+    public enum PollingMode {
+        /**
+         * The document is requested every {@link #POLLING_INTERVAL} milliseconds.
+         */
+        INTERVAL,
+        /**
+         * A single request is held open by the Gini API until the document has been processed or until a server-side
+         * timeout expires. Falls back to {@link #INTERVAL} if the Gini API does not support long-polling.
+         */
+        LONG_POLL,
+        /**
+         * All pending documents are refreshed together every {@link #POLLING_INTERVAL} milliseconds using pages of
+         * the document list. Documents which are not found in the document list are requested individually.
+         */
+        DOCUMENT_LIST
+    }
+
     /**
      * The time in milliseconds between HTTP requests when a document is polled.
      */
@@ -103,6 +131,18 @@ public class DocumentTaskManager {
      */
     public final static int DEFAULT_COMPRESSION = 50;
 
+    /**
+     * The default number of pages which are uploaded at the same time by
+     * {@link #createMultiPageDocument(List, DocumentType)}.
+     */
+    public final static int DEFAULT_MAX_PARALLEL_PAGE_UPLOADS = 3;
+
+    /**
+     * The default number of times a page is uploaded by {@link #createMultiPageDocument(List, DocumentType)}, if the
+     * previous attempts failed because of network errors or 5xx server errors.
+     */
+    public final static int DEFAULT_PAGE_UPLOAD_ATTEMPTS = 3;
+
     /**
      * The ApiCommunicator instance which is used to communicate with the Gini API.
      */
@@ -117,12 +157,123 @@ public class DocumentTaskManager {
      */
     private final SessionManager mSessionManager;
 
+    private static final ExtractionsParser EXTRACTIONS_PARSER = new ExtractionsParser();
+
+    private final PaymentAdapters mPaymentAdapters;
+    private final Executor mParsingExecutor;
+    private final DocumentPoller mDocumentPoller;
+    private final DocumentListPoller mDocumentListPoller;
+    private volatile PollingMode mPollingMode = PollingMode.INTERVAL;
+    private volatile PollingPolicy mPollingPolicy = new DefaultPollingPolicy();
+    @Nullable
+    private volatile ImagePreprocessor mImagePreprocessor;
+    @Nullable
+    private volatile UploadDeduplicationCache mUploadDeduplicationCache;
+    @Nullable
+    private volatile NearDuplicateDetector mNearDuplicateDetector;
+
     public DocumentTaskManager(final ApiCommunicator apiCommunicator, final SessionManager sessionManager,
                                final GiniApiType giniApiType, Moshi moshi) {
+        this(apiCommunicator, sessionManager, giniApiType, moshi, GiniExecutors.getDefaultParsingExecutor(),
+                GiniExecutors.getDefaultPollingScheduler());
+    }
+
+    /**
+     * @param parsingExecutor  The executor on which the responses of the Gini API are delivered.
+     * @param pollingScheduler The scheduler which fires the requests of the document pollings.
+     */
+    DocumentTaskManager(final ApiCommunicator apiCommunicator, final SessionManager sessionManager,
+            final GiniApiType giniApiType, final Moshi moshi, @NonNull final Executor parsingExecutor,
+            @NonNull final ScheduledExecutorService pollingScheduler) {
         mApiCommunicator = checkNotNull(apiCommunicator);
         mSessionManager = checkNotNull(sessionManager);
         mGiniApiType = checkNotNull(giniApiType);
         mMoshi = moshi;
+        mPaymentAdapters = new PaymentAdapters(moshi);
+        mParsingExecutor = checkNotNull(parsingExecutor);
+        mDocumentPoller = new DocumentPoller(this, checkNotNull(pollingScheduler));
+        mDocumentListPoller = new DocumentListPoller(this, pollingScheduler);
+    }
+
+    private DocumentTaskManager(@NonNull final DocumentTaskManager documentTaskManager,
+            @NonNull final ApiCommunicator apiCommunicator) {
+        mApiCommunicator = apiCommunicator;
+        mSessionManager = documentTaskManager.mSessionManager;
+        mGiniApiType = documentTaskManager.mGiniApiType;
+        mMoshi = documentTaskManager.mMoshi;
+        mPaymentAdapters = documentTaskManager.mPaymentAdapters;
+        mParsingExecutor = documentTaskManager.mParsingExecutor;
+        mDocumentPoller = documentTaskManager.mDocumentPoller;
+        mDocumentListPoller = documentTaskManager.mDocumentListPoller;
+        mPollingMode = documentTaskManager.mPollingMode;
+        mPollingPolicy = documentTaskManager.mPollingPolicy;
+        mImagePreprocessor = documentTaskManager.mImagePreprocessor;
+        mUploadDeduplicationCache = documentTaskManager.mUploadDeduplicationCache;
+        mNearDuplicateDetector = documentTaskManager.mNearDuplicateDetector;
+    }
+
+    /**
+     * Returns a DocumentTaskManager which dispatches all its requests in the given lane. Use it to prioritize calls the
+     * user is waiting for or to move bulk work out of the way, e.g.
+     * {@code documentTaskManager.withRequestLane(RequestLane.BACKGROUND).getExtractions(document)}.
+     * <p>
+     * Document polling is shared with this instance and keeps using the default lanes.
+     *
+     * @param requestLane The lane used for all requests.
+     * @return A DocumentTaskManager sharing the configuration and state of this instance.
+     */
+    public DocumentTaskManager withRequestLane(@NonNull final RequestLane requestLane) {
+        return new DocumentTaskManager(this, mApiCommunicator.withRequestLane(checkNotNull(requestLane)));
+    }
+
+    /**
+     * Returns a DocumentTaskManager which always fetches fresh data from the Gini API. By default identical GET
+     * requests, which are in flight at the same time, are sent only once and their callers share the result.
+     *
+     * @return A DocumentTaskManager sharing the configuration and state of this instance.
+     */
+    public DocumentTaskManager withoutRequestCoalescing() {
+        return new DocumentTaskManager(this, mApiCommunicator.withoutRequestCoalescing());
+    }
+
+    /**
+     * Returns a DocumentTaskManager whose requests to the Gini API are cancelled when the token is cancelled. Steps of
+     * a call which have not started yet send no requests after the cancellation. In-flight uploads and downloads are
+     * aborted and not retried, and the tasks of cancelled calls are cancelled.
+     * <p>
+     * Document polling is shared with this instance and has to be cancelled with
+     * {@link #cancelDocumentPolling(Document)}.
+     *
+     * @param cancellationToken The token which cancels the requests.
+     * @return A DocumentTaskManager sharing the configuration and state of this instance.
+     */
+    public DocumentTaskManager withCancellationToken(@NonNull final CancellationToken cancellationToken) {
+        return new DocumentTaskManager(this, mApiCommunicator.withCancellationToken(checkNotNull(cancellationToken)));
+    }
+
+    /**
+     * Returns a DocumentTaskManager whose requests are not cancelled by the cancellation token of this instance, e.g.
+     * to delete the partial documents of a cancelled multi-page upload.
+     *
+     * @return A DocumentTaskManager sharing the configuration and state of this instance.
+     */
+    DocumentTaskManager withoutCancellationToken() {
+        return new DocumentTaskManager(this, mApiCommunicator.withoutCancellationToken());
+    }
+
+    /**
+     * Returns the cache which is used to send GET requests conditionally. Its hit count is the number of responses
+     * which were not modified and were neither downloaded nor parsed again.
+     *
+     * @return The cache of the GET responses.
+     */
+    public ConditionalRequestCache getConditionalRequestCache() {
+        return mApiCommunicator.getConditionalRequestCache();
+    }
+
+    @NonNull
+    Executor getParsingExecutor() {
+        return mParsingExecutor;
     }
 
     /**
@@ -146,22 +297,17 @@ public class DocumentTaskManager {
      * @return A Task which will resolve to an empty string.
      */
     public Task<String> deletePartialDocumentAndParents(@NonNull final String documentId) {
+        invalidateUploads(documentId);
         return getDocument(documentId).onSuccessTask(new Continuation<Document, Task<Void>>() {
             @Override
             public Task<Void> then(Task<Document> documentTask) throws Exception {
                 final Document document = documentTask.getResult();
                 return deleteDocuments(document.getCompositeDocuments());
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccessTask(new Continuation<Void, Task<Session>>() {
-            @Override
-            public Task<Session> then(final Task<Void> task) throws Exception {
-                return mSessionManager.getSession();
-            }
-        }, Task.BACKGROUND_EXECUTOR).onSuccessTask(new Continuation<Session, Task<String>>() {
+        }).onSuccessTask(new Continuation<Void, Task<String>>() {
             @Override
-            public Task<String> then(final Task<Session> task) throws Exception {
-                final Session session = task.getResult();
-                return mApiCommunicator.deleteDocument(documentId, session);
+            public Task<String> then(final Task<Void> task) throws Exception {
+                return deleteDocument(documentId);
             }
         });
     }
@@ -175,6 +321,7 @@ public class DocumentTaskManager {
      * @return A Task which will resolve to an empty string.
      */
     public Task<String> deleteDocument(@NonNull final String documentId) {
+        invalidateUploads(documentId);
         return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<String>>() {
             @Override
             public Task<String> then(final Task<Session> task) throws Exception {
@@ -195,7 +342,7 @@ public class DocumentTaskManager {
                 }
                 return Task.whenAll(deleteTasks);
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -230,26 +377,184 @@ public class DocumentTaskManager {
         return createPartialDocumentInternal(document, contentType, filename, documentType, documentMetadata);
     }
 
+    /**
+     * Uploads a document and creates a new Gini partial document. The document data is streamed from the given
+     * source, which avoids loading large documents into memory.
+     *
+     * @param document     The source of an image, a pdf or UTF-8 encoded text
+     * @param contentType  The media type of the uploaded data
+     * @param filename     Optional the filename of the given document
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values
+     * @return A Task which will resolve to the Document instance of the freshly created document.
+     */
+    public Task<Document> createPartialDocument(@NonNull final UploadSource document, @NonNull final String contentType,
+                                                @Nullable final String filename, @Nullable final DocumentType documentType) {
+        return createPartialDocumentInternal(document, contentType, filename, documentType, null);
+    }
+
+    /**
+     * Uploads a document and creates a new Gini partial document. The document data is streamed from the given
+     * source, which avoids loading large documents into memory.
+     *
+     * @param document         The source of an image, a pdf or UTF-8 encoded text
+     * @param contentType      The media type of the uploaded data
+     * @param filename         Optional the filename of the given document
+     * @param documentType     Optional a document type hint. See the documentation for the document type hints for
+     *                         possible values
+     * @param documentMetadata Additional information related to the document (e.g. the branch id
+     *                         to which the client app belongs)
+     * @return A Task which will resolve to the Document instance of the freshly created document.
+     */
+    public Task<Document> createPartialDocument(@NonNull final UploadSource document, @NonNull final String contentType,
+                                                @Nullable final String filename, @Nullable final DocumentType documentType, @NonNull final DocumentMetadata documentMetadata) {
+        return createPartialDocumentInternal(document, contentType, filename, documentType, documentMetadata);
+    }
+
     private Task<Document> createPartialDocumentInternal(@NonNull final byte[] document, @NonNull final String contentType,
                                                          @Nullable final String filename, @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
+        checkPartialDocumentsSupported();
+        return uploadUnlessUploaded(UploadSource.fromBytes(document), getPartialDocumentMediaType(contentType),
+                documentType, documentMetadata, new Continuation<Void, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Void> task) {
+                        return uploadPartialDocument(document, contentType, filename, documentType, documentMetadata);
+                    }
+                });
+    }
+
+    private Task<Document> uploadPartialDocument(@NonNull final byte[] document, @NonNull final String contentType,
+            @Nullable final String filename, @Nullable final DocumentType documentType,
+            @Nullable final DocumentMetadata documentMetadata) {
+        return uploadUnlessNearDuplicate(UploadSource.fromBytes(document), contentType, new Continuation<Void, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Void> task) {
+                return preprocessImage(document, contentType).onSuccessTask(new Continuation<PreprocessedImage, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<PreprocessedImage> imageTask) {
+                        final PreprocessedImage image = imageTask.getResult();
+                        return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
+                            @Override
+                            public Task<Uri> then(Task<Session> sessionTask) throws Exception {
+                                final Session session = sessionTask.getResult();
+                                return mApiCommunicator
+                                        .uploadDocument(image.getData(), getPartialDocumentMediaType(image.getContentType()),
+                                                filename, getApiDoctypeHint(documentType), session, documentMetadata);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    private Task<Document> createPartialDocumentInternal(@NonNull final UploadSource document, @NonNull final String contentType,
+                                                         @Nullable final String filename, @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
+        checkPartialDocumentsSupported();
+        return uploadUnlessUploaded(document, getPartialDocumentMediaType(contentType), documentType, documentMetadata,
+                new Continuation<Void, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Void> task) {
+                        return uploadPartialDocument(document, contentType, filename, documentType, documentMetadata);
+                    }
+                });
+    }
+
+    private Task<Document> uploadPartialDocument(@NonNull final UploadSource document, @NonNull final String contentType,
+            @Nullable final String filename, @Nullable final DocumentType documentType,
+            @Nullable final DocumentMetadata documentMetadata) {
+        return uploadUnlessNearDuplicate(document, contentType, new Continuation<Void, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Void> task) {
+                return preprocessImage(document, contentType).onSuccessTask(new Continuation<PreprocessedImage, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<PreprocessedImage> imageTask) {
+                        final PreprocessedImage image = imageTask.getResult();
+                        final UploadSource uploadSource = image != null
+                                ? document.replaceData(UploadSource.fromBytes(image.getData())) : document;
+                        final String uploadContentType = image != null ? image.getContentType() : contentType;
+                        return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
+                            @Override
+                            public Task<Uri> then(Task<Session> sessionTask) throws Exception {
+                                final Session session = sessionTask.getResult();
+                                return mApiCommunicator
+                                        .uploadDocument(uploadSource, getPartialDocumentMediaType(uploadContentType),
+                                                filename, getApiDoctypeHint(documentType), session, documentMetadata);
+                            }
+                        });
+                    }
+                });
+            }
+        });
+    }
+
+    private void checkPartialDocumentsSupported() {
         if (!mGiniApiType.getGiniJsonMediaType().equals(MediaTypes.GINI_JSON_V2)) {
             throw new UnsupportedOperationException(
                     "Partial documents may be used only with the default Gini API. Use GiniApiType.DEFAULT.");
         }
-        return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
-            @Override
-            public Task<Uri> then(Task<Session> sessionTask) throws Exception {
-                String apiDoctypeHint = null;
-                if (documentType != null) {
-                    apiDoctypeHint = documentType.getApiDoctypeHint();
-                }
-                final Session session = sessionTask.getResult();
-                final String partialDocumentMediaType = MediaTypes
-                        .forPartialDocument(mGiniApiType.getGiniPartialMediaType(), checkNotNull(contentType));
-                return mApiCommunicator
-                        .uploadDocument(document, partialDocumentMediaType, filename, apiDoctypeHint, session, documentMetadata);
-            }
-        });
+    }
+
+    @NonNull
+    private String getPartialDocumentMediaType(@NonNull final String contentType) {
+        return MediaTypes.forPartialDocument(mGiniApiType.getGiniPartialMediaType(), checkNotNull(contentType));
+    }
+
+    @Nullable
+    private static String getApiDoctypeHint(@Nullable final DocumentType documentType) {
+        return documentType != null ? documentType.getApiDoctypeHint() : null;
+    }
+
+    /**
+     * Uploads the pages of a multi-page document as partial documents and creates the composite document from them.
+     * Up to {@link #DEFAULT_MAX_PARALLEL_PAGE_UPLOADS} pages are uploaded at the same time and each page is
+     * attempted up to {@link #DEFAULT_PAGE_UPLOAD_ATTEMPTS} times.
+     *
+     * @param pages        The pages in the order of the multi-page document
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values
+     * @return A Task which will resolve to the Document instance of the freshly created composite document.
+     */
+    public Task<Document> createMultiPageDocument(@NonNull final List<PageUpload> pages,
+            @Nullable final DocumentType documentType) {
+        return createMultiPageDocument(pages, documentType, DEFAULT_MAX_PARALLEL_PAGE_UPLOADS,
+                DEFAULT_PAGE_UPLOAD_ATTEMPTS);
+    }
+
+    /**
+     * Uploads the pages of a multi-page document as partial documents and creates the composite document from them.
+     * <p>
+     * The composite document is created as soon as the last page was uploaded and keeps the order and the rotations
+     * of the pages. Uploads which failed because of a network error or a 5xx server error are retried. If a page
+     * can't be uploaded or the composite document can't be created, the partial documents which were already created
+     * are deleted and the Task fails with the first error. They are deleted as well, if the requests are cancelled
+     * with a cancellation token (see {@link #withCancellationToken(CancellationToken)}).
+     *
+     * @param pages              The pages in the order of the multi-page document
+     * @param documentType       Optional a document type hint. See the documentation for the document type hints for
+     *                           possible values
+     * @param maxParallelUploads The maximum number of pages which are uploaded at the same time
+     * @param maxAttemptsPerPage The maximum number of times a page is uploaded
+     * @return A Task which will resolve to the Document instance of the freshly created composite document.
+     */
+    public Task<Document> createMultiPageDocument(@NonNull final List<PageUpload> pages,
+            @Nullable final DocumentType documentType, final int maxParallelUploads, final int maxAttemptsPerPage) {
+        checkPartialDocumentsSupported();
+        return new MultiPageUploadPipeline(this, checkNotNull(pages), documentType, maxParallelUploads,
+                maxAttemptsPerPage).start();
+    }
+
+    /**
+     * Starts a session which uploads the pages of a multi-page document while they are being captured. See
+     * {@link CaptureSession}.
+     *
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values
+     * @return A new capture session.
+     */
+    public CaptureSession startCaptureSession(@Nullable final DocumentType documentType) {
+        checkPartialDocumentsSupported();
+        return new CaptureSession(this, documentType);
     }
 
     /**
@@ -277,12 +582,12 @@ public class DocumentTaskManager {
                 return mApiCommunicator
                         .uploadDocument(compositeJson, mGiniApiType.getGiniCompositeJsonMediaType(), null, apiDoctypeHint, session, null);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccessTask(new Continuation<Uri, Task<Document>>() {
+        }).onSuccessTask(new Continuation<Uri, Task<Document>>() {
             @Override
             public Task<Document> then(Task<Uri> uploadTask) throws Exception {
                 return getDocument(uploadTask.getResult());
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -313,12 +618,12 @@ public class DocumentTaskManager {
                 return mApiCommunicator
                         .uploadDocument(compositeJson, mGiniApiType.getGiniCompositeJsonMediaType(), null, apiDoctypeHint, session, null);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccessTask(new Continuation<Uri, Task<Document>>() {
+        }).onSuccessTask(new Continuation<Uri, Task<Document>>() {
             @Override
             public Task<Document> then(Task<Uri> uploadTask) throws Exception {
                 return getDocument(uploadTask.getResult());
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     private byte[] createCompositeJson(@NonNull final List<Document> documents)
@@ -390,31 +695,257 @@ public class DocumentTaskManager {
         return createDocumentInternal(document, filename, documentType, documentMetadata);
     }
 
+    /**
+     * Uploads a document and creates a new Gini document. The document data is streamed from the given source, which
+     * avoids loading large documents into memory.
+     *
+     * @param document     The source of an image, a pdf or UTF-8 encoded text
+     * @param filename     Optional the filename of the given document.
+     * @param documentType Optional a document type hint. See the documentation for the document type hints for
+     *                     possible values.
+     * @return A Task which will resolve to the Document instance of the freshly created document.
+     *
+     * <b>Important:</b> If using the default Gini API, then use
+     * {@link #createPartialDocument(UploadSource, String, String, DocumentType)} to upload the document and then call
+     * {@link #createCompositeDocument(LinkedHashMap, DocumentType)} to finish document creation.
+     */
+    public Task<Document> createDocument(@NonNull final UploadSource document, @Nullable final String filename,
+                                         @Nullable final DocumentType documentType) {
+        return createDocumentInternal(document, filename, documentType, null);
+    }
+
+    /**
+     * Uploads a document and creates a new Gini document. The document data is streamed from the given source, which
+     * avoids loading large documents into memory.
+     *
+     * @param document         The source of an image, a pdf or UTF-8 encoded text
+     * @param filename         Optional the filename of the given document.
+     * @param documentType     Optional a document type hint. See the documentation for the document type hints for
+     *                         possible values.
+     * @param documentMetadata Additional information related to the document (e.g. the branch id
+     *                         to which the client app belongs)
+     * @return A Task which will resolve to the Document instance of the freshly created document.
+     *
+     * <b>Important:</b> If using the default Gini API, then use
+     * {@link #createPartialDocument(UploadSource, String, String, DocumentType, DocumentMetadata)} to upload the
+     * document and then call {@link #createCompositeDocument(LinkedHashMap, DocumentType)} to finish document creation.
+     */
+    public Task<Document> createDocument(@NonNull final UploadSource document, @Nullable final String filename,
+                                         @Nullable final DocumentType documentType, @NonNull final DocumentMetadata documentMetadata) {
+        return createDocumentInternal(document, filename, documentType, documentMetadata);
+    }
+
     private Task<Document> createDocumentInternal(@NonNull final byte[] document, @Nullable final String filename,
                                                   @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
-        return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
+        return uploadUnlessUploaded(UploadSource.fromBytes(document), MediaTypes.IMAGE_JPEG, documentType,
+                documentMetadata, new Continuation<Void, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Void> task) {
+                        return uploadCompleteDocument(document, filename, documentType, documentMetadata);
+                    }
+                });
+    }
+
+    private Task<Document> uploadCompleteDocument(@NonNull final byte[] document, @Nullable final String filename,
+            @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
+        return preprocessImage(document, MediaTypes.IMAGE_JPEG).onSuccessTask(new Continuation<PreprocessedImage, Task<Document>>() {
             @Override
-            public Task<Uri> then(Task<Session> sessionTask) throws Exception {
-                String apiDoctypeHint = null;
-                if (documentType != null) {
-                    apiDoctypeHint = documentType.getApiDoctypeHint();
+            public Task<Document> then(final Task<PreprocessedImage> imageTask) {
+                final PreprocessedImage image = imageTask.getResult();
+                return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
+                    @Override
+                    public Task<Uri> then(Task<Session> sessionTask) throws Exception {
+                        final Session session = sessionTask.getResult();
+                        return mApiCommunicator
+                                .uploadDocument(image.getData(), MediaTypes.IMAGE_JPEG, filename,
+                                        getApiDoctypeHint(documentType), session, documentMetadata);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Runs the upload, unless no upload deduplication cache was set or the same data was already uploaded to the same
+     * endpoint with the same document type hint and metadata. The key of the upload is computed on the parsing
+     * executor, because hashing large documents would block the calling thread. Uploads found only in the
+     * {@link UploadDeduplicationStore} resolve to their document as it is now, unless it was deleted in the meantime.
+     */
+    private Task<Document> uploadUnlessUploaded(@NonNull final UploadSource document,
+            @NonNull final String uploadMediaType, @Nullable final DocumentType documentType,
+            @Nullable final DocumentMetadata documentMetadata,
+            @NonNull final Continuation<Void, Task<Document>> upload) {
+        final UploadDeduplicationCache uploadDeduplicationCache = mUploadDeduplicationCache;
+        if (uploadDeduplicationCache == null) {
+            return Task.<Void>forResult(null).continueWithTask(upload);
+        }
+        final String giniJsonMediaType = mGiniApiType.getGiniJsonMediaType();
+        final String apiDoctypeHint = getApiDoctypeHint(documentType);
+        final Map<String, String> metadata =
+                documentMetadata != null ? new HashMap<>(documentMetadata.getMetadata()) : null;
+        return Task.call(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return UploadDeduplicationCache.getKey(document, giniJsonMediaType, uploadMediaType, apiDoctypeHint,
+                        metadata);
+            }
+        }, mParsingExecutor).onSuccessTask(new Continuation<String, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<String> keyTask) {
+                final String uploadKey = keyTask.getResult();
+                final Document uploadedDocument = uploadDeduplicationCache.get(uploadKey);
+                if (uploadedDocument != null) {
+                    uploadDeduplicationCache.onHit();
+                    return Task.forResult(uploadedDocument);
                 }
-                final Session session = sessionTask.getResult();
-                return mApiCommunicator
-                        .uploadDocument(document, MediaTypes.IMAGE_JPEG, filename, apiDoctypeHint, session, documentMetadata);
+                final String storedDocumentId = uploadDeduplicationCache.getStoredDocumentId(uploadKey);
+                if (storedDocumentId == null) {
+                    return uploadAndRemember(uploadDeduplicationCache, uploadKey, upload);
+                }
+                return getDocument(storedDocumentId).continueWithTask(new Continuation<Document, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Document> task) {
+                        if (task.isFaulted() && isNotFound(task.getError())) {
+                            // Deleted outside of this app
+                            uploadDeduplicationCache.invalidate(storedDocumentId);
+                            return uploadAndRemember(uploadDeduplicationCache, uploadKey, upload);
+                        } else if (task.isFaulted() || task.isCancelled()) {
+                            return task;
+                        }
+                        uploadDeduplicationCache.onHit();
+                        uploadDeduplicationCache.put(uploadKey, task.getResult());
+                        return task;
+                    }
+                });
+            }
+        });
+    }
+
+    private static Task<Document> uploadAndRemember(@NonNull final UploadDeduplicationCache uploadDeduplicationCache,
+            @NonNull final String uploadKey, @NonNull final Continuation<Void, Task<Document>> upload) {
+        uploadDeduplicationCache.onMiss();
+        return Task.<Void>forResult(null).continueWithTask(upload).onSuccess(new Continuation<Document, Document>() {
+            @Override
+            public Document then(final Task<Document> task) {
+                uploadDeduplicationCache.put(uploadKey, task.getResult());
+                return task.getResult();
+            }
+        });
+    }
+
+    private void invalidateUploads(@NonNull final String documentId) {
+        final UploadDeduplicationCache uploadDeduplicationCache = mUploadDeduplicationCache;
+        if (uploadDeduplicationCache != null) {
+            uploadDeduplicationCache.invalidate(checkNotNull(documentId));
+        }
+        final NearDuplicateDetector nearDuplicateDetector = mNearDuplicateDetector;
+        if (nearDuplicateDetector != null) {
+            nearDuplicateDetector.invalidate(checkNotNull(documentId));
+        }
+    }
+
+    /**
+     * Runs the upload, unless no near-duplicate detector was set or the image is a near-duplicate of a recently
+     * uploaded page.
+     */
+    private Task<Document> uploadUnlessNearDuplicate(@NonNull final UploadSource document,
+            @NonNull final String contentType, @NonNull final Continuation<Void, Task<Document>> upload) {
+        final NearDuplicateDetector nearDuplicateDetector = mNearDuplicateDetector;
+        if (nearDuplicateDetector == null) {
+            return Task.<Void>forResult(null).continueWithTask(upload);
+        }
+        return nearDuplicateDetector.uploadUnlessNearDuplicate(document, checkNotNull(contentType), upload);
+    }
+
+    /**
+     * Runs the image preprocessor, if one was set. Otherwise the document is uploaded unchanged.
+     */
+    private Task<PreprocessedImage> preprocessImage(@NonNull final byte[] document, @NonNull final String contentType) {
+        final ImagePreprocessor imagePreprocessor = mImagePreprocessor;
+        if (imagePreprocessor == null) {
+            return Task.forResult(new PreprocessedImage(document, contentType, document.length));
+        }
+        return imagePreprocessor.preprocess(document, contentType);
+    }
+
+    /**
+     * Runs the image preprocessor on the image of the upload source, if one was set.
+     *
+     * @return A Task which will resolve to the smaller image or to null, if the source should be uploaded unchanged.
+     */
+    private Task<PreprocessedImage> preprocessImage(@NonNull final UploadSource document,
+            @NonNull final String contentType) {
+        final ImagePreprocessor imagePreprocessor = mImagePreprocessor;
+        if (imagePreprocessor == null) {
+            return Task.forResult(null);
+        }
+        return imagePreprocessor.preprocess(document, contentType);
+    }
+
+    private Task<Document> createDocumentInternal(@NonNull final UploadSource document, @Nullable final String filename,
+                                                  @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
+        return uploadUnlessUploaded(document, MediaTypes.IMAGE_JPEG, documentType, documentMetadata,
+                new Continuation<Void, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Void> task) {
+                        return uploadCompleteDocument(document, filename, documentType, documentMetadata);
+                    }
+                });
+    }
+
+    private Task<Document> uploadCompleteDocument(@NonNull final UploadSource document, @Nullable final String filename,
+            @Nullable final DocumentType documentType, @Nullable final DocumentMetadata documentMetadata) {
+        return preprocessImage(document, MediaTypes.IMAGE_JPEG).onSuccessTask(new Continuation<PreprocessedImage, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<PreprocessedImage> imageTask) {
+                final PreprocessedImage image = imageTask.getResult();
+                final UploadSource uploadSource = image != null
+                        ? document.replaceData(UploadSource.fromBytes(image.getData())) : document;
+                return createDocumentInternal(new Continuation<Session, Task<Uri>>() {
+                    @Override
+                    public Task<Uri> then(Task<Session> sessionTask) throws Exception {
+                        final Session session = sessionTask.getResult();
+                        return mApiCommunicator
+                                .uploadDocument(uploadSource, MediaTypes.IMAGE_JPEG, filename,
+                                        getApiDoctypeHint(documentType), session, documentMetadata);
+                    }
+                });
             }
         });
     }
 
     private Task<Document> createDocumentInternal(@NonNull final Continuation<Session, Task<Uri>> successContinuation) {
-        return mSessionManager.getSession()
-                .onSuccessTask(successContinuation, Task.BACKGROUND_EXECUTOR)
+        final Task<Session> sessionTask = mSessionManager.getSession();
+        return sessionTask
+                .onSuccessTask(successContinuation)
+                .continueWithTask(new Continuation<Uri, Task<Uri>>() {
+                    @Override
+                    public Task<Uri> then(Task<Uri> uploadTask) {
+                        if (sessionTask.isFaulted() || !uploadTask.isFaulted()
+                                || !isUnauthorized(uploadTask.getError())) {
+                            return uploadTask;
+                        }
+                        // The access token was rejected before it expired, replay the upload once with a new session
+                        mSessionManager.invalidateSession(sessionTask.getResult());
+                        return mSessionManager.getSession().onSuccessTask(successContinuation);
+                    }
+                })
                 .onSuccessTask(new Continuation<Uri, Task<Document>>() {
                     @Override
                     public Task<Document> then(Task<Uri> uploadTask) throws Exception {
                         return getDocument(uploadTask.getResult());
                     }
-                }, Task.BACKGROUND_EXECUTOR);
+                });
+    }
+
+    private static boolean isUnauthorized(@NonNull final Exception error) {
+        return error instanceof VolleyError && ((VolleyError) error).networkResponse != null
+                && ((VolleyError) error).networkResponse.statusCode == 401;
+    }
+
+    private static boolean isNotFound(@NonNull final Exception error) {
+        return error instanceof VolleyError && ((VolleyError) error).networkResponse != null
+                && ((VolleyError) error).networkResponse.statusCode == 404;
     }
 
     /**
@@ -426,105 +957,14 @@ public class DocumentTaskManager {
     public Task<ExtractionsContainer> getAllExtractions(@NonNull final Document document) {
         final String documentId = document.getId();
         return mSessionManager.getSession()
-                .onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+                .onSuccessTask(new Continuation<Session, Task<ExtractionsContainer>>() {
                     @Override
-                    public Task<JSONObject> then(Task<Session> sessionTask) {
+                    public Task<ExtractionsContainer> then(Task<Session> sessionTask) {
                         final Session session = sessionTask.getResult();
-                        return mApiCommunicator.getExtractions(documentId, session);
-                    }
-                }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONObject, ExtractionsContainer>() {
-                    @Override
-                    public ExtractionsContainer then(Task<JSONObject> task) throws Exception {
-                        final JSONObject responseData = task.getResult();
-                        final JSONObject candidatesData = responseData.getJSONObject("candidates");
-                        Map<String, List<Extraction>> candidates =
-                                extractionCandidatesFromApiResponse(candidatesData);
-
-                        final Map<String, SpecificExtraction> specificExtractions =
-                                parseSpecificExtractions(responseData.getJSONObject("extractions"), candidates);
-
-                        final Map<String, CompoundExtraction> compoundExtractions =
-                                parseCompoundExtractions(responseData.optJSONObject("compoundExtractions"), candidates);
-
-                        final List<ReturnReason> returnReasons = parseReturnReason(responseData.optJSONArray("returnReasons"));
-
-                        return new ExtractionsContainer(specificExtractions, compoundExtractions, returnReasons);
+                        return mApiCommunicator.getExtractions(documentId, session, mParsingExecutor,
+                                EXTRACTIONS_PARSER);
                     }
-                }, Task.BACKGROUND_EXECUTOR);
-
-    }
-
-    @NonNull
-    private Map<String, SpecificExtraction> parseSpecificExtractions(@NonNull final JSONObject specificExtractionsJson,
-                                                                     @NonNull final Map<String, List<Extraction>> candidates)
-            throws JSONException {
-        final Map<String, SpecificExtraction> specificExtractions = new HashMap<>();
-        @SuppressWarnings("unchecked")
-        // Quote Android Source: "/* Return a raw type for API compatibility */"
-        final Iterator<String> extractionsNameIterator = specificExtractionsJson.keys();
-        while (extractionsNameIterator.hasNext()) {
-            final String extractionName = extractionsNameIterator.next();
-            final JSONObject extractionData = specificExtractionsJson.getJSONObject(extractionName);
-            final Extraction extraction = extractionFromApiResponse(extractionData);
-            List<Extraction> candidatesForExtraction = new ArrayList<Extraction>();
-            if (extractionData.has("candidates")) {
-                final String candidatesName = extractionData.getString("candidates");
-                if (candidates.containsKey(candidatesName)) {
-                    candidatesForExtraction = candidates.get(candidatesName);
-                }
-            }
-            final SpecificExtraction specificExtraction =
-                    new SpecificExtraction(extractionName, extraction.getValue(),
-                            extraction.getEntity(), extraction.getBox(),
-                            candidatesForExtraction);
-            specificExtractions.put(extractionName, specificExtraction);
-        }
-        return specificExtractions;
-    }
-
-    private Map<String, CompoundExtraction> parseCompoundExtractions(@Nullable final JSONObject compoundExtractionsJson,
-                                                                     @NonNull final Map<String, List<Extraction>> candidates)
-            throws JSONException {
-        if (compoundExtractionsJson == null) {
-            return Collections.emptyMap();
-        }
-        final HashMap<String, CompoundExtraction> compoundExtractions = new HashMap<>();
-        final Iterator<String> extractionsNameIterator = compoundExtractionsJson.keys();
-        while (extractionsNameIterator.hasNext()) {
-            final String extractionName = extractionsNameIterator.next();
-            final List<Map<String, SpecificExtraction>> specificExtractionMaps = new ArrayList<>();
-            final JSONArray compoundExtractionData = compoundExtractionsJson.getJSONArray(extractionName);
-            for (int i = 0; i < compoundExtractionData.length(); i++) {
-                final JSONObject specificExtractionsData = compoundExtractionData.getJSONObject(i);
-                specificExtractionMaps.add(parseSpecificExtractions(specificExtractionsData, candidates));
-            }
-            compoundExtractions.put(extractionName, new CompoundExtraction(extractionName, specificExtractionMaps));
-        }
-        return compoundExtractions;
-    }
-
-    private List<ReturnReason> parseReturnReason(@Nullable final JSONArray returnReasonsJson) throws JSONException {
-        if (returnReasonsJson == null) {
-            return Collections.emptyList();
-        }
-        final List<ReturnReason> returnReasons = new ArrayList<>();
-        for (int i = 0; i < returnReasonsJson.length(); i++) {
-            final JSONObject returnReasonJson = returnReasonsJson.getJSONObject(i);
-
-            Map<String, String> localizedLabels = new HashMap<>();
-
-            final Iterator<String> keys = returnReasonJson.keys();
-            while (keys.hasNext()) {
-                final String key = keys.next();
-                if (key.equals("id")) {
-                    continue;
-                }
-                localizedLabels.put(key, returnReasonJson.getString(key));
-            }
-            returnReasons.add(new ReturnReason(returnReasonJson.getString("id"), localizedLabels));
-        }
-        return returnReasons;
+                });
     }
 
     /**
@@ -542,8 +982,8 @@ public class DocumentTaskManager {
                         final Session session = sessionTask.getResult();
                         return mApiCommunicator.getDocument(documentId, session);
                     }
-                }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(DOCUMENT_FROM_RESPONSE, Task.BACKGROUND_EXECUTOR);
+                })
+                .onSuccess(DOCUMENT_FROM_RESPONSE);
     }
 
     /**
@@ -565,48 +1005,149 @@ public class DocumentTaskManager {
                         final Session session = sessionTask.getResult();
                         return mApiCommunicator.getDocument(documentUri, session);
                     }
-                }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(DOCUMENT_FROM_RESPONSE, Task.BACKGROUND_EXECUTOR);
+                })
+                .onSuccess(DOCUMENT_FROM_RESPONSE);
     }
 
     /**
      * Continually checks the document status (via the Gini API) until the document is fully processed. To avoid
-     * flooding the network, there is a pause of at least the number of seconds that is set in the POLLING_INTERVAL
-     * constant of this class.
+     * flooding the network, there is a pause of at least the number of milliseconds that is set in the
+     * POLLING_INTERVAL constant of this class.
      *
      * <b>This method returns a Task which will resolve to a new document instance. It does not update the given
      * document instance.</b>
      *
+     * No thread is blocked while waiting between the requests, the next request is scheduled instead. If the
+     * {@link PollingMode#LONG_POLL} mode was set a single request is held open by the Gini API instead. In the
+     * {@link PollingMode#DOCUMENT_LIST} mode all polled documents share the requests for the document list.
+     *
      * @param document The document which will be polled.
      */
     public Task<Document> pollDocument(@NonNull final Document document) {
-        if (document.getState() != Document.ProcessingState.PENDING) {
-            return Task.forResult(document);
+        if (mPollingMode == PollingMode.DOCUMENT_LIST) {
+            return mDocumentListPoller.poll(document);
         }
-        mDocumentPollingsInProgress.put(document, false);
-        final String documentId = document.getId();
-        return getDocument(documentId).continueWithTask(new Continuation<Document, Task<Document>>() {
-            @Override
-            public Task<Document> then(Task<Document> task) throws Exception {
-                if (task.isFaulted() || task.isCancelled()
-                        || task.getResult().getState() != Document.ProcessingState.PENDING) {
-                    mDocumentPollingsInProgress.remove(document);
-                    return task;
-                } else {
-                    if (mDocumentPollingsInProgress.containsKey(document)
-                            && mDocumentPollingsInProgress.get(document)) {
-                        mDocumentPollingsInProgress.remove(document);
-                        return Task.cancelled();
-                    } else {
-                        // The continuation is executed in a background thread by Bolts, so it does not block the UI
-                        // when we sleep here. Infinite recursions are also prevented by Bolts (the task will then resolve
-                        // to a failure).
-                        Thread.sleep(POLLING_INTERVAL);
-                        return pollDocument(document);
+        return mDocumentPoller.poll(document);
+    }
+
+    /**
+     * Sets the strategy used by {@link #pollDocument(Document)}. Pollings which are already in progress are not
+     * affected.
+     *
+     * @param pollingMode The polling mode. Defaults to {@link PollingMode#INTERVAL}.
+     */
+    void setPollingMode(@NonNull final PollingMode pollingMode) {
+        mPollingMode = checkNotNull(pollingMode);
+        mDocumentPoller.setPollingMode(pollingMode);
+    }
+
+    /**
+     * Sets the policy which decides how long to wait between the requests when polling documents.
+     *
+     * @param pollingPolicy The polling policy. Defaults to a {@link DefaultPollingPolicy}.
+     */
+    void setPollingPolicy(@NonNull final PollingPolicy pollingPolicy) {
+        mPollingPolicy = checkNotNull(pollingPolicy);
+        mDocumentPoller.setPollingPolicy(pollingPolicy);
+        mDocumentListPoller.setPollingPolicy(pollingPolicy);
+    }
+
+    @NonNull
+    PollingPolicy getPollingPolicy() {
+        return mPollingPolicy;
+    }
+
+    /**
+     * Sets the preprocessor which makes images smaller before they are uploaded with
+     * {@link #createPartialDocument(byte[], String, String, DocumentType)},
+     * {@link #createPartialDocument(UploadSource, String, String, DocumentType)} and the corresponding
+     * {@code createDocument} methods.
+     *
+     * @param imagePreprocessor The image preprocessor or null to upload images unchanged.
+     */
+    void setImagePreprocessor(@Nullable final ImagePreprocessor imagePreprocessor) {
+        mImagePreprocessor = imagePreprocessor;
+    }
+
+    /**
+     * Sets the cache which resolves repeated uploads of the same data to the existing documents. It is used by the
+     * byte array and the {@link UploadSource} variants of {@code createPartialDocument} and {@code createDocument}.
+     *
+     * @param uploadDeduplicationCache The cache or null to upload all documents.
+     */
+    void setUploadDeduplicationCache(@Nullable final UploadDeduplicationCache uploadDeduplicationCache) {
+        mUploadDeduplicationCache = uploadDeduplicationCache;
+    }
+
+    /**
+     * Sets the detector which skips uploading images that are near-duplicates of recently uploaded pages. It is used
+     * by all methods which create partial documents.
+     *
+     * @param nearDuplicateDetector The detector or null to upload all pages.
+     */
+    void setNearDuplicateDetector(@Nullable final NearDuplicateDetector nearDuplicateDetector) {
+        mNearDuplicateDetector = nearDuplicateDetector;
+    }
+
+    /**
+     * Returns the time in milliseconds a document is expected to take from the start of its polling until it is
+     * processed. The estimate is provided by the polling policy, see
+     * {@link GiniBuilder#setDocumentPollingPolicy(PollingPolicy)}.
+     *
+     * @param document A pending document.
+     * @return The expected processing time in milliseconds or -1, if no estimate is available.
+     */
+    public long getExpectedProcessingTime(@NonNull final Document document) {
+        return mPollingPolicy.getExpectedProcessingTime(checkNotNull(document));
+    }
+
+    /**
+     * Get a page of the document list.
+     *
+     * @param offset The index of the first document.
+     * @param limit  The maximum number of documents.
+     * @return A Task which will resolve to the JSON response of the Gini API containing the documents and their total
+     * count.
+     */
+    Task<JSONObject> getDocumentList(final int offset, final int limit) {
+        return mSessionManager.getSession()
+                .onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+                    @Override
+                    public Task<JSONObject> then(Task<Session> sessionTask) throws Exception {
+                        final Session session = sessionTask.getResult();
+                        return mApiCommunicator.getDocumentList(offset, limit, session);
                     }
-                }
-            }
-        }, Task.BACKGROUND_EXECUTOR);
+                });
+    }
+
+    /**
+     * Waits for the document to leave the pending state using a long-polling request.
+     *
+     * @param documentId The unique identifier of the document.
+     * @return A Task which will resolve to a new document instance. The document is still pending, if the server-side
+     * timeout expired.
+     */
+    Task<Document> longPollDocument(@NonNull final String documentId) {
+        checkNotNull(documentId);
+        return mSessionManager.getSession()
+                .onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+                    @Override
+                    public Task<JSONObject> then(Task<Session> sessionTask) throws Exception {
+                        final Session session = sessionTask.getResult();
+                        return mApiCommunicator.waitForDocumentProcessed(documentId, session);
+                    }
+                })
+                .onSuccessTask(new Continuation<JSONObject, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(Task<JSONObject> task) throws Exception {
+                        final JSONObject responseData = task.getResult();
+                        if (responseData == null || !responseData.has("progress")) {
+                            // Timed out without a document in the response
+                            return getDocument(documentId);
+                        }
+                        return Task.forResult(Document.fromApiResponse(responseData));
+                    }
+                });
     }
 
     /**
@@ -615,9 +1156,8 @@ public class DocumentTaskManager {
      * @param document The document which is being polled
      */
     public void cancelDocumentPolling(@NonNull final Document document) {
-        if (mDocumentPollingsInProgress.containsKey(document)) {
-            mDocumentPollingsInProgress.put(document, true);
-        }
+        mDocumentPoller.cancel(document);
+        mDocumentListPoller.cancel(document);
     }
 
     /**
@@ -654,7 +1194,7 @@ public class DocumentTaskManager {
                 final Session session = task.getResult();
                 return mApiCommunicator.sendFeedback(documentId, feedbackForExtractions, session);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccess(new Continuation<JSONObject, Document>() {
+        }).onSuccess(new Continuation<JSONObject, Document>() {
             @Override
             public Document then(Task<JSONObject> task) throws Exception {
                 for (Map.Entry<String, SpecificExtraction> entry : extractions.entrySet()) {
@@ -662,7 +1202,7 @@ public class DocumentTaskManager {
                 }
                 return document;
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -720,7 +1260,7 @@ public class DocumentTaskManager {
                 final Session session = task.getResult();
                 return mApiCommunicator.sendFeedback(documentId, feedbackForExtractions, feedbackForCompoundExtractions, session);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccess(new Continuation<JSONObject, Document>() {
+        }).onSuccess(new Continuation<JSONObject, Document>() {
             @Override
             public Document then(Task<JSONObject> task) throws Exception {
                 for (Map.Entry<String, SpecificExtraction> entry : extractions.entrySet()) {
@@ -728,7 +1268,7 @@ public class DocumentTaskManager {
                 }
                 return document;
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -753,13 +1293,13 @@ public class DocumentTaskManager {
                 final Session session = task.getResult();
                 return mApiCommunicator.errorReportForDocument(documentId, summary, description, session);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccess(new Continuation<JSONObject, String>() {
+        }).onSuccess(new Continuation<JSONObject, String>() {
             @Override
             public String then(Task<JSONObject> task) throws Exception {
                 final JSONObject responseData = task.getResult();
                 return responseData.getString("errorId");
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -777,7 +1317,7 @@ public class DocumentTaskManager {
                 final Session session = task.getResult();
                 return mApiCommunicator.getLayoutForDocument(documentId, session);
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     /**
@@ -786,19 +1326,17 @@ public class DocumentTaskManager {
      * @return A list of {@link PaymentProvider}
      */
     public Task<List<PaymentProvider>> getPaymentProviders() {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONArray>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<List<PaymentProviderResponse>>>() {
             @Override
-            public Task<JSONArray> then(Task<Session> task) {
+            public Task<List<PaymentProviderResponse>> then(Task<Session> task) {
                 final Session session = task.getResult();
-                return mApiCommunicator.getPaymentProviders(session);
+                return mApiCommunicator.getPaymentProviders(session, mPaymentAdapters.mPaymentProvidersParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONArray, List<PaymentProvider>>() {
+        })
+                .onSuccess(new Continuation<List<PaymentProviderResponse>, List<PaymentProvider>>() {
                     @Override
-                    public List<PaymentProvider> then(Task<JSONArray> task) throws Exception {
-                        Type type = Types.newParameterizedType(List.class, PaymentProviderResponse.class);
-                        JsonAdapter<List<PaymentProviderResponse>> adapter = mMoshi.adapter(type);
-                        List<PaymentProviderResponse> paymentProviderResponse = adapter.fromJson(task.getResult().toString());
+                    public List<PaymentProvider> then(Task<List<PaymentProviderResponse>> task) {
+                        List<PaymentProviderResponse> paymentProviderResponse = task.getResult();
 
                         List<PaymentProvider> paymentProviders = new ArrayList<>();
                         for (PaymentProviderResponse paymentProvider : paymentProviderResponse != null ? paymentProviderResponse : Collections.<PaymentProviderResponse>emptyList()) {
@@ -813,20 +1351,17 @@ public class DocumentTaskManager {
      * @return {@link PaymentProvider] for the given id.
      */
     public Task<PaymentProvider> getPaymentProvider(final String id) {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<PaymentProviderResponse>>() {
             @Override
-            public Task<JSONObject> then(Task<Session> task) {
+            public Task<PaymentProviderResponse> then(Task<Session> task) {
                 final Session session = task.getResult();
-                return mApiCommunicator.getPaymentProvider(id, session);
+                return mApiCommunicator.getPaymentProvider(id, session, mPaymentAdapters.mPaymentProviderParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONObject, PaymentProvider>() {
+        })
+                .onSuccess(new Continuation<PaymentProviderResponse, PaymentProvider>() {
                     @Override
-                    public PaymentProvider then(Task<JSONObject> task) throws Exception {
-                        JsonAdapter<PaymentProviderResponse> adapter = mMoshi.adapter(PaymentProviderResponse.class);
-                        PaymentProviderResponse paymentProviderResponse = adapter.fromJson(task.getResult().toString());
-
-                        return PaymentProviderKt.toPaymentProvider(Objects.requireNonNull(paymentProviderResponse));
+                    public PaymentProvider then(Task<PaymentProviderResponse> task) {
+                        return PaymentProviderKt.toPaymentProvider(Objects.requireNonNull(task.getResult()));
                     }
                 });
     }
@@ -842,17 +1377,17 @@ public class DocumentTaskManager {
             @Override
             public Task<JSONObject> then(Task<Session> task) throws JSONException {
                 final Session session = task.getResult();
-                JsonAdapter<PaymentRequestBody> adapter = mMoshi.adapter(PaymentRequestBody.class);
-                String body = adapter.toJson(PaymentRequestBodyKt.toPaymentRequestBody(paymentRequestInput));
+                String body = mPaymentAdapters.mPaymentRequestBodyAdapter.toJson(
+                        PaymentRequestBodyKt.toPaymentRequestBody(paymentRequestInput));
 
                 return mApiCommunicator.postPaymentRequests(new JSONObject(body), session);
             }
-        }, Task.BACKGROUND_EXECUTOR)
+        })
                 .onSuccess(new Continuation<JSONObject, String>() {
                     @Override
                     public String then(Task<JSONObject> task) throws Exception {
-                        JsonAdapter<LocationResponse> adapter = mMoshi.adapter(LocationResponse.class);
-                        LocationResponse locationResponse = adapter.fromJson(task.getResult().toString());
+                        LocationResponse locationResponse =
+                                mPaymentAdapters.mLocationResponseAdapter.fromJson(task.getResult().toString());
 
                         String location = Objects.requireNonNull(locationResponse).getLocation();
 
@@ -865,20 +1400,17 @@ public class DocumentTaskManager {
      * @return {PaymentRequest} for the given id
      */
     public Task<PaymentRequest> getPaymentRequest(final String id) {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<PaymentRequestResponse>>() {
             @Override
-            public Task<JSONObject> then(Task<Session> task) {
+            public Task<PaymentRequestResponse> then(Task<Session> task) {
                 final Session session = task.getResult();
-                return mApiCommunicator.getPaymentRequest(id, session);
+                return mApiCommunicator.getPaymentRequest(id, session, mPaymentAdapters.mPaymentRequestParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONObject, PaymentRequest>() {
+        })
+                .onSuccess(new Continuation<PaymentRequestResponse, PaymentRequest>() {
                     @Override
-                    public PaymentRequest then(Task<JSONObject> task) throws Exception {
-                        JsonAdapter<PaymentRequestResponse> adapter = mMoshi.adapter(PaymentRequestResponse.class);
-                        PaymentRequestResponse requestResponse = adapter.fromJson(task.getResult().toString());
-
-                        return PaymentRequestKt.toPaymentRequest(Objects.requireNonNull(requestResponse));
+                    public PaymentRequest then(Task<PaymentRequestResponse> task) {
+                        return PaymentRequestKt.toPaymentRequest(Objects.requireNonNull(task.getResult()));
                     }
                 });
     }
@@ -887,19 +1419,17 @@ public class DocumentTaskManager {
      * @return List of payment {@link PaymentRequest}
      */
     public Task<List<PaymentRequest>> getPaymentRequests() {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONArray>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<List<PaymentRequestResponse>>>() {
             @Override
-            public Task<JSONArray> then(Task<Session> task) {
+            public Task<List<PaymentRequestResponse>> then(Task<Session> task) {
                 final Session session = task.getResult();
-                return mApiCommunicator.getPaymentRequests(session);
+                return mApiCommunicator.getPaymentRequests(session, mPaymentAdapters.mPaymentRequestsParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONArray, List<PaymentRequest>>() {
+        })
+                .onSuccess(new Continuation<List<PaymentRequestResponse>, List<PaymentRequest>>() {
                     @Override
-                    public List<PaymentRequest> then(Task<JSONArray> task) throws Exception {
-                        Type type = Types.newParameterizedType(List.class, PaymentRequestResponse.class);
-                        JsonAdapter<List<PaymentRequestResponse>> adapter = mMoshi.adapter(type);
-                        List<PaymentRequestResponse> paymentRequestResponses = adapter.fromJson(task.getResult().toString());
+                    public List<PaymentRequest> then(Task<List<PaymentRequestResponse>> task) {
+                        List<PaymentRequestResponse> paymentRequestResponses = task.getResult();
 
                         List<PaymentRequest> paymentProviders = new ArrayList<>();
                         for (PaymentRequestResponse paymentRequestResponse : paymentRequestResponses != null ? paymentRequestResponses : Collections.<PaymentRequestResponse>emptyList()) {
@@ -917,23 +1447,21 @@ public class DocumentTaskManager {
      * @param resolvePaymentInput information of the actual payment
      */
     public Task<ResolvedPayment> resolvePaymentRequest(final String requestId, final ResolvePaymentInput resolvePaymentInput) {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<ResolvePaymentResponse>>() {
             @Override
-            public Task<JSONObject> then(Task<Session> task) throws JSONException {
+            public Task<ResolvePaymentResponse> then(Task<Session> task) {
                 final Session session = task.getResult();
-                JsonAdapter<ResolvePaymentBody> adapter = mMoshi.adapter(ResolvePaymentBody.class);
-                String body = adapter.toJson(ResolvePaymentBodyKt.toResolvePaymentBody(resolvePaymentInput));
+                String body = mPaymentAdapters.mResolvePaymentBodyAdapter.toJson(
+                        ResolvePaymentBodyKt.toResolvePaymentBody(resolvePaymentInput));
 
-                return mApiCommunicator.resolvePaymentRequests(requestId, new JSONObject(body), session);
+                return mApiCommunicator.resolvePaymentRequests(requestId, body, session,
+                        mPaymentAdapters.mResolvePaymentParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONObject, ResolvedPayment>() {
+        })
+                .onSuccess(new Continuation<ResolvePaymentResponse, ResolvedPayment>() {
                     @Override
-                    public ResolvedPayment then(Task<JSONObject> task) throws Exception {
-                        JsonAdapter<ResolvePaymentResponse> adapter = mMoshi.adapter(ResolvePaymentResponse.class);
-                        ResolvePaymentResponse resolvePaymentResponse = adapter.fromJson(task.getResult().toString());
-
-                        return ResolvedPaymentKt.toResolvedPayment(Objects.requireNonNull(resolvePaymentResponse));
+                    public ResolvedPayment then(Task<ResolvePaymentResponse> task) {
+                        return ResolvedPaymentKt.toResolvedPayment(Objects.requireNonNull(task.getResult()));
                     }
                 });
     }
@@ -944,20 +1472,17 @@ public class DocumentTaskManager {
      * @param id of the paid {@link PaymentRequest}
      */
     public Task<Payment> getPayment(final String id) {
-        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<JSONObject>>() {
+        return mSessionManager.getSession().onSuccessTask(new Continuation<Session, Task<PaymentResponse>>() {
             @Override
-            public Task<JSONObject> then(Task<Session> task) {
+            public Task<PaymentResponse> then(Task<Session> task) {
                 final Session session = task.getResult();
-                return mApiCommunicator.getPayment(id, session);
+                return mApiCommunicator.getPayment(id, session, mPaymentAdapters.mPaymentParser);
             }
-        }, Task.BACKGROUND_EXECUTOR)
-                .onSuccess(new Continuation<JSONObject, Payment>() {
+        })
+                .onSuccess(new Continuation<PaymentResponse, Payment>() {
                     @Override
-                    public Payment then(Task<JSONObject> task) throws Exception {
-                        JsonAdapter<PaymentResponse> adapter = mMoshi.adapter(PaymentResponse.class);
-                        PaymentResponse paymentResponse = adapter.fromJson(task.getResult().toString());
-
-                        return PaymentKt.toPayment(Objects.requireNonNull(paymentResponse));
+                    public Payment then(Task<PaymentResponse> task) {
+                        return PaymentKt.toPayment(Objects.requireNonNull(task.getResult()));
                     }
                 });
     }
@@ -975,18 +1500,17 @@ public class DocumentTaskManager {
                 final Session session = task.getResult();
                 return mApiCommunicator.getPageImage(documentId, page, session);
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        });
     }
 
     public Task<Void> logErrorEvent(final ErrorEvent errorEvent) {
         return mSessionManager.getSession()
                 .onSuccessTask(task -> {
                     final Session session = task.getResult();
-                    JsonAdapter<ErrorEvent> adapter = mMoshi.adapter(ErrorEvent.class);
-                    String body = adapter.toJson(errorEvent);
+                    String body = mPaymentAdapters.mErrorEventAdapter.toJson(errorEvent);
                     return mApiCommunicator.logErrorEvent(new JSONObject(body), session);
-                }, Task.BACKGROUND_EXECUTOR)
-                .onSuccessTask(task -> null, Task.BACKGROUND_EXECUTOR);
+                })
+                .onSuccessTask(task -> null);
     }
 
     /**
@@ -1033,4 +1557,37 @@ public class DocumentTaskManager {
         }
         return new Extraction(value, entity, box);
     }
+
+    /**
+     * The Moshi adapters and parsers of the payment requests and responses. Looking up an adapter is costly, so they
+     * are created once.
+     */
+    private static class PaymentAdapters {
+
+        final MoshiResponseParser<List<PaymentProviderResponse>> mPaymentProvidersParser;
+        final MoshiResponseParser<PaymentProviderResponse> mPaymentProviderParser;
+        final MoshiResponseParser<PaymentRequestResponse> mPaymentRequestParser;
+        final MoshiResponseParser<List<PaymentRequestResponse>> mPaymentRequestsParser;
+        final MoshiResponseParser<ResolvePaymentResponse> mResolvePaymentParser;
+        final MoshiResponseParser<PaymentResponse> mPaymentParser;
+        final JsonAdapter<PaymentRequestBody> mPaymentRequestBodyAdapter;
+        final JsonAdapter<ResolvePaymentBody> mResolvePaymentBodyAdapter;
+        final JsonAdapter<LocationResponse> mLocationResponseAdapter;
+        final JsonAdapter<ErrorEvent> mErrorEventAdapter;
+
+        PaymentAdapters(@NonNull final Moshi moshi) {
+            mPaymentProvidersParser = new MoshiResponseParser<>(moshi.<List<PaymentProviderResponse>>adapter(
+                    Types.newParameterizedType(List.class, PaymentProviderResponse.class)));
+            mPaymentProviderParser = new MoshiResponseParser<>(moshi.adapter(PaymentProviderResponse.class));
+            mPaymentRequestParser = new MoshiResponseParser<>(moshi.adapter(PaymentRequestResponse.class));
+            mPaymentRequestsParser = new MoshiResponseParser<>(moshi.<List<PaymentRequestResponse>>adapter(
+                    Types.newParameterizedType(List.class, PaymentRequestResponse.class)));
+            mResolvePaymentParser = new MoshiResponseParser<>(moshi.adapter(ResolvePaymentResponse.class));
+            mPaymentParser = new MoshiResponseParser<>(moshi.adapter(PaymentResponse.class));
+            mPaymentRequestBodyAdapter = moshi.adapter(PaymentRequestBody.class);
+            mResolvePaymentBodyAdapter = moshi.adapter(ResolvePaymentBody.class);
+            mLocationResponseAdapter = moshi.adapter(LocationResponse.class);
+            mErrorEventAdapter = moshi.adapter(ErrorEvent.class);
+        }
+    }
 }
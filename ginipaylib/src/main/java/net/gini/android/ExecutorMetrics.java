@@ -0,0 +1,27 @@
+package net.gini.android;
+
+/**
+ * Reports how busy an executor is. Implemented by the default executors of the library, see {@link GiniExecutors}.
+ */
+public interface ExecutorMetrics {
+
+    /**
+     * @return The number of tasks waiting in the queue of the executor.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return The largest number of tasks which waited in the queue of the executor at the same time.
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * @return The approximate number of threads executing tasks.
+     */
+    int getActiveCount();
+
+    /**
+     * @return The number of tasks which could not be executed in time because all threads of the executor were busy.
+     */
+    long getSaturationCount();
+}
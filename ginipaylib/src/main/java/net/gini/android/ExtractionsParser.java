@@ -0,0 +1,344 @@
+package net.gini.android;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gini.android.models.Box;
+import net.gini.android.models.CompoundExtraction;
+import net.gini.android.models.Extraction;
+import net.gini.android.models.ExtractionsContainer;
+import net.gini.android.models.ReturnReason;
+import net.gini.android.models.SpecificExtraction;
+import net.gini.android.requests.BearerParsedRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the extractions response of the Gini API token by token into an {@link ExtractionsContainer}.
+ * <p>
+ * The result is identical to walking a {@link org.json.JSONObject} tree of the response, but neither the response
+ * string nor the tree are created. Strings are read like {@link org.json.JSONObject#getString(String)} reads them:
+ * numbers, booleans and nulls are converted to their string representation.
+ */
+class ExtractionsParser implements BearerParsedRequest.ResponseParser<ExtractionsContainer> {
+
+    @Override
+    public ExtractionsContainer parse(@NonNull final byte[] data) throws IOException {
+        final JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(data), Utils.CHARSET_UTF8));
+        try {
+            return parse(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @NonNull
+    ExtractionsContainer parse(@NonNull final JsonReader reader) throws IOException {
+        Map<String, List<Extraction>> candidates = null;
+        List<ParsedExtraction> specificExtractions = null;
+        Map<String, List<List<ParsedExtraction>>> compoundExtractions = null;
+        List<ReturnReason> returnReasons = Collections.emptyList();
+
+        // The candidates may follow the extractions, which reference them by name, so they are resolved at the end
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "candidates":
+                    candidates = readCandidates(reader);
+                    break;
+                case "extractions":
+                    specificExtractions = readSpecificExtractions(reader);
+                    break;
+                case "compoundExtractions":
+                    // Optional, ignored if it is not an object
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        compoundExtractions = readCompoundExtractions(reader);
+                    } else {
+                        reader.skipValue();
+                        compoundExtractions = null;
+                    }
+                    break;
+                case "returnReasons":
+                    // Optional, ignored if it is not an array
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        returnReasons = readReturnReasons(reader);
+                    } else {
+                        reader.skipValue();
+                        returnReasons = Collections.emptyList();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (candidates == null) {
+            throw new IOException("The response has no candidates");
+        }
+        if (specificExtractions == null) {
+            throw new IOException("The response has no extractions");
+        }
+        return new ExtractionsContainer(resolveSpecificExtractions(specificExtractions, candidates),
+                resolveCompoundExtractions(compoundExtractions, candidates), returnReasons);
+    }
+
+    @NonNull
+    private static Map<String, List<Extraction>> readCandidates(@NonNull final JsonReader reader) throws IOException {
+        final Map<String, List<Extraction>> candidates = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String entityName = reader.nextName();
+            final List<Extraction> extractions = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final ParsedExtraction parsedExtraction = readExtraction(reader, null);
+                extractions.add(new Extraction(parsedExtraction.mValue, parsedExtraction.mEntity,
+                        parsedExtraction.mBox));
+            }
+            reader.endArray();
+            candidates.put(entityName, extractions);
+        }
+        reader.endObject();
+        return candidates;
+    }
+
+    @NonNull
+    private static List<ParsedExtraction> readSpecificExtractions(@NonNull final JsonReader reader)
+            throws IOException {
+        final List<ParsedExtraction> extractions = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            extractions.add(readExtraction(reader, name));
+        }
+        reader.endObject();
+        return extractions;
+    }
+
+    @NonNull
+    private static Map<String, List<List<ParsedExtraction>>> readCompoundExtractions(@NonNull final JsonReader reader)
+            throws IOException {
+        final Map<String, List<List<ParsedExtraction>>> compoundExtractions = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            final List<List<ParsedExtraction>> specificExtractionMaps = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                specificExtractionMaps.add(readSpecificExtractions(reader));
+            }
+            reader.endArray();
+            compoundExtractions.put(name, specificExtractionMaps);
+        }
+        reader.endObject();
+        return compoundExtractions;
+    }
+
+    @NonNull
+    private static ParsedExtraction readExtraction(@NonNull final JsonReader reader, @Nullable final String name)
+            throws IOException {
+        String entity = null;
+        String value = null;
+        Box box = null;
+        String candidatesName = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "entity":
+                    entity = nextString(reader);
+                    break;
+                case "value":
+                    value = nextString(reader);
+                    break;
+                case "box":
+                    box = readBox(reader);
+                    break;
+                case "candidates":
+                    candidatesName = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (entity == null || value == null) {
+            throw new IOException("The extraction " + name + " has no entity or value");
+        }
+        return new ParsedExtraction(name, entity, value, box, candidatesName);
+    }
+
+    @NonNull
+    private static Box readBox(@NonNull final JsonReader reader) throws IOException {
+        Integer pageNumber = null;
+        Double left = null;
+        Double top = null;
+        Double width = null;
+        Double height = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "page":
+                    pageNumber = (int) reader.nextDouble();
+                    break;
+                case "left":
+                    left = reader.nextDouble();
+                    break;
+                case "top":
+                    top = reader.nextDouble();
+                    break;
+                case "width":
+                    width = reader.nextDouble();
+                    break;
+                case "height":
+                    height = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (pageNumber == null || left == null || top == null || width == null || height == null) {
+            throw new IOException("Incomplete box");
+        }
+        return new Box(pageNumber, left, top, width, height);
+    }
+
+    @NonNull
+    private static List<ReturnReason> readReturnReasons(@NonNull final JsonReader reader) throws IOException {
+        final List<ReturnReason> returnReasons = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String id = null;
+            final Map<String, String> localizedLabels = new HashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String key = reader.nextName();
+                if (key.equals("id")) {
+                    id = nextString(reader);
+                } else {
+                    localizedLabels.put(key, nextString(reader));
+                }
+            }
+            reader.endObject();
+            if (id == null) {
+                throw new IOException("The return reason has no id");
+            }
+            returnReasons.add(new ReturnReason(id, localizedLabels));
+        }
+        reader.endArray();
+        return returnReasons;
+    }
+
+    @NonNull
+    private static Map<String, SpecificExtraction> resolveSpecificExtractions(
+            @NonNull final List<ParsedExtraction> parsedExtractions,
+            @NonNull final Map<String, List<Extraction>> candidates) {
+        final Map<String, SpecificExtraction> specificExtractions = new HashMap<>();
+        for (final ParsedExtraction parsedExtraction : parsedExtractions) {
+            List<Extraction> candidatesForExtraction = null;
+            if (parsedExtraction.mCandidatesName != null) {
+                candidatesForExtraction = candidates.get(parsedExtraction.mCandidatesName);
+            }
+            if (candidatesForExtraction == null) {
+                candidatesForExtraction = new ArrayList<>();
+            }
+            specificExtractions.put(parsedExtraction.mName,
+                    new SpecificExtraction(parsedExtraction.mName, parsedExtraction.mValue, parsedExtraction.mEntity,
+                            parsedExtraction.mBox, candidatesForExtraction));
+        }
+        return specificExtractions;
+    }
+
+    @NonNull
+    private static Map<String, CompoundExtraction> resolveCompoundExtractions(
+            @Nullable final Map<String, List<List<ParsedExtraction>>> parsedCompoundExtractions,
+            @NonNull final Map<String, List<Extraction>> candidates) {
+        if (parsedCompoundExtractions == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, CompoundExtraction> compoundExtractions = new HashMap<>();
+        for (final Map.Entry<String, List<List<ParsedExtraction>>> entry : parsedCompoundExtractions.entrySet()) {
+            final List<Map<String, SpecificExtraction>> specificExtractionMaps =
+                    new ArrayList<>(entry.getValue().size());
+            for (final List<ParsedExtraction> parsedExtractions : entry.getValue()) {
+                specificExtractionMaps.add(resolveSpecificExtractions(parsedExtractions, candidates));
+            }
+            compoundExtractions.put(entry.getKey(), new CompoundExtraction(entry.getKey(), specificExtractionMaps));
+        }
+        return compoundExtractions;
+    }
+
+    /**
+     * Reads a value like {@link org.json.JSONObject#getString(String)} does.
+     */
+    @NonNull
+    private static String nextString(@NonNull final JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return numberToString(reader.nextString());
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return "null";
+            default:
+                throw new IOException("Expected a string but was " + reader.peek());
+        }
+    }
+
+    /**
+     * Formats a number literal the way {@link org.json.JSONObject} formats the number it parsed from the literal.
+     */
+    @NonNull
+    private static String numberToString(@NonNull final String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                return Long.toString(Long.parseLong(literal));
+            } catch (NumberFormatException ignored) {
+                // Too large for a long, parsed as a double
+            }
+        }
+        return String.valueOf(Double.parseDouble(literal));
+    }
+
+    /**
+     * An extraction whose candidates have not been resolved yet.
+     */
+    private static class ParsedExtraction {
+
+        @Nullable
+        final String mName;
+        final String mEntity;
+        final String mValue;
+        @Nullable
+        final Box mBox;
+        @Nullable
+        final String mCandidatesName;
+
+        ParsedExtraction(@Nullable final String name, @NonNull final String entity, @NonNull final String value,
+                @Nullable final Box box, @Nullable final String candidatesName) {
+            mName = name;
+            mEntity = entity;
+            mValue = value;
+            mBox = box;
+            mCandidatesName = candidatesName;
+        }
+    }
+}
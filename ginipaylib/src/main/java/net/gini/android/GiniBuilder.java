@@ -8,6 +8,7 @@ import android.content.SharedPreferences;
 import com.android.volley.Cache;
 import com.android.volley.DefaultRetryPolicy;
 import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.NoCache;
 import com.squareup.moshi.Moshi;
 
 import net.gini.android.authorization.AnonymousSessionManager;
@@ -17,12 +18,18 @@ import net.gini.android.authorization.SessionManager;
 import net.gini.android.authorization.UserCenterAPICommunicator;
 import net.gini.android.authorization.UserCenterManager;
 import net.gini.android.requests.DefaultRetryPolicyFactory;
+import net.gini.android.requests.RequestLane;
+import net.gini.android.requests.RequestLaneDispatcher;
 import net.gini.android.requests.RetryPolicyFactory;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.XmlRes;
@@ -42,7 +49,19 @@ public class GiniBuilder {
 
     private ApiCommunicator mApiCommunicator;
     private Moshi mMoshi;
+    private RequestQueueBuilder mRequestQueueBuilder;
     private RequestQueue mRequestQueue;
+    private RequestQueue mUserCenterRequestQueue;
+    private RequestLaneDispatcher mRequestLaneDispatcher;
+    private RequestLaneDispatcher mUserCenterRequestLaneDispatcher;
+    private int mApiThreadPoolSize = RequestQueueBuilder.DEFAULT_API_THREAD_POOL_SIZE;
+    private int mUserCenterThreadPoolSize = RequestQueueBuilder.DEFAULT_USER_CENTER_THREAD_POOL_SIZE;
+    private int mMaxWaitingRequests = RequestQueueBuilder.DEFAULT_API_MAX_WAITING_REQUESTS;
+    private int mUserCenterMaxWaitingRequests = RequestQueueBuilder.DEFAULT_USER_CENTER_MAX_WAITING_REQUESTS;
+    /**
+     * The limits set explicitly. The other lanes use the defaults of the number of network threads.
+     */
+    private final Map<RequestLane, Integer> mRequestLaneConcurrencyLimits = new EnumMap<>(RequestLane.class);
     private DocumentTaskManager mDocumentTaskManager;
     private SessionManager mSessionManager;
     private CredentialsStore mCredentialsStore;
@@ -54,6 +73,18 @@ public class GiniBuilder {
     private RetryPolicyFactory mRetryPolicyFactory;
     private Cache mCache;
     private GiniApiType mGiniApiType;
+    private DocumentTaskManager.PollingMode mDocumentPollingMode = DocumentTaskManager.PollingMode.INTERVAL;
+    private PollingPolicy mDocumentPollingPolicy;
+    private boolean mOkHttpEnabled;
+    private long mConnectionKeepAliveInMs = RequestQueueBuilder.DEFAULT_CONNECTION_KEEP_ALIVE_MS;
+    private Executor mParsingExecutor;
+    private Executor mSessionExecutor;
+    private ScheduledExecutorService mPollingScheduler;
+    private ImagePreprocessor mImagePreprocessor;
+    private UploadDeduplicationCache mUploadDeduplicationCache;
+    private NearDuplicateDetector mNearDuplicateDetector;
+    private long mResumableUploadChunkSize;
+    private ResumableUploadStore mResumableUploadStore;
 
     /**
      * Constructor to initialize a new builder instance where anonymous Gini users are used. <b>This requires access to
@@ -194,8 +225,8 @@ public class GiniBuilder {
     }
 
     /**
-     * Set the cache implementation to use with Volley. If no cache is set, the default Volley cache
-     * will be used.
+     * Set the cache implementation to use with Volley for the requests to the Gini API. If no cache is set, the
+     * default Volley cache will be used. Responses of the Gini User Center API are never cached.
      *
      * @param cache A cache instance (specified by the com.android.volley.Cache interface).
      * @return The builder instance to enable chaining.
@@ -205,6 +236,266 @@ public class GiniBuilder {
         return this;
     }
 
+    /**
+     * Use OkHttp to execute the requests. All requests share one connection pool and the requests to a host are
+     * multiplexed over a single HTTP/2 connection, if the server supports it. Certificate pinning is applied the same
+     * way as with the default network stack.
+     * <p>
+     * OkHttp is an optional dependency: add {@code com.squareup.okhttp3:okhttp} (3.12 or newer) to your app's
+     * dependencies to use it.
+     *
+     * @param okHttpEnabled Whether to use OkHttp instead of HttpURLConnection.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setOkHttpEnabled(final boolean okHttpEnabled) {
+        if (okHttpEnabled && !OkHttpStack.isAvailable()) {
+            throw new IllegalStateException("OkHttp must be added to the dependencies to enable it");
+        }
+        mOkHttpEnabled = okHttpEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the time idle connections are kept open for reuse. Only used if OkHttp was enabled with
+     * {@link #setOkHttpEnabled(boolean)}.
+     *
+     * @param connectionKeepAliveInMs keep-alive duration in milliseconds
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setConnectionKeepAliveInMs(final long connectionKeepAliveInMs) {
+        if (connectionKeepAliveInMs <= 0) {
+            throw new IllegalArgumentException("connectionKeepAliveInMs must be greater than 0");
+        }
+        mConnectionKeepAliveInMs = connectionKeepAliveInMs;
+        return this;
+    }
+
+    /**
+     * Sets the maximal number of requests of a lane which are executed or waiting for execution in the request queue.
+     * Further requests of the lane wait until a request of the lane finished. By default only the
+     * {@link RequestLane#INTERACTIVE} lane is unlimited and the other lanes share all but one of the network threads
+     * (see {@link RequestLaneDispatcher#getDefaultConcurrencyLimits(int)}), so that payment and authentication requests
+     * never wait for uploads or downloads.
+     *
+     * @param lane             The request lane.
+     * @param concurrencyLimit The maximal number of concurrent requests or {@link RequestLaneDispatcher#UNLIMITED}.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setRequestLaneConcurrencyLimit(@NonNull final RequestLane lane, final int concurrencyLimit) {
+        if (concurrencyLimit < 1) {
+            throw new IllegalArgumentException("concurrencyLimit can't be less than 1");
+        }
+        mRequestLaneConcurrencyLimits.put(checkNotNull(lane), concurrencyLimit);
+        return this;
+    }
+
+    /**
+     * Sets the number of network threads for the requests to the Gini API. The Gini User Center API has its own
+     * threads, see {@link #setUserCenterThreadPoolSize(int)}.
+     *
+     * The default concurrency limits of the request lanes are derived from it.
+     *
+     * @param threadPoolSize The number of threads. At least {@link RequestLaneDispatcher#MIN_THREAD_POOL_SIZE}, so that
+     *                       one thread stays free for interactive requests. Defaults to 6.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setApiThreadPoolSize(final int threadPoolSize) {
+        if (threadPoolSize < RequestLaneDispatcher.MIN_THREAD_POOL_SIZE) {
+            throw new IllegalArgumentException(
+                    "threadPoolSize can't be less than " + RequestLaneDispatcher.MIN_THREAD_POOL_SIZE);
+        }
+        mApiThreadPoolSize = threadPoolSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of network threads for the requests to the Gini User Center API. These threads are separate from
+     * the ones of the Gini API, so that authentication is not delayed by slow uploads or downloads.
+     *
+     * @param threadPoolSize The number of threads. At least {@link RequestLaneDispatcher#MIN_THREAD_POOL_SIZE}, so that
+     *                       one thread stays free for interactive requests. Defaults to 3.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setUserCenterThreadPoolSize(final int threadPoolSize) {
+        if (threadPoolSize < RequestLaneDispatcher.MIN_THREAD_POOL_SIZE) {
+            throw new IllegalArgumentException(
+                    "threadPoolSize can't be less than " + RequestLaneDispatcher.MIN_THREAD_POOL_SIZE);
+        }
+        mUserCenterThreadPoolSize = threadPoolSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximal number of requests to the Gini API waiting for their lane's concurrency limit (see
+     * {@link #setRequestLaneConcurrencyLimit(RequestLane, int)}). Requests exceeding it fail immediately with a
+     * {@link net.gini.android.requests.RejectedRequestError} instead of piling up behind a slow host. The Gini User
+     * Center API has its own bound, see {@link #setUserCenterMaxWaitingRequests(int)}.
+     *
+     * @param maxWaitingRequests The maximal number of waiting requests or {@link RequestLaneDispatcher#UNLIMITED}.
+     *                           Defaults to 1000.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setMaxWaitingRequests(final int maxWaitingRequests) {
+        if (maxWaitingRequests < 0) {
+            throw new IllegalArgumentException("maxWaitingRequests can't be less than 0");
+        }
+        mMaxWaitingRequests = maxWaitingRequests;
+        return this;
+    }
+
+    /**
+     * Sets the maximal number of requests to the Gini User Center API waiting for their lane's concurrency limit.
+     * Requests exceeding it fail immediately with a {@link net.gini.android.requests.RejectedRequestError}.
+     *
+     * @param maxWaitingRequests The maximal number of waiting requests or {@link RequestLaneDispatcher#UNLIMITED}.
+     *                           Defaults to 50.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setUserCenterMaxWaitingRequests(final int maxWaitingRequests) {
+        if (maxWaitingRequests < 0) {
+            throw new IllegalArgumentException("maxWaitingRequests can't be less than 0");
+        }
+        mUserCenterMaxWaitingRequests = maxWaitingRequests;
+        return this;
+    }
+
+    /**
+     * Set the strategy used to poll documents until they are processed. If no polling mode is set,
+     * {@link DocumentTaskManager.PollingMode#INTERVAL} is used.
+     *
+     * @param pollingMode A polling mode.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setDocumentPollingMode(@NonNull final DocumentTaskManager.PollingMode pollingMode) {
+        mDocumentPollingMode = checkNotNull(pollingMode);
+        return this;
+    }
+
+    /**
+     * Set the policy which decides how long to wait between the requests when polling documents. If no polling policy
+     * is set, a {@link DefaultPollingPolicy} is used. Use an {@link AdaptivePollingPolicy} to adapt the delays to
+     * the observed processing times.
+     *
+     * @param pollingPolicy A polling policy.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setDocumentPollingPolicy(@NonNull final PollingPolicy pollingPolicy) {
+        mDocumentPollingPolicy = checkNotNull(pollingPolicy);
+        return this;
+    }
+
+    /**
+     * Set the executor on which the responses of the Gini API are delivered and mapped to the results of the
+     * {@link DocumentTaskManager} and the {@link DocumentManager}. If no executor is set, the shared
+     * {@link GiniExecutors#getDefaultParsingExecutor()} is used.
+     *
+     * @param parsingExecutor An executor.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setParsingExecutor(@NonNull final Executor parsingExecutor) {
+        mParsingExecutor = checkNotNull(parsingExecutor);
+        return this;
+    }
+
+    /**
+     * Set the executor on which the responses of the Gini User Center API are delivered and the sessions are
+     * created. If no executor is set, the shared {@link GiniExecutors#getDefaultSessionExecutor()} is used.
+     *
+     * @param sessionExecutor An executor.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setSessionExecutor(@NonNull final Executor sessionExecutor) {
+        mSessionExecutor = checkNotNull(sessionExecutor);
+        return this;
+    }
+
+    /**
+     * Set the scheduler which fires the requests of the document pollings. If no scheduler is set, the shared
+     * {@link GiniExecutors#getDefaultPollingScheduler()} is used.
+     *
+     * @param pollingScheduler A scheduled executor.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setPollingScheduler(@NonNull final ScheduledExecutorService pollingScheduler) {
+        mPollingScheduler = checkNotNull(pollingScheduler);
+        return this;
+    }
+
+    /**
+     * Set the preprocessor which scales down and compresses images before they are uploaded with the byte array and
+     * the {@link UploadSource} methods of the {@link DocumentTaskManager}. If no preprocessor is set, images are
+     * uploaded unchanged.
+     *
+     * @param imagePreprocessor An image preprocessor.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setImagePreprocessor(@NonNull final ImagePreprocessor imagePreprocessor) {
+        mImagePreprocessor = checkNotNull(imagePreprocessor);
+        return this;
+    }
+
+    /**
+     * Set the cache which remembers the documents created from uploaded data. Uploading the same data again with the
+     * byte array or the {@link UploadSource} methods of the {@link DocumentTaskManager} resolves to the existing
+     * document without sending it again. If no cache is set, all uploads are sent.
+     *
+     * @param uploadDeduplicationCache An upload deduplication cache.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setUploadDeduplicationCache(@NonNull final UploadDeduplicationCache uploadDeduplicationCache) {
+        mUploadDeduplicationCache = checkNotNull(uploadDeduplicationCache);
+        return this;
+    }
+
+    /**
+     * Set the detector which skips uploading pages that were photographed twice. Images which are near-duplicates of
+     * recently uploaded pages are not uploaded as partial documents and their Tasks fail with a
+     * {@link NearDuplicateException}. If no detector is set, all pages are uploaded.
+     *
+     * @param nearDuplicateDetector A near-duplicate detector.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setNearDuplicateDetector(@NonNull final NearDuplicateDetector nearDuplicateDetector) {
+        mNearDuplicateDetector = checkNotNull(nearDuplicateDetector);
+        return this;
+    }
+
+    /**
+     * Enable resumable uploads. Documents larger than the chunk size are sent in chunks of this size. If a chunk
+     * fails, the upload continues from the last byte the server received instead of sending the whole document again.
+     * Each chunk is attempted up to three times.
+     * <p>
+     * The progress of uploads from files and content Uris is persisted (see
+     * {@link #setResumableUploadStore(ResumableUploadStore)}), so that uploading the same document again after the
+     * app was killed continues the interrupted upload.
+     * <p>
+     * If the Gini API does not support resumable uploads, the documents are uploaded in one request. By default
+     * resumable uploads are disabled.
+     *
+     * @param chunkSize The number of bytes sent in one request, e.g. 1 MiB.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setResumableUploadChunkSize(final long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        mResumableUploadChunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Set the store which persists the progress of resumable uploads. If no store is set, the progress is stored in
+     * the shared preferences. Only used, if resumable uploads were enabled with
+     * {@link #setResumableUploadChunkSize(long)}.
+     *
+     * @param resumableUploadStore A resumable upload store.
+     * @return The builder instance to enable chaining.
+     */
+    public GiniBuilder setResumableUploadStore(@NonNull final ResumableUploadStore resumableUploadStore) {
+        mResumableUploadStore = checkNotNull(resumableUploadStore);
+        return this;
+    }
+
     /**
      * Builds the Gini instance with the configuration settings of the builder instance.
      *
@@ -215,27 +506,110 @@ public class GiniBuilder {
     }
 
     /**
-     * Helper method to create (and store) the RequestQueue which is used for both the requests to the Gini API and the
-     * Gini User Center API.
+     * Helper method to create (and store) the RequestQueueBuilder which creates the request queues for the Gini API and
+     * the Gini User Center API. The queues share the network stack.
      *
-     * @return The RequestQueue instance.
+     * @return The RequestQueueBuilder instance.
      */
     @NonNull
-    private synchronized RequestQueue getRequestQueue() {
-        if (mRequestQueue == null) {
-            RequestQueueBuilder requestQueueBuilder = new RequestQueueBuilder(mContext);
-            requestQueueBuilder.setHostnames(getHostnames());
+    private synchronized RequestQueueBuilder getRequestQueueBuilder() {
+        if (mRequestQueueBuilder == null) {
+            mRequestQueueBuilder = new RequestQueueBuilder(mContext);
+            mRequestQueueBuilder.setHostnames(getHostnames());
             if (mCache != null) {
-                requestQueueBuilder.setCache(mCache);
+                mRequestQueueBuilder.setCache(mCache);
             }
             if (mNetworkSecurityConfigResId != 0) {
-                requestQueueBuilder.setNetworkSecurityConfigResId(mNetworkSecurityConfigResId);
+                mRequestQueueBuilder.setNetworkSecurityConfigResId(mNetworkSecurityConfigResId);
             }
-            mRequestQueue = requestQueueBuilder.build();
+            mRequestQueueBuilder.setOkHttpEnabled(mOkHttpEnabled)
+                    .setConnectionKeepAliveInMs(mConnectionKeepAliveInMs)
+                    .setThreadPoolSize(mApiThreadPoolSize)
+                    .setResponseDeliveryExecutor(getParsingExecutor());
+        }
+        return mRequestQueueBuilder;
+    }
+
+    /**
+     * Helper method to create (and store) the RequestQueue which is used for the requests to the Gini API.
+     *
+     * @return The RequestQueue instance.
+     */
+    @NonNull
+    private synchronized RequestQueue getRequestQueue() {
+        if (mRequestQueue == null) {
+            mRequestQueue = getRequestQueueBuilder().build();
         }
         return mRequestQueue;
     }
 
+    /**
+     * Helper method to create (and store) the RequestQueue which is used for the requests to the Gini User Center API.
+     * It has its own network threads so that slow requests to the Gini API can't delay authentication. Responses of
+     * the Gini User Center API are not cached.
+     *
+     * @return The RequestQueue instance.
+     */
+    @NonNull
+    private synchronized RequestQueue getUserCenterRequestQueue() {
+        if (mUserCenterRequestQueue == null) {
+            mUserCenterRequestQueue = getRequestQueueBuilder().build(new NoCache(), mUserCenterThreadPoolSize,
+                    getSessionExecutor());
+        }
+        return mUserCenterRequestQueue;
+    }
+
+    /**
+     * Helper method to create (and store) the RequestLaneDispatcher which is used for the requests to the Gini API.
+     *
+     * @return The RequestLaneDispatcher instance.
+     */
+    @NonNull
+    private synchronized RequestLaneDispatcher getRequestLaneDispatcher() {
+        if (mRequestLaneDispatcher == null) {
+            mRequestLaneDispatcher = new RequestLaneDispatcher(getRequestQueue(),
+                    getRequestLaneConcurrencyLimits(mApiThreadPoolSize), mMaxWaitingRequests);
+        }
+        return mRequestLaneDispatcher;
+    }
+
+    /**
+     * Helper method to create (and store) the RequestLaneDispatcher which is used for the requests to the Gini User
+     * Center API.
+     *
+     * @return The RequestLaneDispatcher instance.
+     */
+    @NonNull
+    private synchronized RequestLaneDispatcher getUserCenterRequestLaneDispatcher() {
+        if (mUserCenterRequestLaneDispatcher == null) {
+            mUserCenterRequestLaneDispatcher = new RequestLaneDispatcher(getUserCenterRequestQueue(),
+                    getRequestLaneConcurrencyLimits(mUserCenterThreadPoolSize), mUserCenterMaxWaitingRequests);
+        }
+        return mUserCenterRequestLaneDispatcher;
+    }
+
+    @NonNull
+    private Map<RequestLane, Integer> getRequestLaneConcurrencyLimits(final int threadPoolSize) {
+        final Map<RequestLane, Integer> limits = RequestLaneDispatcher.getDefaultConcurrencyLimits(threadPoolSize);
+        limits.putAll(mRequestLaneConcurrencyLimits);
+        return limits;
+    }
+
+    @NonNull
+    private Executor getParsingExecutor() {
+        return mParsingExecutor != null ? mParsingExecutor : GiniExecutors.getDefaultParsingExecutor();
+    }
+
+    @NonNull
+    private Executor getSessionExecutor() {
+        return mSessionExecutor != null ? mSessionExecutor : GiniExecutors.getDefaultSessionExecutor();
+    }
+
+    @NonNull
+    private ScheduledExecutorService getPollingScheduler() {
+        return mPollingScheduler != null ? mPollingScheduler : GiniExecutors.getDefaultPollingScheduler();
+    }
+
     private String getApiBaseUrl() {
         return mApiBaseUrl != null ? mApiBaseUrl : mGiniApiType.getBaseUrl();
     }
@@ -264,8 +638,12 @@ public class GiniBuilder {
     @NonNull
     private synchronized ApiCommunicator getApiCommunicator() {
         if (mApiCommunicator == null) {
-            mApiCommunicator = new ApiCommunicator(getApiBaseUrl(), mGiniApiType, getRequestQueue(),
+            mApiCommunicator = new ApiCommunicator(getApiBaseUrl(), mGiniApiType, getRequestLaneDispatcher(),
                     getRetryPolicyFactory());
+            if (mResumableUploadChunkSize > 0) {
+                mApiCommunicator.setResumableUploader(new ResumableUploader(mResumableUploadChunkSize,
+                        ResumableUploader.DEFAULT_CHUNK_ATTEMPTS, getResumableUploadStore()));
+            }
         }
         return mApiCommunicator;
     }
@@ -283,6 +661,15 @@ public class GiniBuilder {
         return mMoshi;
     }
 
+    @NonNull
+    private synchronized ResumableUploadStore getResumableUploadStore() {
+        if (mResumableUploadStore == null) {
+            mResumableUploadStore = new SharedPreferencesResumableUploadStore(
+                    mContext.getSharedPreferences("GiniResumableUploads", Context.MODE_PRIVATE));
+        }
+        return mResumableUploadStore;
+    }
+
     /**
      * Helper method to create (and store) the instance of the CredentialsStore implementation which is used to store
      * user credentials. If the credentials store was previously configured via the builder, the previously configured
@@ -314,7 +701,7 @@ public class GiniBuilder {
     private synchronized UserCenterAPICommunicator getUserCenterAPICommunicator() {
         if (mUserCenterApiCommunicator == null) {
             mUserCenterApiCommunicator =
-                    new UserCenterAPICommunicator(getRequestQueue(), mUserCenterApiBaseUrl,
+                    new UserCenterAPICommunicator(getUserCenterRequestLaneDispatcher(), mUserCenterApiBaseUrl,
                             mGiniApiType, mClientId, mClientSecret,
                             getRetryPolicyFactory());
         }
@@ -344,7 +731,7 @@ public class GiniBuilder {
     @NonNull
     private synchronized UserCenterManager getUserCenterManager() {
         if (mUserCenterManager == null) {
-            mUserCenterManager = new UserCenterManager(getUserCenterAPICommunicator());
+            mUserCenterManager = new UserCenterManager(getUserCenterAPICommunicator(), getSessionExecutor());
         }
         return mUserCenterManager;
     }
@@ -358,7 +745,14 @@ public class GiniBuilder {
     private synchronized DocumentTaskManager getDocumentTaskManager() {
         if (mDocumentTaskManager == null) {
             mDocumentTaskManager = new DocumentTaskManager(getApiCommunicator(),
-                    getSessionManager(), mGiniApiType, getMoshi());
+                    getSessionManager(), mGiniApiType, getMoshi(), getParsingExecutor(), getPollingScheduler());
+            mDocumentTaskManager.setPollingMode(mDocumentPollingMode);
+            if (mDocumentPollingPolicy != null) {
+                mDocumentTaskManager.setPollingPolicy(mDocumentPollingPolicy);
+            }
+            mDocumentTaskManager.setImagePreprocessor(mImagePreprocessor);
+            mDocumentTaskManager.setUploadDeduplicationCache(mUploadDeduplicationCache);
+            mDocumentTaskManager.setNearDuplicateDetector(mNearDuplicateDetector);
         }
         return mDocumentTaskManager;
     }
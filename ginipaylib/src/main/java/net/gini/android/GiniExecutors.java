@@ -0,0 +1,116 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executors of the library. They are shared by all {@link Gini} instances which were not given their own
+ * executors with the {@link GiniBuilder}. Their threads are daemon threads and are only started when needed.
+ * <p>
+ * Each executor reports its queue depth and saturation, see {@link ExecutorMetrics}.
+ */
+public final class GiniExecutors {
+
+    /**
+     * The maximal number of tasks waiting for a thread of the parsing executor.
+     */
+    public static final int DEFAULT_PARSING_QUEUE_CAPACITY = 256;
+
+    /**
+     * The number of threads of the session executor.
+     */
+    public static final int DEFAULT_SESSION_POOL_SIZE = 2;
+
+    /**
+     * The maximal number of tasks waiting for a thread of the session executor.
+     */
+    public static final int DEFAULT_SESSION_QUEUE_CAPACITY = 64;
+
+    /**
+     * The maximal number of images waiting for a thread of the image processing executor.
+     */
+    public static final int DEFAULT_IMAGE_PROCESSING_QUEUE_CAPACITY = 32;
+
+    private static MonitoredThreadPoolExecutor sParsingExecutor;
+    private static MonitoredThreadPoolExecutor sSessionExecutor;
+    private static MonitoredScheduledExecutor sPollingScheduler;
+    private static MonitoredThreadPoolExecutor sImageProcessingExecutor;
+
+    private GiniExecutors() {
+    }
+
+    /**
+     * The executor on which the responses of the Gini API are delivered and mapped to the results of the
+     * {@link DocumentTaskManager}. It has one thread per CPU core, but at least two.
+     *
+     * @return The default parsing executor.
+     */
+    @NonNull
+    public static synchronized MonitoredThreadPoolExecutor getDefaultParsingExecutor() {
+        if (sParsingExecutor == null) {
+            final int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+            sParsingExecutor = new MonitoredThreadPoolExecutor("gini-parsing", poolSize,
+                    DEFAULT_PARSING_QUEUE_CAPACITY);
+        }
+        return sParsingExecutor;
+    }
+
+    /**
+     * The executor on which the responses of the Gini User Center API are delivered and the sessions are created.
+     *
+     * @return The default session executor.
+     */
+    @NonNull
+    public static synchronized MonitoredThreadPoolExecutor getDefaultSessionExecutor() {
+        if (sSessionExecutor == null) {
+            sSessionExecutor = new MonitoredThreadPoolExecutor("gini-session", DEFAULT_SESSION_POOL_SIZE,
+                    DEFAULT_SESSION_QUEUE_CAPACITY);
+        }
+        return sSessionExecutor;
+    }
+
+    /**
+     * The scheduler which fires the requests of the document pollings. A single thread suffices, because it only
+     * adds the requests to the request queue.
+     *
+     * @return The default polling scheduler.
+     */
+    @NonNull
+    public static synchronized MonitoredScheduledExecutor getDefaultPollingScheduler() {
+        if (sPollingScheduler == null) {
+            sPollingScheduler = new MonitoredScheduledExecutor("gini-document-polling", 1);
+        }
+        return sPollingScheduler;
+    }
+
+    /**
+     * The executor on which the {@link ImagePreprocessor} decodes, scales and encodes images. It has at most two
+     * threads, because every thread holds a decoded bitmap in memory.
+     *
+     * @return The default image processing executor.
+     */
+    @NonNull
+    public static synchronized MonitoredThreadPoolExecutor getDefaultImageProcessingExecutor() {
+        if (sImageProcessingExecutor == null) {
+            final int poolSize = Math.min(2, Runtime.getRuntime().availableProcessors());
+            sImageProcessingExecutor = new MonitoredThreadPoolExecutor("gini-image-processing", poolSize,
+                    DEFAULT_IMAGE_PROCESSING_QUEUE_CAPACITY);
+        }
+        return sImageProcessingExecutor;
+    }
+
+    @NonNull
+    static ThreadFactory newThreadFactory(@NonNull final String name) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
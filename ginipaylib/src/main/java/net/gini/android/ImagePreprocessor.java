@@ -0,0 +1,383 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bolts.Task;
+
+/**
+ * Makes camera images smaller before they are uploaded. Set it with
+ * {@link GiniBuilder#setImagePreprocessor(ImagePreprocessor)} to preprocess the images uploaded with the byte array
+ * and the {@link UploadSource} methods of the {@link DocumentTaskManager}. Images of an upload source are decoded
+ * from its stream at the reduced resolution, they are never loaded into memory at full size.
+ * <p>
+ * JPEG and PNG images are scaled down to the resolution of an A4 page at the target DPI, which suffices for the
+ * extractions, and encoded as JPEG with the configured quality. If a byte budget was set, the quality is lowered
+ * until the image fits into it. The EXIF orientation of JPEG images is applied to the pixels, because it is not
+ * kept by the encoder. Images which could not be made smaller are uploaded unchanged.
+ * <p>
+ * Decoding and encoding run on a dedicated executor, by default on
+ * {@link GiniExecutors#getDefaultImageProcessingExecutor()}.
+ */
+public class ImagePreprocessor {
+
+    /**
+     * The default resolution of the preprocessed images in dots per inch of an A4 page.
+     */
+    public static final int DEFAULT_TARGET_DPI = 200;
+
+    /**
+     * Use it as the byte budget to encode all images with the configured quality.
+     */
+    public static final long NO_BYTE_BUDGET = 0;
+
+    /**
+     * The quality is not lowered below this value to fit an image into the byte budget.
+     */
+    public static final int MIN_QUALITY = 30;
+
+    private static final int QUALITY_STEP = 10;
+    private static final float A4_LONG_SIDE_INCHES = 297 / 25.4f;
+    private static final float A4_SHORT_SIDE_INCHES = 210 / 25.4f;
+    private static final int UNKNOWN_ROTATION = -1;
+    /**
+     * The EXIF data of a JPEG image follows at most a JFIF segment. Both segments are smaller than 64 KiB.
+     */
+    private static final int JPEG_METADATA_MAX_BYTES = 2 * 64 * 1024;
+
+    private final int mMaxLongSide;
+    private final int mMaxShortSide;
+    private final int mQuality;
+    private final long mMaxBytes;
+    private final Executor mExecutor;
+    private final AtomicLong mBytesSaved = new AtomicLong();
+
+    /**
+     * Creates a preprocessor with the {@link #DEFAULT_TARGET_DPI}, the {@link DocumentTaskManager#DEFAULT_COMPRESSION}
+     * as quality and no byte budget.
+     */
+    public ImagePreprocessor() {
+        this(DEFAULT_TARGET_DPI, DocumentTaskManager.DEFAULT_COMPRESSION, NO_BYTE_BUDGET,
+                GiniExecutors.getDefaultImageProcessingExecutor());
+    }
+
+    /**
+     * @param targetDpi The resolution of the preprocessed images in dots per inch of an A4 page.
+     * @param quality   The JPEG quality between 0 and 100.
+     * @param maxBytes  The size the images should not exceed or {@link #NO_BYTE_BUDGET}.
+     * @param executor  The executor on which the images are processed.
+     */
+    public ImagePreprocessor(final int targetDpi, final int quality, final long maxBytes,
+            @NonNull final Executor executor) {
+        if (targetDpi <= 0) {
+            throw new IllegalArgumentException("targetDpi must be positive");
+        } else if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be between 0 and 100");
+        } else if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes can't be less than 0");
+        }
+        mMaxLongSide = Math.round(A4_LONG_SIDE_INCHES * targetDpi);
+        mMaxShortSide = Math.round(A4_SHORT_SIDE_INCHES * targetDpi);
+        mQuality = quality;
+        mMaxBytes = maxBytes;
+        mExecutor = checkNotNull(executor);
+    }
+
+    /**
+     * Scales down and compresses the image on the executor of this preprocessor. Images which are neither JPEG nor
+     * PNG are returned unchanged.
+     *
+     * @param image       The image data.
+     * @param contentType The media type of the image.
+     * @return A Task which will resolve to the image which should be uploaded.
+     */
+    @NonNull
+    public Task<PreprocessedImage> preprocess(@NonNull final byte[] image, @NonNull final String contentType) {
+        checkNotNull(image);
+        checkNotNull(contentType);
+        if (!MediaTypes.IMAGE_JPEG.equals(contentType) && !MediaTypes.IMAGE_PNG.equals(contentType)) {
+            return Task.forResult(new PreprocessedImage(image, contentType, image.length));
+        }
+        return Task.call(new Callable<PreprocessedImage>() {
+            @Override
+            public PreprocessedImage call() {
+                return process(image, contentType);
+            }
+        }, mExecutor);
+    }
+
+    /**
+     * Scales down and compresses the image of the upload source on the executor of this preprocessor. The image is
+     * read from the stream of the source twice: once for its size and orientation and once to decode it at the
+     * reduced resolution.
+     *
+     * @param image       The source of the image data.
+     * @param contentType The media type of the image.
+     * @return A Task which will resolve to the smaller image or to null, if the image is neither JPEG nor PNG or
+     * could not be made smaller. The source should be uploaded unchanged in that case.
+     */
+    @NonNull
+    public Task<PreprocessedImage> preprocess(@NonNull final UploadSource image, @NonNull final String contentType) {
+        checkNotNull(image);
+        checkNotNull(contentType);
+        if (!MediaTypes.IMAGE_JPEG.equals(contentType) && !MediaTypes.IMAGE_PNG.equals(contentType)) {
+            return Task.forResult(null);
+        }
+        return Task.call(new Callable<PreprocessedImage>() {
+            @Override
+            public PreprocessedImage call() throws IOException {
+                return process(image, contentType);
+            }
+        }, mExecutor);
+    }
+
+    /**
+     * @return The number of bytes saved by all images preprocessed so far.
+     */
+    public long getBytesSaved() {
+        return mBytesSaved.get();
+    }
+
+    @NonNull
+    private PreprocessedImage process(@NonNull final byte[] image, @NonNull final String contentType) {
+        final PreprocessedImage unchanged = new PreprocessedImage(image, contentType, image.length);
+        final int rotation = MediaTypes.IMAGE_JPEG.equals(contentType) ? getExifRotation(image) : 0;
+        if (rotation == UNKNOWN_ROTATION) {
+            // Mirrored images would lose their orientation
+            return unchanged;
+        }
+
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(image, 0, image.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return unchanged;
+        }
+        final float scale = getScale(bounds);
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(scale);
+        final Bitmap bitmap = BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (bitmap == null) {
+            return unchanged;
+        }
+        final byte[] encoded = transformAndEncode(bitmap, bounds, scale, rotation);
+
+        if (encoded.length >= image.length) {
+            return unchanged;
+        }
+        mBytesSaved.addAndGet(image.length - encoded.length);
+        return new PreprocessedImage(encoded, MediaTypes.IMAGE_JPEG, image.length);
+    }
+
+    @Nullable
+    private PreprocessedImage process(@NonNull final UploadSource image, @NonNull final String contentType)
+            throws IOException {
+        final long originalSize = image.getContentLength();
+        final int rotation = MediaTypes.IMAGE_JPEG.equals(contentType) ? getExifRotation(readMetadata(image)) : 0;
+        if (rotation == UNKNOWN_ROTATION) {
+            // Mirrored images would lose their orientation
+            return null;
+        }
+
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decodeStream(image, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        final float scale = getScale(bounds);
+
+        // Only the sampled pixels are allocated, not the full resolution of the camera image
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(scale);
+        final Bitmap bitmap = decodeStream(image, options);
+        if (bitmap == null) {
+            return null;
+        }
+        final byte[] encoded = transformAndEncode(bitmap, bounds, scale, rotation);
+
+        if (encoded.length >= originalSize) {
+            return null;
+        }
+        mBytesSaved.addAndGet(originalSize - encoded.length);
+        return new PreprocessedImage(encoded, MediaTypes.IMAGE_JPEG, originalSize);
+    }
+
+    @Nullable
+    private static Bitmap decodeStream(@NonNull final UploadSource image, @NonNull final BitmapFactory.Options options)
+            throws IOException {
+        final InputStream inputStream = image.openStream();
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Reads the beginning of the image, which contains the JPEG metadata segments.
+     */
+    @NonNull
+    private static byte[] readMetadata(@NonNull final UploadSource image) throws IOException {
+        final byte[] buffer = new byte[(int) Math.min(JPEG_METADATA_MAX_BYTES, image.getContentLength())];
+        final InputStream inputStream = image.openStream();
+        try {
+            int length = 0;
+            int read;
+            while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private float getScale(@NonNull final BitmapFactory.Options bounds) {
+        return Math.min(1f,
+                Math.min((float) mMaxLongSide / Math.max(bounds.outWidth, bounds.outHeight),
+                        (float) mMaxShortSide / Math.min(bounds.outWidth, bounds.outHeight)));
+    }
+
+    /**
+     * Scales the decoded bitmap to the target size, applies the rotation and encodes it. The bitmap is recycled.
+     */
+    @NonNull
+    private byte[] transformAndEncode(@NonNull final Bitmap bitmap, @NonNull final BitmapFactory.Options bounds,
+            final float scale, final int rotation) {
+        Bitmap transformed = bitmap;
+        try {
+            final Matrix matrix = new Matrix();
+            matrix.postScale(Math.round(bounds.outWidth * scale) / (float) bitmap.getWidth(),
+                    Math.round(bounds.outHeight * scale) / (float) bitmap.getHeight());
+            matrix.postRotate(rotation);
+            if (!matrix.isIdentity()) {
+                transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix,
+                        true);
+            }
+            return encode(transformed);
+        } finally {
+            if (transformed != bitmap) {
+                transformed.recycle();
+            }
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * The largest power of two which decodes the image at no less than the target resolution.
+     */
+    @VisibleForTesting
+    static int getSampleSize(final float scale) {
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @NonNull
+    private byte[] encode(@NonNull final Bitmap bitmap) {
+        int quality = mQuality;
+        while (true) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+            if (mMaxBytes == NO_BYTE_BUDGET || outputStream.size() <= mMaxBytes || quality <= MIN_QUALITY) {
+                return outputStream.toByteArray();
+            }
+            quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+        }
+    }
+
+    /**
+     * Reads the orientation tag of the EXIF data in the APP1 segment of a JPEG image.
+     *
+     * @return The clockwise rotation in degrees, 0 if the image has no orientation and {@link #UNKNOWN_ROTATION} for
+     * mirrored or unreadable orientations.
+     */
+    @VisibleForTesting
+    static int getExifRotation(@NonNull final byte[] jpeg) {
+        try {
+            if (readUnsignedShort(jpeg, 0, false) != 0xFFD8) {
+                return UNKNOWN_ROTATION;
+            }
+            int offset = 2;
+            while (offset + 4 <= jpeg.length && (jpeg[offset] & 0xFF) == 0xFF) {
+                final int marker = jpeg[offset + 1] & 0xFF;
+                if (marker == 0xDA || marker == 0xD9) {
+                    // The image data starts, no more metadata segments follow
+                    break;
+                }
+                final int length = readUnsignedShort(jpeg, offset + 2, false);
+                if (marker == 0xE1 && isExifHeader(jpeg, offset + 4)) {
+                    return toRotation(readOrientation(jpeg, offset + 10));
+                }
+                offset += 2 + length;
+            }
+            return 0;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return UNKNOWN_ROTATION;
+        }
+    }
+
+    private static boolean isExifHeader(@NonNull final byte[] data, final int offset) {
+        return data[offset] == 'E' && data[offset + 1] == 'x' && data[offset + 2] == 'i' && data[offset + 3] == 'f'
+                && data[offset + 4] == 0 && data[offset + 5] == 0;
+    }
+
+    private static int readOrientation(@NonNull final byte[] data, final int tiffOffset) {
+        final boolean littleEndian = data[tiffOffset] == 'I';
+        final int ifdOffset = tiffOffset + readInt(data, tiffOffset + 4, littleEndian);
+        final int entryCount = readUnsignedShort(data, ifdOffset, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            final int entryOffset = ifdOffset + 2 + i * 12;
+            if (readUnsignedShort(data, entryOffset, littleEndian) == 0x0112) {
+                return readUnsignedShort(data, entryOffset + 8, littleEndian);
+            }
+        }
+        return 1;
+    }
+
+    private static int toRotation(final int orientation) {
+        switch (orientation) {
+            case 1:
+                return 0;
+            case 3:
+                return 180;
+            case 6:
+                return 90;
+            case 8:
+                return 270;
+            default:
+                return UNKNOWN_ROTATION;
+        }
+    }
+
+    private static int readUnsignedShort(@NonNull final byte[] data, final int offset, final boolean littleEndian) {
+        final int first = data[offset] & 0xFF;
+        final int second = data[offset + 1] & 0xFF;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static int readInt(@NonNull final byte[] data, final int offset, final boolean littleEndian) {
+        final int high = readUnsignedShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        final int low = readUnsignedShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+}
@@ -7,6 +7,7 @@ import androidx.annotation.Nullable;
 public class MediaTypes {
 
     public static final String IMAGE_JPEG = "image/jpeg";
+    public static final String IMAGE_PNG = "image/png";
     public static final String GINI_JSON_V1 = "application/vnd.gini.v1+json";
     public static final String GINI_JSON_V2 = "application/vnd.gini.v1+json";
     public static final String GINI_JSON_INCUBATOR = "application/vnd.gini.incubator+json";
@@ -0,0 +1,103 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A scheduler with a fixed number of threads, which reports its queue depth and saturation.
+ * <p>
+ * The queue holds the scheduled tasks until they are due. A task which starts more than
+ * {@link #SATURATION_DELAY_MS} after it was due is counted as a saturation: all threads were busy when it should
+ * have run.
+ */
+public class MonitoredScheduledExecutor extends ScheduledThreadPoolExecutor implements ExecutorMetrics {
+
+    /**
+     * The time in milliseconds a task may start after it was due without being counted as a saturation.
+     */
+    public static final long SATURATION_DELAY_MS = 100;
+
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mSaturationCount = new AtomicLong();
+
+    /**
+     * @param name     The name prefix of the threads.
+     * @param poolSize The number of threads.
+     */
+    public MonitoredScheduledExecutor(@NonNull final String name, final int poolSize) {
+        super(poolSize, GiniExecutors.newThreadFactory(name));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        final ScheduledFuture<?> future = super.schedule(command, delay, unit);
+        updateMaxQueueDepth();
+        return future;
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+        final ScheduledFuture<V> future = super.schedule(callable, delay, unit);
+        updateMaxQueueDepth();
+        return future;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period,
+            final TimeUnit unit) {
+        final ScheduledFuture<?> future = super.scheduleAtFixedRate(command, initialDelay, period, unit);
+        updateMaxQueueDepth();
+        return future;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay,
+            final long delay, final TimeUnit unit) {
+        final ScheduledFuture<?> future = super.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        updateMaxQueueDepth();
+        return future;
+    }
+
+    private void updateMaxQueueDepth() {
+        final int queueDepth = getQueueDepth();
+        int maxQueueDepth = mMaxQueueDepth.get();
+        while (queueDepth > maxQueueDepth && !mMaxQueueDepth.compareAndSet(maxQueueDepth, queueDepth)) {
+            maxQueueDepth = mMaxQueueDepth.get();
+        }
+    }
+
+    @Override
+    protected void beforeExecute(final Thread thread, final Runnable runnable) {
+        super.beforeExecute(thread, runnable);
+        // The delay of a task which is due is negative: it is the time since it was due
+        if (runnable instanceof Delayed
+                && -((Delayed) runnable).getDelay(TimeUnit.MILLISECONDS) > SATURATION_DELAY_MS) {
+            mSaturationCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of tasks which started more than {@link #SATURATION_DELAY_MS} after they were due.
+     */
+    @Override
+    public long getSaturationCount() {
+        return mSaturationCount.get();
+    }
+}
@@ -0,0 +1,76 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a bounded number of threads and a bounded queue, which reports its queue depth and saturation.
+ * <p>
+ * If all threads are busy and the queue is full, a task is executed on the thread which submitted it instead of
+ * being rejected. This slows down the submitter until the pool catches up and is counted as a saturation.
+ */
+public class MonitoredThreadPoolExecutor extends ThreadPoolExecutor implements ExecutorMetrics {
+
+    /**
+     * The time in seconds idle threads are kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+    private final AtomicLong mSaturationCount = new AtomicLong();
+
+    /**
+     * @param name          The name prefix of the threads.
+     * @param poolSize      The maximal number of threads.
+     * @param queueCapacity The maximal number of tasks waiting for a thread.
+     */
+    public MonitoredThreadPoolExecutor(@NonNull final String name, final int poolSize, final int queueCapacity) {
+        super(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), GiniExecutors.newThreadFactory(name));
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    return;
+                }
+                mSaturationCount.incrementAndGet();
+                runnable.run();
+            }
+        });
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        super.execute(command);
+        final int queueDepth = getQueueDepth();
+        int maxQueueDepth = mMaxQueueDepth.get();
+        while (queueDepth > maxQueueDepth && !mMaxQueueDepth.compareAndSet(maxQueueDepth, queueDepth)) {
+            maxQueueDepth = mMaxQueueDepth.get();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of tasks which were executed on the submitting thread, because the queue was full.
+     */
+    @Override
+    public long getSaturationCount() {
+        return mSaturationCount.get();
+    }
+}
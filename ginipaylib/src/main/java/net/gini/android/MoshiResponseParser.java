@@ -0,0 +1,35 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+import com.squareup.moshi.JsonAdapter;
+
+import net.gini.android.requests.BearerParsedRequest;
+
+import java.io.IOException;
+
+import okio.Buffer;
+
+/**
+ * Decodes a response body with a Moshi {@link JsonAdapter} directly from the response bytes.
+ * <p>
+ * Create one instance per response type and reuse it: the adapter is looked up only once and the instance identifies
+ * the result type of the requests it parses.
+ *
+ * @param <T> The type of the decoded response.
+ */
+class MoshiResponseParser<T> implements BearerParsedRequest.ResponseParser<T> {
+
+    private final JsonAdapter<T> mAdapter;
+
+    MoshiResponseParser(@NonNull final JsonAdapter<T> adapter) {
+        mAdapter = checkNotNull(adapter);
+    }
+
+    @Override
+    public T parse(@NonNull final byte[] data) throws IOException {
+        return mAdapter.fromJson(new Buffer().write(data));
+    }
+}
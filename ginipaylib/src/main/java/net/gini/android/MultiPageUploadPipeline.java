@@ -0,0 +1,229 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+
+import net.gini.android.DocumentTaskManager.DocumentType;
+import net.gini.android.models.Document;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Uploads the pages of a multi-page document as partial documents and creates the composite document.
+ * <p>
+ * At most {@code maxParallelUploads} pages are uploaded at the same time. Each upload slot takes the next page as soon
+ * as its previous upload completed. A page whose upload failed because of a network error or a 5xx server error is
+ * uploaded again up to {@code maxAttemptsPerPage} times. The composite document is created right after the last page
+ * was uploaded.
+ * <p>
+ * If a page can't be uploaded no further pages are started and the partial documents which were already created are
+ * deleted. The same happens if the composite document can't be created or the pipeline was cancelled.
+ */
+class MultiPageUploadPipeline {
+
+    private final DocumentTaskManager mDocumentTaskManager;
+    private final List<PageUpload> mPages;
+    @Nullable
+    private final DocumentType mDocumentType;
+    private final int mMaxParallelUploads;
+    private final int mMaxAttemptsPerPage;
+
+    private final Document[] mPartialDocuments;
+    private int mNextPage;
+    @Nullable
+    private Exception mError;
+
+    MultiPageUploadPipeline(@NonNull final DocumentTaskManager documentTaskManager,
+            @NonNull final List<PageUpload> pages, @Nullable final DocumentType documentType,
+            final int maxParallelUploads, final int maxAttemptsPerPage) {
+        if (pages.isEmpty()) {
+            throw new IllegalArgumentException("At least one page is required");
+        } else if (maxParallelUploads < 1) {
+            throw new IllegalArgumentException("maxParallelUploads must be at least 1");
+        } else if (maxAttemptsPerPage < 1) {
+            throw new IllegalArgumentException("maxAttemptsPerPage must be at least 1");
+        }
+        mDocumentTaskManager = documentTaskManager;
+        mPages = new ArrayList<>(pages);
+        mDocumentType = documentType;
+        mMaxParallelUploads = maxParallelUploads;
+        mMaxAttemptsPerPage = maxAttemptsPerPage;
+        mPartialDocuments = new Document[mPages.size()];
+    }
+
+    /**
+     * @return A Task which will resolve to the composite document.
+     */
+    @NonNull
+    Task<Document> start() {
+        final int uploadSlots = Math.min(mMaxParallelUploads, mPages.size());
+        final List<Task<Void>> uploadTasks = new ArrayList<>(uploadSlots);
+        for (int i = 0; i < uploadSlots; i++) {
+            uploadTasks.add(uploadNextPage());
+        }
+        return Task.whenAll(uploadTasks).continueWithTask(new Continuation<Void, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Void> task) {
+                final Exception error = getError();
+                if (error != null) {
+                    return deletePartialDocuments().continueWithTask(new Continuation<Void, Task<Document>>() {
+                        @Override
+                        public Task<Document> then(final Task<Void> deleteTask) {
+                            return Task.forError(error);
+                        }
+                    });
+                }
+                if (task.isFaulted() || task.isCancelled()) {
+                    return deletePartialDocuments().continueWithTask(new Continuation<Void, Task<Document>>() {
+                        @Override
+                        public Task<Document> then(final Task<Void> deleteTask) {
+                            return task.cast();
+                        }
+                    });
+                }
+                return createCompositeDocument();
+            }
+        });
+    }
+
+    /**
+     * Uploads pages one after the other until no pages are left or an upload failed.
+     */
+    private Task<Void> uploadNextPage() {
+        final int pageIndex;
+        synchronized (this) {
+            if (mError != null || mNextPage >= mPages.size()) {
+                return Task.forResult(null);
+            }
+            pageIndex = mNextPage++;
+        }
+        return uploadPage(pageIndex, 1).continueWithTask(new Continuation<Document, Task<Void>>() {
+            @Override
+            public Task<Void> then(final Task<Document> task) {
+                if (task.isFaulted()) {
+                    onUploadFailed(task.getError());
+                    return Task.forResult(null);
+                } else if (task.isCancelled()) {
+                    return task.makeVoid();
+                }
+                onPageUploaded(pageIndex, task.getResult());
+                return uploadNextPage();
+            }
+        });
+    }
+
+    private Task<Document> uploadPage(final int pageIndex, final int attempt) {
+        return uploadPage(mDocumentTaskManager, mPages.get(pageIndex), mDocumentType, attempt, mMaxAttemptsPerPage);
+    }
+
+    /**
+     * Uploads the page as a partial document. Uploads which failed with a retryable error (see
+     * {@link #isRetryable(Exception)}) are retried until the maximum number of attempts was reached.
+     */
+    static Task<Document> uploadPage(@NonNull final DocumentTaskManager documentTaskManager,
+            @NonNull final PageUpload page, @Nullable final DocumentType documentType, final int attempt,
+            final int maxAttempts) {
+        return documentTaskManager.createPartialDocument(page.getUploadSource(), page.getContentType(),
+                page.getFilename(), documentType)
+                .continueWithTask(new Continuation<Document, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Document> task) {
+                        if (task.isFaulted() && attempt < maxAttempts && isRetryable(task.getError())) {
+                            return uploadPage(documentTaskManager, page, documentType, attempt + 1, maxAttempts);
+                        }
+                        return task;
+                    }
+                });
+    }
+
+    /**
+     * Returns whether sending the request again may succeed: after network errors, timeouts and 5xx server errors.
+     * Client errors like an expired session, a rejected media type or a too large document are not retried.
+     */
+    static boolean isRetryable(@NonNull final Exception error) {
+        // NoConnectionError is a NetworkError
+        if (error instanceof NetworkError || error instanceof TimeoutError) {
+            return true;
+        }
+        // ClientError extends ServerError, so the status code tells them apart
+        if (error instanceof ServerError) {
+            final NetworkResponse response = ((ServerError) error).networkResponse;
+            return response == null || response.statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+        return false;
+    }
+
+    private Task<Document> createCompositeDocument() {
+        final LinkedHashMap<Document, Integer> documentRotationMap = new LinkedHashMap<>();
+        synchronized (this) {
+            for (int i = 0; i < mPartialDocuments.length; i++) {
+                documentRotationMap.put(mPartialDocuments[i], mPages.get(i).getRotation());
+            }
+        }
+        return mDocumentTaskManager.createCompositeDocument(documentRotationMap, mDocumentType)
+                .continueWithTask(new Continuation<Document, Task<Document>>() {
+                    @Override
+                    public Task<Document> then(final Task<Document> task) {
+                        if (!task.isFaulted() && !task.isCancelled()) {
+                            return task;
+                        }
+                        return deletePartialDocuments().continueWithTask(
+                                new Continuation<Void, Task<Document>>() {
+                                    @Override
+                                    public Task<Document> then(final Task<Void> deleteTask) {
+                                        return task;
+                                    }
+                                });
+                    }
+                });
+    }
+
+    /**
+     * Deletes the partial documents which were created. Errors are ignored, because the pipeline already failed.
+     * <p>
+     * The deletions are sent even if the pipeline was cancelled with a cancellation token.
+     */
+    private Task<Void> deletePartialDocuments() {
+        final DocumentTaskManager documentTaskManager = mDocumentTaskManager.withoutCancellationToken();
+        final List<Task<String>> deleteTasks = new ArrayList<>();
+        synchronized (this) {
+            for (final Document partialDocument : mPartialDocuments) {
+                if (partialDocument != null) {
+                    deleteTasks.add(documentTaskManager.deleteDocument(partialDocument.getId()));
+                }
+            }
+        }
+        return Task.whenAll(deleteTasks).continueWith(new Continuation<Void, Void>() {
+            @Override
+            public Void then(final Task<Void> task) {
+                return null;
+            }
+        });
+    }
+
+    private synchronized void onPageUploaded(final int pageIndex, @NonNull final Document partialDocument) {
+        mPartialDocuments[pageIndex] = partialDocument;
+    }
+
+    private synchronized void onUploadFailed(@NonNull final Exception error) {
+        if (mError == null) {
+            mError = error;
+        }
+    }
+
+    @Nullable
+    private synchronized Exception getError() {
+        return mError;
+    }
+}
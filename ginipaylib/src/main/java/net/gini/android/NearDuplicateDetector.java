@@ -0,0 +1,309 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import net.gini.android.models.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Skips uploading pages which were photographed twice. Set it with
+ * {@link GiniBuilder#setNearDuplicateDetector(NearDuplicateDetector)} to check the images uploaded with
+ * {@link DocumentTaskManager#createPartialDocument(UploadSource, String, String, DocumentTaskManager.DocumentType)}
+ * and the other partial document methods, including the pages of a {@link CaptureSession}.
+ * <p>
+ * The detector computes a difference hash (dHash) of each JPEG and PNG image from the average luminance of 9x8 cells
+ * of a downsampled copy of the image. Photos of the same paper page have hashes which differ in few bits, even if the
+ * lighting or the framing changed slightly. If the hash of an image differs from the hash of a recently uploaded page
+ * in at most the maximal Hamming distance, the upload is skipped and fails with a {@link NearDuplicateException}.
+ * Deleted documents are removed from the history.
+ * <p>
+ * The images are decoded on a dedicated executor, by default on
+ * {@link GiniExecutors#getDefaultImageProcessingExecutor()}.
+ */
+public class NearDuplicateDetector {
+
+    /**
+     * The default maximal number of differing bits of near-duplicate images.
+     */
+    public static final int DEFAULT_MAX_HAMMING_DISTANCE = 6;
+
+    /**
+     * The default number of recently uploaded pages the images are compared to.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 20;
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    /**
+     * Images are decoded with at least this size before the luminance of the hash cells is averaged.
+     */
+    private static final int MIN_DECODED_SIZE = 64;
+
+    private final int mMaxHammingDistance;
+    private final int mHistorySize;
+    private final Executor mExecutor;
+    private final ArrayDeque<Upload> mHistory = new ArrayDeque<>();
+
+    public NearDuplicateDetector() {
+        this(DEFAULT_MAX_HAMMING_DISTANCE, DEFAULT_HISTORY_SIZE, GiniExecutors.getDefaultImageProcessingExecutor());
+    }
+
+    /**
+     * @param maxHammingDistance The maximal number of differing bits of the 64 bit hashes of near-duplicate images.
+     * @param historySize        The number of recently uploaded pages the images are compared to.
+     * @param executor           The executor on which the images are decoded and hashed.
+     */
+    public NearDuplicateDetector(final int maxHammingDistance, final int historySize,
+            @NonNull final Executor executor) {
+        if (maxHammingDistance < 0 || maxHammingDistance > 64) {
+            throw new IllegalArgumentException("maxHammingDistance must be between 0 and 64");
+        } else if (historySize <= 0) {
+            throw new IllegalArgumentException("historySize must be positive");
+        }
+        mMaxHammingDistance = maxHammingDistance;
+        mHistorySize = historySize;
+        mExecutor = checkNotNull(executor);
+    }
+
+    /**
+     * Uploads the image, unless it is a near-duplicate of a recently uploaded page.
+     *
+     * @param image       The image which should be uploaded.
+     * @param contentType The media type of the image. Other documents than JPEG and PNG images are always uploaded.
+     * @param upload      Uploads the image.
+     * @return A Task which will resolve to the uploaded document or fail with a {@link NearDuplicateException}.
+     */
+    @NonNull
+    Task<Document> uploadUnlessNearDuplicate(@NonNull final UploadSource image, @NonNull final String contentType,
+            @NonNull final Continuation<Void, Task<Document>> upload) {
+        if (!MediaTypes.IMAGE_JPEG.equals(contentType) && !MediaTypes.IMAGE_PNG.equals(contentType)) {
+            return Task.<Void>forResult(null).continueWithTask(upload);
+        }
+        return Task.call(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                return computeHash(image);
+            }
+        }, mExecutor).onSuccessTask(new Continuation<Long, Task<Document>>() {
+            @Override
+            public Task<Document> then(final Task<Long> hashTask) {
+                final Long hash = hashTask.getResult();
+                if (hash == null) {
+                    // Not decodable, the Gini API will decide
+                    return Task.<Void>forResult(null).continueWithTask(upload);
+                }
+                return uploadUnlessNearDuplicate(hash, upload);
+            }
+        });
+    }
+
+    private Task<Document> uploadUnlessNearDuplicate(final long hash,
+            @NonNull final Continuation<Void, Task<Document>> upload) {
+        final Upload nearDuplicate;
+        final Task<Document>.TaskCompletionSource uploadCompletionSource = Task.create();
+        synchronized (this) {
+            nearDuplicate = findNearDuplicate(hash);
+            if (nearDuplicate == null) {
+                // Remembered before the upload completes, so that a near-duplicate added meanwhile is detected
+                remember(new Upload(hash, uploadCompletionSource.getTask()));
+            }
+        }
+        if (nearDuplicate != null) {
+            return nearDuplicate.mTask.continueWithTask(new Continuation<Document, Task<Document>>() {
+                @Override
+                public Task<Document> then(final Task<Document> task) {
+                    if (task.isFaulted() || task.isCancelled()) {
+                        // The similar page was not uploaded
+                        return uploadUnlessNearDuplicate(hash, upload);
+                    }
+                    return Task.forError(new NearDuplicateException(task.getResult(),
+                            Long.bitCount(hash ^ nearDuplicate.mHash)));
+                }
+            });
+        }
+        final Task<Document> uploadTask = Task.<Void>forResult(null).continueWithTask(upload);
+        uploadTask.continueWith(new Continuation<Document, Void>() {
+            @Override
+            public Void then(final Task<Document> task) {
+                if (task.isFaulted() || task.isCancelled()) {
+                    forget(uploadCompletionSource.getTask());
+                    uploadCompletionSource.trySetCancelled();
+                } else {
+                    uploadCompletionSource.trySetResult(task.getResult());
+                }
+                return null;
+            }
+        });
+        return uploadTask;
+    }
+
+    @Nullable
+    private Upload findNearDuplicate(final long hash) {
+        Upload nearest = null;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (final Upload upload : mHistory) {
+            final int distance = Long.bitCount(hash ^ upload.mHash);
+            if (distance <= mMaxHammingDistance && distance < nearestDistance) {
+                nearest = upload;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private void remember(@NonNull final Upload upload) {
+        mHistory.addLast(upload);
+        while (mHistory.size() > mHistorySize) {
+            mHistory.removeFirst();
+        }
+    }
+
+    private synchronized void forget(@NonNull final Task<Document> uploadTask) {
+        final Iterator<Upload> uploads = mHistory.iterator();
+        while (uploads.hasNext()) {
+            if (uploads.next().mTask == uploadTask) {
+                uploads.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes a deleted document from the history.
+     *
+     * @param documentId The id of the deleted document.
+     */
+    synchronized void invalidate(@NonNull final String documentId) {
+        final Iterator<Upload> uploads = mHistory.iterator();
+        while (uploads.hasNext()) {
+            final Task<Document> task = uploads.next().mTask;
+            if (task.isCompleted() && !task.isCancelled() && documentId.equals(task.getResult().getId())) {
+                uploads.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets all uploaded pages.
+     */
+    public synchronized void clear() {
+        mHistory.clear();
+    }
+
+    /**
+     * @return The difference hash of the image or null, if it can't be decoded.
+     */
+    @Nullable
+    private static Long computeHash(@NonNull final UploadSource image) throws IOException {
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decode(image, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = 1;
+        while (Math.min(bounds.outWidth, bounds.outHeight) / (options.inSampleSize * 2) >= MIN_DECODED_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        final Bitmap bitmap = decode(image, options);
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            return computeDifferenceHash(getCellLuminances(bitmap));
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Divides the bitmap into 9x8 cells and averages the luminance of each cell. Scaling the bitmap down would only
+     * sample a few pixels of each cell.
+     *
+     * @return The luminances of the cells row by row.
+     */
+    @NonNull
+    private static float[] getCellLuminances(@NonNull final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final float[] luminanceSums = new float[HASH_WIDTH * HASH_HEIGHT];
+        final int[] pixelCounts = new int[HASH_WIDTH * HASH_HEIGHT];
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            final int cellRow = y * HASH_HEIGHT / height;
+            for (int x = 0; x < width; x++) {
+                final int cell = cellRow * HASH_WIDTH + x * HASH_WIDTH / width;
+                luminanceSums[cell] += getLuminance(row[x]);
+                pixelCounts[cell]++;
+            }
+        }
+        for (int i = 0; i < luminanceSums.length; i++) {
+            luminanceSums[i] /= Math.max(1, pixelCounts[i]);
+        }
+        return luminanceSums;
+    }
+
+    @Nullable
+    private static Bitmap decode(@NonNull final UploadSource image, @NonNull final BitmapFactory.Options options)
+            throws IOException {
+        final InputStream inputStream = image.openStream();
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Sets a bit for each cell which is brighter than its right neighbour.
+     *
+     * @param luminances The luminances of the 9x8 cells row by row.
+     * @return The 64 bit hash.
+     */
+    @VisibleForTesting
+    static long computeDifferenceHash(@NonNull final float[] luminances) {
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                hash <<= 1;
+                if (luminances[y * HASH_WIDTH + x] > luminances[y * HASH_WIDTH + x + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static float getLuminance(final int pixel) {
+        return 0.299f * Color.red(pixel) + 0.587f * Color.green(pixel) + 0.114f * Color.blue(pixel);
+    }
+
+    private static class Upload {
+
+        private final long mHash;
+        private final Task<Document> mTask;
+
+        Upload(final long hash, @NonNull final Task<Document> task) {
+            mHash = hash;
+            mTask = task;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import net.gini.android.models.Document;
+
+/**
+ * Error of uploads which were skipped, because the image is a near-duplicate of a recently uploaded page. See
+ * {@link NearDuplicateDetector}.
+ */
+public class NearDuplicateException extends Exception {
+
+    private final Document mDuplicateOf;
+    private final int mHammingDistance;
+
+    NearDuplicateException(@NonNull final Document duplicateOf, final int hammingDistance) {
+        super("The image is a near-duplicate of document " + duplicateOf.getId());
+        mDuplicateOf = duplicateOf;
+        mHammingDistance = hammingDistance;
+    }
+
+    /**
+     * @return The partial document created from the similar image.
+     */
+    @NonNull
+    public Document getDuplicateOf() {
+        return mDuplicateOf;
+    }
+
+    /**
+     * @return The number of differing bits of the perceptual hashes of the images.
+     */
+    public int getHammingDistance() {
+        return mHammingDistance;
+    }
+}
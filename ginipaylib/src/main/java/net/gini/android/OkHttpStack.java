@@ -0,0 +1,273 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import net.gini.android.requests.AbortableRequest;
+import net.gini.android.requests.BearerUploadRequest;
+import net.gini.android.requests.StreamingBodyRequest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * A {@link BaseHttpStack} which executes the requests with OkHttp.
+ * <p>
+ * All requests share the connection pool of the client. Requests to the same host are multiplexed over a single
+ * HTTP/2 connection, if the server supports it. The bodies of {@link StreamingBodyRequest}s are streamed from their
+ * {@link UploadSource}. Large {@link BearerUploadRequest}s expect {@code 100-continue}, so that their body is not sent,
+ * if the server rejects the headers. The call of an {@link AbortableRequest} is cancelled, if the request is cancelled.
+ * <p>
+ * OkHttp is an optional dependency of the library. Check {@link #isAvailable()} before using this class.
+ */
+class OkHttpStack extends BaseHttpStack {
+
+    private final OkHttpClient mClient;
+
+    OkHttpStack(@NonNull final OkHttpClient client) {
+        mClient = client;
+    }
+
+    /**
+     * Creates a stack with its own connection pool.
+     *
+     * @param sslSocketFactory       The socket factory for TLS connections or null to use the default.
+     * @param trustManager           The trust manager used by the socket factory. Must be set, if a socket factory is
+     *                               set.
+     * @param connectionKeepAliveMs  The time in milliseconds idle connections are kept open.
+     * @param maxIdleConnections     The maximal number of idle connections kept open.
+     */
+    @NonNull
+    static OkHttpStack create(@Nullable final SSLSocketFactory sslSocketFactory,
+            @Nullable final X509TrustManager trustManager, final long connectionKeepAliveMs,
+            final int maxIdleConnections) {
+        final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, connectionKeepAliveMs, TimeUnit.MILLISECONDS))
+                // Volley retries failed requests according to the retry policy of the request
+                .retryOnConnectionFailure(false);
+        if (sslSocketFactory != null && trustManager != null) {
+            builder.sslSocketFactory(sslSocketFactory, trustManager);
+        }
+        return new OkHttpStack(builder.build());
+    }
+
+    /**
+     * @return Whether OkHttp was added to the dependencies of the app.
+     */
+    static boolean isAvailable() {
+        try {
+            Class.forName("okhttp3.OkHttpClient");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public HttpResponse executeRequest(final Request<?> request, final Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        final int timeoutMs = request.getTimeoutMs();
+        // Derived clients share the connection pool and the dispatcher of the original client
+        final OkHttpClient client = mClient.newBuilder()
+                .connectTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        final okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.getUrl());
+        for (final Map.Entry<String, String> header : additionalHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        if (request instanceof BearerUploadRequest && ((BearerUploadRequest) request).getUploadSource()
+                .getContentLength() > BearerUploadRequest.EXPECT_CONTINUE_THRESHOLD) {
+            // OkHttp sends the body only after the server accepted the headers
+            builder.header("Expect", "100-continue");
+        }
+        setMethodAndBody(builder, request);
+
+        final Call call = client.newCall(builder.build());
+        final Response response;
+        if (request instanceof AbortableRequest) {
+            final AbortableRequest abortableRequest = (AbortableRequest) request;
+            abortableRequest.setAbortAction(new Runnable() {
+                @Override
+                public void run() {
+                    call.cancel();
+                }
+            });
+            try {
+                response = call.execute();
+            } finally {
+                abortableRequest.setAbortAction(null);
+            }
+        } else {
+            response = call.execute();
+        }
+        final List<Header> headers = convertHeaders(response.headers());
+        final ResponseBody body = response.body();
+        if (body == null) {
+            response.close();
+            return new HttpResponse(response.code(), headers);
+        }
+        return new HttpResponse(response.code(), headers, (int) body.contentLength(),
+                new ResponseInputStream(response, body.byteStream()));
+    }
+
+    private static void setMethodAndBody(@NonNull final okhttp3.Request.Builder builder,
+            @NonNull final Request<?> request) throws AuthFailureError {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                final byte[] postBody = request.getBody();
+                if (postBody != null) {
+                    builder.post(RequestBody.create(MediaType.parse(request.getBodyContentType()), postBody));
+                } else {
+                    builder.get();
+                }
+                break;
+            case Request.Method.GET:
+                builder.get();
+                break;
+            case Request.Method.DELETE:
+                builder.delete(createBody(request, false));
+                break;
+            case Request.Method.POST:
+                builder.post(createBody(request, true));
+                break;
+            case Request.Method.PUT:
+                builder.put(createBody(request, true));
+                break;
+            case Request.Method.HEAD:
+                builder.head();
+                break;
+            case Request.Method.OPTIONS:
+                builder.method("OPTIONS", null);
+                break;
+            case Request.Method.TRACE:
+                builder.method("TRACE", null);
+                break;
+            case Request.Method.PATCH:
+                builder.patch(createBody(request, true));
+                break;
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    @Nullable
+    private static RequestBody createBody(@NonNull final Request<?> request, final boolean required)
+            throws AuthFailureError {
+        final MediaType mediaType = MediaType.parse(request.getBodyContentType());
+        if (request instanceof StreamingBodyRequest) {
+            return new UploadSourceRequestBody(mediaType, ((StreamingBodyRequest) request).getUploadSource(), request);
+        }
+        final byte[] body = request.getBody();
+        if (body == null) {
+            return required ? RequestBody.create(mediaType, new byte[0]) : null;
+        }
+        return RequestBody.create(mediaType, body);
+    }
+
+    @NonNull
+    private static List<Header> convertHeaders(@NonNull final Headers responseHeaders) {
+        final List<Header> headers = new ArrayList<>(responseHeaders.size());
+        for (int i = 0; i < responseHeaders.size(); i++) {
+            headers.add(new Header(responseHeaders.name(i), responseHeaders.value(i)));
+        }
+        return headers;
+    }
+
+    /**
+     * Streams the body from an {@link UploadSource}. The source is opened again, if OkHttp retries the request. The
+     * upload is aborted, if the request is cancelled.
+     */
+    private static class UploadSourceRequestBody extends RequestBody {
+
+        private static final long SEGMENT_SIZE = 8192;
+
+        @Nullable
+        private final MediaType mMediaType;
+        private final UploadSource mUploadSource;
+        private final Request<?> mRequest;
+
+        UploadSourceRequestBody(@Nullable final MediaType mediaType, @NonNull final UploadSource uploadSource,
+                @NonNull final Request<?> request) {
+            mMediaType = mediaType;
+            mUploadSource = uploadSource;
+            mRequest = request;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return mMediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mUploadSource.getContentLength();
+        }
+
+        @Override
+        public void writeTo(@NonNull final BufferedSink sink) throws IOException {
+            final Source source = Okio.source(mUploadSource.openUploadStream());
+            try {
+                while (source.read(sink.buffer(), SEGMENT_SIZE) != -1) {
+                    if (mRequest.isCanceled()) {
+                        throw new IOException("The upload was cancelled");
+                    }
+                    sink.emitCompleteSegments();
+                }
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * Wrapper for the response body which closes the response when the stream is closed.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+
+        private final Response mResponse;
+
+        ResponseInputStream(@NonNull final Response response, @NonNull final InputStream inputStream) {
+            super(inputStream);
+            mResponse = response;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mResponse.close();
+        }
+    }
+}
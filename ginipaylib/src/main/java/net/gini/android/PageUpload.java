@@ -0,0 +1,62 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A page of a multi-page document, see {@link DocumentTaskManager#createMultiPageDocument(java.util.List,
+ * DocumentTaskManager.DocumentType)}.
+ */
+public class PageUpload {
+
+    private final UploadSource mUploadSource;
+    private final String mContentType;
+    private final int mRotation;
+    @Nullable
+    private final String mFilename;
+
+    /**
+     * @param uploadSource The source of the page image or pdf.
+     * @param contentType  The media type of the page data.
+     * @param rotation     The amount in degrees the page has been rotated by the user.
+     */
+    public PageUpload(@NonNull final UploadSource uploadSource, @NonNull final String contentType,
+            final int rotation) {
+        this(uploadSource, contentType, rotation, null);
+    }
+
+    /**
+     * @param uploadSource The source of the page image or pdf.
+     * @param contentType  The media type of the page data.
+     * @param rotation     The amount in degrees the page has been rotated by the user.
+     * @param filename     Optional the filename of the page.
+     */
+    public PageUpload(@NonNull final UploadSource uploadSource, @NonNull final String contentType,
+            final int rotation, @Nullable final String filename) {
+        mUploadSource = checkNotNull(uploadSource);
+        mContentType = checkNotNull(contentType);
+        mRotation = rotation;
+        mFilename = filename;
+    }
+
+    @NonNull
+    public UploadSource getUploadSource() {
+        return mUploadSource;
+    }
+
+    @NonNull
+    public String getContentType() {
+        return mContentType;
+    }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    @Nullable
+    public String getFilename() {
+        return mFilename;
+    }
+}
@@ -0,0 +1,40 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+import net.gini.android.models.Document;
+
+/**
+ * Decides how long to wait between the requests when a document is polled until it is processed.
+ * <p>
+ * Implementations are used by all pollings of a {@link DocumentTaskManager} concurrently and must be thread-safe.
+ */
+public interface PollingPolicy {
+
+    /**
+     * Returns the time to wait before the next request of a pending document.
+     *
+     * @param document  The pending document.
+     * @param attempt   The number of requests made for the document so far.
+     * @param elapsedMs The time in milliseconds since the polling of the document started.
+     * @return The delay in milliseconds.
+     */
+    long getDelay(@NonNull Document document, int attempt, long elapsedMs);
+
+    /**
+     * Called when a polled document left the pending state.
+     *
+     * @param document         The processed document.
+     * @param processingTimeMs The time in milliseconds between the start of the polling and the request which
+     *                         returned the processed document.
+     */
+    void onProcessed(@NonNull Document document, long processingTimeMs);
+
+    /**
+     * Returns the expected time in milliseconds from the start of the polling until the document is processed.
+     *
+     * @param document The pending document.
+     * @return The expected processing time in milliseconds or -1, if no estimate is available.
+     */
+    long getExpectedProcessingTime(@NonNull Document document);
+}
@@ -0,0 +1,49 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The result of the {@link ImagePreprocessor}.
+ */
+public class PreprocessedImage {
+
+    private final byte[] mData;
+    private final String mContentType;
+    private final long mOriginalSize;
+
+    PreprocessedImage(@NonNull final byte[] data, @NonNull final String contentType, final long originalSize) {
+        mData = data;
+        mContentType = contentType;
+        mOriginalSize = originalSize;
+    }
+
+    /**
+     * @return The image which should be uploaded. The original image, if it could not be made smaller.
+     */
+    @NonNull
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * @return The media type of the image which should be uploaded.
+     */
+    @NonNull
+    public String getContentType() {
+        return mContentType;
+    }
+
+    /**
+     * @return The size of the original image in bytes.
+     */
+    public long getOriginalSize() {
+        return mOriginalSize;
+    }
+
+    /**
+     * @return The number of bytes which are not uploaded thanks to the preprocessing.
+     */
+    public long getBytesSaved() {
+        return mOriginalSize - mData.length;
+    }
+}
@@ -0,0 +1,139 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link UploadSource} which reports how many bytes the network stack read from it. The network stacks read the
+ * source while writing it to the socket, so the number of read bytes is the progress of the upload.
+ * <p>
+ * Only the streams opened with {@link #openUploadStream()} are counted. Other readers of the data, like the
+ * near-duplicate detection or the hashing of the upload key, don't change the progress. Every upload stream starts
+ * counting at the offset of the source, because a new stream is opened for each upload attempt.
+ */
+class ProgressUploadSource extends UploadSource {
+
+    /**
+     * Receives the progress of the upload on the network thread.
+     */
+    interface ProgressListener {
+
+        /**
+         * @param bytesRead  The number of bytes of the whole document read by the network stack.
+         * @param totalBytes The content length of the whole document.
+         */
+        void onProgress(long bytesRead, long totalBytes);
+    }
+
+    private final UploadSource mUploadSource;
+    private final ProgressListener mProgressListener;
+    private final long mOffset;
+    private final long mTotalBytes;
+
+    ProgressUploadSource(@NonNull final UploadSource uploadSource, @NonNull final ProgressListener progressListener) {
+        this(uploadSource, progressListener, 0, uploadSource.getContentLength());
+    }
+
+    /**
+     * @param uploadSource     A part of the document.
+     * @param progressListener Receives the progress of the whole document.
+     * @param offset           The index of the first byte of the part in the document.
+     * @param totalBytes       The content length of the whole document.
+     */
+    private ProgressUploadSource(@NonNull final UploadSource uploadSource,
+            @NonNull final ProgressListener progressListener, final long offset, final long totalBytes) {
+        mUploadSource = checkNotNull(uploadSource);
+        mProgressListener = checkNotNull(progressListener);
+        mOffset = offset;
+        mTotalBytes = totalBytes;
+    }
+
+    @Override
+    public long getContentLength() {
+        return mUploadSource.getContentLength();
+    }
+
+    @NonNull
+    @Override
+    public InputStream openStream() throws IOException {
+        return mUploadSource.openStream();
+    }
+
+    @NonNull
+    @Override
+    InputStream openUploadStream() throws IOException {
+        final InputStream inputStream = mUploadSource.openUploadStream();
+        mProgressListener.onProgress(mOffset, mTotalBytes);
+        return new FilterInputStream(inputStream) {
+
+            private long mBytesRead = mOffset;
+
+            @Override
+            public int read() throws IOException {
+                final int value = super.read();
+                if (value != -1) {
+                    onRead(1);
+                }
+                return value;
+            }
+
+            @Override
+            public int read(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+                final int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    onRead(read);
+                }
+                return read;
+            }
+
+            @Override
+            public boolean markSupported() {
+                // Resetting the stream would count the same bytes twice
+                return false;
+            }
+
+            private void onRead(final long count) {
+                mBytesRead += count;
+                mProgressListener.onProgress(mBytesRead, mTotalBytes);
+            }
+        };
+    }
+
+    @NonNull
+    @Override
+    public byte[] readFully() throws IOException {
+        return mUploadSource.readFully();
+    }
+
+    @Nullable
+    @Override
+    String getResumeKey() {
+        return mUploadSource.getResumeKey();
+    }
+
+    /**
+     * The progress of the replacing data, e.g. of a preprocessed image, is reported instead.
+     */
+    @NonNull
+    @Override
+    UploadSource replaceData(@NonNull final UploadSource data) {
+        return new ProgressUploadSource(data, mProgressListener);
+    }
+
+    /**
+     * The progress of a part counts towards the progress of the whole document, e.g. for the chunks of a resumable
+     * upload.
+     */
+    @NonNull
+    @Override
+    UploadSource slice(final long offset, final long length) {
+        return new ProgressUploadSource(mUploadSource.slice(offset, length), mProgressListener, mOffset + offset,
+                mTotalBytes);
+    }
+}
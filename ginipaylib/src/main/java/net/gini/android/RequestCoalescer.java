@@ -0,0 +1,106 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Coalesces identical requests which are in flight at the same time. The first caller starts the request and all
+ * callers requesting the same key before it completed receive the result of the first request. Mutable results are
+ * copied for every caller, including the first one. The original result stays private to the coalescer, so that a
+ * caller modifying its result can't corrupt the copy of another caller.
+ */
+class RequestCoalescer {
+
+    /**
+     * Creates the request, if no identical request is in flight.
+     */
+    interface RequestFactory<T> {
+
+        @NonNull
+        Task<T> newRequest();
+    }
+
+    /**
+     * Copies a mutable result for a caller. Must not modify the result.
+     */
+    interface ResultCopier<T> {
+
+        @Nullable
+        T copy(@Nullable T result) throws Exception;
+    }
+
+    private final ConcurrentMap<String, Task<?>> mRequestsInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Coalesces requests whose results are immutable. All callers receive the same result.
+     *
+     * @param key            Identifies the request. Requests with the same key must return the same result.
+     * @param requestFactory Creates the request, if no request with the key is in flight.
+     * @return A Task which will resolve to the result of the request in flight.
+     */
+    @NonNull
+    <T> Task<T> coalesce(@NonNull final String key, @NonNull final RequestFactory<T> requestFactory) {
+        return coalesce(key, requestFactory, null);
+    }
+
+    /**
+     * @param key            Identifies the request. Requests with the same key must return the same result.
+     * @param requestFactory Creates the request, if no request with the key is in flight.
+     * @param resultCopier   Copies the result for every caller or null, if the result is immutable.
+     * @return A Task which will resolve to the result of the request in flight.
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    <T> Task<T> coalesce(@NonNull final String key, @NonNull final RequestFactory<T> requestFactory,
+            @Nullable final ResultCopier<T> resultCopier) {
+        final Task<T>.TaskCompletionSource completionSource = Task.create();
+        final Task<?> requestInFlight = mRequestsInFlight.putIfAbsent(key, completionSource.getTask());
+        if (requestInFlight != null) {
+            return copyResult((Task<T>) requestInFlight, resultCopier);
+        }
+        final Task<T> request;
+        try {
+            request = requestFactory.newRequest();
+        } catch (RuntimeException e) {
+            mRequestsInFlight.remove(key, completionSource.getTask());
+            // Callers which joined in the meantime must not wait forever
+            completionSource.trySetError(e);
+            throw e;
+        }
+        request.continueWith(new Continuation<T, Void>() {
+            @Override
+            public Void then(final Task<T> task) {
+                // Remove first, callers after the completion must start a new request
+                mRequestsInFlight.remove(key, completionSource.getTask());
+                if (task.isFaulted()) {
+                    completionSource.setError(task.getError());
+                } else if (task.isCancelled()) {
+                    completionSource.setCancelled();
+                } else {
+                    completionSource.setResult(task.getResult());
+                }
+                return null;
+            }
+        });
+        return copyResult(completionSource.getTask(), resultCopier);
+    }
+
+    @NonNull
+    private static <T> Task<T> copyResult(@NonNull final Task<T> task, @Nullable final ResultCopier<T> resultCopier) {
+        if (resultCopier == null) {
+            return task;
+        }
+        return task.onSuccess(new Continuation<T, T>() {
+            @Override
+            public T then(final Task<T> task) throws Exception {
+                return resultCopier.copy(task.getResult());
+            }
+        });
+    }
+}
@@ -1,11 +1,14 @@
 package net.gini.android;
 
+import static net.gini.android.Utils.checkNotNull;
+
 import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
 
 import com.android.volley.Cache;
+import com.android.volley.ExecutorDelivery;
 import com.android.volley.Network;
 import com.android.volley.RequestQueue;
 import com.android.volley.toolbox.BaseHttpStack;
@@ -14,16 +17,20 @@ import com.android.volley.toolbox.DiskBasedCache;
 import com.android.volley.toolbox.HurlStack;
 
 import net.gini.android.authorization.PubKeyManager;
+import net.gini.android.requests.RequestLaneDispatcher;
 
 import java.io.File;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.XmlRes;
 
 /**
@@ -36,6 +43,10 @@ import androidx.annotation.XmlRes;
  * <p>
  * If no dependency instances were set the builder simply returns Volley.newRequestQueue()'s result.
  * </p>
+ * <p>
+ * Unlike Volley's default the responses are not delivered on the main thread but on a worker executor. The tasks of
+ * the requests are completed there and the continuations parsing the responses don't have to wait for the main thread.
+ * </p>
  */
 class RequestQueueBuilder {
 
@@ -44,6 +55,41 @@ class RequestQueueBuilder {
      */
     private static final String DEFAULT_CACHE_DIR = "volley";
 
+    /**
+     * Default time idle connections are kept open when using OkHttp.
+     */
+    static final long DEFAULT_CONNECTION_KEEP_ALIVE_MS = 5 * 60 * 1000;
+
+    /**
+     * Default number of network threads for the requests to the Gini API. One thread is reserved for interactive
+     * requests, three are used by normal and two by background requests.
+     */
+    static final int DEFAULT_API_THREAD_POOL_SIZE = 6;
+
+    /**
+     * Default number of network threads for the requests to the Gini User Center API. The smallest pool which keeps a
+     * thread free for interactive requests.
+     */
+    static final int DEFAULT_USER_CENTER_THREAD_POOL_SIZE = RequestLaneDispatcher.MIN_THREAD_POOL_SIZE;
+
+    /**
+     * Default number of requests to the Gini API which may wait for the concurrency limit of their lane. Large enough
+     * for the pollings and page uploads of many documents, but bounded so that a stalled host can't collect requests
+     * without limit.
+     */
+    static final int DEFAULT_API_MAX_WAITING_REQUESTS = 1000;
+
+    /**
+     * Default number of requests to the Gini User Center API which may wait for the concurrency limit of their lane.
+     * Sessions are shared, so only a few requests are expected.
+     */
+    static final int DEFAULT_USER_CENTER_MAX_WAITING_REQUESTS = 50;
+
+    /**
+     * Default number of idle connections kept open when using OkHttp.
+     */
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+
     private final Context mContext;
 
     private Cache mCache;
@@ -51,9 +97,14 @@ class RequestQueueBuilder {
     private BaseHttpStack mStack;
     private Network mNetwork;
     private SSLSocketFactory mSSLSocketFactory;
+    private TrustManager[] mTrustManagers;
     private List<String> mHostnames;
     @XmlRes
     private int mNetworkSecurityConfigResId;
+    private boolean mOkHttpEnabled;
+    private long mConnectionKeepAliveInMs = DEFAULT_CONNECTION_KEEP_ALIVE_MS;
+    private int mThreadPoolSize = DEFAULT_API_THREAD_POOL_SIZE;
+    private Executor mResponseDeliveryExecutor;
 
     RequestQueueBuilder(final Context context) {
         mContext = context;
@@ -74,12 +125,69 @@ class RequestQueueBuilder {
         return this;
     }
 
+    /**
+     * Use OkHttp instead of HttpURLConnection. OkHttp multiplexes the requests over a single HTTP/2 connection per host.
+     * OkHttp must be added to the dependencies of the app.
+     */
+    RequestQueueBuilder setOkHttpEnabled(final boolean okHttpEnabled) {
+        mOkHttpEnabled = okHttpEnabled;
+        return this;
+    }
+
+    /**
+     * Sets the time idle connections are kept open. Only used with OkHttp.
+     */
+    RequestQueueBuilder setConnectionKeepAliveInMs(final long connectionKeepAliveInMs) {
+        mConnectionKeepAliveInMs = connectionKeepAliveInMs;
+        return this;
+    }
+
+    /**
+     * Sets the number of network threads of the queues built with {@link #build()}.
+     */
+    RequestQueueBuilder setThreadPoolSize(final int threadPoolSize) {
+        mThreadPoolSize = threadPoolSize;
+        return this;
+    }
+
+    /**
+     * Sets the executor on which the responses and errors of the requests are delivered. By default it is the
+     * {@link GiniExecutors#getDefaultParsingExecutor()}.
+     */
+    RequestQueueBuilder setResponseDeliveryExecutor(@NonNull final Executor responseDeliveryExecutor) {
+        mResponseDeliveryExecutor = checkNotNull(responseDeliveryExecutor);
+        return this;
+    }
+
     RequestQueue build() {
-        RequestQueue queue = new RequestQueue(getCache(), getNetwork());
+        return build(getCache(), mThreadPoolSize);
+    }
+
+    /**
+     * Builds a queue with its own cache and network threads. All queues built by this builder share the network
+     * stack and with it the connection pool.
+     */
+    RequestQueue build(final Cache cache, final int threadPoolSize) {
+        return build(cache, threadPoolSize, getResponseDeliveryExecutor());
+    }
+
+    /**
+     * Builds a queue with its own cache, network threads and response delivery executor.
+     */
+    RequestQueue build(final Cache cache, final int threadPoolSize, @NonNull final Executor responseDeliveryExecutor) {
+        RequestQueue queue = new RequestQueue(cache, getNetwork(), threadPoolSize,
+                new ExecutorDelivery(checkNotNull(responseDeliveryExecutor)));
         queue.start();
         return queue;
     }
 
+    private Executor getResponseDeliveryExecutor() {
+        if (mResponseDeliveryExecutor == null) {
+            mResponseDeliveryExecutor = GiniExecutors.getDefaultParsingExecutor();
+        }
+        return mResponseDeliveryExecutor;
+    }
+
     private Cache getCache() {
         if (mCache == null) {
             File cacheDir = new File(mContext.getCacheDir(), DEFAULT_CACHE_DIR);
@@ -103,17 +211,24 @@ class RequestQueueBuilder {
 
     private BaseHttpStack getStack() {
         if (mStack == null) {
-            mStack = getHurlStack();
+            mStack = mOkHttpEnabled ? getOkHttpStack() : getHurlStack();
         }
         return mStack;
     }
 
-    private HurlStack getHurlStack() {
-        SSLSocketFactory sslSocketFactory = getSSLSocketFactory();
-        if (sslSocketFactory != null) {
-            return new HurlStack(null, sslSocketFactory);
+    private BaseHttpStack getOkHttpStack() {
+        if (!OkHttpStack.isAvailable()) {
+            throw new IllegalStateException("OkHttp was enabled but it is not in the dependencies of the app");
         }
-        return new HurlStack();
+        final TrustManager[] trustManagers = getTrustManagers();
+        final X509TrustManager trustManager = trustManagers != null ? (X509TrustManager) trustManagers[0] : null;
+        return OkHttpStack.create(trustManager != null ? getSSLSocketFactory() : null, trustManager,
+                mConnectionKeepAliveInMs, DEFAULT_MAX_IDLE_CONNECTIONS);
+    }
+
+    private HurlStack getHurlStack() {
+        // Streams upload bodies instead of keeping them in memory
+        return new StreamingHurlStack(getSSLSocketFactory());
     }
 
     private SSLSocketFactory getSSLSocketFactory() {
@@ -137,6 +252,13 @@ class RequestQueueBuilder {
     }
 
     private TrustManager[] getTrustManagers() {
+        if (mTrustManagers == null) {
+            mTrustManagers = createTrustManagers();
+        }
+        return mTrustManagers;
+    }
+
+    private TrustManager[] createTrustManagers() {
         final PubKeyManager.Builder builder = PubKeyManager.builder(mContext);
         if (mHostnames != null && !mHostnames.isEmpty()) {
             builder.setHostnames(mHostnames);
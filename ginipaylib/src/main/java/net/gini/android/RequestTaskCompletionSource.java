@@ -3,12 +3,17 @@ package net.gini.android;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 
+import net.gini.android.requests.RequestCancelledError;
+
 import bolts.Task;
 
 
 /**
  * Handy class to wrap Bolt's tasks around a volley request. Can be used as both the response
  * listener and error listener of a volley request.
+ * <p>
+ * The task is cancelled, if a {@link RequestCancelledError} is delivered. Only the first response or error completes
+ * the task, because a cancelled request may still deliver the response which was on its way.
  *
  * @param <T> The response type of the request.
  */
@@ -32,11 +37,15 @@ public class RequestTaskCompletionSource<T> implements Response.Listener<T>, Res
 
     @Override
     public void onResponse(T response) {
-        mCompletionSource.setResult(response);
+        mCompletionSource.trySetResult(response);
     }
 
     @Override
     public synchronized void onErrorResponse(VolleyError error) {
-        mCompletionSource.setError(error);
+        if (error instanceof RequestCancelledError) {
+            mCompletionSource.trySetCancelled();
+        } else {
+            mCompletionSource.trySetError(error);
+        }
     }
 }
@@ -0,0 +1,38 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The progress of a resumable upload: the Uri of the upload on the server and the number of bytes the server has
+ * received.
+ */
+public final class ResumableUploadState {
+
+    private final String mUploadUri;
+    private final long mOffset;
+
+    public ResumableUploadState(@NonNull final String uploadUri, final long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset can't be less than 0");
+        }
+        mUploadUri = checkNotNull(uploadUri);
+        mOffset = offset;
+    }
+
+    /**
+     * @return The Uri of the upload to which the remaining chunks are sent.
+     */
+    @NonNull
+    public String getUploadUri() {
+        return mUploadUri;
+    }
+
+    /**
+     * @return The number of bytes the server has received.
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+}
@@ -0,0 +1,39 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Persists the progress of resumable uploads, so that an upload which was interrupted (e.g. because the app was
+ * killed) continues where it stopped when the same document is uploaded again.
+ * <p>
+ * The keys identify the uploaded data, see {@link GiniBuilder#setResumableUploadChunkSize(long)}.
+ */
+public interface ResumableUploadStore {
+
+    /**
+     * Returns the stored progress of an upload.
+     *
+     * @param key The key of the upload.
+     * @return The stored progress or null, if no upload with the key was interrupted.
+     */
+    @Nullable
+    ResumableUploadState getUploadState(@NonNull String key);
+
+    /**
+     * Stores the progress of an upload. Called after each chunk.
+     * <p>
+     * Warning: This method overwrites the existing progress of the upload.
+     *
+     * @param key   The key of the upload.
+     * @param state The progress of the upload.
+     */
+    void storeUploadState(@NonNull String key, @NonNull ResumableUploadState state);
+
+    /**
+     * Deletes the progress of an upload which completed or can't be resumed.
+     *
+     * @param key The key of the upload.
+     */
+    void deleteUploadState(@NonNull String key);
+}
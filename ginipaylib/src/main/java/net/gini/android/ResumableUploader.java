@@ -0,0 +1,320 @@
+package net.gini.android;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.ParseError;
+import com.android.volley.VolleyError;
+
+import net.gini.android.authorization.Session;
+
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * Uploads large documents in chunks, so that an interrupted upload continues where it stopped instead of sending the
+ * whole document again.
+ * <p>
+ * The resumable upload protocol follows the tus protocol (https://tus.io): a {@code POST} to
+ * {@code documents/uploads/} announces the length of the document and returns the Uri of the upload. Each chunk is
+ * sent to this Uri with its offset. If a chunk fails, a {@code HEAD} request returns the number of bytes the server has
+ * received and the upload continues from there. The response to the last chunk contains the Uri of the created
+ * document.
+ * <p>
+ * If the server does not support resumable uploads, the document is uploaded in one request and no further
+ * resumable uploads are attempted.
+ * <p>
+ * A stored upload is only resumed with the same session, API and metadata it was started with. It is started again, if
+ * the server rejects it.
+ */
+class ResumableUploader {
+
+    /**
+     * The default number of times a chunk is sent before the upload fails.
+     */
+    static final int DEFAULT_CHUNK_ATTEMPTS = 3;
+
+    static final String TUS_RESUMABLE_HEADER = "Tus-Resumable";
+    static final String TUS_VERSION = "1.0.0";
+    static final String UPLOAD_LENGTH_HEADER = "Upload-Length";
+    static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    static final String UPLOAD_METADATA_HEADER = "Upload-Metadata";
+    static final String METHOD_OVERRIDE_HEADER = "X-HTTP-Method-Override";
+
+    private final long mChunkSize;
+    private final int mMaxChunkAttempts;
+    @Nullable
+    private final ResumableUploadStore mResumableUploadStore;
+    private volatile boolean mUnsupported;
+
+    /**
+     * @param chunkSize            The number of bytes sent in one request. Smaller documents are uploaded in one
+     *                             request.
+     * @param maxChunkAttempts     The number of times a chunk is sent before the upload fails.
+     * @param resumableUploadStore The store which persists the progress of the uploads or null, if uploads should only
+     *                             be resumed while they are running.
+     */
+    ResumableUploader(final long chunkSize, final int maxChunkAttempts,
+            @Nullable final ResumableUploadStore resumableUploadStore) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        } else if (maxChunkAttempts < 1) {
+            throw new IllegalArgumentException("maxChunkAttempts must be at least 1");
+        }
+        mChunkSize = chunkSize;
+        mMaxChunkAttempts = maxChunkAttempts;
+        mResumableUploadStore = resumableUploadStore;
+    }
+
+    /**
+     * @return Whether the document is larger than a chunk and the server was not found to lack support for resumable
+     * uploads.
+     */
+    boolean shouldUpload(@NonNull final UploadSource uploadSource) {
+        return !mUnsupported && uploadSource.getContentLength() > mChunkSize;
+    }
+
+    /**
+     * Uploads the document in chunks or, if the server does not support it, in one request.
+     *
+     * @return A Task which will resolve to the Uri of the created document.
+     */
+    @NonNull
+    Task<Uri> upload(@NonNull final ApiCommunicator apiCommunicator, @NonNull final UploadSource uploadSource,
+            @NonNull final String contentType, @Nullable final String documentName,
+            @Nullable final String docTypeHint, @NonNull final Session session,
+            @Nullable final DocumentMetadata documentMetadata) {
+        return new Upload(apiCommunicator, uploadSource, contentType, documentName, docTypeHint, session,
+                documentMetadata).start();
+    }
+
+    private static int getStatusCode(@NonNull final Exception error) {
+        if (error instanceof VolleyError && ((VolleyError) error).networkResponse != null) {
+            return ((VolleyError) error).networkResponse.statusCode;
+        }
+        return 0;
+    }
+
+    private static boolean isUnsupported(@NonNull final Exception error) {
+        final int statusCode = getStatusCode(error);
+        return statusCode == 404 || statusCode == 405 || statusCode == 501;
+    }
+
+    private static boolean isGone(@NonNull final Exception error) {
+        final int statusCode = getStatusCode(error);
+        return statusCode == 404 || statusCode == 410;
+    }
+
+    private static boolean isOffsetMismatch(@NonNull final Exception error) {
+        return getStatusCode(error) == 409;
+    }
+
+    @Nullable
+    private static Long getOffset(@NonNull final Map<String, String> headers) {
+        final String offset = headers.get(UPLOAD_OFFSET_HEADER);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(offset.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private class Upload {
+
+        private final ApiCommunicator mApiCommunicator;
+        private final UploadSource mUploadSource;
+        private final long mContentLength;
+        private final String mContentType;
+        @Nullable
+        private final String mDocumentName;
+        @Nullable
+        private final String mDocTypeHint;
+        private final Session mSession;
+        @Nullable
+        private final DocumentMetadata mDocumentMetadata;
+        @Nullable
+        private final String mKey;
+
+        Upload(@NonNull final ApiCommunicator apiCommunicator, @NonNull final UploadSource uploadSource,
+                @NonNull final String contentType, @Nullable final String documentName,
+                @Nullable final String docTypeHint, @NonNull final Session session,
+                @Nullable final DocumentMetadata documentMetadata) {
+            mApiCommunicator = apiCommunicator;
+            mUploadSource = uploadSource;
+            mContentLength = uploadSource.getContentLength();
+            mContentType = contentType;
+            mDocumentName = documentName;
+            mDocTypeHint = docTypeHint;
+            mSession = session;
+            mDocumentMetadata = documentMetadata;
+            final String resumeKey = uploadSource.getResumeKey();
+            mKey = resumeKey != null ? createKey(resumeKey) : null;
+        }
+
+        /**
+         * Creates the key of the stored state. It contains the access token, so that an upload is never resumed by
+         * another user, and it is hashed, because the store persists it.
+         */
+        @NonNull
+        private String createKey(@NonNull final String resumeKey) {
+            final StringBuilder key = new StringBuilder();
+            key.append(resumeKey).append('\n').append(mApiCommunicator.getGiniApiType().name()).append('\n')
+                    .append(mContentType).append('\n').append(mDocTypeHint).append('\n')
+                    .append(mSession.getAccessToken());
+            if (mDocumentMetadata != null) {
+                // Sorted, because the order of the headers doesn't change the upload
+                for (final Map.Entry<String, String> entry
+                        : new TreeMap<>(mDocumentMetadata.getMetadata()).entrySet()) {
+                    key.append('\n').append(entry.getKey()).append(": ").append(entry.getValue());
+                }
+            }
+            final MessageDigest digest = Utils.newSha256Digest();
+            return Utils.toHexString(digest.digest(key.toString().getBytes(Utils.CHARSET_UTF8)));
+        }
+
+        Task<Uri> start() {
+            final ResumableUploadState state = getStoredState();
+            if (state != null && state.getOffset() < mContentLength) {
+                return sendChunks(Uri.parse(state.getUploadUri()), state.getOffset(), 1, true);
+            }
+            return createUpload();
+        }
+
+        private Task<Uri> createUpload() {
+            return mApiCommunicator.createResumableUpload(mContentLength, mContentType, mDocumentName, mDocTypeHint,
+                    mSession, mDocumentMetadata).continueWithTask(
+                    new Continuation<Map<String, String>, Task<Uri>>() {
+                        @Override
+                        public Task<Uri> then(final Task<Map<String, String>> task) {
+                            if (task.isCancelled()) {
+                                return task.cast();
+                            } else if (task.isFaulted()) {
+                                return isUnsupported(task.getError()) ? uploadInOneRequest() : task.<Uri>cast();
+                            }
+                            final Map<String, String> headers = task.getResult();
+                            final String location = headers.get("Location");
+                            if (location == null || headers.get(TUS_RESUMABLE_HEADER) == null) {
+                                return uploadInOneRequest();
+                            }
+                            final Uri uploadUri = Uri.parse(location);
+                            storeState(uploadUri, 0);
+                            return sendChunks(uploadUri, 0, 1, false);
+                        }
+                    });
+        }
+
+        private Task<Uri> uploadInOneRequest() {
+            mUnsupported = true;
+            return mApiCommunicator.uploadDocumentInOneRequest(mUploadSource, mContentType, mDocumentName,
+                    mDocTypeHint, mSession, mDocumentMetadata);
+        }
+
+        /**
+         * Sends the chunks starting at the offset one after the other.
+         *
+         * @param attempt The attempt of the first chunk.
+         * @param resumed Whether the upload was resumed from the stored state and the server has not accepted a chunk
+         *                since. If the server forgot or rejects the upload, it is started again.
+         */
+        private Task<Uri> sendChunks(@NonNull final Uri uploadUri, final long offset, final int attempt,
+                final boolean resumed) {
+            final long chunkLength = Math.min(mChunkSize, mContentLength - offset);
+            return mApiCommunicator.uploadResumableChunk(uploadUri, offset, mUploadSource.slice(offset, chunkLength),
+                    mSession).continueWithTask(new Continuation<Map<String, String>, Task<Uri>>() {
+                @Override
+                public Task<Uri> then(final Task<Map<String, String>> task) {
+                    if (task.isCancelled()) {
+                        return task.cast();
+                    } else if (task.isFaulted()) {
+                        return onChunkFailed(uploadUri, task.getError(), attempt, resumed);
+                    }
+                    final Long newOffset = getOffset(task.getResult());
+                    if (newOffset == null || newOffset <= offset) {
+                        return Task.forError(new ParseError(new IllegalStateException(
+                                "The upload offset did not advance from " + offset)));
+                    }
+                    return continueAt(uploadUri, newOffset, task.getResult(), 1);
+                }
+            });
+        }
+
+        private Task<Uri> onChunkFailed(@NonNull final Uri uploadUri, @NonNull final Exception error,
+                final int attempt, final boolean resumed) {
+            if (isGone(error)) {
+                deleteStoredState();
+                return resumed ? createUpload() : Task.<Uri>forError(error);
+            }
+            final boolean retryable = isOffsetMismatch(error) || MultiPageUploadPipeline.isRetryable(error);
+            if (resumed && !retryable) {
+                // The stored upload can't be continued, e.g. because the server revoked the access to it
+                deleteStoredState();
+                return createUpload();
+            }
+            if (attempt >= mMaxChunkAttempts || !retryable) {
+                return Task.forError(error);
+            }
+            // The server may have received a part of the chunk
+            return mApiCommunicator.getResumableUploadState(uploadUri, mSession).continueWithTask(
+                    new Continuation<Map<String, String>, Task<Uri>>() {
+                        @Override
+                        public Task<Uri> then(final Task<Map<String, String>> task) {
+                            if (task.isCancelled()) {
+                                return task.cast();
+                            } else if (task.isFaulted()) {
+                                // The stored state lets a later upload continue
+                                return Task.forError(error);
+                            }
+                            final Long offset = getOffset(task.getResult());
+                            if (offset == null) {
+                                return Task.forError(error);
+                            }
+                            return continueAt(uploadUri, offset, task.getResult(), attempt + 1);
+                        }
+                    });
+        }
+
+        private Task<Uri> continueAt(@NonNull final Uri uploadUri, final long offset,
+                @NonNull final Map<String, String> headers, final int attempt) {
+            if (offset < mContentLength) {
+                storeState(uploadUri, offset);
+                return sendChunks(uploadUri, offset, attempt, false);
+            }
+            deleteStoredState();
+            final String location = headers.get("Location");
+            if (location == null) {
+                return Task.forError(new ParseError(new IllegalStateException(
+                        "The completed upload has no document location")));
+            }
+            return Task.forResult(Uri.parse(location));
+        }
+
+        @Nullable
+        private ResumableUploadState getStoredState() {
+            if (mKey == null || mResumableUploadStore == null) {
+                return null;
+            }
+            return mResumableUploadStore.getUploadState(mKey);
+        }
+
+        private void storeState(@NonNull final Uri uploadUri, final long offset) {
+            if (mKey != null && mResumableUploadStore != null) {
+                mResumableUploadStore.storeUploadState(mKey, new ResumableUploadState(uploadUri.toString(), offset));
+            }
+        }
+
+        private void deleteStoredState() {
+            if (mKey != null && mResumableUploadStore != null) {
+                mResumableUploadStore.deleteUploadState(mKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Stores the progress of resumable uploads in shared preferences.
+ */
+public class SharedPreferencesResumableUploadStore implements ResumableUploadStore {
+
+    static final String UPLOAD_URI_KEY_PREFIX = "GiniUploadUri:";
+    static final String OFFSET_KEY_PREFIX = "GiniUploadOffset:";
+
+    private final SharedPreferences mSharedPreferences;
+
+    public SharedPreferencesResumableUploadStore(@NonNull final SharedPreferences sharedPreferences) {
+        mSharedPreferences = checkNotNull(sharedPreferences);
+    }
+
+    @Nullable
+    @Override
+    public ResumableUploadState getUploadState(@NonNull final String key) {
+        final String uploadUri = mSharedPreferences.getString(UPLOAD_URI_KEY_PREFIX + key, null);
+        final long offset = mSharedPreferences.getLong(OFFSET_KEY_PREFIX + key, -1);
+        if (uploadUri != null && offset >= 0) {
+            return new ResumableUploadState(uploadUri, offset);
+        }
+        return null;
+    }
+
+    @Override
+    public void storeUploadState(@NonNull final String key, @NonNull final ResumableUploadState state) {
+        mSharedPreferences.edit()
+                .putString(UPLOAD_URI_KEY_PREFIX + key, state.getUploadUri())
+                .putLong(OFFSET_KEY_PREFIX + key, state.getOffset())
+                .apply();
+    }
+
+    @Override
+    public void deleteUploadState(@NonNull final String key) {
+        mSharedPreferences.edit()
+                .remove(UPLOAD_URI_KEY_PREFIX + key)
+                .remove(OFFSET_KEY_PREFIX + key)
+                .apply();
+    }
+}
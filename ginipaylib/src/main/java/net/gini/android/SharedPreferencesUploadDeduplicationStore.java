@@ -0,0 +1,98 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * Stores the document ids of uploads in shared preferences. The oldest uploads are deleted when the store is full.
+ */
+public class SharedPreferencesUploadDeduplicationStore implements UploadDeduplicationStore {
+
+    static final String DOCUMENT_ID_KEY_PREFIX = "GiniUploadDocumentId:";
+    static final String STORED_AT_KEY_PREFIX = "GiniUploadStoredAt:";
+
+    private final SharedPreferences mSharedPreferences;
+    private final int mMaxEntries;
+
+    public SharedPreferencesUploadDeduplicationStore(@NonNull final SharedPreferences sharedPreferences) {
+        this(sharedPreferences, UploadDeduplicationCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximal number of stored uploads.
+     */
+    public SharedPreferencesUploadDeduplicationStore(@NonNull final SharedPreferences sharedPreferences,
+            final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        mSharedPreferences = checkNotNull(sharedPreferences);
+        mMaxEntries = maxEntries;
+    }
+
+    @Nullable
+    @Override
+    public String getDocumentId(@NonNull final String key) {
+        return mSharedPreferences.getString(DOCUMENT_ID_KEY_PREFIX + key, null);
+    }
+
+    @Override
+    public synchronized void storeDocumentId(@NonNull final String key, @NonNull final String documentId) {
+        final SharedPreferences.Editor editor = mSharedPreferences.edit()
+                .putString(DOCUMENT_ID_KEY_PREFIX + key, documentId)
+                .putLong(STORED_AT_KEY_PREFIX + key, System.currentTimeMillis());
+        // Uploads are rare, so finding the oldest entry by scanning all of them is cheap enough
+        final Map<String, ?> entries = mSharedPreferences.getAll();
+        int storedUploads = entries.containsKey(DOCUMENT_ID_KEY_PREFIX + key) ? 0 : 1;
+        String oldestKey = null;
+        long oldestStoredAt = Long.MAX_VALUE;
+        for (final Map.Entry<String, ?> entry : entries.entrySet()) {
+            if (!entry.getKey().startsWith(STORED_AT_KEY_PREFIX)) {
+                continue;
+            }
+            storedUploads++;
+            final String uploadKey = entry.getKey().substring(STORED_AT_KEY_PREFIX.length());
+            final long storedAt = (Long) entry.getValue();
+            if (!uploadKey.equals(key) && storedAt < oldestStoredAt) {
+                oldestKey = uploadKey;
+                oldestStoredAt = storedAt;
+            }
+        }
+        if (storedUploads > mMaxEntries && oldestKey != null) {
+            remove(editor, oldestKey);
+        }
+        editor.apply();
+    }
+
+    @Override
+    public synchronized void deleteDocumentId(@NonNull final String documentId) {
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        for (final Map.Entry<String, ?> entry : mSharedPreferences.getAll().entrySet()) {
+            if (entry.getKey().startsWith(DOCUMENT_ID_KEY_PREFIX) && documentId.equals(entry.getValue())) {
+                remove(editor, entry.getKey().substring(DOCUMENT_ID_KEY_PREFIX.length()));
+            }
+        }
+        editor.apply();
+    }
+
+    @Override
+    public synchronized void clear() {
+        final SharedPreferences.Editor editor = mSharedPreferences.edit();
+        for (final String key : mSharedPreferences.getAll().keySet()) {
+            if (key.startsWith(DOCUMENT_ID_KEY_PREFIX) || key.startsWith(STORED_AT_KEY_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        editor.apply();
+    }
+
+    private static void remove(@NonNull final SharedPreferences.Editor editor, @NonNull final String key) {
+        editor.remove(DOCUMENT_ID_KEY_PREFIX + key).remove(STORED_AT_KEY_PREFIX + key);
+    }
+}
@@ -0,0 +1,229 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.HttpResponse;
+import com.android.volley.toolbox.HurlStack;
+
+import net.gini.android.requests.AbortableRequest;
+import net.gini.android.requests.StreamingBodyRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A {@link HurlStack} which streams the body of {@link StreamingBodyRequest}s from their
+ * {@link UploadSource} using fixed-length streaming mode. All other requests are handled by the {@link HurlStack}.
+ * <p>
+ * Volley's default implementation writes the byte array returned by {@link Request#getBody()} which requires the
+ * whole document to be in memory for every attempt.
+ * <p>
+ * The upload is aborted, if the request is cancelled while its body is written. The connection of an
+ * {@link AbortableRequest} is closed, if it is cancelled while it waits for the response.
+ */
+class StreamingHurlStack extends HurlStack {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Nullable
+    private final SSLSocketFactory mSslSocketFactory;
+    private final ThreadLocal<AbortableRequest> mAbortableRequest = new ThreadLocal<>();
+
+    StreamingHurlStack(@Nullable final SSLSocketFactory sslSocketFactory) {
+        super(null, sslSocketFactory);
+        mSslSocketFactory = sslSocketFactory;
+    }
+
+    @Override
+    public HttpResponse executeRequest(final Request<?> request, final Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        if (!(request instanceof AbortableRequest)) {
+            return executeRequestOnce(request, additionalHeaders);
+        }
+        final AbortableRequest abortableRequest = (AbortableRequest) request;
+        mAbortableRequest.set(abortableRequest);
+        try {
+            return executeRequestOnce(request, additionalHeaders);
+        } finally {
+            mAbortableRequest.remove();
+            abortableRequest.setAbortAction(null);
+        }
+    }
+
+    private HttpResponse executeRequestOnce(final Request<?> request, final Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        if (!(request instanceof StreamingBodyRequest)) {
+            return super.executeRequest(request, additionalHeaders);
+        }
+        return executeStreamingRequest(request, ((StreamingBodyRequest) request).getUploadSource(),
+                additionalHeaders);
+    }
+
+    @Override
+    protected HttpURLConnection createConnection(final URL url) throws IOException {
+        final HttpURLConnection connection = super.createConnection(url);
+        final AbortableRequest abortableRequest = mAbortableRequest.get();
+        if (abortableRequest != null) {
+            // Disconnecting from another thread makes the blocked read fail
+            abortableRequest.setAbortAction(new Runnable() {
+                @Override
+                public void run() {
+                    connection.disconnect();
+                }
+            });
+        }
+        return connection;
+    }
+
+    private HttpResponse executeStreamingRequest(@NonNull final Request<?> request,
+            @NonNull final UploadSource uploadSource,
+            @NonNull final Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
+        final HashMap<String, String> headers = new HashMap<>(additionalHeaders);
+        headers.putAll(request.getHeaders());
+
+        final HttpURLConnection connection = createConnection(new URL(request.getUrl()));
+        boolean keepConnectionOpen = false;
+        try {
+            final int timeoutMs = request.getTimeoutMs();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setUseCaches(false);
+            connection.setDoInput(true);
+            if (connection instanceof HttpsURLConnection && mSslSocketFactory != null) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(mSslSocketFactory);
+            }
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            connection.setRequestMethod(getMethodName(request));
+            connection.setRequestProperty("Content-Type", request.getBodyContentType());
+
+            writeBody(connection, uploadSource, request);
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode == -1) {
+                throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+            }
+            final List<Header> responseHeaders = convertHeaders(connection.getHeaderFields());
+            if (!hasResponseBody(responseCode)) {
+                return new HttpResponse(responseCode, responseHeaders);
+            }
+            keepConnectionOpen = true;
+            return new HttpResponse(responseCode, responseHeaders, connection.getContentLength(),
+                    new ConnectionInputStream(connection, responseCode));
+        } finally {
+            if (!keepConnectionOpen) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static void writeBody(@NonNull final HttpURLConnection connection,
+            @NonNull final UploadSource uploadSource, @NonNull final Request<?> request) throws IOException {
+        final long contentLength = uploadSource.getContentLength();
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(contentLength);
+        final InputStream inputStream = uploadSource.openUploadStream();
+        try {
+            final OutputStream outputStream = connection.getOutputStream();
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = contentLength;
+                while (remaining > 0) {
+                    if (request.isCanceled()) {
+                        throw new IOException("The upload was cancelled");
+                    }
+                    final int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new IOException(
+                                "Upload source ended " + remaining + " bytes before its content length");
+                    }
+                    outputStream.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @NonNull
+    private static String getMethodName(@NonNull final Request<?> request) {
+        switch (request.getMethod()) {
+            case Request.Method.POST:
+                return "POST";
+            case Request.Method.PUT:
+                return "PUT";
+            default:
+                throw new IllegalStateException(
+                        "Streaming request bodies are only supported for POST and PUT requests");
+        }
+    }
+
+    private static boolean hasResponseBody(final int responseCode) {
+        return !(HttpURLConnection.HTTP_CONTINUE <= responseCode && responseCode < HttpURLConnection.HTTP_OK)
+                && responseCode != HttpURLConnection.HTTP_NO_CONTENT
+                && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    @NonNull
+    private static List<Header> convertHeaders(@NonNull final Map<String, List<String>> responseHeaders) {
+        final List<Header> headerList = new ArrayList<>(responseHeaders.size());
+        for (final Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+            // HttpUrlConnection includes the status line as a header with a null key; omit it here.
+            if (entry.getKey() != null) {
+                for (final String value : entry.getValue()) {
+                    headerList.add(new Header(entry.getKey(), value));
+                }
+            }
+        }
+        return headerList;
+    }
+
+    /**
+     * Wrapper for the response body which disconnects the connection when the stream is closed.
+     */
+    private static class ConnectionInputStream extends FilterInputStream {
+
+        private final HttpURLConnection mConnection;
+
+        ConnectionInputStream(@NonNull final HttpURLConnection connection, final int responseCode)
+                throws IOException {
+            super(getInputStream(connection, responseCode));
+            mConnection = connection;
+        }
+
+        private static InputStream getInputStream(@NonNull final HttpURLConnection connection,
+                final int responseCode) throws IOException {
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                final InputStream errorStream = connection.getErrorStream();
+                return errorStream != null ? errorStream : new ByteArrayInputStream(new byte[0]);
+            }
+            return connection.getInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mConnection.disconnect();
+        }
+    }
+}
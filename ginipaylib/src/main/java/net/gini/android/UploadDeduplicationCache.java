@@ -0,0 +1,232 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gini.android.models.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the documents created from uploaded data, so that uploading the same data again resolves to the
+ * existing document without sending a request. Set it with
+ * {@link GiniBuilder#setUploadDeduplicationCache(UploadDeduplicationCache)}.
+ * <p>
+ * Uploads are identified by the SHA-256 hash of the data, the Gini API type, the media type of the request (which
+ * tells partial and complete documents apart), the document type hint and the metadata headers. The hash is computed
+ * off the calling thread, the data of an {@link UploadSource} is streamed into it. The least recently used entries are
+ * evicted when the cache is full. Entries are removed when their document is deleted with the
+ * {@link DocumentTaskManager}.
+ * <p>
+ * The cached document is the instance returned when the document was created. Use
+ * {@link DocumentTaskManager#getDocument(String)} to get its current state.
+ * <p>
+ * The cache is kept in memory. Pass an {@link UploadDeduplicationStore} (e.g. a
+ * {@link SharedPreferencesUploadDeduplicationStore}) to remember uploads across app restarts. Uploads found only in
+ * the store resolve to their document after it was requested from the Gini API.
+ */
+public class UploadDeduplicationCache {
+
+    /**
+     * The default maximal number of remembered uploads.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+
+    private final LinkedHashMap<String, Document> mDocuments;
+    @Nullable
+    private final UploadDeduplicationStore mUploadDeduplicationStore;
+    private long mHitCount;
+    private long mMissCount;
+
+    public UploadDeduplicationCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximal number of remembered uploads.
+     */
+    public UploadDeduplicationCache(final int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * @param maxEntries               The maximal number of uploads remembered in memory.
+     * @param uploadDeduplicationStore The store which persists the uploads or null to keep them only in memory.
+     */
+    public UploadDeduplicationCache(final int maxEntries,
+            @Nullable final UploadDeduplicationStore uploadDeduplicationStore) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        mDocuments = new LinkedHashMap<String, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Document> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        mUploadDeduplicationStore = uploadDeduplicationStore;
+    }
+
+    /**
+     * Creates the key of an upload. Hashes the data, so don't call it on the main thread.
+     *
+     * @param data              The uploaded data.
+     * @param giniJsonMediaType The JSON media type of the Gini API type used for the upload.
+     * @param uploadMediaType   The media type of the upload request.
+     * @param apiDoctypeHint    The document type hint or null.
+     * @param metadata          The metadata headers or null.
+     * @return The key identifying the upload.
+     */
+    @NonNull
+    static String getKey(@NonNull final byte[] data, @NonNull final String giniJsonMediaType,
+            @NonNull final String uploadMediaType, @Nullable final String apiDoctypeHint,
+            @Nullable final Map<String, String> metadata) {
+        return createKey(Utils.newSha256Digest().digest(data), giniJsonMediaType, uploadMediaType, apiDoctypeHint,
+                metadata);
+    }
+
+    /**
+     * Creates the key of an upload. Reads and hashes the data of the source, so don't call it on the main thread.
+     *
+     * @param data              The source of the uploaded data.
+     * @param giniJsonMediaType The JSON media type of the Gini API type used for the upload.
+     * @param uploadMediaType   The media type of the upload request.
+     * @param apiDoctypeHint    The document type hint or null.
+     * @param metadata          The metadata headers or null.
+     * @return The key identifying the upload.
+     * @throws IOException If the data can't be read.
+     */
+    @NonNull
+    static String getKey(@NonNull final UploadSource data, @NonNull final String giniJsonMediaType,
+            @NonNull final String uploadMediaType, @Nullable final String apiDoctypeHint,
+            @Nullable final Map<String, String> metadata) throws IOException {
+        final MessageDigest digest = Utils.newSha256Digest();
+        final InputStream inputStream = data.openStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return createKey(digest.digest(), giniJsonMediaType, uploadMediaType, apiDoctypeHint, metadata);
+    }
+
+    @NonNull
+    private static String createKey(@NonNull final byte[] hash, @NonNull final String giniJsonMediaType,
+            @NonNull final String uploadMediaType, @Nullable final String apiDoctypeHint,
+            @Nullable final Map<String, String> metadata) {
+        final StringBuilder key = new StringBuilder(hash.length * 2 + giniJsonMediaType.length()
+                + uploadMediaType.length() + 32);
+        key.append(Utils.toHexString(hash)).append(' ').append(giniJsonMediaType).append(' ')
+                .append(uploadMediaType).append(' ').append(apiDoctypeHint);
+        if (metadata != null) {
+            // Sorted, because the order of the headers doesn't change the upload
+            for (final Map.Entry<String, String> header : new TreeMap<>(metadata).entrySet()) {
+                key.append('\n').append(header.getKey()).append(": ").append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the document of an upload remembered in memory. Use {@link #getStoredDocumentId(String)} to look for
+     * uploads made before the app was restarted.
+     */
+    @Nullable
+    synchronized Document get(@NonNull final String key) {
+        return mDocuments.get(key);
+    }
+
+    /**
+     * Returns the id of the document of an upload found in the {@link UploadDeduplicationStore}.
+     */
+    @Nullable
+    String getStoredDocumentId(@NonNull final String key) {
+        return mUploadDeduplicationStore != null ? mUploadDeduplicationStore.getDocumentId(key) : null;
+    }
+
+    void put(@NonNull final String key, @NonNull final Document document) {
+        synchronized (this) {
+            mDocuments.put(key, document);
+        }
+        // The store may do I/O, so it is not called while holding the lock
+        if (mUploadDeduplicationStore != null) {
+            mUploadDeduplicationStore.storeDocumentId(key, document.getId());
+        }
+    }
+
+    /**
+     * Counts an upload which resolved to an existing document.
+     */
+    synchronized void onHit() {
+        mHitCount++;
+    }
+
+    /**
+     * Counts an upload which was sent to the Gini API.
+     */
+    synchronized void onMiss() {
+        mMissCount++;
+    }
+
+    /**
+     * Removes the entries of a deleted document.
+     *
+     * @param documentId The id of the deleted document.
+     */
+    void invalidate(@NonNull final String documentId) {
+        synchronized (this) {
+            final Iterator<Document> documents = mDocuments.values().iterator();
+            while (documents.hasNext()) {
+                if (documentId.equals(documents.next().getId())) {
+                    documents.remove();
+                }
+            }
+        }
+        if (mUploadDeduplicationStore != null) {
+            mUploadDeduplicationStore.deleteDocumentId(documentId);
+        }
+    }
+
+    /**
+     * Forgets all uploads.
+     */
+    public void clear() {
+        synchronized (this) {
+            mDocuments.clear();
+        }
+        if (mUploadDeduplicationStore != null) {
+            mUploadDeduplicationStore.clear();
+        }
+    }
+
+    /**
+     * @return The number of uploads remembered in memory.
+     */
+    public synchronized int size() {
+        return mDocuments.size();
+    }
+
+    /**
+     * @return The number of uploads which resolved to an existing document.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of uploads which were sent to the Gini API.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+}
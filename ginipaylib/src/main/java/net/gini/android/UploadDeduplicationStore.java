@@ -0,0 +1,44 @@
+package net.gini.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Persists the ids of the documents created from uploaded data, so that the {@link UploadDeduplicationCache} also
+ * recognizes uploads made before the app was restarted.
+ * <p>
+ * The keys identify the uploads, see {@link UploadDeduplicationCache}.
+ */
+public interface UploadDeduplicationStore {
+
+    /**
+     * Returns the id of the document created by an upload.
+     *
+     * @param key The key of the upload.
+     * @return The id of the document or null, if no upload with the key is known.
+     */
+    @Nullable
+    String getDocumentId(@NonNull String key);
+
+    /**
+     * Stores the id of the document created by an upload.
+     * <p>
+     * Warning: This method overwrites the existing document id of the upload.
+     *
+     * @param key        The key of the upload.
+     * @param documentId The id of the created document.
+     */
+    void storeDocumentId(@NonNull String key, @NonNull String documentId);
+
+    /**
+     * Deletes the uploads which created a document, e.g. because the document was deleted.
+     *
+     * @param documentId The id of the document.
+     */
+    void deleteDocumentId(@NonNull String documentId);
+
+    /**
+     * Deletes all uploads.
+     */
+    void clear();
+}
@@ -0,0 +1,344 @@
+package net.gini.android;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The data of a document which should be uploaded to the Gini API.
+ * <p>
+ * An upload source has a known length and can be opened multiple times. The library opens a new stream for each
+ * upload attempt (e.g. when a request is retried) and streams it to the socket using fixed-length streaming. This
+ * way large documents never have to be loaded into memory.
+ * <p>
+ * Use one of the factory methods or extend this class to provide document data from another source.
+ */
+public abstract class UploadSource {
+
+    /**
+     * The number of bytes which will be read from the streams returned by {@link #openStream()}.
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Opens a new stream to the beginning of the document data. The caller is responsible for closing the stream.
+     *
+     * @return A new InputStream containing exactly {@link #getContentLength()} bytes.
+     * @throws IOException If the data can't be read.
+     */
+    @NonNull
+    public abstract InputStream openStream() throws IOException;
+
+    /**
+     * Opens the stream which a network stack writes to the socket. Only the network stacks use it, other readers of
+     * the data (e.g. hashing or image decoding) use {@link #openStream()}, so that only reading this stream counts as
+     * upload progress.
+     *
+     * @return A new InputStream containing exactly {@link #getContentLength()} bytes.
+     * @throws IOException If the data can't be read.
+     */
+    @NonNull
+    InputStream openUploadStream() throws IOException {
+        return openStream();
+    }
+
+    /**
+     * Reads the complete document data into memory. Only used as a fallback, if the network stack can't stream the
+     * request body.
+     *
+     * @return A byte array containing the document data.
+     * @throws IOException If the data can't be read.
+     */
+    @NonNull
+    public byte[] readFully() throws IOException {
+        final long contentLength = getContentLength();
+        if (contentLength > Integer.MAX_VALUE) {
+            throw new IOException("Upload source is too large to be read into memory: " + contentLength);
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) contentLength);
+        final InputStream inputStream = openStream();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Identifies the document data across app restarts, so that an interrupted resumable upload can be continued. See
+     * {@link GiniBuilder#setResumableUploadChunkSize(long)}.
+     *
+     * @return A key which changes when the data changes or null, if the data can't be identified.
+     */
+    @Nullable
+    String getResumeKey() {
+        return null;
+    }
+
+    /**
+     * Creates an upload source for a part of the data of this source.
+     *
+     * @param offset The index of the first byte of the part.
+     * @param length The number of bytes of the part.
+     * @return The upload source of the part.
+     */
+    @NonNull
+    UploadSource slice(final long offset, final long length) {
+        if (offset < 0 || length < 0 || offset + length > getContentLength()) {
+            throw new IndexOutOfBoundsException("Slice " + offset + "+" + length + " is out of bounds");
+        }
+        return new SlicedUploadSource(this, offset, length);
+    }
+
+    /**
+     * Creates an upload source which uploads other data in place of the data of this source, e.g. a preprocessed
+     * image. Sources which observe the upload apply to the other data as well.
+     *
+     * @param data The data which is uploaded instead.
+     * @return The upload source of the other data.
+     */
+    @NonNull
+    UploadSource replaceData(@NonNull final UploadSource data) {
+        return checkNotNull(data);
+    }
+
+    /**
+     * Creates an upload source for a byte array which is already in memory.
+     *
+     * @param data The document data.
+     * @return The upload source.
+     */
+    @NonNull
+    public static UploadSource fromBytes(@NonNull final byte[] data) {
+        return new ByteArrayUploadSource(checkNotNull(data));
+    }
+
+    /**
+     * Creates an upload source for a file. The file is read only while the upload is in progress.
+     *
+     * @param file The document file.
+     * @return The upload source.
+     */
+    @NonNull
+    public static UploadSource fromFile(@NonNull final File file) {
+        return new FileUploadSource(checkNotNull(file));
+    }
+
+    /**
+     * Creates an upload source for a content Uri (e.g. a document shared by another app).
+     *
+     * @param contentResolver The content resolver used to open the Uri.
+     * @param uri             The content Uri of the document.
+     * @param contentLength   The length of the document in bytes.
+     * @return The upload source.
+     */
+    @NonNull
+    public static UploadSource fromContentUri(@NonNull final ContentResolver contentResolver,
+            @NonNull final Uri uri, final long contentLength) {
+        return new ContentUriUploadSource(checkNotNull(contentResolver), checkNotNull(uri), contentLength);
+    }
+
+    static final class ByteArrayUploadSource extends UploadSource {
+
+        private final byte[] mData;
+
+        ByteArrayUploadSource(@NonNull final byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mData.length;
+        }
+
+        @NonNull
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(mData);
+        }
+
+        @NonNull
+        @Override
+        public byte[] readFully() {
+            return mData;
+        }
+    }
+
+    private static final class FileUploadSource extends UploadSource {
+
+        private final File mFile;
+
+        FileUploadSource(@NonNull final File file) {
+            mFile = file;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mFile.length();
+        }
+
+        @NonNull
+        @Override
+        public InputStream openStream() throws FileNotFoundException {
+            return new FileInputStream(mFile);
+        }
+
+        @Nullable
+        @Override
+        String getResumeKey() {
+            return "file:" + mFile.getAbsolutePath() + ":" + mFile.length() + ":" + mFile.lastModified();
+        }
+    }
+
+    private static final class ContentUriUploadSource extends UploadSource {
+
+        private final ContentResolver mContentResolver;
+        private final Uri mUri;
+        private final long mContentLength;
+
+        ContentUriUploadSource(@NonNull final ContentResolver contentResolver, @NonNull final Uri uri,
+                final long contentLength) {
+            if (contentLength < 0) {
+                throw new IllegalArgumentException("contentLength can't be less than 0");
+            }
+            mContentResolver = contentResolver;
+            mUri = uri;
+            mContentLength = contentLength;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mContentLength;
+        }
+
+        @NonNull
+        @Override
+        public InputStream openStream() throws IOException {
+            final InputStream inputStream = mContentResolver.openInputStream(mUri);
+            if (inputStream == null) {
+                throw new FileNotFoundException("Could not open " + mUri);
+            }
+            return inputStream;
+        }
+
+        @Nullable
+        @Override
+        String getResumeKey() {
+            return "content:" + mUri + ":" + mContentLength;
+        }
+    }
+
+    private static final class SlicedUploadSource extends UploadSource {
+
+        private final UploadSource mUploadSource;
+        private final long mOffset;
+        private final long mLength;
+
+        SlicedUploadSource(@NonNull final UploadSource uploadSource, final long offset, final long length) {
+            mUploadSource = uploadSource;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public long getContentLength() {
+            return mLength;
+        }
+
+        @NonNull
+        @Override
+        public InputStream openStream() throws IOException {
+            final InputStream inputStream = mUploadSource.openStream();
+            try {
+                long remaining = mOffset;
+                while (remaining > 0) {
+                    final long skipped = inputStream.skip(remaining);
+                    if (skipped > 0) {
+                        remaining -= skipped;
+                    } else if (inputStream.read() != -1) {
+                        // Some streams only skip what is buffered
+                        remaining--;
+                    } else {
+                        throw new IOException("Upload source ended " + remaining + " bytes before the slice");
+                    }
+                }
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
+            return new BoundedInputStream(inputStream, mLength);
+        }
+    }
+
+    /**
+     * Ends after a number of bytes, even if the wrapped stream has more data.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long mRemaining;
+
+        BoundedInputStream(@NonNull final InputStream inputStream, final long length) {
+            super(inputStream);
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int read = super.read();
+            if (read != -1) {
+                mRemaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int read = super.read(buffer, offset, (int) Math.min(length, mRemaining));
+            if (read > 0) {
+                mRemaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            final long skipped = super.skip(Math.min(count, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), mRemaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -2,11 +2,17 @@ package net.gini.android;
 
 import android.net.Uri;
 
+import androidx.annotation.NonNull;
+
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 
 public class Utils {
 
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     private Utils(){
     }
 
@@ -39,5 +45,31 @@ public class Utils {
         return uriBuilder.build().getEncodedQuery();
     }
 
+    /**
+     * Creates a digest which computes SHA-256 hashes.
+     */
+    @NonNull
+    static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Formats the bytes as lowercase hexadecimal digits, e.g. to turn a hash into a key.
+     */
+    @NonNull
+    static String toHexString(@NonNull final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
     public static Charset CHARSET_UTF8 = Charset.forName("utf-8");
 }
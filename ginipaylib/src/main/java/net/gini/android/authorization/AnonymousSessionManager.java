@@ -4,6 +4,7 @@ package net.gini.android.authorization;
 import static net.gini.android.Utils.CHARSET_UTF8;
 import static net.gini.android.Utils.checkNotNull;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.volley.VolleyError;
@@ -116,6 +117,14 @@ public class AnonymousSessionManager implements SessionManager {
         return completionSource.getTask();
     }
 
+    @Override
+    public synchronized void invalidateSession(@NonNull final Session session) {
+        // A newer session may have been created meanwhile
+        if (mCurrentSession == session) {
+            mCurrentSession = null;
+        }
+    }
+
     @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     private boolean isInvalidUserError(Task<Session> task) {
         if (task.getError() instanceof VolleyError) {
@@ -1,9 +1,22 @@
 package net.gini.android.authorization;
 
 
+import androidx.annotation.NonNull;
+
 import bolts.Task;
 
 
 public interface SessionManager {
     public Task<Session> getSession();
+
+    /**
+     * Called when the Gini API rejected the access token of a session which has not expired yet (e.g. because it was
+     * revoked). The next call to {@link #getSession()} should return a new session.
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @param session The rejected session.
+     */
+    default void invalidateSession(@NonNull final Session session) {
+    }
 }
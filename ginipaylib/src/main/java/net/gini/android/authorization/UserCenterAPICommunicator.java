@@ -11,6 +11,8 @@ import net.gini.android.RequestTaskCompletionSource;
 import net.gini.android.authorization.requests.BearerJsonObjectRequest;
 import net.gini.android.authorization.requests.TokenRequest;
 import net.gini.android.requests.BearerLocationRequest;
+import net.gini.android.requests.RequestLane;
+import net.gini.android.requests.RequestLaneDispatcher;
 import net.gini.android.requests.RetryPolicyFactory;
 
 import org.json.JSONException;
@@ -34,7 +36,7 @@ import static com.android.volley.Request.Method.PUT;
  */
 public class UserCenterAPICommunicator {
 
-    final private RequestQueue mRequestQueue;
+    final private RequestLaneDispatcher mRequestLaneDispatcher;
     final private String mBaseUrl;
     final private String mClientId;
     final private String mClientSecret;
@@ -45,7 +47,20 @@ public class UserCenterAPICommunicator {
                                      final GiniApiType giniApiType,
                                      final String clientId, final String clientSecret,
                                      final RetryPolicyFactory retryPolicyFactory) {
-        mRequestQueue = requestQueue;
+        this(new RequestLaneDispatcher(requestQueue), baseUrl, giniApiType, clientId, clientSecret,
+                retryPolicyFactory);
+    }
+
+    /**
+     * @param requestLaneDispatcher The dispatcher which adds the requests to its request queue. All requests are
+     *                              dispatched in the {@link RequestLane#INTERACTIVE} lane, since requests to the Gini
+     *                              API wait for them.
+     */
+    public UserCenterAPICommunicator(final RequestLaneDispatcher requestLaneDispatcher, final String baseUrl,
+                                     final GiniApiType giniApiType,
+                                     final String clientId, final String clientSecret,
+                                     final RetryPolicyFactory retryPolicyFactory) {
+        mRequestLaneDispatcher = requestLaneDispatcher;
         mBaseUrl = baseUrl;
         mGiniApiType = giniApiType;
         mClientId = clientId;
@@ -70,7 +85,7 @@ public class UserCenterAPICommunicator {
         TokenRequest loginRequest =
                 new TokenRequest(mClientId, mClientSecret, url, null, completionSource, completionSource,
                         mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(loginRequest);
+        mRequestLaneDispatcher.add(loginRequest, RequestLane.INTERACTIVE);
 
         return completionSource.getTask();
     }
@@ -93,7 +108,7 @@ public class UserCenterAPICommunicator {
         TokenRequest loginRequest =
                 new TokenRequest(mClientId, mClientSecret, url, data, completionSource, completionSource,
                         mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(loginRequest);
+        mRequestLaneDispatcher.add(loginRequest, RequestLane.INTERACTIVE);
 
         return completionSource.getTask();
     }
@@ -120,7 +135,7 @@ public class UserCenterAPICommunicator {
         BearerLocationRequest request =
                 new BearerLocationRequest(POST, url, data, userCenterApiSession, completionSource,
                         completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(request);
+        mRequestLaneDispatcher.add(request, RequestLane.INTERACTIVE);
 
         return completionSource.getTask();
     }
@@ -132,7 +147,7 @@ public class UserCenterAPICommunicator {
                 new BearerJsonObjectRequest(GET, userUri.toString(), null, userCenterApiSession, mGiniApiType, completionSource,
                         completionSource, mRetryPolicyFactory.newRetryPolicy());
 
-        mRequestQueue.add(request);
+        mRequestLaneDispatcher.add(request, RequestLane.INTERACTIVE);
         return completionSource.getTask();
     }
 
@@ -153,8 +168,13 @@ public class UserCenterAPICommunicator {
             final String url = mBaseUrl + "oauth/check_token?token=" +
                     URLEncoder.encode(giniApiSession.getAccessToken(), "UTF-8");
             final JsonObjectRequest request =
-                    new JsonObjectRequest(GET, url, null, completionSource, completionSource);
-            mRequestQueue.add(request);
+                    new JsonObjectRequest(GET, url, null, completionSource, completionSource) {
+                        @Override
+                        public Priority getPriority() {
+                            return RequestLane.INTERACTIVE.getPriority();
+                        }
+                    };
+            mRequestLaneDispatcher.add(request, RequestLane.INTERACTIVE);
         } catch (UnsupportedEncodingException e) {
             completionSource.onErrorResponse(new VolleyError(e));
         }
@@ -209,7 +229,7 @@ public class UserCenterAPICommunicator {
         final BearerJsonObjectRequest request =
                 new BearerJsonObjectRequest(PUT, url, data, userCenterApiSession, mGiniApiType,
                         completionSource, completionSource, mRetryPolicyFactory.newRetryPolicy());
-        mRequestQueue.add(request);
+        mRequestLaneDispatcher.add(request, RequestLane.INTERACTIVE);
 
         return completionSource.getTask();
     }
@@ -2,8 +2,12 @@ package net.gini.android.authorization;
 
 import android.net.Uri;
 
+import net.gini.android.GiniExecutors;
+
 import org.json.JSONObject;
 
+import java.util.concurrent.Executor;
+
 import bolts.Continuation;
 import bolts.Task;
 
@@ -15,6 +19,7 @@ import static net.gini.android.Utils.checkNotNull;
  */
 public class UserCenterManager {
     final private UserCenterAPICommunicator mUserCenterAPICommunicator;
+    final private Executor mExecutor;
 
     // An active session for the User Center API.
     private Session mCurrentSession;
@@ -25,7 +30,19 @@ public class UserCenterManager {
      *                                  instance.
      */
     public UserCenterManager(final UserCenterAPICommunicator userCenterAPICommunicator) {
+        this(userCenterAPICommunicator, GiniExecutors.getDefaultSessionExecutor());
+    }
+
+    /**
+     * @param userCenterAPICommunicator An implementation of the UserCenterAPIManager which handles the
+     *                                  communication with the Gini User Center API for this manager
+     *                                  instance.
+     * @param executor                  The executor on which the responses are processed and the sessions
+     *                                  are created.
+     */
+    public UserCenterManager(final UserCenterAPICommunicator userCenterAPICommunicator, final Executor executor) {
         mUserCenterAPICommunicator = userCenterAPICommunicator;
+        mExecutor = checkNotNull(executor);
     }
 
     /**
@@ -43,14 +60,14 @@ public class UserCenterManager {
                     public Task<Uri> then(Task<Session> sessionTask) throws Exception {
                         return mUserCenterAPICommunicator.createUser(userCredentials, sessionTask.getResult());
                     }
-                }, Task.BACKGROUND_EXECUTOR)
+                }, mExecutor)
                 // And then create the user object from the API response.
                 .onSuccessTask(new Continuation<Uri, Task<User>>() {
                     @Override
                     public Task<User> then(Task<Uri> task) throws Exception {
                         return getUser(task.getResult());
                     }
-                }, Task.BACKGROUND_EXECUTOR);
+                }, mExecutor);
     }
 
     public Task<User> getUser(final Uri userUri) {
@@ -61,12 +78,12 @@ public class UserCenterManager {
                 final Session userCenterSession = task.getResult();
                 return mUserCenterAPICommunicator.getUserInfo(userUri, userCenterSession);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccess(new Continuation<JSONObject, User>() {
+        }, mExecutor).onSuccess(new Continuation<JSONObject, User>() {
             @Override
             public User then(Task<JSONObject> task) throws Exception {
                 return User.fromApiResponse(task.getResult());
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        }, mExecutor);
     }
 
 
@@ -84,7 +101,7 @@ public class UserCenterManager {
             public Session then(Task<JSONObject> task) throws Exception {
                 return Session.fromAPIResponse(task.getResult());
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        }, mExecutor);
     }
 
     /**
@@ -103,14 +120,14 @@ public class UserCenterManager {
             public Task<String> then(Task<Session> task) throws Exception {
                 return mUserCenterAPICommunicator.getUserId(giniAPISession);
             }
-        }, Task.BACKGROUND_EXECUTOR).onSuccessTask(new Continuation<String, Task<JSONObject>>() {
+        }, mExecutor).onSuccessTask(new Continuation<String, Task<JSONObject>>() {
             @Override
             public Task<JSONObject> then(Task<String> task) throws Exception {
                 final String userId = task.getResult();
                 return mUserCenterAPICommunicator.updateEmail(userId,
                         newEmail, oldEmail, mCurrentSession);
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        }, mExecutor);
     }
 
     /**
@@ -138,6 +155,6 @@ public class UserCenterManager {
                 }
                 return session;
             }
-        }, Task.BACKGROUND_EXECUTOR);
+        }, mExecutor);
     }
 }
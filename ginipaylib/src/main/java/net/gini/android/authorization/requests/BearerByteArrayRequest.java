@@ -1,5 +1,7 @@
 package net.gini.android.authorization.requests;
 
+import androidx.annotation.NonNull;
+
 import com.android.volley.NetworkResponse;
 import com.android.volley.ParseError;
 import com.android.volley.Request;
@@ -8,13 +10,15 @@ import com.android.volley.RetryPolicy;
 import com.android.volley.toolbox.HttpHeaderParser;
 
 import net.gini.android.authorization.Session;
+import net.gini.android.requests.PrioritizedRequest;
 
 import java.util.HashMap;
 import java.util.Map;
 
-public class BearerByteArrayRequest extends Request<byte[]> {
+public class BearerByteArrayRequest extends Request<byte[]> implements PrioritizedRequest {
     final private Session mSession;
     private final Response.Listener<byte[]> mListener;
+    private Priority mPriority = Priority.NORMAL;
 
     public BearerByteArrayRequest(int method, String url,
                                   Session session,
@@ -46,4 +50,14 @@ public class BearerByteArrayRequest extends Request<byte[]> {
     protected void deliverResponse(byte[] response) {
         mListener.onResponse(response);
     }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
 }
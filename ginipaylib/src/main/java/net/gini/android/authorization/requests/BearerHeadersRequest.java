@@ -13,6 +13,7 @@ import com.android.volley.toolbox.JsonObjectRequest;
 import net.gini.android.GiniApiType;
 import net.gini.android.MediaTypes;
 import net.gini.android.authorization.Session;
+import net.gini.android.requests.PrioritizedRequest;
 
 import org.json.JSONObject;
 
@@ -20,10 +21,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-public class BearerHeadersRequest extends JsonObjectRequest {
+public class BearerHeadersRequest extends JsonObjectRequest implements PrioritizedRequest {
     final private Session mSession;
     final private String contentType;
     private final GiniApiType mGiniApiType;
+    private Priority mPriority = Priority.NORMAL;
 
     public BearerHeadersRequest(int method, String url, JSONObject jsonRequest, Session session, @NonNull final GiniApiType giniApiType,
                                 Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, RetryPolicy retryPolicy) {
@@ -67,4 +69,14 @@ public class BearerHeadersRequest extends JsonObjectRequest {
             return Response.error(new ParseError(npe));
         }
     }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
 }
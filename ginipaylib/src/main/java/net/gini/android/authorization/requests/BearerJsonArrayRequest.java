@@ -15,18 +15,22 @@ import net.gini.android.GiniApiType;
 import net.gini.android.MediaTypes;
 import net.gini.android.Utils;
 import net.gini.android.authorization.Session;
+import net.gini.android.requests.ConditionalRequestCache;
+import net.gini.android.requests.PrioritizedRequest;
 
 import org.json.JSONException;
 import org.json.JSONArray;
 
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 
-public class BearerJsonArrayRequest extends JsonArrayRequest {
+public class BearerJsonArrayRequest extends JsonArrayRequest implements PrioritizedRequest {
     final private Session mSession;
     final private String contentType;
     private final GiniApiType mGiniApiType;
+    private Priority mPriority = Priority.NORMAL;
+    @Nullable
+    private ConditionalRequestCache mConditionalRequestCache;
 
     public BearerJsonArrayRequest(int method, String url, JSONArray jsonRequest, Session session, @NonNull final GiniApiType giniApiType,
                                    Response.Listener<JSONArray> listener, Response.ErrorListener errorListener, RetryPolicy retryPolicy) {
@@ -54,29 +58,73 @@ public class BearerJsonArrayRequest extends JsonArrayRequest {
         HashMap<String, String> headers = new HashMap<>();
         headers.put("Accept", String.format("%s, %s", MediaTypes.APPLICATION_JSON, mGiniApiType.getGiniJsonMediaType()));
         headers.put("Authorization", "BEARER " + mSession.getAccessToken());
+        if (mConditionalRequestCache != null) {
+            mConditionalRequestCache.addValidatorHeaders(getConditionalCacheKey(), headers);
+        }
         return headers;
     }
 
+    /**
+     * Sends the request with the validators of the previous response and uses the previous body, if the Gini API
+     * responds with {@code 304 Not Modified}. Only used for GET requests.
+     * <p>
+     * The cache keeps the body as a string and every response gets its own parsed {@link JSONArray}, so that
+     * callers can modify their results.
+     *
+     * @param conditionalRequestCache The cache of the previous responses.
+     */
+    public void setConditionalRequestCache(@Nullable final ConditionalRequestCache conditionalRequestCache) {
+        mConditionalRequestCache = getMethod() == Method.GET ? conditionalRequestCache : null;
+    }
+
+    @NonNull
+    private String getConditionalCacheKey() {
+        return getUrl() + " " + mGiniApiType.getGiniJsonMediaType() + " " + mSession.getAccessToken();
+    }
+
     @Override
     protected Response<JSONArray> parseNetworkResponse(NetworkResponse response) {
         try {
-            final JSONArray jsonObject = createJSONArray(response);
-            return Response.success(jsonObject,
-                    HttpHeaderParser.parseCacheHeaders(response));
-        } catch (UnsupportedEncodingException e) {
-            return Response.error(new ParseError(e));
+            if (mConditionalRequestCache != null) {
+                final String notModified = mConditionalRequestCache.getNotModified(getConditionalCacheKey(), response,
+                        String.class);
+                if (notModified != null) {
+                    return Response.success(createJSONArray(notModified),
+                            HttpHeaderParser.parseCacheHeaders(response));
+                }
+            }
+            if (response.data == null) {
+                // A 304 Not Modified response without a cached body
+                return Response.error(new ParseError(response));
+            }
+            // The Gini API always uses UTF-8.
+            final String jsonString = new String(response.data, Utils.CHARSET_UTF8);
+            final JSONArray json = createJSONArray(jsonString);
+            if (mConditionalRequestCache != null) {
+                mConditionalRequestCache.put(getConditionalCacheKey(), response, json != null ? jsonString : null);
+            }
+            return Response.success(json, HttpHeaderParser.parseCacheHeaders(response));
         } catch (JSONException je) {
             return Response.error(new ParseError(je));
         }
     }
 
-    private JSONArray createJSONArray(NetworkResponse response) throws UnsupportedEncodingException, JSONException {
-        // The Gini API always uses UTF-8.
-        final String jsonString = new String(response.data, Utils.CHARSET_UTF8);
+    @Nullable
+    private JSONArray createJSONArray(@NonNull final String jsonString) throws JSONException {
         if (jsonString.length() > 0) {
             return new JSONArray(jsonString);
         } else {
             return null;
         }
     }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
 }
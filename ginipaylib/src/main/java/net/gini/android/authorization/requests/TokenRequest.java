@@ -3,6 +3,7 @@ package net.gini.android.authorization.requests;
 
 import static net.gini.android.Utils.mapToUrlEncodedString;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Base64;
 
@@ -13,6 +14,7 @@ import com.android.volley.toolbox.JsonObjectRequest;
 
 import net.gini.android.MediaTypes;
 import net.gini.android.Utils;
+import net.gini.android.requests.PrioritizedRequest;
 
 import org.json.JSONObject;
 
@@ -23,10 +25,11 @@ import java.util.Map;
 /**
  * Request to do a login request to the Gini User Center API in order to login the client.
  */
-public class TokenRequest extends JsonObjectRequest {
+public class TokenRequest extends JsonObjectRequest implements PrioritizedRequest {
 
     private final String mAuthorizationCredentials;
     private final Map<String, String> mRequestData;
+    private Priority mPriority = Priority.NORMAL;
 
     public TokenRequest(String clientId, String clientSecret, String url, @Nullable Map<String, String> requestData,
                         Response.Listener<JSONObject> listener, Response.ErrorListener errorListener, RetryPolicy retryPolicy) {
@@ -60,4 +63,14 @@ public class TokenRequest extends JsonObjectRequest {
         }
         return body;
     }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
 }
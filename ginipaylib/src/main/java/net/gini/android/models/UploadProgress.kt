@@ -0,0 +1,28 @@
+package net.gini.android.models
+
+/**
+ * The progress of a document upload, see [net.gini.android.DocumentManager.uploadPartialDocument].
+ */
+sealed class UploadProgress {
+
+    /**
+     * The document data is being sent. If the request is retried the number of sent bytes goes back to where the
+     * retried request started: to zero or, for resumable uploads, to the beginning of the retried chunk.
+     *
+     * @property bytesSent  The number of bytes of the document data sent.
+     * @property totalBytes The length of the document data.
+     */
+    data class Sending(
+        val bytesSent: Long,
+        val totalBytes: Long,
+    ) : UploadProgress()
+
+    /**
+     * The document was uploaded and created.
+     *
+     * @property document The freshly created document.
+     */
+    data class Completed(
+        val document: Document,
+    ) : UploadProgress()
+}
@@ -0,0 +1,23 @@
+package net.gini.android.requests;
+
+import androidx.annotation.Nullable;
+
+import com.android.volley.Request;
+
+/**
+ * Requests whose connection is closed when they are cancelled with {@link Request#cancel()}. Volley only checks
+ * whether a request was cancelled before it is sent, so without closing the connection a cancelled request would keep
+ * its network thread until the response arrived.
+ * <p>
+ * The network stack sets the action which closes the connection while the request is being executed.
+ */
+public interface AbortableRequest {
+
+    /**
+     * Sets the action which closes the connection of the request. If the request was cancelled already, the action
+     * is run immediately.
+     *
+     * @param abortAction The action or null, if the request is not being executed.
+     */
+    void setAbortAction(@Nullable Runnable abortAction);
+}
@@ -3,6 +3,8 @@ package net.gini.android.requests;
 
 import android.net.Uri;
 
+import androidx.annotation.NonNull;
+
 import com.android.volley.NetworkResponse;
 import com.android.volley.Response;
 import com.android.volley.RetryPolicy;
@@ -16,8 +18,9 @@ import org.json.JSONObject;
 import java.util.HashMap;
 import java.util.Map;
 
-public class BearerLocationRequest extends JsonRequest<Uri> {
+public class BearerLocationRequest extends JsonRequest<Uri> implements PrioritizedRequest {
     private final String mAccessToken;
+    private Priority mPriority = Priority.NORMAL;
 
     public BearerLocationRequest(int method, String url, JSONObject jsonRequest,
                                  Session session,
@@ -42,4 +45,14 @@ public class BearerLocationRequest extends JsonRequest<Uri> {
         final Uri locationUri = Uri.parse(locationString);
         return Response.success(locationUri, HttpHeaderParser.parseCacheHeaders(response));
     }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
 }
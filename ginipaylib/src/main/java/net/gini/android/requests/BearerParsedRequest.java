@@ -0,0 +1,204 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.RetryPolicy;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import net.gini.android.GiniApiType;
+import net.gini.android.MediaTypes;
+import net.gini.android.authorization.Session;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A request which parses the response body with a {@link ResponseParser} on Volley's network thread. Unlike the
+ * {@link net.gini.android.authorization.requests.BearerJsonObjectRequest} no intermediate string or JSON tree is
+ * created, the parser reads the response bytes directly.
+ * <p>
+ * GET requests can be sent conditionally using a {@link ConditionalRequestCache}, if the parsed responses are not
+ * modified by their receivers.
+ *
+ * @param <T> The type of the parsed response.
+ */
+public class BearerParsedRequest<T> extends Request<T> implements PrioritizedRequest {
+
+    /**
+     * Creates the result of a request from the bytes of the response body.
+     *
+     * @param <T> The type of the parsed response.
+     */
+    public interface ResponseParser<T> {
+
+        /**
+         * @param data The UTF-8 encoded response body.
+         * @return The parsed response.
+         * @throws IOException If the response body does not have the expected structure.
+         */
+        T parse(@NonNull byte[] data) throws IOException;
+    }
+
+    private static final Map<ResponseParser<?>, String> PARSER_IDS = new WeakHashMap<>();
+    private static long sNextParserId;
+
+    private final Session mSession;
+    private final GiniApiType mGiniApiType;
+    private final ResponseParser<T> mResponseParser;
+    private final Response.Listener<T> mListener;
+    @Nullable
+    private final byte[] mBody;
+    @Nullable
+    private final String mBodyContentType;
+    private Priority mPriority = Priority.NORMAL;
+    @Nullable
+    private ConditionalRequestCache mConditionalRequestCache;
+
+    public BearerParsedRequest(final int method, final String url, final Session session,
+            @NonNull final GiniApiType giniApiType, @NonNull final ResponseParser<T> responseParser,
+            final Response.Listener<T> listener, final Response.ErrorListener errorListener,
+            final RetryPolicy retryPolicy) {
+        this(method, url, null, null, session, giniApiType, responseParser, listener, errorListener, retryPolicy);
+    }
+
+    /**
+     * @param body            The request body or null, if the request has no body.
+     * @param bodyContentType The media type of the request body.
+     */
+    public BearerParsedRequest(final int method, final String url, @Nullable final byte[] body,
+            @Nullable final String bodyContentType, final Session session, @NonNull final GiniApiType giniApiType,
+            @NonNull final ResponseParser<T> responseParser, final Response.Listener<T> listener,
+            final Response.ErrorListener errorListener, final RetryPolicy retryPolicy) {
+        super(method, url, errorListener);
+        setRetryPolicy(retryPolicy);
+        mSession = session;
+        mGiniApiType = giniApiType;
+        mResponseParser = responseParser;
+        mListener = listener;
+        mBody = body;
+        mBodyContentType = bodyContentType;
+    }
+
+    /**
+     * Sends the request with the validators of the previous response and uses the previous parsed response, if the
+     * Gini API responds with {@code 304 Not Modified}. Only used for GET requests.
+     *
+     * @param conditionalRequestCache The cache of the previous responses.
+     */
+    public void setConditionalRequestCache(@Nullable final ConditionalRequestCache conditionalRequestCache) {
+        mConditionalRequestCache = getMethod() == Method.GET ? conditionalRequestCache : null;
+    }
+
+    @NonNull
+    private String getConditionalCacheKey() {
+        // Different parsers may create different results from the same response
+        return getUrl() + " " + mGiniApiType.getGiniJsonMediaType() + " " + mSession.getAccessToken() + " "
+                + getParserId(mResponseParser);
+    }
+
+    /**
+     * Identifies a parser instance, e.g. to tell apart identical requests whose responses are parsed differently. Every
+     * instance gets its own id, which stays the same as long as the instance is reachable.
+     *
+     * @param responseParser A parser of responses.
+     * @return An id of the parser instance.
+     */
+    @NonNull
+    public static String getParserId(@NonNull final ResponseParser<?> responseParser) {
+        synchronized (PARSER_IDS) {
+            String parserId = PARSER_IDS.get(responseParser);
+            if (parserId == null) {
+                // Identity hash codes are not unique, so an explicit sequence number is used
+                parserId = responseParser.getClass().getName() + "#" + sNextParserId++;
+                PARSER_IDS.put(responseParser, parserId);
+            }
+            return parserId;
+        }
+    }
+
+    @Override
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return mBodyContentType != null ? mBodyContentType : super.getBodyContentType();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        final HashMap<String, String> headers = new HashMap<>();
+        headers.put("Accept", String.format("%s, %s", MediaTypes.APPLICATION_JSON, mGiniApiType.getGiniJsonMediaType()));
+        headers.put("Authorization", "BEARER " + mSession.getAccessToken());
+        if (mConditionalRequestCache != null) {
+            mConditionalRequestCache.addValidatorHeaders(getConditionalCacheKey(), headers);
+        }
+        return headers;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Response<T> parseNetworkResponse(final NetworkResponse response) {
+        if (mConditionalRequestCache != null) {
+            final ParsedResponse notModified = mConditionalRequestCache.getNotModified(getConditionalCacheKey(),
+                    response, ParsedResponse.class);
+            // Only the same parser is known to have created a result of type T
+            if (notModified != null && notModified.mResponseParser == mResponseParser) {
+                return Response.success((T) notModified.mParsed, HttpHeaderParser.parseCacheHeaders(response));
+            }
+        }
+        if (response.data == null) {
+            // A 304 Not Modified response without a cached result
+            return Response.error(new ParseError(response));
+        }
+        try {
+            final T parsed = mResponseParser.parse(response.data);
+            if (mConditionalRequestCache != null) {
+                mConditionalRequestCache.put(getConditionalCacheKey(), response,
+                        parsed != null ? new ParsedResponse(mResponseParser, parsed) : null);
+            }
+            return Response.success(parsed, HttpHeaderParser.parseCacheHeaders(response));
+        } catch (IOException | RuntimeException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(final T response) {
+        if (mListener != null) {
+            mListener.onResponse(response);
+        }
+    }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * A parsed response together with the parser which created it.
+     */
+    private static class ParsedResponse {
+
+        private final ResponseParser<?> mResponseParser;
+        private final Object mParsed;
+
+        ParsedResponse(@NonNull final ResponseParser<?> responseParser, @NonNull final Object parsed) {
+            mResponseParser = responseParser;
+            mParsed = parsed;
+        }
+    }
+}
@@ -2,19 +2,35 @@ package net.gini.android.requests;
 
 import android.net.Uri;
 
+import androidx.annotation.NonNull;
+
+import com.android.volley.AuthFailureError;
 import com.android.volley.Response;
 import com.android.volley.RetryPolicy;
 
 import net.gini.android.GiniApiType;
 import net.gini.android.MediaTypes;
+import net.gini.android.UploadSource;
 import net.gini.android.authorization.Session;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
 
-public class BearerUploadRequest extends BearerLocationRequest{
-    private final byte[] mUploadData;
+public class BearerUploadRequest extends BearerLocationRequest implements StreamingBodyRequest {
+
+    /**
+     * Uploads larger than this number of bytes are sent with {@code Expect: 100-continue}, if OkHttp was enabled with
+     * {@link net.gini.android.GiniBuilder#setOkHttpEnabled(boolean)}. OkHttp waits for the server to accept the
+     * headers before it sends the body, so that a body is not sent only to be rejected because the access token
+     * expired (401) or the media type is not supported (415).
+     * <p>
+     * The header is not sent with the default HttpURLConnection stack, which ignores it and sends the body right away.
+     */
+    public static final long EXPECT_CONTINUE_THRESHOLD = 256 * 1024;
+
+    private final UploadSource mUploadSource;
     private final String mContentType;
     private final String mAccessToken;
     private final Map<String, String> mHeaders;
@@ -27,17 +43,42 @@ public class BearerUploadRequest extends BearerLocationRequest{
             Response.ErrorListener errorListener,
             RetryPolicy retryPolicy,
             final Map<String, String> headers) {
+        this(method, url, UploadSource.fromBytes(uploadData), contentType, session, giniApiType, listener,
+                errorListener, retryPolicy, headers);
+    }
+
+    public BearerUploadRequest(int method, String url, UploadSource uploadSource, String contentType,
+            final Session session,
+            final GiniApiType giniApiType,
+            Response.Listener<Uri> listener,
+            Response.ErrorListener errorListener,
+            RetryPolicy retryPolicy,
+            final Map<String, String> headers) {
         super(method, url, null, session, listener, errorListener, retryPolicy);
-        mUploadData = uploadData;
+        mUploadSource = uploadSource;
         mContentType = contentType;
         mAccessToken = session.getAccessToken();
         mGiniApiType = giniApiType;
         mHeaders = headers;
     }
 
+    @NonNull
+    @Override
+    public UploadSource getUploadSource() {
+        return mUploadSource;
+    }
+
+    /**
+     * Only used by network stacks which can't stream the body. The library's own network stack streams the
+     * {@link UploadSource} directly and never calls this method.
+     */
     @Override
-    public byte[] getBody() {
-        return mUploadData;
+    public byte[] getBody() throws AuthFailureError {
+        try {
+            return mUploadSource.readFully();
+        } catch (IOException e) {
+            throw new AuthFailureError("Could not read the upload data", e);
+        }
     }
 
     @Override
@@ -0,0 +1,49 @@
+package net.gini.android.requests;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.Request;
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+
+/**
+ * A {@link RetryPolicy} which does not retry cancelled requests.
+ * <p>
+ * Volley checks whether a request was cancelled only before it is sent. The retries of a request happen while it is
+ * being sent, so without this policy a request cancelled during a failed attempt would be retried until its retry
+ * policy gives up.
+ */
+public class CancellableRetryPolicy implements RetryPolicy {
+
+    private final Request<?> mRequest;
+    private final RetryPolicy mRetryPolicy;
+
+    /**
+     * @param request     The request using this policy.
+     * @param retryPolicy The policy deciding the retries of the request while it was not cancelled.
+     */
+    public CancellableRetryPolicy(@NonNull final Request<?> request, @NonNull final RetryPolicy retryPolicy) {
+        mRequest = checkNotNull(request);
+        mRetryPolicy = checkNotNull(retryPolicy);
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        return mRetryPolicy.getCurrentTimeout();
+    }
+
+    @Override
+    public int getCurrentRetryCount() {
+        return mRetryPolicy.getCurrentRetryCount();
+    }
+
+    @Override
+    public void retry(final VolleyError error) throws VolleyError {
+        if (mRequest.isCanceled()) {
+            throw new RequestCancelledError();
+        }
+        mRetryPolicy.retry(error);
+    }
+}
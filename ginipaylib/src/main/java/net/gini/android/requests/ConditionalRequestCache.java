@@ -0,0 +1,169 @@
+package net.gini.android.requests;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+
+import java.net.HttpURLConnection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the validators (ETag and Last-Modified) and the bodies of GET responses in memory. Requests using the cache
+ * send the validators as {@code If-None-Match} and {@code If-Modified-Since} headers and turn a
+ * {@code 304 Not Modified} response into the body of the previous response without downloading it again.
+ * <p>
+ * Volley's {@link com.android.volley.toolbox.DiskBasedCache} of the request queue can't be used for this. It keys the
+ * responses by the URL only, but the Gini API returns different bodies for the same URL depending on the
+ * {@code Accept} header (e.g. v1, v2 and incubator extractions) and the user of the {@code Authorization} header.
+ * This cache keys the responses by URL, media type and access token and keeps them in memory only.
+ * <p>
+ * The stored values are returned to every request with the same key and must be immutable. Requests with mutable
+ * results, like {@link org.json.JSONObject}, store the body as a string and parse it again for every response.
+ */
+public class ConditionalRequestCache {
+
+    /**
+     * The default number of responses kept in memory.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final LruCache<String, Entry> mEntries;
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    public ConditionalRequestCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximal number of responses kept in memory.
+     */
+    public ConditionalRequestCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than 0");
+        }
+        mEntries = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * @return The number of responses which were answered with {@code 304 Not Modified} and served from this cache.
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return The number of responses which had to be downloaded and parsed.
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Removes all responses. The hit and miss counts are kept.
+     */
+    public void clear() {
+        mEntries.evictAll();
+    }
+
+    /**
+     * Adds the validators of the previous response to the headers of a request.
+     *
+     * @param key     Identifies the resource, e.g. by its URL, the accepted media type and the access token.
+     * @param headers The headers of the request.
+     */
+    public void addValidatorHeaders(@NonNull final String key, @NonNull final Map<String, String> headers) {
+        final Entry entry = mEntries.get(key);
+        if (entry != null) {
+            entry.addValidatorHeaders(headers);
+        }
+    }
+
+    /**
+     * Returns the stored body of the previous response, if the response is a {@code 304 Not Modified} response. Counts
+     * the response as a hit, if the previous body was found.
+     *
+     * @param key      Identifies the resource.
+     * @param response A response of the Gini API.
+     * @param type     The type of the stored body.
+     * @return The stored body of the previous response or null, if the response has to be parsed.
+     */
+    @Nullable
+    public <T> T getNotModified(@NonNull final String key, @NonNull final NetworkResponse response,
+            @NonNull final Class<T> type) {
+        if (!response.notModified && response.statusCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return null;
+        }
+        final Entry entry = mEntries.get(key);
+        if (entry == null || !type.isInstance(entry.mParsed)) {
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        return type.cast(entry.mParsed);
+    }
+
+    /**
+     * Stores the body of a response, if the response has validators. Counts the response as a miss.
+     *
+     * @param key      Identifies the resource.
+     * @param response A response of the Gini API.
+     * @param parsed   The parsed body of the response or another immutable form of it, like the body as a string.
+     */
+    public void put(@NonNull final String key, @NonNull final NetworkResponse response, @Nullable final Object parsed) {
+        mMissCount.incrementAndGet();
+        final String etag = getHeader(response, HEADER_ETAG);
+        final String lastModified = getHeader(response, HEADER_LAST_MODIFIED);
+        if (parsed == null || (etag == null && lastModified == null)) {
+            mEntries.remove(key);
+            return;
+        }
+        mEntries.put(key, new Entry(etag, lastModified, parsed));
+    }
+
+    @Nullable
+    private static String getHeader(@NonNull final NetworkResponse response, @NonNull final String name) {
+        if (response.headers == null) {
+            return null;
+        }
+        // The header map is only case insensitive, if Volley created it
+        for (final Map.Entry<String, String> header : response.headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static class Entry {
+
+        @Nullable
+        private final String mEtag;
+        @Nullable
+        private final String mLastModified;
+        private final Object mParsed;
+
+        Entry(@Nullable final String etag, @Nullable final String lastModified, @NonNull final Object parsed) {
+            mEtag = etag;
+            mLastModified = lastModified;
+            mParsed = parsed;
+        }
+
+        void addValidatorHeaders(@NonNull final Map<String, String> headers) {
+            if (mEtag != null) {
+                headers.put(HEADER_IF_NONE_MATCH, mEtag);
+            }
+            if (mLastModified != null) {
+                headers.put(HEADER_IF_MODIFIED_SINCE, mLastModified);
+            }
+        }
+    }
+}
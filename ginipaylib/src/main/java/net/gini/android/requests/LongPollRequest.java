@@ -0,0 +1,52 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.Response;
+import com.android.volley.RetryPolicy;
+
+import net.gini.android.GiniApiType;
+import net.gini.android.authorization.Session;
+import net.gini.android.authorization.requests.BearerJsonObjectRequest;
+
+import org.json.JSONObject;
+
+/**
+ * A long-polling GET request which the Gini API holds open for a long time. Its connection is closed when it is
+ * cancelled, so that it doesn't keep a network thread until the server-side timeout expires.
+ */
+public class LongPollRequest extends BearerJsonObjectRequest implements AbortableRequest {
+
+    @Nullable
+    private Runnable mAbortAction;
+
+    public LongPollRequest(final String url, final Session session, @NonNull final GiniApiType giniApiType,
+            final Response.Listener<JSONObject> listener, final Response.ErrorListener errorListener,
+            final RetryPolicy retryPolicy) {
+        super(Method.GET, url, null, session, giniApiType, listener, errorListener, retryPolicy);
+        setShouldCache(false);
+    }
+
+    @Override
+    public void setAbortAction(@Nullable final Runnable abortAction) {
+        synchronized (this) {
+            mAbortAction = abortAction;
+        }
+        if (abortAction != null && isCanceled()) {
+            abortAction.run();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel();
+        final Runnable abortAction;
+        synchronized (this) {
+            abortAction = mAbortAction;
+        }
+        if (abortAction != null) {
+            abortAction.run();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.gini.android.requests;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+
+/**
+ * A {@link RetryPolicy} which does not retry requests rejected with 401 or 403.
+ * <p>
+ * Volley retries authentication failures like any other error, but a retry sends the same access token again. For
+ * uploads this means sending the whole body again only to be rejected once more. The caller has to get a new session
+ * and send a new request instead.
+ */
+public class NoAuthFailureRetryPolicy implements RetryPolicy {
+
+    private final RetryPolicy mRetryPolicy;
+
+    /**
+     * @param retryPolicy The policy deciding the retries after all other errors.
+     */
+    public NoAuthFailureRetryPolicy(@NonNull final RetryPolicy retryPolicy) {
+        mRetryPolicy = checkNotNull(retryPolicy);
+    }
+
+    @Override
+    public int getCurrentTimeout() {
+        return mRetryPolicy.getCurrentTimeout();
+    }
+
+    @Override
+    public int getCurrentRetryCount() {
+        return mRetryPolicy.getCurrentRetryCount();
+    }
+
+    @Override
+    public void retry(final VolleyError error) throws VolleyError {
+        if (error instanceof AuthFailureError) {
+            throw error;
+        }
+        mRetryPolicy.retry(error);
+    }
+}
@@ -0,0 +1,14 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.Request;
+
+/**
+ * Requests whose {@link Request.Priority} can be set. The {@link RequestLaneDispatcher} sets the priority of the
+ * {@link RequestLane} a request is added to.
+ */
+public interface PrioritizedRequest {
+
+    void setPriority(@NonNull Request.Priority priority);
+}
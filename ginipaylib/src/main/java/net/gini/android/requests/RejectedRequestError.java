@@ -0,0 +1,14 @@
+package net.gini.android.requests;
+
+import com.android.volley.VolleyError;
+
+/**
+ * Error of requests which were rejected by the {@link RequestLaneDispatcher}, because too many requests were waiting
+ * already.
+ */
+public class RejectedRequestError extends VolleyError {
+
+    public RejectedRequestError(final String message) {
+        super(message);
+    }
+}
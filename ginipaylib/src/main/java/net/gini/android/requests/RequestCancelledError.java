@@ -0,0 +1,14 @@
+package net.gini.android.requests;
+
+import com.android.volley.VolleyError;
+
+/**
+ * Error which is delivered to requests cancelled with a {@link bolts.CancellationToken}. The
+ * {@link net.gini.android.RequestTaskCompletionSource} cancels its task instead of failing it.
+ */
+public class RequestCancelledError extends VolleyError {
+
+    public RequestCancelledError() {
+        super("The request was cancelled");
+    }
+}
@@ -0,0 +1,35 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.Request;
+
+/**
+ * The lanes requests are dispatched in. Each lane has its own Volley {@link Request.Priority} and concurrency limit,
+ * see {@link RequestLaneDispatcher}.
+ */
+public enum RequestLane {
+    /**
+     * Requests the user is waiting for, like payment requests, extractions and authentication.
+     */
+    INTERACTIVE(Request.Priority.HIGH),
+    /**
+     * Requests which are not time critical, like interval polling and document management.
+     */
+    NORMAL(Request.Priority.NORMAL),
+    /**
+     * Long-running requests, like uploads, page image downloads and long-polling requests.
+     */
+    BACKGROUND(Request.Priority.LOW);
+
+    private final Request.Priority mPriority;
+
+    RequestLane(final Request.Priority priority) {
+        mPriority = priority;
+    }
+
+    @NonNull
+    public Request.Priority getPriority() {
+        return mPriority;
+    }
+}
@@ -0,0 +1,258 @@
+package net.gini.android.requests;
+
+import static net.gini.android.Utils.checkNotNull;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Adds requests to a {@link RequestQueue} using the priority of their {@link RequestLane} and limits the number of
+ * requests each lane may have in the queue at the same time. Requests exceeding the limit of their lane wait in the
+ * dispatcher until a request of the same lane finished.
+ * <p>
+ * By default the {@link RequestLane#NORMAL} and {@link RequestLane#BACKGROUND} lanes together are limited to one
+ * request less than Volley has network threads, so that requests of the {@link RequestLane#INTERACTIVE} lane never
+ * wait for uploads or downloads to finish. This needs at least {@link #MIN_THREAD_POOL_SIZE} network threads, because
+ * both lanes need at least one.
+ * <p>
+ * The number of waiting requests can be bounded. Requests exceeding the bound fail immediately with a
+ * {@link RejectedRequestError}.
+ */
+public class RequestLaneDispatcher {
+
+    /**
+     * Concurrency limit for lanes without a limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The minimal number of network threads for the default concurrency limits: one for each of the
+     * {@link RequestLane#NORMAL} and {@link RequestLane#BACKGROUND} lanes and one for the
+     * {@link RequestLane#INTERACTIVE} lane.
+     */
+    public static final int MIN_THREAD_POOL_SIZE = 3;
+
+    /**
+     * The number of network threads of a Volley {@link RequestQueue} created without a thread pool size.
+     */
+    private static final int VOLLEY_DEFAULT_THREAD_POOL_SIZE = 4;
+
+    private final RequestQueue mRequestQueue;
+    private final int mMaxWaitingRequests;
+    private int mWaitingRequests;
+    private final Map<RequestLane, Lane> mLanes = new EnumMap<>(RequestLane.class);
+    private final Map<Request<?>, Lane> mRequestsInQueue = new IdentityHashMap<>();
+    private final Map<Request<?>, Runnable> mFinishedCallbacks = new IdentityHashMap<>();
+
+    /**
+     * Uses the default concurrency limits of a queue with Volley's default number of network threads.
+     *
+     * @param requestQueue The queue the requests are added to.
+     */
+    public RequestLaneDispatcher(@NonNull final RequestQueue requestQueue) {
+        this(requestQueue, getDefaultConcurrencyLimits());
+    }
+
+    /**
+     * @param requestQueue      The queue the requests are added to.
+     * @param concurrencyLimits The maximal number of requests of each lane in the queue. Lanes without a limit are
+     *                          unlimited.
+     */
+    public RequestLaneDispatcher(@NonNull final RequestQueue requestQueue,
+            @NonNull final Map<RequestLane, Integer> concurrencyLimits) {
+        this(requestQueue, concurrencyLimits, UNLIMITED);
+    }
+
+    /**
+     * @param requestQueue       The queue the requests are added to.
+     * @param concurrencyLimits  The maximal number of requests of each lane in the queue. Lanes without a limit are
+     *                           unlimited.
+     * @param maxWaitingRequests The maximal number of requests waiting in all lanes. Requests exceeding it fail with a
+     *                           {@link RejectedRequestError}.
+     */
+    public RequestLaneDispatcher(@NonNull final RequestQueue requestQueue,
+            @NonNull final Map<RequestLane, Integer> concurrencyLimits, final int maxWaitingRequests) {
+        if (maxWaitingRequests < 0) {
+            throw new IllegalArgumentException("maxWaitingRequests can't be less than 0");
+        }
+        mRequestQueue = checkNotNull(requestQueue);
+        mMaxWaitingRequests = maxWaitingRequests;
+        for (final RequestLane lane : RequestLane.values()) {
+            final Integer limit = concurrencyLimits.get(lane);
+            if (limit != null && limit < 1) {
+                throw new IllegalArgumentException("The concurrency limit of a lane can't be less than 1");
+            }
+            mLanes.put(lane, new Lane(limit != null ? limit : UNLIMITED));
+        }
+        mRequestQueue.addRequestFinishedListener(new RequestQueue.RequestFinishedListener<Object>() {
+            @Override
+            public void onRequestFinished(final Request<Object> request) {
+                RequestLaneDispatcher.this.onRequestFinished(request);
+            }
+        });
+    }
+
+    /**
+     * @return The default concurrency limits for a queue with Volley's default of 4 network threads.
+     */
+    @NonNull
+    public static Map<RequestLane, Integer> getDefaultConcurrencyLimits() {
+        return getDefaultConcurrencyLimits(VOLLEY_DEFAULT_THREAD_POOL_SIZE);
+    }
+
+    /**
+     * Returns the default concurrency limits for a queue with the given number of network threads. One thread is
+     * reserved for the {@link RequestLane#INTERACTIVE} lane. The {@link RequestLane#NORMAL} lane gets the larger half
+     * of the other threads and the {@link RequestLane#BACKGROUND} lane the rest.
+     *
+     * @param threadPoolSize The number of network threads of the queue. At least {@link #MIN_THREAD_POOL_SIZE}.
+     * @return A new map with the limits of all lanes.
+     */
+    @NonNull
+    public static Map<RequestLane, Integer> getDefaultConcurrencyLimits(final int threadPoolSize) {
+        if (threadPoolSize < MIN_THREAD_POOL_SIZE) {
+            throw new IllegalArgumentException("threadPoolSize can't be less than " + MIN_THREAD_POOL_SIZE);
+        }
+        final int sharedThreads = threadPoolSize - 1;
+        final int backgroundLimit = sharedThreads / 2;
+        final Map<RequestLane, Integer> limits = new EnumMap<>(RequestLane.class);
+        limits.put(RequestLane.INTERACTIVE, UNLIMITED);
+        limits.put(RequestLane.NORMAL, sharedThreads - backgroundLimit);
+        limits.put(RequestLane.BACKGROUND, backgroundLimit);
+        return limits;
+    }
+
+    @NonNull
+    public RequestQueue getRequestQueue() {
+        return mRequestQueue;
+    }
+
+    /**
+     * Adds the request to the queue, if its lane has not reached its concurrency limit. Otherwise it will be added
+     * after another request of the lane finished.
+     *
+     * @param request The request. If it is a {@link PrioritizedRequest} its priority is set to the priority of the
+     *                lane.
+     * @param lane    The lane of the request.
+     */
+    public void add(@NonNull final Request<?> request, @NonNull final RequestLane lane) {
+        add(request, lane, null);
+    }
+
+    /**
+     * Adds the request to the queue, if its lane has not reached its concurrency limit. Otherwise it will be added
+     * after another request of the lane finished.
+     *
+     * @param request    The request. If it is a {@link PrioritizedRequest} its priority is set to the priority of
+     *                   the lane.
+     * @param lane       The lane of the request.
+     * @param onFinished Called once when the request finished in the queue, was rejected or was cancelled while
+     *                   waiting, e.g. to release resources held for the request.
+     */
+    public void add(@NonNull final Request<?> request, @NonNull final RequestLane lane,
+            @Nullable final Runnable onFinished) {
+        if (request instanceof PrioritizedRequest) {
+            ((PrioritizedRequest) request).setPriority(lane.getPriority());
+        }
+        final Lane requestLane = mLanes.get(checkNotNull(lane));
+        final boolean rejected;
+        synchronized (this) {
+            if (onFinished != null) {
+                mFinishedCallbacks.put(request, onFinished);
+            }
+            if (requestLane.mRequestsInQueue < requestLane.mLimit) {
+                requestLane.mRequestsInQueue++;
+                mRequestsInQueue.put(request, requestLane);
+                rejected = false;
+            } else if (mWaitingRequests < mMaxWaitingRequests) {
+                mWaitingRequests++;
+                requestLane.mWaitingRequests.add(request);
+                return;
+            } else {
+                rejected = true;
+            }
+        }
+        if (rejected) {
+            request.deliverError(new RejectedRequestError("Too many requests are waiting in the " + lane + " lane"));
+            runFinishedCallback(request);
+        } else {
+            mRequestQueue.add(request);
+        }
+    }
+
+    private void onRequestFinished(@NonNull final Request<?> request) {
+        runFinishedCallback(request);
+        final Request<?> nextRequest;
+        final List<Request<?>> droppedRequests = new ArrayList<>();
+        synchronized (this) {
+            final Lane lane = mRequestsInQueue.remove(request);
+            if (lane == null) {
+                return;
+            }
+            nextRequest = pollWaitingRequest(lane, droppedRequests);
+            if (nextRequest != null) {
+                mRequestsInQueue.put(nextRequest, lane);
+            } else {
+                lane.mRequestsInQueue--;
+            }
+        }
+        for (final Request<?> droppedRequest : droppedRequests) {
+            runFinishedCallback(droppedRequest);
+        }
+        if (nextRequest != null) {
+            mRequestQueue.add(nextRequest);
+        }
+    }
+
+    private void runFinishedCallback(@NonNull final Request<?> request) {
+        final Runnable onFinished;
+        synchronized (this) {
+            onFinished = mFinishedCallbacks.remove(request);
+        }
+        if (onFinished != null) {
+            onFinished.run();
+        }
+    }
+
+    /**
+     * Returns the next waiting request of the lane, which was not cancelled. Cancelled requests are dropped without
+     * occupying a slot of the lane.
+     *
+     * @param droppedRequests Receives the dropped requests.
+     */
+    @Nullable
+    private Request<?> pollWaitingRequest(@NonNull final Lane lane, @NonNull final List<Request<?>> droppedRequests) {
+        Request<?> request = lane.mWaitingRequests.poll();
+        while (request != null) {
+            mWaitingRequests--;
+            if (!request.isCanceled()) {
+                return request;
+            }
+            droppedRequests.add(request);
+            request = lane.mWaitingRequests.poll();
+        }
+        return null;
+    }
+
+    private static class Lane {
+
+        private final int mLimit;
+        private final Queue<Request<?>> mWaitingRequests = new ArrayDeque<>();
+        private int mRequestsInQueue;
+
+        Lane(final int limit) {
+            mLimit = limit;
+        }
+    }
+}
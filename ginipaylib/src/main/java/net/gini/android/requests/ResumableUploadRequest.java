@@ -0,0 +1,70 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.RetryPolicy;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import net.gini.android.authorization.Session;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A request of the resumable upload protocol. The protocol communicates only with headers, so the request resolves
+ * to the headers of the response.
+ */
+public class ResumableUploadRequest extends Request<Map<String, String>> implements PrioritizedRequest {
+
+    private final String mAccessToken;
+    private final Map<String, String> mHeaders;
+    private final Response.Listener<Map<String, String>> mListener;
+    private Priority mPriority = Priority.NORMAL;
+
+    public ResumableUploadRequest(final int method, final String url, final Session session,
+            final Map<String, String> headers,
+            final Response.Listener<Map<String, String>> listener,
+            final Response.ErrorListener errorListener,
+            final RetryPolicy retryPolicy) {
+        super(method, url, errorListener);
+        mAccessToken = session.getAccessToken();
+        mHeaders = headers;
+        mListener = listener;
+        setRetryPolicy(retryPolicy);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        final HashMap<String, String> headers = new HashMap<>(mHeaders);
+        headers.put("Authorization", "BEARER " + mAccessToken);
+        return headers;
+    }
+
+    @Override
+    protected Response<Map<String, String>> parseNetworkResponse(final NetworkResponse response) {
+        final Map<String, String> headers = response.headers != null ? response.headers
+                : Collections.<String, String>emptyMap();
+        return Response.success(headers, HttpHeaderParser.parseCacheHeaders(response));
+    }
+
+    @Override
+    protected void deliverResponse(final Map<String, String> response) {
+        if (mListener != null) {
+            mListener.onResponse(response);
+        }
+    }
+
+    @Override
+    public void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return mPriority;
+    }
+}
@@ -0,0 +1,18 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+
+import net.gini.android.UploadSource;
+
+/**
+ * Implemented by requests whose body should be streamed from an {@link UploadSource} instead of being handed to the
+ * network stack as a byte array.
+ */
+public interface StreamingBodyRequest {
+
+    /**
+     * The source of the request body. A new stream is opened for each attempt.
+     */
+    @NonNull
+    UploadSource getUploadSource();
+}
@@ -0,0 +1,58 @@
+package net.gini.android.requests;
+
+import androidx.annotation.NonNull;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Response;
+import com.android.volley.RetryPolicy;
+
+import net.gini.android.UploadSource;
+import net.gini.android.authorization.Session;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Sends a chunk of a resumable upload. The chunk is streamed from its {@link UploadSource}.
+ */
+public class UploadChunkRequest extends ResumableUploadRequest implements StreamingBodyRequest {
+
+    /**
+     * The media type of the chunks defined by the resumable upload protocol.
+     */
+    public static final String CHUNK_CONTENT_TYPE = "application/offset+octet-stream";
+
+    private final UploadSource mChunk;
+
+    public UploadChunkRequest(final int method, final String url, final UploadSource chunk, final Session session,
+            final Map<String, String> headers,
+            final Response.Listener<Map<String, String>> listener,
+            final Response.ErrorListener errorListener,
+            final RetryPolicy retryPolicy) {
+        super(method, url, session, headers, listener, errorListener, retryPolicy);
+        mChunk = chunk;
+    }
+
+    @NonNull
+    @Override
+    public UploadSource getUploadSource() {
+        return mChunk;
+    }
+
+    /**
+     * Only used by network stacks which can't stream the body.
+     */
+    @Override
+    public byte[] getBody() throws AuthFailureError {
+        try {
+            return mChunk.readFully();
+        } catch (IOException e) {
+            throw new AuthFailureError("Could not read the upload chunk", e);
+        }
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return CHUNK_CONTENT_TYPE;
+    }
+}